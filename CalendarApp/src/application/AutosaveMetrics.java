@@ -0,0 +1,127 @@
+package application;
+
+/**
+ * Niemodyfikowalna migawka statystyk automatycznego zapisu
+ * {@link AutosaveService}. Pozwala monitorować, czy są niezapisane zmiany, ile
+ * zapisów wykonano lub pominięto, jak długo trwały oraz ile bajtów zapisano na
+ * dysk.
+ */
+public class AutosaveMetrics
+{
+	private final boolean dirty;
+	private final long saves;
+	private final long skippedSaves;
+	private final long failedSaves;
+	private final long lastSaveMillis;
+	private final long maxSaveMillis;
+	private final long totalSaveMillis;
+	private final long lastBytesWritten;
+	private final long totalBytesWritten;
+
+	/**
+	 * Tworzy migawkę statystyk automatycznego zapisu.
+	 *
+	 * @param dirty             Czy dane mają niezapisane zmiany.
+	 * @param saves             Liczba wykonanych zapisów.
+	 * @param skippedSaves      Liczba zapisów pominiętych z powodu braku zmian.
+	 * @param failedSaves       Liczba nieudanych zapisów.
+	 * @param lastSaveMillis    Czas trwania ostatniego zapisu w milisekundach.
+	 * @param maxSaveMillis     Najdłuższy czas zapisu w milisekundach.
+	 * @param totalSaveMillis   Łączny czas zapisów w milisekundach.
+	 * @param lastBytesWritten  Liczba bajtów zapisanych przez ostatni zapis.
+	 * @param totalBytesWritten Łączna liczba zapisanych bajtów.
+	 */
+	AutosaveMetrics(boolean dirty, long saves, long skippedSaves, long failedSaves, long lastSaveMillis, long maxSaveMillis, long totalSaveMillis,
+			long lastBytesWritten, long totalBytesWritten)
+	{
+		this.dirty = dirty;
+		this.saves = saves;
+		this.skippedSaves = skippedSaves;
+		this.failedSaves = failedSaves;
+		this.lastSaveMillis = lastSaveMillis;
+		this.maxSaveMillis = maxSaveMillis;
+		this.totalSaveMillis = totalSaveMillis;
+		this.lastBytesWritten = lastBytesWritten;
+		this.totalBytesWritten = totalBytesWritten;
+	}
+
+	/**
+	 * @return True jeśli dane mają zmiany, które nie zostały jeszcze zapisane.
+	 */
+	public boolean isDirty()
+	{
+		return dirty;
+	}
+
+	/**
+	 * @return Liczba wykonanych zapisów.
+	 */
+	public long getSaves()
+	{
+		return saves;
+	}
+
+	/**
+	 * @return Liczba zapisów pominiętych, ponieważ dane nie zmieniły się od
+	 *         ostatniego zapisu.
+	 */
+	public long getSkippedSaves()
+	{
+		return skippedSaves;
+	}
+
+	/**
+	 * @return Liczba nieudanych zapisów.
+	 */
+	public long getFailedSaves()
+	{
+		return failedSaves;
+	}
+
+	/**
+	 * @return Czas trwania ostatniego zapisu w milisekundach.
+	 */
+	public long getLastSaveMillis()
+	{
+		return lastSaveMillis;
+	}
+
+	/**
+	 * @return Najdłuższy czas zapisu w milisekundach.
+	 */
+	public long getMaxSaveMillis()
+	{
+		return maxSaveMillis;
+	}
+
+	/**
+	 * @return Średni czas zapisu w milisekundach lub 0, jeśli nie było zapisów.
+	 */
+	public long getAverageSaveMillis()
+	{
+		return saves != 0 ? totalSaveMillis / saves : 0;
+	}
+
+	/**
+	 * @return Liczba bajtów zapisanych przez ostatni zapis.
+	 */
+	public long getLastBytesWritten()
+	{
+		return lastBytesWritten;
+	}
+
+	/**
+	 * @return Łączna liczba bajtów zapisanych przez wszystkie zapisy.
+	 */
+	public long getTotalBytesWritten()
+	{
+		return totalBytesWritten;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("dirty=%b, saves=%d, skipped=%d, failed=%d, last=%dms, max=%dms, avg=%dms, lastBytes=%d, totalBytes=%d", dirty, saves,
+				skippedSaves, failedSaves, lastSaveMillis, maxSaveMillis, getAverageSaveMillis(), lastBytesWritten, totalBytesWritten);
+	}
+}
@@ -0,0 +1,405 @@
+package application;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Automatyczny zapis danych aplikacji do plików lokalnych wykonywany w tle.
+ * Kontroler oznacza każdą zmianę modelu przez {@link #markDirty()}, a wątek
+ * roboczy zapisuje dane dopiero wtedy, gdy przez czas {@code debounce} nie
+ * było kolejnych zmian, ale nie później niż po czasie {@code maxDelay} od
+ * pierwszej niezapisanej zmiany. Seria szybkich edycji daje więc jeden zapis.
+ * <p>
+ * Każda zmiana zwiększa numer generacji danych, a zapis zapamiętuje numer
+ * generacji, którą zapisał. Jeśli od ostatniego zapisu nic się nie zmieniło,
+ * zapis jest pomijany bez dotykania dysku. Zapis ma dwa etapy: pod blokadą
+ * modelu {@link SaveAction#prepare()} tylko zapamiętuje spójny stan do
+ * zapisania (np. kopiuje listy lub zaczyna nowy segment dziennika), a
+ * kodowanie i operacje na plikach ({@link Write#write()}) odbywają się po
+ * zwolnieniu blokady, więc nie wstrzymują zmian modelu. Zmiany wykonane w
+ * trakcie zapisu zostaną zapisane przy kolejnym, a zapisy nie są wykonywane
+ * równolegle.
+ */
+public class AutosaveService implements AutoCloseable
+{
+	private static final long DEFAULT_DEBOUNCE_MILLIS = 2_000;
+	private static final long DEFAULT_MAX_DELAY_MILLIS = 30_000;
+
+	/**
+	 * Zapis danych wykonywany przez usługę.
+	 */
+	@FunctionalInterface
+	public interface SaveAction
+	{
+		/**
+		 * Przygotowuje zapis danych aplikacji. Wywoływana pod blokadą modelu.
+		 *
+		 * @return             Zapis przygotowanych danych, wykonywany bez blokady
+		 *                     modelu.
+		 * @throws IOException Jeśli nie udało się przygotować zapisu.
+		 */
+		Write prepare() throws IOException;
+	}
+
+	/**
+	 * Zapis danych przygotowanych przez {@link SaveAction#prepare()}.
+	 */
+	@FunctionalInterface
+	public interface Write
+	{
+		/**
+		 * Zapisuje przygotowane dane. Wywoływana bez blokady modelu.
+		 *
+		 * @return             Liczba zapisanych bajtów.
+		 * @throws IOException Jeśli zapis się nie powiódł.
+		 */
+		long write() throws IOException;
+	}
+
+	private final SaveAction saveAction;
+	private final Object modelLock;
+	private final Object saveLock = new Object();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+
+	private Consumer<Exception> errorHandler = ex -> System.err.println(ex.getMessage());
+	private long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+	private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+	private Thread worker;
+	private boolean closed;
+
+	private long generation;
+	private long savedGeneration;
+	private long firstChangeAt;
+	private long lastChangeAt;
+
+	private long saves;
+	private long skippedSaves;
+	private long failedSaves;
+	private long lastSaveMillis;
+	private long maxSaveMillis;
+	private long totalSaveMillis;
+	private long lastBytesWritten;
+	private long totalBytesWritten;
+
+	/**
+	 * Tworzy usługę automatycznego zapisu.
+	 *
+	 * @param saveAction Zapis danych aplikacji.
+	 * @param modelLock  Obiekt, na którym kontroler synchronizuje zmiany modelu w
+	 *                   pamięci.
+	 */
+	public AutosaveService(SaveAction saveAction, Object modelLock)
+	{
+		this.saveAction = saveAction;
+		this.modelLock = modelLock;
+	}
+
+	/**
+	 * Ustawia obiekt powiadamiany o zapisach, które nie powiodły się w tle.
+	 * Jest wywoływany w wątku roboczym usługi.
+	 *
+	 * @param errorHandler Obiekt powiadamiany o błędach zapisu.
+	 */
+	public void setErrorHandler(Consumer<Exception> errorHandler)
+	{
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * Ustawia czas bez zmian, po którym dane są zapisywane.
+	 *
+	 * @param debounceMillis Czas w milisekundach.
+	 */
+	public void setDebounceMillis(long debounceMillis)
+	{
+		this.debounceMillis = debounceMillis;
+	}
+
+	/**
+	 * Ustawia maksymalny czas od pierwszej niezapisanej zmiany do zapisu, nawet
+	 * jeśli zmiany następują bez przerwy.
+	 *
+	 * @param maxDelayMillis Czas w milisekundach.
+	 */
+	public void setMaxDelayMillis(long maxDelayMillis)
+	{
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * Uruchamia wątek roboczy. Zmiany oznaczone wcześniej są tylko zapamiętywane,
+	 * dzięki czemu dane nie są zapisywane w tle, zanim kontroler zakończy
+	 * wczytywanie i synchronizację danych.
+	 */
+	public void start()
+	{
+		lock.lock();
+
+		try
+		{
+			if (worker != null || closed)
+				return;
+
+			worker = new Thread(this::run, "autosave-worker");
+			worker.setDaemon(true);
+			worker.start();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Oznacza dane jako zmienione i planuje ich zapis w tle. Przed
+	 * {@link #start()} i po zamknięciu usługi zmiana jest tylko zapamiętywana i
+	 * zostanie zapisana przez {@link #saveNow()}.
+	 */
+	public void markDirty()
+	{
+		lock.lock();
+
+		try
+		{
+			long now = System.currentTimeMillis();
+
+			if (generation == savedGeneration)
+				firstChangeAt = now;
+
+			generation++;
+			lastChangeAt = now;
+			changed.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return True jeśli dane mają zmiany, które nie zostały jeszcze zapisane.
+	 */
+	public boolean isDirty()
+	{
+		lock.lock();
+
+		try
+		{
+			return generation != savedGeneration;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Zapisuje dane w bieżącym wątku, jeśli mają niezapisane zmiany.
+	 *
+	 * @return             True jeśli dane zostały zapisane, false jeśli zapis
+	 *                     pominięto, ponieważ nic się nie zmieniło.
+	 * @throws IOException Jeśli zapis się nie powiódł. Dane pozostają wtedy
+	 *                     oznaczone jako zmienione.
+	 */
+	public boolean saveNow() throws IOException
+	{
+		synchronized (saveLock)
+		{
+			long target;
+			long start;
+			long bytes;
+
+			try
+			{
+				Write write;
+
+				synchronized (modelLock)
+				{
+					lock.lock();
+
+					try
+					{
+						target = generation;
+
+						if (target == savedGeneration)
+						{
+							skippedSaves++;
+							return false;
+						}
+					}
+					finally
+					{
+						lock.unlock();
+					}
+
+					start = System.nanoTime();
+					write = saveAction.prepare();
+				}
+
+				bytes = write.write();
+			}
+			catch (IOException | RuntimeException ex)
+			{
+				lock.lock();
+
+				try
+				{
+					failedSaves++;
+				}
+				finally
+				{
+					lock.unlock();
+				}
+
+				throw ex;
+			}
+
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			lock.lock();
+
+			try
+			{
+				savedGeneration = target;
+
+				if (generation != savedGeneration)
+					firstChangeAt = System.currentTimeMillis();
+
+				saves++;
+				lastSaveMillis = elapsed;
+				maxSaveMillis = Math.max(maxSaveMillis, elapsed);
+				totalSaveMillis += elapsed;
+				lastBytesWritten = bytes;
+				totalBytesWritten += bytes;
+				changed.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * @return Migawka statystyk automatycznego zapisu.
+	 */
+	public AutosaveMetrics getMetrics()
+	{
+		lock.lock();
+
+		try
+		{
+			return new AutosaveMetrics(generation != savedGeneration, saves, skippedSaves, failedSaves, lastSaveMillis, maxSaveMillis,
+					totalSaveMillis, lastBytesWritten, totalBytesWritten);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Zatrzymuje wątek roboczy, czekając na zakończenie trwającego zapisu.
+	 * Niezapisane zmiany pozostają oznaczone i można je zapisać przez
+	 * {@link #saveNow()}.
+	 */
+	@Override
+	public void close()
+	{
+		Thread workerThread;
+
+		lock.lock();
+
+		try
+		{
+			closed = true;
+			workerThread = worker;
+			changed.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		if (workerThread != null)
+		{
+			try
+			{
+				workerThread.join(TimeUnit.SECONDS.toMillis(30));
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Pętla wątku roboczego: czeka na zmiany, odczekuje, aż ustaną lub minie
+	 * maksymalny czas, i zapisuje dane.
+	 */
+	private void run()
+	{
+		while (true)
+		{
+			lock.lock();
+
+			try
+			{
+				while (generation == savedGeneration && !closed)
+				{
+					changed.await();
+				}
+
+				if (closed)
+					return;
+
+				long now = System.currentTimeMillis();
+				long dueAt = Math.min(lastChangeAt + debounceMillis, firstChangeAt + maxDelayMillis);
+
+				if (dueAt > now)
+				{
+					changed.await(dueAt - now, TimeUnit.MILLISECONDS);
+					continue;
+				}
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			try
+			{
+				saveNow();
+			}
+			catch (IOException | RuntimeException ex)
+			{
+				errorHandler.accept(ex);
+
+				lock.lock();
+
+				try
+				{
+					// kolejna próba po upływie czasu bez zmian
+					lastChangeAt = System.currentTimeMillis();
+					firstChangeAt = lastChangeAt;
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+		}
+	}
+}
@@ -1,14 +1,25 @@
 package application;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import javafx.scene.paint.Color;
@@ -16,6 +27,13 @@ import model.Category;
 import model.Contact;
 import model.Event;
 import postgresql.Database;
+import serializer.CSVDeserializer;
+import serializer.ICalendarDeserializer;
+import serializer.ICalendarSerializer;
+import serializer.JournalReplay;
+import serializer.LocalStore;
+import serializer.OperationJournal;
+import serializer.WatermarkStore;
 import serializer.XMLDataWrapper;
 import serializer.XMLDeserializer;
 import serializer.XMLSerializer;
@@ -27,6 +45,11 @@ import sorter.SortEventByDate;
 import sorter.SortEventByDescription;
 import sorter.SortEventByLocation;
 import sorter.SortEventByName;
+import util.Durations;
+import util.IntHashMap;
+import util.PhoneNumbers;
+import util.StringPool;
+import util.StringPoolMetrics;
 
 /**
  * Główny kontroler aplikacji, pełniący rolę pośrednika między interfejsem
@@ -38,13 +61,35 @@ import sorter.SortEventByName;
  */
 public class Controller
 {
+	private static final int RESIDENT_PAST_MONTHS = 1;
+	private static final Pattern TIME = Pattern.compile("^([01]?[0-9]|2[0-3]):[0-5][0-9]$");
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
 	private List<Category> categories;
 	private List<Event> events;
 	private List<Contact> contacts;
+	private EventDateIndex eventIndex;
+	private IntHashMap<Category> categoriesById;
+	private IntHashMap<Event> eventsById;
+	private IntHashMap<Contact> contactsById;
+	private Map<String, Contact> contactsByPhone;
+	private Set<Object> deletedBeforeInsert;
 	private Database database;
 	private XMLSerializer xmlSerializer;
 	private XMLDeserializer xmlDeserializer;
+	private ICalendarSerializer iCalendarSerializer;
+	private ICalendarDeserializer iCalendarDeserializer;
+	private CSVDeserializer csvDeserializer;
+	private LocalStore localStore;
 	private XMLDataWrapper xmlData;
+	private WatermarkStore watermarkStore;
+	private WriteBehindQueue writeQueue;
+	private OperationJournal journal;
+	private AutosaveService autosave;
+	private StringPool stringPool;
+	private final Object modelLock = new Object();
+	private long watermark;
+	private boolean compactionRequired;
 
 	private SortEventByName byName;
 	private SortEventByDate byDate;
@@ -57,6 +102,8 @@ public class Controller
 
 	private String[] eventsSortBy;
 	private String[] contactSortBy;
+	private Map<String, SortedView<Event>> eventViews;
+	private Map<String, SortedView<Contact>> contactViews;
 
 	private boolean databaseSynchronized;
 
@@ -78,9 +125,34 @@ public class Controller
 		this.categories = new ArrayList<Category>();
 		this.events = new ArrayList<>();
 		this.contacts = new ArrayList<>();
+		this.eventIndex = new EventDateIndex();
+		this.categoriesById = new IntHashMap<>();
+		this.eventsById = new IntHashMap<>();
+		this.contactsById = new IntHashMap<>();
+		this.contactsByPhone = new HashMap<>();
+		this.deletedBeforeInsert = Collections.newSetFromMap(new IdentityHashMap<>());
 		this.database = new Database();
 		this.xmlSerializer = new XMLSerializer();
 		this.xmlDeserializer = new XMLDeserializer();
+		this.iCalendarSerializer = new ICalendarSerializer();
+		this.iCalendarDeserializer = new ICalendarDeserializer();
+		this.csvDeserializer = new CSVDeserializer();
+		this.localStore = new LocalStore();
+		this.watermarkStore = new WatermarkStore();
+		this.writeQueue = new WriteBehindQueue(this.database, this.modelLock);
+		this.journal = new OperationJournal();
+		this.autosave = new AutosaveService(this::prepareDataFiles, this.modelLock);
+		this.writeQueue.setModelChangedHandler(this::recordQueueChange);
+
+		// jedna pula dla wszystkich źródeł, aby te same teksty z pliku i bazy
+		// danych były w pamięci tylko raz
+		this.stringPool = new StringPool();
+		this.database.setStringPool(this.stringPool);
+		this.xmlDeserializer.setStringPool(this.stringPool);
+		this.iCalendarDeserializer.setStringPool(this.stringPool);
+		this.csvDeserializer.setStringPool(this.stringPool);
+		this.localStore.setStringPool(this.stringPool);
+		this.journal.setStringPool(this.stringPool);
 
 		this.byName = new SortEventByName();
 		this.byDate = new SortEventByDate();
@@ -93,40 +165,144 @@ public class Controller
 
 		this.eventsSortBy = new String[] { "Name", "Date", "Location", "Description", "Category" };
 		this.contactSortBy = new String[] { "First name", "Last name", "Phone number" };
+		this.eventViews = new HashMap<>();
+		this.contactViews = new HashMap<>();
 
 		this.databaseSynchronized = false;
 	}
 
 	/**
-	 * Inicjalizuje kontroler, wczytując dane z pliku XML
-	 * {@link #loadDataFromXML()}. Następnie próbuje połączyć się z bazą danych i
+	 * Inicjalizuje kontroler, wczytując dane z lokalnego magazynu danych lub pliku
+	 * XML {@link #loadDataFromXML()}. Następnie próbuje połączyć się z bazą danych i
 	 * zsynchronizować dane z tabel bazy danych do list
 	 * {@code List<Category> categories}, {@code List<Event> events},
-	 * {@code List<Contact> contacts}. Jeśli wystąpią problemy podczas inicjalizacji
-	 * lub synchronizacji z bazą danych. Po udanej synchronizacji, aktualizuje plik
-	 * XML i ustawia zmienną {@code boolean databaseSynchronized = true}.
+	 * {@code List<Contact> contacts}. Jeśli wczytano plik XML, z bazy danych
+	 * pobierane są tylko zmiany od znacznika synchronizacji zapisanego przez
+	 * {@link serializer.WatermarkStore}, w przeciwnym razie wszystkie dane. Po
+	 * udanej synchronizacji, aktualizuje plik XML razem ze znacznikiem synchronizacji
+	 * i ustawia zmienną {@code boolean databaseSynchronized = true}. Przed
+	 * synchronizacją na wczytanych danych odtwarzany jest dziennik operacji
+	 * wykonanych bez połączenia z bazą danych ({@link serializer.OperationJournal}),
+	 * a zapisane w nim usunięcia są wykonywane w bazie danych jednym wsadem.
+	 * Wydarzenia z miesięcy, których nie wczytano od razu, są wczytywane przed
+	 * odtworzeniem dziennika (jeśli zawiera zmiany inne niż usunięcia) i przed
+	 * synchronizacją, gdy baza danych jest dostępna. Kolejne zmiany danych są
+	 * zapisywane do plików lokalnych automatycznie w tle przez
+	 * {@link AutosaveService}.
 	 * 
 	 * @throws SQLException W przypadku nieudanego połączenia z bazą danych, zmienna
 	 *                      {@code databaseSynchronized} pozostaje {@code false}, co
 	 *                      powoduje, że klasa {@link application.Controller} będzie
-	 *                      komunikować się wyłącznie z plikiem XML.
+	 *                      komunikować się wyłącznie z plikiem XML. Wyjątek jest
+	 *                      zgłaszany także wtedy, gdy nie udało się wczytać
+	 *                      wszystkich miesięcy z lokalnego magazynu danych i
+	 *                      synchronizacja została pominięta.
 	 */
 	public void init() throws SQLException
 	{
 		loadDataFromXML();
 
+		JournalReplay replay = replayJournal();
+
+		if (replay.getReplayedRecords() > 0)
+		{
+			rebuildIndexes();
+			requestCompaction();
+		}
+
 		try
 		{
-			this.database.synchronize(this.categories, this.events, this.contacts);
+			if (replay.hasDeletions())
+				this.database.deleteAll(replay.getDeletedCategoryIds(), replay.getDeletedEventIds(), replay.getDeletedContactIds());
+
+			this.database.checkConnection();
+
+			// synchronizacja porównuje z bazą danych pełne listy
+			if (!loadAllMonths(null))
+				throw new SQLException("Failed to load local data, synchronization with the database was skipped.");
+
+			long lastWatermark = this.xmlData != null ? this.watermarkStore.load() : 0;
+
+			this.watermark = this.database.synchronize(this.categories, this.events, this.contacts, lastWatermark);
+			rebuildIndexes();
 			this.databaseSynchronized = true;
+			requestCompaction();
 			saveToXML();
 		}
-		catch (SQLException e)
+		finally
 		{
-			throw e;
+			this.autosave.start();
 		}
 	}
 
+	/**
+	 * Zamyka kolejkę zapisów, czekając na zapisanie oczekujących zmian, wątek
+	 * automatycznego zapisu oraz połączenia z bazą danych utrzymywane przez
+	 * kontroler. Zmiany, których nie udało się zapisać, zostają oznaczone do
+	 * przesłania przy następnej synchronizacji, dlatego po tej metodzie należy
+	 * zapisać dane do pliku XML. Wywoływana przy zamykaniu aplikacji.
+	 */
+	public void close()
+	{
+		this.writeQueue.close();
+		this.autosave.close();
+		this.database.close();
+		this.journal.close();
+		this.localStore.close();
+	}
+
+	/**
+	 * Ustawia obiekt powiadamiany o błędach zapisu zmian w bazie danych, które są
+	 * wykonywane w tle przez {@link WriteBehindQueue}. Obiekt jest wywoływany w
+	 * wątku roboczym kolejki, a nie w wątku interfejsu użytkownika.
+	 *
+	 * @param errorHandler Obiekt powiadamiany o błędach zapisu.
+	 */
+	public void setPersistenceErrorHandler(Consumer<Exception> errorHandler)
+	{
+		this.writeQueue.setErrorHandler(errorHandler);
+	}
+
+	/**
+	 * @return Migawka statystyk kolejki zapisów do bazy danych, m.in. liczby
+	 *         oczekujących zmian i czasu oczekiwania najstarszej z nich.
+	 */
+	public WriteBehindMetrics getWriteMetrics()
+	{
+		return this.writeQueue.getMetrics();
+	}
+
+	/**
+	 * Ustawia obiekt powiadamiany o błędach automatycznego zapisu danych do plików
+	 * lokalnych, wykonywanego w tle przez {@link AutosaveService}. Obiekt jest
+	 * wywoływany w wątku roboczym usługi.
+	 *
+	 * @param errorHandler Obiekt powiadamiany o błędach zapisu.
+	 */
+	public void setAutosaveErrorHandler(Consumer<Exception> errorHandler)
+	{
+		this.autosave.setErrorHandler(errorHandler);
+	}
+
+	/**
+	 * @return Migawka statystyk automatycznego zapisu, m.in. czasu trwania zapisów
+	 *         i liczby zapisanych bajtów.
+	 */
+	public AutosaveMetrics getAutosaveMetrics()
+	{
+		return this.autosave.getMetrics();
+	}
+
+	/**
+	 * @return Migawka statystyk puli tekstów, przez którą przechodzą teksty
+	 *         wczytywane z plików lokalnych i bazy danych, m.in. szacowanej
+	 *         liczby bajtów zaoszczędzonych przez usunięcie duplikatów.
+	 */
+	public StringPoolMetrics getStringPoolMetrics()
+	{
+		return this.stringPool.getMetrics();
+	}
+
 	/**
 	 * @return Niemodyfikowalna lista kategorii.
 	 */
@@ -137,23 +313,21 @@ public class Controller
 
 	/**
 	 * @param categoryId Identyfikator kategorii.
-	 * @return Kategoria o określonym identyfikatorze lub null, jeśli nie istnieje.
+	 * @return Kategoria o określonym identyfikatorze lub null, jeśli nie istnieje
+	 *         (lub nie otrzymała jeszcze identyfikatora z bazy danych).
 	 */
 	public Category getCategoryById(int categoryId)
 	{
-		for (Category category : this.categories)
+		synchronized (this.modelLock)
 		{
-			if (categoryId == category.getId())
-			{
-				return category;
-			}
+			return this.categoriesById.get(categoryId);
 		}
-
-		return null;
 	}
 
 	/**
-	 * @return Niemodyfikowalna lista wydarzeń.
+	 * @return Niemodyfikowalna lista wczytanych wydarzeń: wydarzeń od poprzedniego
+	 *         miesiąca oraz z miesięcy wczytanych na żądanie przez
+	 *         {@link #getEventsByDate(LocalDate)}.
 	 */
 	public List<Event> getEvents()
 	{
@@ -161,22 +335,46 @@ public class Controller
 	}
 
 	/**
+	 * Zwraca wydarzenia z podanego dnia z indeksu dat {@link EventDateIndex},
+	 * bez przeglądania wszystkich wydarzeń. Jeśli wydarzenia z miesiąca tego dnia
+	 * nie zostały jeszcze wczytane z lokalnego magazynu danych, wczytuje je, a
+	 * najdawniej przeglądane miesiące powyżej limitu zwalnia.
+	 *
 	 * @param targetDate Data, dla której należy pobrać wydarzenia.
-	 * @return Niemodyfikowalna lista wydarzeń dla określonej daty.
+	 * @return Niemodyfikowalna lista wydarzeń dla określonej daty w kolejności
+	 *         godzin.
 	 */
 	public List<Event> getEventsByDate(LocalDate targetDate)
 	{
-		List<Event> matchingEvents = new ArrayList<>();
+		synchronized (this.modelLock)
+		{
+			ensureMonthLoaded(YearMonth.from(targetDate), true);
 
-		for (Event event : this.events)
+			return Collections.unmodifiableList(this.eventIndex.get(targetDate));
+		}
+	}
+
+	/**
+	 * Zwraca wydarzenia z podanego zakresu dni z indeksu dat
+	 * {@link EventDateIndex}, np. do wyświetlenia całego miesiąca. Niewczytane
+	 * miesiące zakresu są wczytywane z lokalnego magazynu danych i nie są przy
+	 * tym zwalniane.
+	 *
+	 * @param from Pierwszy dzień zakresu.
+	 * @param to   Ostatni dzień zakresu (włącznie).
+	 * @return Niemodyfikowalna lista wydarzeń z podanego zakresu w kolejności dat.
+	 */
+	public List<Event> getEventsBetween(LocalDate from, LocalDate to)
+	{
+		synchronized (this.modelLock)
 		{
-			if (event.getDate().toLocalDate().isEqual(targetDate))
+			for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1))
 			{
-				matchingEvents.add(event);
+				ensureMonthLoaded(month, false);
 			}
-		}
 
-		return Collections.unmodifiableList(matchingEvents);
+			return Collections.unmodifiableList(this.eventIndex.getBetween(from, to));
+		}
 	}
 
 	/**
@@ -185,15 +383,10 @@ public class Controller
 	 */
 	public Event getEventById(int eventId)
 	{
-		for (Event event : this.events)
+		synchronized (this.modelLock)
 		{
-			if (eventId == event.getId())
-			{
-				return event;
-			}
+			return this.eventsById.get(eventId);
 		}
-
-		return null;
 	}
 
 	/**
@@ -210,242 +403,1036 @@ public class Controller
 	 */
 	public Contact getContactById(int contactId)
 	{
-		for (Contact contact : this.contacts)
+		synchronized (this.modelLock)
 		{
-			if (contactId == contact.getId())
-			{
-				return contact;
-			}
+			return this.contactsById.get(contactId);
 		}
-
-		return null;
 	}
 
 	/**
-	 * Sortuje listę wydarzeń alfabetycznie według nazwy.
+	 * Sortuje listę kategorii według domyślnego kryterium sortowania.
 	 */
-	public void sortEventByName()
+	public void sortCategoryByDefault()
 	{
-		Collections.sort(this.events, byName);
+		Collections.sort(this.categories);
 	}
 
 	/**
-	 * Sortuje listę wydarzeń według daty.
+	 * @return Tablica {@code String} z dostępnymi kategoriami sortowania wydarzeń.
 	 */
-	public void sortEventByDate()
+	public String[] getEventsSortBy()
 	{
-		Collections.sort(this.events, byDate);
+		return this.eventsSortBy;
 	}
 
 	/**
-	 * Sortuje listę wydarzeń alfabetycznie według lokalizacji.
+	 * @return Tablica {@code String} z dostępnymi kategoriami sortowania kontaktów.
 	 */
-	public void sortEventByLocation()
+	public String[] getContactSortBy()
 	{
-		Collections.sort(this.events, byLocation);
+		return this.contactSortBy;
 	}
 
 	/**
-	 * Sortuje listę wydarzeń alfabetycznie według kategorii.
+	 * Przekazuje wydarzenia posortowane według określonego kryterium
+	 * sortowania jako niemodyfikowalny widok. Posortowany widok dla danego
+	 * kryterium jest budowany przy pierwszym użyciu, a później aktualizowany
+	 * przy każdej zmianie listy wydarzeń, więc odświeżenie listy w interfejsie
+	 * nie wymaga ponownego sortowania ani kopiowania wydarzeń. Widok jest
+	 * zmieniany także przez wątki w tle, dlatego jest przekazywany do
+	 * {@code reader} pod blokadą modelu i nie może być używany po jego
+	 * powrocie.
+	 * 
+	 * @param sortBy Kryterium sortowania, dostępne opcje: "Name", "Date",
+	 *               "Location", "Description", "Category" lub dowolne inne, co
+	 *               spowoduje domyślne sortowanie według daty.
+	 * @param reader Odczytuje posortowane wydarzenia, np.
+	 *               {@code listView.getItems()::setAll}.
 	 */
-	public void sortEventByCategory()
+	public void readEventsSortedBy(String sortBy, Consumer<? super Collection<Event>> reader)
 	{
-		Collections.sort(this.events, byCategory);
+		synchronized (this.modelLock)
+		{
+			String criterion;
+			Comparator<Event> order;
+
+			switch (sortBy)
+			{
+				case "Name":
+				{
+					criterion = sortBy;
+					order = this.byName;
+					break;
+				}
+				case "Location":
+				{
+					criterion = sortBy;
+					order = this.byLocation;
+					break;
+				}
+				case "Description":
+				{
+					criterion = sortBy;
+					order = this.byDescription;
+					break;
+				}
+				case "Category":
+				{
+					criterion = sortBy;
+					order = this.byCategory;
+					break;
+				}
+				default:
+				{
+					criterion = "Date";
+					order = this.byDate;
+				}
+			}
+
+			SortedView<Event> view = this.eventViews.computeIfAbsent(criterion, key -> new SortedView<>(order, this.events));
+			reader.accept(Collections.unmodifiableCollection(view));
+		}
 	}
 
 	/**
-	 * Sortuje listę wydarzeń alfabetycznie według opisu.
+	 * Przekazuje kontakty posortowane według określonego kryterium sortowania
+	 * jako niemodyfikowalny widok. Posortowane widoki kontaktów są utrzymywane i
+	 * przekazywane tak jak widoki wydarzeń
+	 * ({@link #readEventsSortedBy(String, Consumer)}).
+	 * 
+	 * @param sortBy Kryterium sortowania, dostępne opcje: "First name", "Last
+	 *               name", "Phone number" lub dowolne inne, co spowoduje
+	 *               domyślne sortowanie według imienia.
+	 * @param reader Odczytuje posortowane kontakty.
 	 */
-	public void sortEventByDescription()
+	public void readContactsSortedBy(String sortBy, Consumer<? super Collection<Contact>> reader)
 	{
-		Collections.sort(this.events, byDescription);
+		synchronized (this.modelLock)
+		{
+			String criterion;
+			Comparator<Contact> order;
+
+			switch (sortBy)
+			{
+				case "Last name":
+				{
+					criterion = sortBy;
+					order = this.byLastName;
+					break;
+				}
+				case "Phone number":
+				{
+					criterion = sortBy;
+					order = this.byPhoneNumber;
+					break;
+				}
+				default:
+				{
+					criterion = "First name";
+					order = this.byFirstName;
+				}
+			}
+
+			SortedView<Contact> view = this.contactViews.computeIfAbsent(criterion, key -> new SortedView<>(order, this.contacts));
+			reader.accept(Collections.unmodifiableCollection(view));
+		}
 	}
 
 	/**
-	 * Sortuje listę wydarzeń według domyślnego kryterium sortowania.
+	 * Dodaje wydarzenia do wszystkich utworzonych posortowanych widoków.
+	 *
+	 * @param events Wydarzenia.
 	 */
-	public void sortEventByDefault()
+	private void addToEventViews(Collection<Event> events)
 	{
-		Collections.sort(this.events);
+		for (SortedView<Event> view : this.eventViews.values())
+		{
+			view.addAll(events);
+		}
 	}
 
 	/**
-	 * Sortuje listę kontaktów alfabetycznie według imienia.
+	 * Usuwa wydarzenia ze wszystkich utworzonych posortowanych widoków. Musi być
+	 * wywołana przed zmianą pól, według których wydarzenia są sortowane.
+	 *
+	 * @param events Wydarzenia.
 	 */
-	public void sortContactByFirstName()
+	private void removeFromEventViews(Collection<Event> events)
 	{
-		Collections.sort(this.contacts, byFirstName);
+		for (SortedView<Event> view : this.eventViews.values())
+		{
+			view.removeAll(events);
+		}
 	}
 
 	/**
-	 * Sortuje listę kontaktów alfabetycznie według nazwiska.
+	 * Dodaje kontakty do wszystkich utworzonych posortowanych widoków.
+	 *
+	 * @param contacts Kontakty.
 	 */
-	public void sortContactByLastName()
+	private void addToContactViews(Collection<Contact> contacts)
 	{
-		Collections.sort(this.contacts, byLastName);
+		for (SortedView<Contact> view : this.contactViews.values())
+		{
+			view.addAll(contacts);
+		}
 	}
 
 	/**
-	 * Sortuje listę kontaktów według numeru telefonu.
+	 * Usuwa kontakty ze wszystkich utworzonych posortowanych widoków. Musi być
+	 * wywołana przed zmianą pól, według których kontakty są sortowane.
+	 *
+	 * @param contacts Kontakty.
 	 */
-	public void sortContactByPhoneNumber()
+	private void removeFromContactViews(Collection<Contact> contacts)
 	{
-		Collections.sort(this.contacts, byPhoneNumber);
+		for (SortedView<Contact> view : this.contactViews.values())
+		{
+			view.removeAll(contacts);
+		}
 	}
 
 	/**
-	 * Sortuje listę kontaktów według domyślnego kryterium sortowania.
+	 * Zapisuje aktualny stan list kategorii, wydarzeń i kontaktów do pliku XML i
+	 * kompaktuje lokalny magazyn danych, jeśli zawiera zmiany, których nie ma
+	 * jeszcze w pliku XML; w przeciwnym razie nic nie zapisuje. Zapis jest
+	 * wykonywany w bieżącym wątku przez {@link AutosaveService#saveNow()}.
+	 * 
+	 * @see #prepareDataFiles()
 	 */
-	public void sortContactByDefault()
+	public void saveToXML()
 	{
-		Collections.sort(this.contacts);
+		try
+		{
+			synchronized (this.modelLock)
+			{
+				if (this.localStore.hasTail())
+					requestCompaction();
+			}
+
+			this.autosave.saveNow();
+		}
+		catch (IOException e)
+		{
+			System.err.println(e.getMessage());
+		}
 	}
 
 	/**
-	 * Sortuje listę kategorii według domyślnego kryterium sortowania.
+	 * Przygotowuje zapis zmian danych do plików lokalnych. Wywoływana pod
+	 * blokadą modelu przez {@link AutosaveService}, zapamiętuje tylko to, co
+	 * trzeba zapisać: jeśli wymagane jest kompaktowanie (po wczytaniu pliku XML,
+	 * synchronizacji z bazą danych, przy zamykaniu aplikacji lub po przekroczeniu
+	 * progu rozmiaru magazynu), rozpoczyna je w lokalnym magazynie danych
+	 * {@link serializer.LocalStore}, który zaczyna nowy segment i kopiuje listy
+	 * kategorii, wydarzeń i kontaktów. Zapamiętuje też znacznik synchronizacji i
+	 * długość dziennika operacji. Pliki są zapisywane po zwolnieniu blokady
+	 * przez {@link #writeDataFiles}.
+	 *
+	 * @return             Zapis plików danych.
+	 * @throws IOException Jeśli nie udało się rozpocząć kompaktowania.
 	 */
-	public void sortCategoryByDefault()
+	private AutosaveService.Write prepareDataFiles() throws IOException
 	{
-		Collections.sort(this.categories);
+		LocalStore.Compaction compaction = null;
+
+		if (this.compactionRequired || this.localStore.shouldCompact())
+		{
+			// wydarzenie przeniesione do niewczytanego miesiąca wymaga wczytania
+			// całego miesiąca, z indeksami i widokami, przed zapisem jego partycji
+			for (YearMonth month : this.localStore.unloadedMonthsOf(this.events))
+			{
+				ensureMonthLoaded(month, false);
+			}
+
+			compaction = this.localStore.beginCompaction(this.categories, this.events, this.contacts);
+			this.compactionRequired = false;
+		}
+
+		LocalStore.Compaction startedCompaction = compaction;
+		boolean synchronizedWithDatabase = this.databaseSynchronized;
+		long watermark = this.watermark;
+		long journalSize = this.journal.size();
+
+		return () -> writeDataFiles(startedCompaction, synchronizedWithDatabase, watermark, journalSize);
 	}
 
 	/**
-	 * @return Tablica {@code String} z dostępnymi kategoriami sortowania wydarzeń.
+	 * Zapisuje zmiany danych do plików lokalnych bez blokady modelu. Zwykle
+	 * synchronizuje z dyskiem tylko wpisy dopisane do lokalnego magazynu danych,
+	 * więc koszt zapisu zależy od liczby zmian, a nie od liczby danych. Jeśli
+	 * rozpoczęto kompaktowanie, zapisuje migawkę magazynu oraz pełny stan
+	 * danych z kopii, łącznie z wydarzeniami z niewczytanych miesięcy, do pliku
+	 * XML przez {@link serializer.XMLSerializer}. Jeśli dane były
+	 * zsynchronizowane z bazą danych, zapisuje znacznik synchronizacji i usuwa
+	 * z dziennika operacji wpisy, których zmiany zostały już przesłane do bazy
+	 * danych. W przeciwnym razie dziennik jest kompaktowany do usunięć, które
+	 * trzeba jeszcze wykonać w bazie danych. Wpisy dopisane do dziennika po
+	 * przygotowaniu zapisu pozostają w nim bez zmian.
+	 *
+	 * @param  compaction               Rozpoczęte kompaktowanie lub null.
+	 * @param  synchronizedWithDatabase True jeśli dane były zsynchronizowane z
+	 *                                  bazą danych.
+	 * @param  watermark                Znacznik synchronizacji.
+	 * @param  journalSize              Długość dziennika operacji w bajtach.
+	 * @return                          Liczba bajtów zapisanych w plikach
+	 *                                  danych.
+	 * @throws IOException              Jeśli nie udało się zapisać plików danych
+	 *                                  lub dziennika.
 	 */
-	public String[] getEventsSortBy()
+	private long writeDataFiles(LocalStore.Compaction compaction, boolean synchronizedWithDatabase, long watermark, long journalSize)
+			throws IOException
 	{
-		return this.eventsSortBy;
+		long bytesWritten;
+
+		if (compaction != null)
+		{
+			try
+			{
+				XMLDataWrapper data = compaction.getData();
+				bytesWritten = this.localStore.compact(compaction);
+
+				List<Event> exportedEvents = data.getEvents();
+				List<Event> unloadedEvents = this.localStore.readUnloadedMonths(compaction);
+
+				if (!unloadedEvents.isEmpty())
+				{
+					exportedEvents = new ArrayList<>(exportedEvents);
+					exportedEvents.addAll(unloadedEvents);
+				}
+
+				bytesWritten += this.xmlSerializer.encode(data.getCategories(), exportedEvents, data.getContacts());
+			}
+			catch (IOException | RuntimeException e)
+			{
+				synchronized (this.modelLock)
+				{
+					this.compactionRequired = true;
+				}
+
+				throw e;
+			}
+		}
+		else
+		{
+			bytesWritten = this.localStore.flush();
+		}
+
+		if (synchronizedWithDatabase)
+		{
+			this.watermarkStore.save(watermark);
+			this.journal.clear(journalSize);
+		}
+		else
+		{
+			this.journal.compact(journalSize);
+		}
+
+		return bytesWritten;
 	}
 
 	/**
-	 * @return Tablica {@code String} z dostępnymi kategoriami sortowania kontaktów.
+	 * Pobiera dane z domyślnego pliku XML do obiektu
+	 * {@link serializer.XMLDataWrapper}. Wykorzystuje
+	 * {@link serializer.XMLDeserializer} do dokonania deserializacji.
+	 * 
+	 * @return Obiekt {@link serializer.XMLDataWrapper} zawierający listy kategorii,
+	 *         wydarzeń i kontaktów.
 	 */
-	public String[] getContactSortBy()
+	public XMLDataWrapper loadFromXML()
 	{
-		return this.contactSortBy;
+		return this.xmlDeserializer.decode();
 	}
 
 	/**
-	 * Sortuje listę wydarzeń według określonego kryterium sortowania.
+	 * Pobiera dane z określonego pliku XML do obiektu
+	 * {@link serializer.XMLDataWrapper}. Wykorzystuje
+	 * {@link serializer.XMLDeserializer} do dokonania deserializacji.
 	 * 
-	 * @param sortBy Kryterium sortowania, dostępne opcje: "Name", "Date",
-	 *               "Location", "Category" lub dowolne inne, co spowoduje domyślne
-	 *               sortowanie.
+	 * @param filePath Ścieżka do pliku XML.
+	 * @return Obiekt {@link serializer.XMLDataWrapper} zawierający listy kategorii,
+	 *         wydarzeń i kontaktów.
+	 */
+	public XMLDataWrapper loadFromXML(String filePath)
+	{
+		return this.xmlDeserializer.decode(filePath);
+	}
+
+	/**
+	 * Importuje wydarzenia z pliku iCalendar (.ics), np. wyeksportowanego z innej
+	 * aplikacji kalendarza. Plik jest odczytywany przez
+	 * {@link serializer.ICalendarDeserializer} poza blokadą modelu, a odczytane
+	 * dane są dodawane jednym wsadem przez {@link #importData(XMLDataWrapper)}.
+	 *
+	 * @param  filePath  Ścieżka do pliku .ics.
+	 * @return           Liczba dodanych wydarzeń.
+	 * @throws Exception Jeśli nie udało się odczytać pliku lub zapisać danych.
+	 */
+	public int importFromICalendar(String filePath) throws Exception
+	{
+		XMLDataWrapper data = this.iCalendarDeserializer.decode(filePath);
+
+		if (this.iCalendarDeserializer.getSkippedEvents() > 0)
+			System.err.println("Skipped " + this.iCalendarDeserializer.getSkippedEvents() + " events without a valid start date in " + filePath);
+
+		return importData(data);
+	}
+
+	/**
+	 * Importuje kontakty lub wydarzenia z pliku CSV (format opisany w
+	 * {@link serializer.CSVDeserializer}). Plik jest odczytywany i sprawdzany
+	 * poza blokadą modelu, a duplikaty numerów telefonów i zajęte terminy
+	 * wydarzeń są wykrywane w zbiorach haszujących utworzonych z istniejących
+	 * danych. Poprawne wiersze są dodawane jednym wsadem przez
+	 * {@link #importData(XMLDataWrapper)}. Odrzucone wiersze są zapisywane do
+	 * raportu {@code <plik>.rejected.csv} obok importowanego pliku.
+	 *
+	 * @param  filePath  Ścieżka do pliku .csv.
+	 * @return           Liczba zaimportowanych wierszy.
+	 * @throws Exception Jeśli nie udało się odczytać pliku lub zapisać danych.
+	 */
+	public int importFromCSV(String filePath) throws Exception
+	{
+		Set<String> phoneNumbers;
+		Set<LocalDateTime> occupiedDates = new HashSet<>();
+
+		synchronized (this.modelLock)
+		{
+			if (!loadAllMonths(null))
+				throw new IOException("Could not load stored events before import");
+
+			phoneNumbers = new HashSet<>(this.contactsByPhone.keySet());
+
+			for (Event event : this.events)
+			{
+				occupiedDates.add(event.getDate());
+			}
+		}
+
+		XMLDataWrapper data = this.csvDeserializer.decode(filePath, phoneNumbers, occupiedDates);
+		int rejectedRows = this.csvDeserializer.getRejectedRows().size();
+
+		if (rejectedRows > 0)
+		{
+			String reportPath = filePath + ".rejected.csv";
+			this.csvDeserializer.writeRejectedRows(reportPath);
+			System.err.println("Rejected " + rejectedRows + " rows of " + filePath + ", see " + reportPath);
+		}
+
+		importData(data);
+
+		return data.getEvents().size() + data.getContacts().size();
+	}
+
+	/**
+	 * Dodaje zaimportowane dane do list kontrolera jednym wsadem. Kategorie o
+	 * nazwie istniejącej kategorii i kontakty o numerze telefonu istniejącego
+	 * kontaktu są zastępowane istniejącymi obiektami, a wydarzenia o tej samej
+	 * dacie i nazwie co istniejące (np. przy ponownym imporcie tego samego pliku)
+	 * są pomijane. W przeciwieństwie do {@link #addNewEvent} nie jest sprawdzane,
+	 * czy termin wydarzenia jest wolny.
+	 * <p>
+	 * Nowe obiekty są dopisywane do lokalnego magazynu danych i dziennika
+	 * operacji (synchronizowanego z dyskiem raz dla całego importu). Jeśli dane
+	 * są zsynchronizowane z bazą danych, obiekty są zamiast tego dodawane do
+	 * bazy danych w jednej transakcji przez
+	 * {@link postgresql.Database#insertAll(List, List, List)}, a jeśli to się
+	 * nie powiedzie, przekazywane do kolejki zapisów, która ponawia zapis w tle.
+	 * Następnie planowany jest zapis pełnego stanu danych do pliku XML.
+	 *
+	 * @param  data      Zaimportowane kategorie, wydarzenia i kontakty, które nie
+	 *                   są jeszcze powiązane z danymi kontrolera.
+	 * @return           Liczba dodanych wydarzeń.
+	 * @throws Exception Jeśli nie udało się wczytać istniejących wydarzeń lub
+	 *                   zapisać danych.
 	 */
-	public void sortEvents(String sortBy)
+	public int importData(XMLDataWrapper data) throws Exception
 	{
-		switch (sortBy)
+		synchronized (this.modelLock)
 		{
-			case "Name":
+			// duplikaty mogą być w dowolnym miesiącu
+			if (!loadAllMonths(null))
+				throw new IOException("Could not load stored events before import");
+
+			Map<String, Category> categoriesByName = new HashMap<>();
+			Map<String, Contact> importedByPhone = new HashMap<>();
+			Set<String> eventKeys = new HashSet<>();
+
+			for (Category category : this.categories)
+			{
+				categoriesByName.putIfAbsent(category.getName(), category);
+			}
+
+			for (Event event : this.events)
+			{
+				eventKeys.add(event.getDate() + " " + event.getName());
+			}
+
+			Map<Object, Object> existing = new IdentityHashMap<>();
+			List<Category> newCategories = new ArrayList<>();
+			List<Contact> newContacts = new ArrayList<>();
+			List<Event> newEvents = new ArrayList<>();
+			Set<Event> skippedEvents = Collections.newSetFromMap(new IdentityHashMap<>());
+			Set<Contact> linkedContacts = Collections.newSetFromMap(new IdentityHashMap<>());
+
+			for (Category category : data.getCategories())
+			{
+				Category match = categoriesByName.putIfAbsent(category.getName(), category);
+
+				if (match != null)
+					existing.put(category, match);
+				else
+					newCategories.add(category);
+			}
+
+			for (Contact contact : data.getContacts())
+			{
+				Contact match = this.contactsByPhone.get(contact.getNormalizedPhoneNumber());
+
+				if (match == null)
+					match = importedByPhone.putIfAbsent(contact.getNormalizedPhoneNumber(), contact);
+
+				if (match != null)
+					existing.put(contact, match);
+				else
+					newContacts.add(contact);
+			}
+
+			for (Event event : data.getEvents())
+			{
+				if (!eventKeys.add(event.getDate() + " " + event.getName()))
+				{
+					skippedEvents.add(event);
+					continue;
+				}
+
+				if (event.getCategory() != null && existing.containsKey(event.getCategory()))
+					event.setCategory((Category) existing.get(event.getCategory()));
+
+				List<Contact> eventContacts = event.getContacts();
+
+				for (int i = 0; i < eventContacts.size(); i++)
+				{
+					Contact match = (Contact) existing.get(eventContacts.get(i));
+
+					if (match != null)
+					{
+						eventContacts.set(i, match);
+						match.getEvents().add(event);
+						linkedContacts.add(match);
+					}
+				}
+
+				newEvents.add(event);
+			}
+
+			if (!skippedEvents.isEmpty())
 			{
-				this.sortEventByName();
-				break;
+				for (Contact contact : newContacts)
+				{
+					contact.getEvents().removeIf(skippedEvents::contains);
+				}
 			}
-			case "Date":
+
+			boolean inserted = false;
+
+			if (this.databaseSynchronized)
 			{
-				this.sortEventByDate();
-				break;
+				List<Contact> insertedContacts = new ArrayList<>(newContacts);
+				insertedContacts.addAll(linkedContacts);
+
+				try
+				{
+					this.database.insertAll(newCategories, newEvents, insertedContacts);
+					inserted = true;
+				}
+				catch (SQLException e)
+				{
+					System.err.println(e.getMessage());
+				}
 			}
-			case "Location":
+
+			this.journal.setForceOnAppend(false);
+
+			try
 			{
-				this.sortEventByLocation();
-				break;
+				for (Category category : newCategories)
+				{
+					this.localStore.recordInsert(category);
+
+					if (!inserted)
+						recordImport(category);
+				}
+
+				for (Contact contact : newContacts)
+				{
+					this.localStore.recordInsert(contact);
+
+					if (!inserted)
+						recordImport(contact);
+				}
+
+				for (Event event : newEvents)
+				{
+					this.localStore.recordInsert(event);
+
+					if (!inserted)
+						recordImport(event);
+				}
+
+				if (!this.databaseSynchronized)
+					this.journal.force();
 			}
-			case "Category":
+			finally
 			{
-				this.sortEventByCategory();
-				break;
+				this.journal.setForceOnAppend(true);
 			}
-			default:
-				this.sortEventByDefault();
+
+			this.categories.addAll(newCategories);
+			this.contacts.addAll(newContacts);
+			this.events.addAll(newEvents);
+			this.eventIndex.addAll(newEvents);
+			addToContactViews(newContacts);
+			addToEventViews(newEvents);
+			newCategories.forEach(this::indexEntity);
+			newContacts.forEach(this::indexEntity);
+			newContacts.forEach(contact -> this.contactsByPhone.put(contact.getNormalizedPhoneNumber(), contact));
+			newEvents.forEach(this::indexEntity);
+
+			requestCompaction();
+
+			return newEvents.size();
 		}
 	}
 
 	/**
-	 * Sortuje listę kontaktów według określonego kryterium sortowania.
-	 * 
-	 * @param sortBy Kryterium sortowania, dostępne opcje: "First name", "Last
-	 *               name", "Phone number" lub dowolne inne, co spowoduje domyślne
-	 *               sortowanie.
+	 * Eksportuje wszystkie wydarzenia, łącznie z wydarzeniami z niewczytanych
+	 * miesięcy, wraz z ich kategoriami i kontaktami do pliku iCalendar (.ics)
+	 * przez {@link serializer.ICalendarSerializer}.
+	 *
+	 * @param  filePath    Ścieżka do pliku .ics.
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli nie udało się zapisać pliku.
 	 */
-	public void sortContacts(String sortBy)
+	public long exportToICalendar(String filePath) throws IOException
 	{
-		switch (sortBy)
+		synchronized (this.modelLock)
 		{
-			case "First name":
+			List<Event> exportedEvents = this.events;
+
+			if (this.localStore.hasUnloadedMonths())
 			{
-				this.sortContactByFirstName();
-				break;
+				exportedEvents = new ArrayList<>(this.events);
+				exportedEvents.addAll(this.localStore.readUnloadedMonths(this.categories, this.contacts));
 			}
-			case "Last name":
+
+			return this.iCalendarSerializer.encode(filePath, exportedEvents);
+		}
+	}
+
+	/**
+	 * Zapisuje zaimportowany obiekt w dzienniku operacji lub przekazuje go do
+	 * kolejki zapisów. Wywoływana pod blokadą modelu.
+	 *
+	 * @param  entity      Nowa kategoria, wydarzenie lub kontakt.
+	 * @throws IOException Jeśli nie udało się zapisać wpisu dziennika.
+	 */
+	private void recordImport(Object entity) throws IOException
+	{
+		if (!this.databaseSynchronized)
+			this.journal.recordInsert(entity);
+		else
+			this.writeQueue.insert(entity);
+	}
+
+	/**
+	 * Odtwarza na wczytanych danych dziennik operacji wykonanych bez połączenia z
+	 * bazą danych, np. po awarii aplikacji przed zapisem pliku XML.
+	 *
+	 * @return Wynik odtworzenia dziennika (pusty, jeśli dziennika nie udało się
+	 *         odczytać).
+	 */
+	private JournalReplay replayJournal()
+	{
+		try
+		{
+			// dodania i aktualizacje mogą dotyczyć wydarzeń z dowolnego miesiąca
+			if (!this.journal.hasOnlyDeletions() && !loadAllMonths(null))
+				return new JournalReplay();
+
+			return this.journal.replay(this.categories, this.events, this.contacts);
+		}
+		catch (IOException e)
+		{
+			System.err.println(e.getMessage());
+			return new JournalReplay();
+		}
+	}
+
+	/**
+	 * Wczytuje dane z pliku XML i aktualizuje listy kategorii, wydarzeń i kontaktów
+	 * w tym kontrolerze na podstawie odczytanych informacji. Po wczytaniu pobranych
+	 * danych przez listy w kontrolerze będą one połączone z listami z
+	 * {@link serializer.XMLDataWrapper} poprzez referencję. Jeśli istnieje lokalny
+	 * magazyn danych {@link serializer.LocalStore}, dane są wczytywane z niego
+	 * (migawka i dopisane po niej zmiany), przy czym wydarzenia sprzed
+	 * poprzedniego miesiąca są wczytywane dopiero na żądanie. W przeciwnym razie
+	 * wykorzystuje {@link #loadFromXML()} do deserializacji danych i planuje
+	 * utworzenie magazynu.
+	 * 
+	 * @see #loadFromXML()
+	 */
+	private void loadDataFromXML()
+	{
+		try
+		{
+			this.xmlData = this.localStore.load(this::loadFromXML, YearMonth.now().minusMonths(RESIDENT_PAST_MONTHS));
+		}
+		catch (IOException e)
+		{
+			System.err.println(e.getMessage());
+			this.xmlData = null;
+		}
+
+		if (this.xmlData == null)
+		{
+			this.xmlData = this.loadFromXML();
+
+			if (this.xmlData != null)
+				requestCompaction();
+		}
+
+		if (this.xmlData != null)
+		{
+			this.categories = this.xmlData.getCategories();
+			this.events = this.xmlData.getEvents();
+			this.contacts = this.xmlData.getContacts();
+			rebuildIndexes();
+		}
+	}
+
+	/**
+	 * Planuje zapis pełnego stanu danych do pliku XML i kompaktowanie lokalnego
+	 * magazynu danych przy najbliższym zapisie. Wywoływana pod blokadą modelu.
+	 */
+	private void requestCompaction()
+	{
+		this.compactionRequired = true;
+		this.autosave.markDirty();
+	}
+
+	/**
+	 * Dopisuje do lokalnego magazynu danych identyfikator lub wersję nadane
+	 * obiektowi przez kolejkę zapisów albo oznaczenie obiektu jako zmienionego po
+	 * porzuceniu zapisu. Obiekt usunięty, zanim kolejka nadała mu
+	 * identyfikator, ma już w lokalnym magazynie zapis usunięcia, więc jest
+	 * pomijany i nie trafia do indeksu identyfikatorów. Wywoływana pod blokadą
+	 * modelu przez {@link WriteBehindQueue}.
+	 *
+	 * @param entity Zmieniona kategoria, wydarzenie lub kontakt.
+	 */
+	private void recordQueueChange(Object entity)
+	{
+		if (this.deletedBeforeInsert.remove(entity))
+			return;
+
+		indexEntity(entity);
+
+		try
+		{
+			this.localStore.recordUpdate(entity);
+		}
+		catch (IOException e)
+		{
+			System.err.println(e.getMessage());
+			this.compactionRequired = true;
+		}
+
+		this.autosave.markDirty();
+	}
+
+	/**
+	 * Odbudowuje indeks dat wydarzeń, indeksy identyfikatorów kategorii,
+	 * wydarzeń i kontaktów oraz indeks numerów telefonów, a także usuwa
+	 * posortowane widoki, np. po wczytaniu lub synchronizacji danych. Wywoływana
+	 * pod blokadą modelu.
+	 */
+	private void rebuildIndexes()
+	{
+		this.eventIndex.rebuild(this.events);
+
+		this.categoriesById = new IntHashMap<>(this.categories.size());
+		this.eventsById = new IntHashMap<>(this.events.size());
+		this.contactsById = new IntHashMap<>(this.contacts.size());
+		this.contactsByPhone = new HashMap<>(this.contacts.size() * 2);
+
+		this.categories.forEach(this::indexEntity);
+		this.events.forEach(this::indexEntity);
+		this.contacts.forEach(this::indexEntity);
+		this.contacts.forEach(contact -> this.contactsByPhone.putIfAbsent(contact.getNormalizedPhoneNumber(), contact));
+
+		// widoki są budowane od nowa przy pierwszym użyciu
+		this.eventViews.clear();
+		this.contactViews.clear();
+	}
+
+	/**
+	 * Usuwa kontakt z indeksu numerów telefonów, jeśli podany numer wskazuje na
+	 * ten kontakt. Wywoływana pod blokadą modelu.
+	 *
+	 * @param contact               Kontakt.
+	 * @param normalizedPhoneNumber Znormalizowany numer, pod którym kontakt został
+	 *                              dodany do indeksu.
+	 */
+	private void unindexPhoneNumber(Contact contact, String normalizedPhoneNumber)
+	{
+		if (this.contactsByPhone.get(normalizedPhoneNumber) == contact)
+			this.contactsByPhone.remove(normalizedPhoneNumber);
+	}
+
+	/**
+	 * Dodaje obiekt do indeksu identyfikatorów, jeśli ma identyfikator z bazy
+	 * danych. Wywoływana pod blokadą modelu.
+	 *
+	 * @param entity Kategoria, wydarzenie lub kontakt.
+	 */
+	private void indexEntity(Object entity)
+	{
+		if (entity instanceof Category)
+		{
+			Category category = (Category) entity;
+
+			if (category.getId() != 0)
+				this.categoriesById.put(category.getId(), category);
+		}
+		else if (entity instanceof Event)
+		{
+			Event event = (Event) entity;
+
+			if (event.getId() != 0)
+				this.eventsById.put(event.getId(), event);
+		}
+		else if (entity instanceof Contact)
+		{
+			Contact contact = (Contact) entity;
+
+			if (contact.getId() != 0)
+				this.contactsById.put(contact.getId(), contact);
+		}
+	}
+
+	/**
+	 * Usuwa obiekt z indeksu identyfikatorów. Obiekt bez identyfikatora, który
+	 * czeka w kolejce zapisów, jest zapamiętywany, aby nie trafił do indeksu po
+	 * nadaniu mu identyfikatora; jeśli kolejka połączy jego usunięcie z
+	 * dodaniem, jest zapominany w {@link #queueDelete(Object)}. Wywoływana pod
+	 * blokadą modelu.
+	 *
+	 * @param entity Kategoria, wydarzenie lub kontakt.
+	 */
+	private void unindexEntity(Object entity)
+	{
+		IntHashMap<?> index;
+		int id;
+
+		if (entity instanceof Category)
+		{
+			index = this.categoriesById;
+			id = ((Category) entity).getId();
+		}
+		else if (entity instanceof Event)
+		{
+			index = this.eventsById;
+			id = ((Event) entity).getId();
+		}
+		else
+		{
+			index = this.contactsById;
+			id = ((Contact) entity).getId();
+		}
+
+		if (id == 0)
+		{
+			if (this.databaseSynchronized && this.writeQueue.isPending(entity))
+				this.deletedBeforeInsert.add(entity);
+
+			return;
+		}
+
+		if (index.get(id) == entity)
+			index.remove(id);
+	}
+
+	/**
+	 * Dodaje usunięcie obiektu do kolejki zapisów. Jeśli kolejka połączyła je z
+	 * niezapisanym jeszcze dodaniem, obiekt nigdy nie otrzyma identyfikatora,
+	 * więc nie musi być dłużej zapamiętany jako usunięty przed dodaniem.
+	 * Wywoływana pod blokadą modelu po {@link #unindexEntity(Object)}.
+	 *
+	 * @param entity Kategoria, wydarzenie lub kontakt.
+	 */
+	private void queueDelete(Object entity)
+	{
+		if (!this.writeQueue.delete(entity))
+			this.deletedBeforeInsert.remove(entity);
+	}
+
+	/**
+	 * Wczytuje z lokalnego magazynu danych wydarzenia z podanego miesiąca, jeśli
+	 * nie zostały jeszcze wczytane.
+	 *
+	 * @param month Miesiąc.
+	 * @param evict True jeśli po wczytaniu należy zwolnić najdawniej używane
+	 *              miesiące powyżej limitu. Zwalnianie jest wyłączone po
+	 *              synchronizacji z bazą danych, ponieważ kolejka zapisów
+	 *              odwołuje się do obiektów modelu.
+	 */
+	private void ensureMonthLoaded(YearMonth month, boolean evict)
+	{
+		synchronized (this.modelLock)
+		{
+			try
 			{
-				this.sortContactByLastName();
-				break;
+				List<Event> monthEvents = this.localStore.loadMonth(month, this.categories, this.contacts);
+				this.events.addAll(monthEvents);
+				this.eventIndex.addAll(monthEvents);
+				addToEventViews(monthEvents);
+				monthEvents.forEach(this::indexEntity);
+
+				if (evict && !this.databaseSynchronized)
+					evictMonths();
 			}
-			case "Phone number":
+			catch (IOException e)
 			{
-				this.sortContactByPhoneNumber();
-				break;
+				System.err.println(e.getMessage());
 			}
-			default:
-				this.sortContactByDefault();
 		}
 	}
 
 	/**
-	 * Zapisuje aktualny stan list kategorii, wydarzeń i kontaktów do pliku XML.
-	 * Wykorzystuje {@link serializer.XMLSerializer} do dokonania serializacji.
+	 * Wczytuje miesiące podanych wydarzeń, tak aby zmiana wydarzenia lub jego
+	 * powiązań dotyczyła wczytanego obiektu. Wydarzenie z niewczytanego miesiąca
+	 * (np. z listy wydarzeń kontaktu) staje się przy tym ponownie wczytanym
+	 * wydarzeniem.
+	 *
+	 * @param events Wydarzenia.
 	 */
-	public void saveToXML()
+	private void ensureMonthsLoaded(List<Event> events)
 	{
-		this.xmlSerializer.encode(this.categories, this.events, this.contacts);
+		for (Event event : new ArrayList<>(events))
+		{
+			if (event.getDate() != null)
+				ensureMonthLoaded(YearMonth.from(event.getDate()), false);
+		}
+	}
+
+	/**
+	 * @param  date     Data rozpoczęcia.
+	 * @param  duration Czas trwania lub null.
+	 * @return          Data zakończenia.
+	 */
+	private static LocalDateTime endDateOf(LocalDateTime date, Duration duration)
+	{
+		return duration != null ? date.plus(duration) : date;
+	}
+
+	/**
+	 * Wczytuje miesiące, w których mogą zaczynać się wydarzenia nakładające się
+	 * na podany przedział czasu: miesiące samego przedziału oraz wcześniejsze
+	 * miesiące, których wydarzenia według manifestu lokalnego magazynu trwają
+	 * jeszcze na początku przedziału (wydarzenia wielodniowe).
+	 *
+	 * @param from Początek przedziału.
+	 * @param to   Koniec przedziału.
+	 */
+	private void ensureMonthsLoaded(LocalDateTime from, LocalDateTime to)
+	{
+		YearMonth first = YearMonth.from(from);
+		YearMonth last = YearMonth.from(to);
+
+		for (YearMonth month : this.localStore.unloadedMonthsEndingAfter(from, first))
+		{
+			ensureMonthLoaded(month, false);
+		}
+
+		for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1))
+		{
+			ensureMonthLoaded(month, false);
+		}
 	}
 
 	/**
-	 * Pobiera dane z domyślnego pliku XML do obiektu
-	 * {@link serializer.XMLDataWrapper}. Wykorzystuje
-	 * {@link serializer.XMLDeserializer} do dokonania deserializacji.
-	 * 
-	 * @return Obiekt {@link serializer.XMLDataWrapper} zawierający listy kategorii,
-	 *         wydarzeń i kontaktów.
+	 * Wczytuje wydarzenia ze wszystkich niewczytanych miesięcy wcześniejszych niż
+	 * podany. Tak wczytane miesiące nie są później zwalniane.
+	 *
+	 * @param  before Pierwszy miesiąc, którego nie trzeba wczytywać, lub null,
+	 *                aby wczytać wszystkie miesiące.
+	 * @return        True jeśli wszystkie miesiące udało się wczytać.
 	 */
-	public XMLDataWrapper loadFromXML()
+	private boolean loadAllMonths(YearMonth before)
 	{
-		return this.xmlDeserializer.decode();
+		synchronized (this.modelLock)
+		{
+			try
+			{
+				List<Event> loadedEvents = this.localStore.loadAllMonths(before, this.categories, this.contacts);
+				this.events.addAll(loadedEvents);
+				this.eventIndex.addAll(loadedEvents);
+				addToEventViews(loadedEvents);
+				loadedEvents.forEach(this::indexEntity);
+				return true;
+			}
+			catch (IOException e)
+			{
+				System.err.println(e.getMessage());
+				return false;
+			}
+		}
 	}
 
 	/**
-	 * Pobiera dane z określonego pliku XML do obiektu
-	 * {@link serializer.XMLDataWrapper}. Wykorzystuje
-	 * {@link serializer.XMLDeserializer} do dokonania deserializacji.
-	 * 
-	 * @param filePath Ścieżka do pliku XML.
-	 * @return Obiekt {@link serializer.XMLDataWrapper} zawierający listy kategorii,
-	 *         wydarzeń i kontaktów.
+	 * Zwalnia najdawniej używane miesiące wczytane na żądanie powyżej limitu
+	 * lokalnego magazynu danych, usuwając ich wydarzenia z listy wydarzeń.
+	 * Wywoływana pod blokadą modelu.
+	 *
+	 * @throws IOException Jeśli nie udało się zapisać zmienionego miesiąca.
 	 */
-	public XMLDataWrapper loadFromXML(String filePath)
+	private void evictMonths() throws IOException
 	{
-		return this.xmlDeserializer.decode(filePath);
+		for (YearMonth month : this.localStore.monthsToEvict())
+		{
+			List<Event> monthEvents = this.eventIndex.getBetween(month.atDay(1), month.atEndOfMonth());
+
+			this.localStore.evictMonth(month, monthEvents);
+			this.events.removeAll(new HashSet<>(monthEvents));
+			this.eventIndex.removeAll(monthEvents);
+			removeFromEventViews(monthEvents);
+			monthEvents.forEach(this::unindexEntity);
+		}
 	}
 
 	/**
-	 * Wczytuje dane z pliku XML i aktualizuje listy kategorii, wydarzeń i kontaktów
-	 * w tym kontrolerze na podstawie odczytanych informacji. Po wczytaniu pobranych
-	 * danych przez listy w kontrolerze będą one połączone z listami z
-	 * {@link serializer.XMLDataWrapper} poprzez referencję. Wykorzystuje
-	 * {@link #loadFromXML()} do deserializacji danych.
-	 * 
-	 * @see #loadFromXML()
+	 * Dopisuje do lokalnego magazynu danych aktualizacje wydarzeń, których
+	 * powiązania z kontaktem zmieniły się. Magazyn odtwarza powiązania z wpisów
+	 * wydarzeń, ponieważ lista wydarzeń kontaktu obejmuje tylko wczytane
+	 * miesiące. Wywoływana pod blokadą modelu.
+	 *
+	 * @param  previousEvents Wydarzenia powiązane z kontaktem przed zmianą.
+	 * @param  currentEvents  Wydarzenia powiązane z kontaktem po zmianie.
+	 * @throws IOException    Jeśli nie udało się zapisać wpisu.
 	 */
-	private void loadDataFromXML()
+	private void recordLinkedEvents(List<Event> previousEvents, List<Event> currentEvents) throws IOException
 	{
-		this.xmlData = this.loadFromXML();
+		for (Event event : previousEvents)
+		{
+			if (!currentEvents.contains(event))
+				this.localStore.recordUpdate(event);
+		}
 
-		if (this.xmlData != null)
+		for (Event event : currentEvents)
 		{
-			this.categories = this.xmlData.getCategories();
-			this.events = this.xmlData.getEvents();
-			this.contacts = this.xmlData.getContacts();
+			if (!previousEvents.contains(event))
+				this.localStore.recordUpdate(event);
 		}
 	}
 
@@ -521,38 +1508,67 @@ public class Controller
 	 */
 	public boolean isDateTimeOccupied(LocalDateTime scheduledDate)
 	{
-		for (Event event : this.events)
-		{
-			if (event.getDate().equals(scheduledDate))
-			{
-				return true;
-			}
-		}
+		return isDateTimeOccupied(null, scheduledDate, null);
+	}
 
-		return false;
+	/**
+	 * Sprawdza, czy na termin o podanym czasie trwania nakłada się już
+	 * zaplanowane wydarzenie.
+	 * 
+	 * @param scheduledDate Data i czas rozpoczęcia, który ma zostać sprawdzony.
+	 * @param duration      Czas trwania lub null.
+	 * @return {@code true}, jeśli na termin nakłada się już zaplanowane
+	 *         wydarzenie, w przeciwnym razie {@code false}.
+	 */
+	public boolean isDateTimeOccupied(LocalDateTime scheduledDate, Duration duration)
+	{
+		return isDateTimeOccupied(null, scheduledDate, duration);
 	}
 
 	/**
-	 * Sprawdza, czy w danym terminie w liście {@code List<Event> events} jest już
-	 * zaplanowane wydarzenie, pomijając wydarzenie o określonym identyfikatorze.
+	 * Sprawdza, czy na termin o podanym czasie trwania nakłada się już
+	 * zaplanowane wydarzenie, pomijając podane wydarzenie. Terminy są
+	 * porównywane jako przedziały czasu w drzewie przedziałów indeksu wydarzeń
+	 * ({@link application.EventIntervalTree}), więc np. wydarzenie od 10:00 do
+	 * 11:00 zajmuje także termin 10:30. Wydarzenie bez czasu trwania zajmuje
+	 * jedną minutę.
 	 * 
-	 * @param eventId       Identyfikator wydarzenia, który ma zostać pominięty.
-	 * @param inputDateTime Data i czas, który ma zostać sprawdzony.
-	 * @return {@code true}, jeśli w danym terminie istnieje już zaplanowane
-	 *         wydarzenie (pomijając wydarzenie o podanym identyfikatorze), w
-	 *         przeciwnym razie {@code false}.
+	 * @param event         Wydarzenie, które ma zostać pominięte (np.
+	 *                      edytowane), lub null.
+	 * @param inputDateTime Data i czas rozpoczęcia, który ma zostać sprawdzony.
+	 * @param duration      Czas trwania lub null.
+	 * @return {@code true}, jeśli na termin nakłada się już zaplanowane
+	 *         wydarzenie (pomijając podane wydarzenie), w przeciwnym razie
+	 *         {@code false}.
 	 */
-	public boolean isDateTimeOccupied(int eventId, LocalDateTime inputDateTime)
+	public boolean isDateTimeOccupied(Event event, LocalDateTime inputDateTime, Duration duration)
 	{
-		for (Event event : this.events)
+		synchronized (this.modelLock)
 		{
-			if (event.getDate().equals(inputDateTime) && event.getId() != eventId)
-			{
-				return true;
-			}
+			LocalDateTime endDate = endDateOf(inputDateTime, duration);
+			ensureMonthsLoaded(inputDateTime, endDate);
+
+			return this.eventIndex.isOverlapping(inputDateTime, endDate, event);
 		}
+	}
 
-		return false;
+	/**
+	 * Zwraca wydarzenia nakładające się na termin o podanym czasie trwania.
+	 * 
+	 * @param from     Data i czas rozpoczęcia.
+	 * @param duration Czas trwania lub null.
+	 * @return Niemodyfikowalna lista wydarzeń nakładających się na termin w
+	 *         kolejności dat.
+	 */
+	public List<Event> getOverlappingEvents(LocalDateTime from, Duration duration)
+	{
+		synchronized (this.modelLock)
+		{
+			LocalDateTime endDate = endDateOf(from, duration);
+			ensureMonthsLoaded(from, endDate);
+
+			return Collections.unmodifiableList(this.eventIndex.getOverlapping(from, endDate));
+		}
 	}
 
 	/**
@@ -567,15 +1583,27 @@ public class Controller
 	 */
 	public boolean isTimeValid(String time)
 	{
-		String timeRegex = "^([01]?[0-9]|2[0-3]):[0-5][0-9]$";
-		Pattern pattern = Pattern.compile(timeRegex);
-		Matcher matcher = pattern.matcher(time);
-		return matcher.matches();
+		return TIME.matcher(time).matches();
+	}
+
+	/**
+	 * Sprawdza, czy podany ciąg znaków reprezentuje poprawny czas trwania w
+	 * formacie "G:mm". Liczba godzin nie jest ograniczona do doby, a minuta
+	 * zawsze jest reprezentowana przez dwie cyfry (00-59).
+	 * 
+	 * @param duration Ciąg znaków do sprawdzenia.
+	 * @return {@code true}, jeśli ciąg znaków jest poprawnym czasem trwania, w
+	 *         przeciwnym razie {@code false}.
+	 */
+	public boolean isDurationValid(String duration)
+	{
+		return Durations.isValid(duration);
 	}
 
 	/**
 	 * Sprawdza, czy istnieje kontakt o podanym numerze telefonu w liście
-	 * {@code List<Contact> contacts}.
+	 * {@code List<Contact> contacts}. Numery są porównywane w postaci
+	 * znormalizowanej przez indeks numerów telefonów, bez przeglądania listy.
 	 * 
 	 * @param phoneNumber Numer telefonu do sprawdzenia.
 	 * @return {@code true}, jeśli istnieje kontakt o podanym numerze telefonu, w
@@ -583,19 +1611,10 @@ public class Controller
 	 */
 	public boolean isPhoneNumberExists(String phoneNumber)
 	{
-		String cleanedPhoneNumber = phoneNumber.replaceAll("\s", "");
-
-		for (Contact contact : this.contacts)
+		synchronized (this.modelLock)
 		{
-			String storedPhoneNumber = contact.getPhoneNumber().replaceAll("\s", "");
-
-			if (storedPhoneNumber.equals(cleanedPhoneNumber))
-			{
-				return true;
-			}
+			return this.contactsByPhone.containsKey(PhoneNumbers.normalize(phoneNumber));
 		}
-
-		return false;
 	}
 
 	/**
@@ -612,19 +1631,11 @@ public class Controller
 	 */
 	public boolean isPhoneNumberExists(int contactId, String inputPhoneNumber)
 	{
-		String cleanedPhoneNumber = inputPhoneNumber.replaceAll("\s", "");
-
-		for (Contact contact : this.contacts)
+		synchronized (this.modelLock)
 		{
-			String storedPhoneNumber = contact.getPhoneNumber().replaceAll("\s", "");
-
-			if (storedPhoneNumber.equals(cleanedPhoneNumber) && contact.getId() != contactId)
-			{
-				return true;
-			}
+			Contact contact = this.contactsByPhone.get(PhoneNumbers.normalize(inputPhoneNumber));
+			return contact != null && contact.getId() != contactId;
 		}
-
-		return false;
 	}
 
 	/**
@@ -638,11 +1649,7 @@ public class Controller
 	 */
 	public boolean isPhoneNumberValid(String phoneNumber)
 	{
-		phoneNumber = phoneNumber.replaceAll("\s", "");
-		String phoneNumberRegex = "\\d{9}$";
-		Pattern pattern = Pattern.compile(phoneNumberRegex);
-		Matcher matcher = pattern.matcher(phoneNumber);
-		return matcher.matches();
+		return PhoneNumbers.isValid(phoneNumber);
 	}
 
 	/**
@@ -668,11 +1675,35 @@ public class Controller
 	 */
 	public LocalTime parseStringToLocalTime(String time)
 	{
-		LocalTime parsedLocalTime = LocalTime.parse(time, DateTimeFormatter.ofPattern("HH:mm"));
+		LocalTime parsedLocalTime = LocalTime.parse(time, TIME_FORMAT);
 
 		return parsedLocalTime;
 	}
 
+	/**
+	 * Parsuje podany ciąg znaków reprezentujący czas trwania w formacie "G:mm"
+	 * na obiekt {@code Duration}.
+	 * 
+	 * @param duration Ciąg znaków reprezentujący czas trwania w formacie "G:mm".
+	 * @return Obiekt {@code Duration} reprezentujący sparsowany czas trwania.
+	 */
+	public Duration parseStringToDuration(String duration)
+	{
+		return Durations.parse(duration);
+	}
+
+	/**
+	 * Formatuje czas trwania do postaci "G:mm", w której można go wprowadzić w
+	 * formularzu.
+	 * 
+	 * @param duration Czas trwania lub null.
+	 * @return Czas trwania w formacie "G:mm" ("00:00" dla null).
+	 */
+	public String formatDuration(Duration duration)
+	{
+		return Durations.format(duration != null ? duration : Duration.ZERO);
+	}
+
 	/**
 	 * Dodaje nową kategorię do listy kontrolera {@code List<Category> categories}.
 	 * Dodana kategoria zostanie również zsynchronizowana z bazą danych, jeśli
@@ -685,24 +1716,24 @@ public class Controller
 	 */
 	public void addNewCategory(String name, String color) throws Exception
 	{
-		Category category = new Category();
-		category.setName(name);
-		category.setColorHex(color);
+		synchronized (this.modelLock)
+		{
+			Category category = new Category();
+			category.setName(name);
+			category.setColorHex(color);
 
-		this.categories.add(category);
+			this.categories.add(category);
 
-		if (!this.databaseSynchronized)
-		{
-			return;
-		}
+			this.localStore.recordInsert(category);
+			this.autosave.markDirty();
 
-		try
-		{
-			this.database.insertCategory(category);
-		}
-		catch (SQLException ex)
-		{
-			throw ex;
+			if (!this.databaseSynchronized)
+			{
+				this.journal.recordInsert(category);
+				return;
+			}
+
+			this.writeQueue.insert(category);
 		}
 	}
 
@@ -714,6 +1745,7 @@ public class Controller
 	 * @param name         Nazwa nowego wydarzenia.
 	 * @param date         Data nowego wydarzenia.
 	 * @param notifyOffset Przesunięcie czasowe powiadomienia przed wydarzeniem.
+	 * @param duration     Czas trwania nowego wydarzenia.
 	 * @param location     Lokalizacja nowego wydarzenia.
 	 * @param category     Kategoria nowego wydarzenia.
 	 * @param description  Opis nowego wydarzenia.
@@ -721,32 +1753,37 @@ public class Controller
 	 * @throws Exception Jeśli wystąpią problemy podczas dodawania wydarzenia lub
 	 *                   synchronizacji z bazą danych.
 	 */
-	public void addNewEvent(String name, LocalDateTime date, LocalTime notifyOffset, String location, Category category, String description,
-			List<Contact> contacts) throws Exception
+	public void addNewEvent(String name, LocalDateTime date, LocalTime notifyOffset, Duration duration, String location, Category category,
+			String description, List<Contact> contacts) throws Exception
 	{
-		Event event = new Event();
-		event.setName(name);
-		event.setDate(date);
-		event.setNotifyOffset(notifyOffset);
-		event.setLocation(location);
-		event.setCategory(category);
-		event.setDescription(description);
-		event.setContacts(contacts);
-
-		this.events.add(event);
-
-		if (!this.databaseSynchronized)
+		synchronized (this.modelLock)
 		{
-			return;
-		}
+			ensureMonthLoaded(YearMonth.from(date), false);
+
+			Event event = new Event();
+			event.setName(name);
+			event.setDate(date);
+			event.setNotifyOffset(notifyOffset);
+			event.setDuration(duration);
+			event.setLocation(location);
+			event.setCategory(category);
+			event.setDescription(description);
+			event.setContacts(contacts);
+
+			this.events.add(event);
+			this.eventIndex.add(event);
+			addToEventViews(List.of(event));
+
+			this.localStore.recordInsert(event);
+			this.autosave.markDirty();
+
+			if (!this.databaseSynchronized)
+			{
+				this.journal.recordInsert(event);
+				return;
+			}
 
-		try
-		{
-			this.database.insertEvent(event);
-		}
-		catch (SQLException ex)
-		{
-			throw ex;
+			this.writeQueue.insert(event);
 		}
 	}
 
@@ -764,29 +1801,31 @@ public class Controller
 	 */
 	public void addNewContact(String firstName, String lastName, String phoneNumber, List<Event> events) throws Exception
 	{
-		phoneNumber = phoneNumber.replaceAll("\s", "");
-		String formattedPhoneNumber = String.format("%s %s %s", phoneNumber.substring(0, 3), phoneNumber.substring(3, 6), phoneNumber.substring(6));
+		synchronized (this.modelLock)
+		{
+			ensureMonthsLoaded(events);
 
-		Contact contact = new Contact();
-		contact.setFirstName(firstName);
-		contact.setLastName(lastName);
-		contact.setPhoneNumber(formattedPhoneNumber);
-		contact.setEvents(events);
+			Contact contact = new Contact();
+			contact.setFirstName(firstName);
+			contact.setLastName(lastName);
+			contact.setPhoneNumber(PhoneNumbers.format(phoneNumber));
+			contact.setEvents(events);
 
-		this.contacts.add(contact);
+			this.contacts.add(contact);
+			this.contactsByPhone.put(contact.getNormalizedPhoneNumber(), contact);
+			addToContactViews(List.of(contact));
 
-		if (!this.databaseSynchronized)
-		{
-			return;
-		}
+			this.localStore.recordInsert(contact);
+			recordLinkedEvents(Collections.emptyList(), contact.getEvents());
+			this.autosave.markDirty();
 
-		try
-		{
-			this.database.insertContact(contact);
-		}
-		catch (SQLException ex)
-		{
-			throw ex;
+			if (!this.databaseSynchronized)
+			{
+				this.journal.recordInsert(contact);
+				return;
+			}
+
+			this.writeQueue.insert(contact);
 		}
 	}
 
@@ -798,26 +1837,33 @@ public class Controller
 	 * @param category Kategoria do zaktualizowania.
 	 * @param name     Nowa nazwa kategorii.
 	 * @param colorHex Nowy kolor kategorii w formacie heksadecymalnym.
-	 * @throws Exception Jeśli wystąpią problemy podczas aktualizacji kategorii lub
-	 *                   synchronizacji z bazą danych.
+	 * @throws Exception Jeśli wystąpią problemy podczas aktualizacji kategorii. Błędy
+	 *                   zapisu w bazie danych, w tym
+	 *                   {@link postgresql.OptimisticLockException}, są zgłaszane
+	 *                   w tle do {@link #setPersistenceErrorHandler(Consumer)}.
 	 */
 	public void updateCategory(Category category, String name, String colorHex) throws Exception
 	{
-		category.setName(name);
-		category.setColorHex(colorHex);
-
-		if (!this.databaseSynchronized)
+		synchronized (this.modelLock)
 		{
-			return;
-		}
+			category.setName(name);
+			category.setColorHex(colorHex);
 
-		try
-		{
-			this.database.updateCategory(category);
-		}
-		catch (SQLException ex)
-		{
-			throw ex;
+			// zmiana nazwy zmienia kolejność wszystkich wydarzeń tej kategorii,
+			// więc widok jest budowany od nowa przy następnym użyciu
+			this.eventViews.remove("Category");
+
+			this.localStore.recordUpdate(category);
+			this.autosave.markDirty();
+
+			if (!this.databaseSynchronized)
+			{
+				category.setModified(true);
+				this.journal.recordUpdate(category);
+				return;
+			}
+
+			this.writeQueue.update(category);
 		}
 	}
 
@@ -831,36 +1877,53 @@ public class Controller
 	 * @param date          Nowa data wydarzenia.
 	 * @param notifyOffset  Nowe przesunięcie czasowe powiadomienia przed
 	 *                      wydarzeniem.
+	 * @param duration      Nowy czas trwania wydarzenia.
 	 * @param location      Nowa lokalizacja wydarzenia.
 	 * @param category      Nowa kategoria wydarzenia.
 	 * @param description   Nowy opis wydarzenia.
 	 * @param eventContacts Nowa lista kontaktów powiązanych z wydarzeniem.
-	 * @throws Exception Jeśli wystąpią problemy podczas aktualizacji wydarzenia lub
-	 *                   synchronizacji z bazą danych.
+	 * @throws Exception Jeśli wystąpią problemy podczas aktualizacji wydarzenia. Błędy
+	 *                   zapisu w bazie danych, w tym
+	 *                   {@link postgresql.OptimisticLockException}, są zgłaszane
+	 *                   w tle do {@link #setPersistenceErrorHandler(Consumer)}.
 	 */
-	public void updateEvent(Event event, String name, LocalDateTime date, LocalTime notifyOffset, String location, Category category,
-			String description, List<Contact> eventContacts) throws Exception
+	public void updateEvent(Event event, String name, LocalDateTime date, LocalTime notifyOffset, Duration duration, String location,
+			Category category, String description, List<Contact> eventContacts) throws Exception
 	{
-		event.setName(name);
-		event.setDate(date);
-		event.setNotifyOffset(notifyOffset);
-		event.setLocation(location);
-		event.setCategory(category);
-		event.setDescription(description);
-		updateEventContacts(event, eventContacts);
-
-		if (!this.databaseSynchronized)
+		synchronized (this.modelLock)
 		{
-			return;
-		}
+			ensureMonthsLoaded(List.of(event));
+			ensureMonthLoaded(YearMonth.from(date), false);
 
-		try
-		{
-			this.database.updateEvent(event);
-		}
-		catch (SQLException ex)
-		{
-			throw ex;
+			LocalDateTime previousDate = event.getDate();
+			Duration previousDuration = event.getDuration();
+			removeFromEventViews(List.of(event));
+
+			event.setName(name);
+			event.setDate(date);
+			event.setNotifyOffset(notifyOffset);
+			event.setDuration(duration);
+			event.setLocation(location);
+			event.setCategory(category);
+			event.setDescription(description);
+			updateEventContacts(event, eventContacts);
+
+			if (!date.equals(previousDate) || !Objects.equals(duration, previousDuration))
+				this.eventIndex.move(event, previousDate);
+
+			addToEventViews(List.of(event));
+
+			this.localStore.recordUpdate(event);
+			this.autosave.markDirty();
+
+			if (!this.databaseSynchronized)
+			{
+				event.setModified(true);
+				this.journal.recordUpdate(event);
+				return;
+			}
+
+			this.writeQueue.update(event);
 		}
 	}
 
@@ -903,31 +1966,43 @@ public class Controller
 	 * @param lastName      Nowe nazwisko kontaktu.
 	 * @param phoneNumber   Nowy numer telefonu kontaktu.
 	 * @param contactEvents Nowa lista wydarzeń powiązanych z kontaktem.
-	 * @throws Exception Jeśli wystąpią problemy podczas aktualizacji kontaktu lub
-	 *                   synchronizacji z bazą danych.
+	 * @throws Exception Jeśli wystąpią problemy podczas aktualizacji kontaktu. Błędy
+	 *                   zapisu w bazie danych, w tym
+	 *                   {@link postgresql.OptimisticLockException}, są zgłaszane
+	 *                   w tle do {@link #setPersistenceErrorHandler(Consumer)}.
 	 */
 	public void updateContact(Contact contact, String firstName, String lastName, String phoneNumber, List<Event> contactEvents) throws Exception
 	{
-		contact.setFirstName(firstName);
-		contact.setLastName(lastName);
-		contact.setPhoneNumber(phoneNumber);
-		updateContactEvents(contact, contactEvents);
+		synchronized (this.modelLock)
+		{
+			ensureMonthsLoaded(contact.getEvents());
+			ensureMonthsLoaded(contactEvents);
 
-		contact.setPhoneNumber(String.format("%s %s %s", contact.getPhoneNumber().substring(0, 3), contact.getPhoneNumber().substring(3, 6),
-				contact.getPhoneNumber().substring(6)));
+			List<Event> previousEvents = new ArrayList<>(contact.getEvents());
+			String previousPhoneNumber = contact.getNormalizedPhoneNumber();
+			removeFromContactViews(List.of(contact));
 
-		if (!this.databaseSynchronized)
-		{
-			return;
-		}
+			contact.setFirstName(firstName);
+			contact.setLastName(lastName);
+			contact.setPhoneNumber(PhoneNumbers.format(phoneNumber));
+			updateContactEvents(contact, contactEvents);
 
-		try
-		{
-			this.database.updateContact(contact);
-		}
-		catch (SQLException ex)
-		{
-			throw ex;
+			unindexPhoneNumber(contact, previousPhoneNumber);
+			this.contactsByPhone.put(contact.getNormalizedPhoneNumber(), contact);
+			addToContactViews(List.of(contact));
+
+			this.localStore.recordUpdate(contact);
+			recordLinkedEvents(previousEvents, contact.getEvents());
+			this.autosave.markDirty();
+
+			if (!this.databaseSynchronized)
+			{
+				contact.setModified(true);
+				this.journal.recordUpdate(contact);
+				return;
+			}
+
+			this.writeQueue.update(contact);
 		}
 	}
 
@@ -971,28 +2046,30 @@ public class Controller
 	 */
 	public void deleteCategory(Category category) throws Exception
 	{
-		for (Event e : events)
+		synchronized (this.modelLock)
 		{
-			if (e.getCategory() != null && e.getCategory().equals(category))
+			for (Event e : events)
 			{
-				e.setCategory(null);
+				if (e.getCategory() != null && e.getCategory().equals(category))
+				{
+					e.setCategory(null);
+				}
 			}
-		}
 
-		this.categories.remove(category);
+			this.categories.remove(category);
+			unindexEntity(category);
+			this.eventViews.remove("Category");
 
-		if (!this.databaseSynchronized)
-		{
-			return;
-		}
+			this.localStore.recordDelete(category);
+			this.autosave.markDirty();
 
-		try
-		{
-			this.database.deleteCategory(category);
-		}
-		catch (SQLException ex)
-		{
-			throw ex;
+			if (!this.databaseSynchronized)
+			{
+				this.journal.recordDelete(category);
+				return;
+			}
+
+			queueDelete(category);
 		}
 	}
 
@@ -1008,25 +2085,30 @@ public class Controller
 	 */
 	public void deleteEvent(Event event) throws Exception
 	{
-		for (Contact c : contacts)
+		synchronized (this.modelLock)
 		{
-			c.removeEvent(event);
-		}
+			ensureMonthsLoaded(List.of(event));
 
-		this.events.remove(event);
+			for (Contact c : contacts)
+			{
+				c.removeEvent(event);
+			}
 
-		if (!this.databaseSynchronized)
-		{
-			return;
-		}
+			this.events.remove(event);
+			this.eventIndex.remove(event);
+			removeFromEventViews(List.of(event));
+			unindexEntity(event);
 
-		try
-		{
-			this.database.deleteEvent(event);
-		}
-		catch (SQLException ex)
-		{
-			throw ex;
+			this.localStore.recordDelete(event);
+			this.autosave.markDirty();
+
+			if (!this.databaseSynchronized)
+			{
+				this.journal.recordDelete(event);
+				return;
+			}
+
+			queueDelete(event);
 		}
 	}
 
@@ -1039,41 +2121,58 @@ public class Controller
 	 * 
 	 * @param targetDate Data, przed którą należy usunąć wydarzenia.
 	 * @throws Exception Jeśli wystąpią problemy podczas usuwania wydarzeń lub
-	 *                   synchronizacji z bazą danych.
+	 *                   synchronizacji z bazą danych. Jeśli nie udało się
+	 *                   wczytać wydarzeń z niewczytanych miesięcy lokalnego
+	 *                   magazynu danych, zgłaszany jest {@link IOException},
+	 *                   a żadne wydarzenie nie zostaje usunięte.
 	 */
 	public void deleteOldEvents(LocalDate targetDate) throws Exception
 	{
-		LocalDateTime targetDateTime = targetDate.atStartOfDay();
+		synchronized (this.modelLock)
+		{
+			LocalDateTime targetDateTime = targetDate.atStartOfDay();
 
-		List<Event> eventsToRemove = new ArrayList<Event>();
+			if (!loadAllMonths(YearMonth.from(targetDate).plusMonths(1)))
+				throw new IOException("Failed to load local data, old events were not deleted.");
 
-		for (Event event : this.events)
-		{
-			if (event.getDate().isBefore(targetDateTime))
-			{
-				eventsToRemove.add(event);
+			List<Event> eventsToRemove = new ArrayList<Event>();
 
-				for (Contact contact : this.contacts)
+			for (Event event : this.events)
+			{
+				if (event.getDate().isBefore(targetDateTime))
 				{
-					contact.removeEvent(event);
+					eventsToRemove.add(event);
+
+					for (Contact contact : this.contacts)
+					{
+						contact.removeEvent(event);
+					}
 				}
 			}
-		}
 
-		this.events.removeAll(eventsToRemove);
+			this.events.removeAll(eventsToRemove);
+			this.eventIndex.removeBefore(targetDate);
+			removeFromEventViews(eventsToRemove);
+			eventsToRemove.forEach(this::unindexEntity);
 
-		if (!this.databaseSynchronized)
-		{
-			return;
-		}
+			for (Event event : eventsToRemove)
+			{
+				this.localStore.recordDelete(event);
+			}
 
-		try
-		{
-			this.database.deleteOldEvents(targetDateTime);
-		}
-		catch (SQLException ex)
-		{
-			throw ex;
+			this.autosave.markDirty();
+
+			if (!this.databaseSynchronized)
+			{
+				for (Event event : eventsToRemove)
+				{
+					this.journal.recordDelete(event);
+				}
+
+				return;
+			}
+
+			this.writeQueue.deleteOldEvents(targetDateTime);
 		}
 	}
 
@@ -1089,25 +2188,30 @@ public class Controller
 	 */
 	public void deleteContact(Contact contact) throws Exception
 	{
-		for (Event e : events)
+		synchronized (this.modelLock)
 		{
-			e.removeContact(contact);
-		}
+			ensureMonthsLoaded(contact.getEvents());
 
-		this.contacts.remove(contact);
+			for (Event e : events)
+			{
+				e.removeContact(contact);
+			}
 
-		if (!this.databaseSynchronized)
-		{
-			return;
-		}
+			this.contacts.remove(contact);
+			unindexEntity(contact);
+			removeFromContactViews(List.of(contact));
+			unindexPhoneNumber(contact, contact.getNormalizedPhoneNumber());
 
-		try
-		{
-			this.database.deleteContact(contact);
-		}
-		catch (SQLException ex)
-		{
-			throw ex;
+			this.localStore.recordDelete(contact);
+			this.autosave.markDirty();
+
+			if (!this.databaseSynchronized)
+			{
+				this.journal.recordDelete(contact);
+				return;
+			}
+
+			queueDelete(contact);
 		}
 	}
 }
@@ -0,0 +1,252 @@
+package application;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import model.Event;
+
+/**
+ * Indeks wydarzeń według dnia. Wydarzenia są przechowywane w kubełkach
+ * poszczególnych dni w mapie uporządkowanej {@link TreeMap}, a w obrębie dnia
+ * w kolejności godzin, dzięki czemu pobranie wydarzeń z dnia kosztuje
+ * O(log d + k), a z zakresu dni O(log d + liczba dni z wydarzeniami + k), gdzie
+ * d to liczba dni z wydarzeniami, a k liczba zwróconych wydarzeń. Te same
+ * wydarzenia są przechowywane w drzewie przedziałów
+ * {@link application.EventIntervalTree}, które wyszukuje wydarzenia
+ * nakładające się na podany przedział czasu. Indeks nie obserwuje wydarzeń,
+ * więc po zmianie daty lub czasu trwania wydarzenia należy wywołać
+ * {@link #move(Event, LocalDateTime)}. Klasa nie jest bezpieczna wątkowo;
+ * {@link application.Controller} używa jej pod blokadą modelu.
+ */
+public class EventDateIndex
+{
+	private final TreeMap<LocalDate, List<Event>> days = new TreeMap<>();
+	private final EventIntervalTree intervals = new EventIntervalTree();
+	private int size;
+
+	/**
+	 * @return Liczba wydarzeń w indeksie.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Dodaje wydarzenie do kubełka jego dnia. Wydarzenia bez daty są pomijane.
+	 *
+	 * @param event Wydarzenie.
+	 */
+	public void add(Event event)
+	{
+		if (addToDay(event))
+			intervals.add(event);
+	}
+
+	/**
+	 * Dodaje wydarzenia do indeksu.
+	 *
+	 * @param events Wydarzenia.
+	 */
+	public void addAll(Collection<Event> events)
+	{
+		for (Event event : events)
+		{
+			add(event);
+		}
+	}
+
+	/**
+	 * Usuwa wydarzenie z kubełka jego aktualnego dnia.
+	 *
+	 * @param  event Wydarzenie.
+	 * @return       True jeśli wydarzenie było w indeksie.
+	 */
+	public boolean remove(Event event)
+	{
+		return remove(event, event.getDate());
+	}
+
+	/**
+	 * Usuwa wydarzenia z indeksu.
+	 *
+	 * @param events Wydarzenia.
+	 */
+	public void removeAll(Collection<Event> events)
+	{
+		for (Event event : events)
+		{
+			remove(event);
+		}
+	}
+
+	/**
+	 * Usuwa wszystkie wydarzenia z dni wcześniejszych niż podany.
+	 *
+	 * @param day Pierwszy dzień, którego wydarzenia pozostają w indeksie.
+	 */
+	public void removeBefore(LocalDate day)
+	{
+		Map<LocalDate, List<Event>> removed = days.headMap(day, false);
+
+		for (List<Event> events : removed.values())
+		{
+			size -= events.size();
+		}
+
+		removed.clear();
+		intervals.removeBefore(day.atStartOfDay());
+	}
+
+	/**
+	 * Przenosi wydarzenie, którego data lub czas trwania zostały zmienione, do
+	 * kubełka nowego dnia.
+	 *
+	 * @param event        Wydarzenie z nową datą lub nowym czasem trwania.
+	 * @param previousDate Data wydarzenia przed zmianą.
+	 */
+	public void move(Event event, LocalDateTime previousDate)
+	{
+		if (remove(event, previousDate))
+			add(event);
+	}
+
+	/**
+	 * Zastępuje zawartość indeksu podanymi wydarzeniami, np. po wczytaniu lub
+	 * synchronizacji danych, które mogły zmienić wiele wydarzeń naraz.
+	 *
+	 * @param events Wszystkie wczytane wydarzenia.
+	 */
+	public void rebuild(Collection<Event> events)
+	{
+		days.clear();
+		size = 0;
+
+		for (Event event : events)
+		{
+			addToDay(event);
+		}
+
+		intervals.rebuild(events);
+	}
+
+	/**
+	 * @param  from    Początek przedziału czasu.
+	 * @param  to      Koniec przedziału czasu (bez niego); jeśli nie jest
+	 *                 późniejszy niż początek, przedział obejmuje jedną minutę.
+	 * @param  ignored Wydarzenie, które nie jest brane pod uwagę (np.
+	 *                 edytowane), lub null.
+	 * @return         True jeśli inne wydarzenie nakłada się na przedział.
+	 */
+	public boolean isOverlapping(LocalDateTime from, LocalDateTime to, Event ignored)
+	{
+		return intervals.isOverlapping(from, to, ignored);
+	}
+
+	/**
+	 * @param  from Początek przedziału czasu.
+	 * @param  to   Koniec przedziału czasu (bez niego); jeśli nie jest
+	 *              późniejszy niż początek, przedział obejmuje jedną minutę.
+	 * @return      Nowa lista wydarzeń nakładających się na przedział w
+	 *              kolejności dat.
+	 */
+	public List<Event> getOverlapping(LocalDateTime from, LocalDateTime to)
+	{
+		return intervals.getOverlapping(from, to);
+	}
+
+	/**
+	 * @param  day Dzień.
+	 * @return     Nowa lista wydarzeń z podanego dnia w kolejności godzin.
+	 */
+	public List<Event> get(LocalDate day)
+	{
+		List<Event> events = days.get(day);
+		return events != null ? new ArrayList<>(events) : new ArrayList<>();
+	}
+
+	/**
+	 * @param  from Pierwszy dzień zakresu.
+	 * @param  to   Ostatni dzień zakresu (włącznie).
+	 * @return      Nowa lista wydarzeń z podanego zakresu dni w kolejności dat.
+	 */
+	public List<Event> getBetween(LocalDate from, LocalDate to)
+	{
+		List<Event> events = new ArrayList<>();
+
+		if (from.isAfter(to))
+			return events;
+
+		for (List<Event> day : days.subMap(from, true, to, true).values())
+		{
+			events.addAll(day);
+		}
+
+		return events;
+	}
+
+	/**
+	 * Dodaje wydarzenie do kubełka jego dnia, bez drzewa przedziałów.
+	 *
+	 * @param  event Wydarzenie.
+	 * @return       True jeśli wydarzenie ma datę i zostało dodane.
+	 */
+	private boolean addToDay(Event event)
+	{
+		LocalDateTime date = event.getDate();
+
+		if (date == null)
+			return false;
+
+		List<Event> day = days.computeIfAbsent(date.toLocalDate(), key -> new ArrayList<>(2));
+		int index = day.size();
+
+		// wydarzenia dnia są zwykle dodawane w kolejności godzin
+		while (index > 0 && day.get(index - 1).getDate().isAfter(date))
+		{
+			index--;
+		}
+
+		day.add(index, event);
+		size++;
+		return true;
+	}
+
+	/**
+	 * @param  event Wydarzenie.
+	 * @param  date  Data, pod którą wydarzenie zostało dodane do indeksu.
+	 * @return       True jeśli wydarzenie było w indeksie.
+	 */
+	private boolean remove(Event event, LocalDateTime date)
+	{
+		if (date == null)
+			return false;
+
+		List<Event> day = days.get(date.toLocalDate());
+
+		if (day == null)
+			return false;
+
+		for (int i = 0; i < day.size(); i++)
+		{
+			if (day.get(i) == event)
+			{
+				day.remove(i);
+				intervals.remove(event, date);
+				size--;
+
+				if (day.isEmpty())
+					days.remove(date.toLocalDate());
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,468 @@
+package application;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import model.Event;
+
+/**
+ * Drzewo przedziałów czasu wydarzeń, odpowiadające na pytanie, które
+ * wydarzenia nakładają się na podany przedział, w czasie O(log n + k), gdzie n
+ * to liczba wydarzeń, a k liczba zwróconych wydarzeń.
+ * <p>
+ * Wydarzenie zajmuje przedział od swojej daty do daty zakończenia
+ * ({@link model.Event#getEndDate()}) bez niej, a wydarzenie bez czasu trwania
+ * zajmuje jedną minutę, dlatego dwa wydarzenia bez czasu trwania nakładają
+ * się tylko wtedy, gdy zaczynają się w tej samej minucie, a wydarzenie
+ * zaczynające się w chwili zakończenia innego nie nakłada się na nie.
+ * <p>
+ * Drzewo jest drzewem AVL uporządkowanym według początku przedziału, w którym
+ * wydarzenia o tym samym początku dzielą węzeł, a każdy węzeł przechowuje
+ * największy koniec przedziału w swoim poddrzewie. Poddrzewo, którego
+ * największy koniec nie przekracza początku szukanego przedziału, jest
+ * pomijane w całości. Drzewo nie obserwuje wydarzeń, więc po zmianie daty lub
+ * czasu trwania wydarzenia należy je usunąć według poprzedniej daty
+ * ({@link #remove(Event, LocalDateTime)}) i dodać ponownie. Klasa nie jest
+ * bezpieczna wątkowo; {@link application.EventDateIndex} używa jej pod blokadą
+ * modelu.
+ */
+public class EventIntervalTree
+{
+	// najkrótszy przedział w sekundach, zajmowany przez wydarzenie bez czasu trwania
+	private static final long MINIMUM_LENGTH = 60;
+
+	private static class Node
+	{
+		private final long start;
+		private long end;
+		private long maxEnd;
+		private int height = 1;
+		private Node left;
+		private Node right;
+		private Event[] events;
+		private int count;
+
+		private Node(long start, Event event)
+		{
+			this.start = start;
+			this.events = new Event[] { event };
+			this.count = 1;
+			this.end = endOf(event);
+			this.maxEnd = this.end;
+		}
+	}
+
+	private Node root;
+	private int size;
+
+	/**
+	 * @return Liczba wydarzeń w drzewie.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Dodaje wydarzenie do drzewa. Wydarzenia bez daty są pomijane.
+	 *
+	 * @param event Wydarzenie.
+	 */
+	public void add(Event event)
+	{
+		if (event.getDate() == null)
+			return;
+
+		root = insert(root, startOf(event.getDate()), event);
+		size++;
+	}
+
+	/**
+	 * Usuwa wydarzenie dodane do drzewa pod podaną datą.
+	 *
+	 * @param  event Wydarzenie.
+	 * @param  date  Data, pod którą wydarzenie zostało dodane do drzewa.
+	 * @return       True jeśli wydarzenie było w drzewie.
+	 */
+	public boolean remove(Event event, LocalDateTime date)
+	{
+		if (date == null)
+			return false;
+
+		int previousSize = size;
+		root = delete(root, startOf(date), event);
+		return size < previousSize;
+	}
+
+	/**
+	 * Usuwa wszystkie wydarzenia rozpoczynające się przed podaną datą.
+	 *
+	 * @param date Najwcześniejsza data wydarzeń, które pozostają w drzewie.
+	 */
+	public void removeBefore(LocalDateTime date)
+	{
+		long start = startOf(date);
+
+		while (root != null)
+		{
+			Node first = root;
+
+			while (first.left != null)
+			{
+				first = first.left;
+			}
+
+			if (first.start >= start)
+				break;
+
+			size -= first.count;
+			root = deleteNode(root, first.start);
+		}
+	}
+
+	/**
+	 * Zastępuje zawartość drzewa podanymi wydarzeniami. Drzewo jest budowane z
+	 * posortowanych wydarzeń od razu jako zrównoważone, w czasie O(n log n).
+	 *
+	 * @param events Wszystkie wczytane wydarzenia.
+	 */
+	public void rebuild(Collection<Event> events)
+	{
+		Event[] sorted = events.stream().filter(event -> event.getDate() != null).toArray(Event[]::new);
+		Arrays.sort(sorted, (a, b) -> a.getDate().compareTo(b.getDate()));
+
+		List<Node> nodes = new ArrayList<>(sorted.length);
+
+		for (Event event : sorted)
+		{
+			long start = startOf(event.getDate());
+			Node last = nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
+
+			if (last != null && last.start == start)
+				append(last, event);
+			else
+				nodes.add(new Node(start, event));
+		}
+
+		root = build(nodes, 0, nodes.size() - 1);
+		size = sorted.length;
+	}
+
+	/**
+	 * @param  from Początek przedziału.
+	 * @param  to   Koniec przedziału (bez niego); jeśli nie jest późniejszy niż
+	 *              początek, przedział obejmuje jedną minutę.
+	 * @return      Nowa lista wydarzeń nakładających się na przedział, w
+	 *              kolejności dat.
+	 */
+	public List<Event> getOverlapping(LocalDateTime from, LocalDateTime to)
+	{
+		List<Event> events = new ArrayList<>();
+		long start = startOf(from);
+		collect(root, start, endOf(start, to), events);
+		return events;
+	}
+
+	/**
+	 * @param  from    Początek przedziału.
+	 * @param  to      Koniec przedziału (bez niego); jeśli nie jest późniejszy
+	 *                 niż początek, przedział obejmuje jedną minutę.
+	 * @param  ignored Wydarzenie, które nie jest brane pod uwagę (np.
+	 *                 edytowane), lub null.
+	 * @return         True jeśli inne wydarzenie nakłada się na przedział.
+	 */
+	public boolean isOverlapping(LocalDateTime from, LocalDateTime to, Event ignored)
+	{
+		long start = startOf(from);
+		return find(root, start, endOf(start, to), ignored);
+	}
+
+	/**
+	 * @param  date Data.
+	 * @return      Liczba sekund od epoki.
+	 */
+	private static long startOf(LocalDateTime date)
+	{
+		return date.toEpochSecond(ZoneOffset.UTC);
+	}
+
+	/**
+	 * @param  start Początek przedziału w sekundach od epoki.
+	 * @param  to    Koniec przedziału lub null.
+	 * @return       Koniec przedziału w sekundach od epoki, co najmniej minutę
+	 *               po jego początku.
+	 */
+	private static long endOf(long start, LocalDateTime to)
+	{
+		return to != null ? Math.max(startOf(to), start + MINIMUM_LENGTH) : start + MINIMUM_LENGTH;
+	}
+
+	/**
+	 * @param  event Wydarzenie.
+	 * @return       Koniec przedziału zajmowanego przez wydarzenie w sekundach
+	 *               od epoki.
+	 */
+	private static long endOf(Event event)
+	{
+		Duration duration = event.getDuration();
+		long start = startOf(event.getDate());
+		return start + Math.max(duration != null ? duration.getSeconds() : 0, MINIMUM_LENGTH);
+	}
+
+	/**
+	 * Szuka wydarzenia nakładającego się na przedział, pomijając poddrzewa
+	 * kończące się przed jego początkiem i rozpoczynające się po jego końcu.
+	 */
+	private static boolean find(Node node, long from, long to, Event ignored)
+	{
+		while (node != null && node.maxEnd > from)
+		{
+			if (find(node.left, from, to, ignored))
+				return true;
+
+			if (node.start >= to)
+				return false;
+
+			if (node.end > from)
+			{
+				for (int i = 0; i < node.count; i++)
+				{
+					if (node.events[i] != ignored && endOf(node.events[i]) > from)
+						return true;
+				}
+			}
+
+			node = node.right;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Dodaje do listy wydarzenia nakładające się na przedział, w kolejności
+	 * początków.
+	 */
+	private static void collect(Node node, long from, long to, List<Event> events)
+	{
+		while (node != null && node.maxEnd > from)
+		{
+			collect(node.left, from, to, events);
+
+			if (node.start >= to)
+				return;
+
+			if (node.end > from)
+			{
+				for (int i = 0; i < node.count; i++)
+				{
+					if (endOf(node.events[i]) > from)
+						events.add(node.events[i]);
+				}
+			}
+
+			node = node.right;
+		}
+	}
+
+	private static Node insert(Node node, long start, Event event)
+	{
+		if (node == null)
+			return new Node(start, event);
+
+		if (start < node.start)
+			node.left = insert(node.left, start, event);
+		else if (start > node.start)
+			node.right = insert(node.right, start, event);
+		else
+			append(node, event);
+
+		return balance(node);
+	}
+
+	private Node delete(Node node, long start, Event event)
+	{
+		if (node == null)
+			return null;
+
+		if (start < node.start)
+		{
+			node.left = delete(node.left, start, event);
+		}
+		else if (start > node.start)
+		{
+			node.right = delete(node.right, start, event);
+		}
+		else
+		{
+			for (int i = 0; i < node.count; i++)
+			{
+				if (node.events[i] == event)
+				{
+					System.arraycopy(node.events, i + 1, node.events, i, node.count - i - 1);
+					node.events[--node.count] = null;
+					size--;
+
+					if (node.count == 0)
+						return removeNode(node);
+
+					node.end = endOfEvents(node);
+					break;
+				}
+			}
+		}
+
+		return balance(node);
+	}
+
+	/**
+	 * Usuwa węzeł o podanym początku razem ze wszystkimi jego wydarzeniami.
+	 */
+	private static Node deleteNode(Node node, long start)
+	{
+		if (node == null)
+			return null;
+
+		if (start < node.start)
+			node.left = deleteNode(node.left, start);
+		else if (start > node.start)
+			node.right = deleteNode(node.right, start);
+		else
+			return removeNode(node);
+
+		return balance(node);
+	}
+
+	/**
+	 * @param  node Węzeł do usunięcia.
+	 * @return      Poddrzewo, które zastępuje usunięty węzeł.
+	 */
+	private static Node removeNode(Node node)
+	{
+		if (node.left == null)
+			return node.right;
+
+		if (node.right == null)
+			return node.left;
+
+		Node successor = node.right;
+
+		while (successor.left != null)
+		{
+			successor = successor.left;
+		}
+
+		successor.right = removeFirst(node.right);
+		successor.left = node.left;
+		return balance(successor);
+	}
+
+	private static Node removeFirst(Node node)
+	{
+		if (node.left == null)
+			return node.right;
+
+		node.left = removeFirst(node.left);
+		return balance(node);
+	}
+
+	private static void append(Node node, Event event)
+	{
+		if (node.count == node.events.length)
+			node.events = Arrays.copyOf(node.events, node.count * 2);
+
+		node.events[node.count++] = event;
+		node.end = Math.max(node.end, endOf(event));
+	}
+
+	private static long endOfEvents(Node node)
+	{
+		long end = Long.MIN_VALUE;
+
+		for (int i = 0; i < node.count; i++)
+		{
+			end = Math.max(end, endOf(node.events[i]));
+		}
+
+		return end;
+	}
+
+	private static Node build(List<Node> nodes, int from, int to)
+	{
+		if (from > to)
+			return null;
+
+		int middle = (from + to) >>> 1;
+		Node node = nodes.get(middle);
+		node.left = build(nodes, from, middle - 1);
+		node.right = build(nodes, middle + 1, to);
+		update(node);
+		return node;
+	}
+
+	private static int height(Node node)
+	{
+		return node != null ? node.height : 0;
+	}
+
+	private static void update(Node node)
+	{
+		node.height = Math.max(height(node.left), height(node.right)) + 1;
+		node.maxEnd = node.end;
+
+		if (node.left != null)
+			node.maxEnd = Math.max(node.maxEnd, node.left.maxEnd);
+
+		if (node.right != null)
+			node.maxEnd = Math.max(node.maxEnd, node.right.maxEnd);
+	}
+
+	private static Node balance(Node node)
+	{
+		update(node);
+
+		int balance = height(node.left) - height(node.right);
+
+		if (balance > 1)
+		{
+			if (height(node.left.left) < height(node.left.right))
+				node.left = rotateLeft(node.left);
+
+			return rotateRight(node);
+		}
+
+		if (balance < -1)
+		{
+			if (height(node.right.right) < height(node.right.left))
+				node.right = rotateRight(node.right);
+
+			return rotateLeft(node);
+		}
+
+		return node;
+	}
+
+	private static Node rotateRight(Node node)
+	{
+		Node left = node.left;
+		node.left = left.right;
+		left.right = node;
+		update(node);
+		update(left);
+		return left;
+	}
+
+	private static Node rotateLeft(Node node)
+	{
+		Node right = node.right;
+		node.right = right.left;
+		right.left = node;
+		update(node);
+		update(right);
+		return right;
+	}
+}
@@ -0,0 +1,162 @@
+package application;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Posortowany widok listy obiektów modelu według jednego kryterium
+ * sortowania, przechowywany w drzewie czerwono-czarnym ({@link TreeSet}).
+ * Dodanie i usunięcie obiektu kosztuje O(log n), a przejście widoku w
+ * kolejności sortowania O(n), więc widok nie musi być sortowany od nowa przy
+ * każdym odświeżeniu listy w interfejsie.
+ * <p>
+ * Obiekty równe według kryterium sortowania pozostają w kolejności dodania
+ * (tak jak przy stabilnym sortowaniu listy), dlatego każdy obiekt otrzymuje
+ * przy dodaniu kolejny numer, który rozstrzyga remisy. Widok nie obserwuje
+ * obiektów: przed zmianą pola, według którego jest sortowany, obiekt należy z
+ * niego usunąć ({@link #remove(Object)}), a po zmianie dodać ponownie. Klasa
+ * nie jest bezpieczna wątkowo; {@link application.Controller} używa jej pod
+ * blokadą modelu.
+ *
+ * @param <T> Typ obiektów widoku.
+ */
+public class SortedView<T> extends AbstractCollection<T>
+{
+	private static class Entry<T>
+	{
+		private final T element;
+		private final long sequence;
+
+		private Entry(T element, long sequence)
+		{
+			this.element = element;
+			this.sequence = sequence;
+		}
+	}
+
+	private final TreeSet<Entry<T>> entries;
+	private final Map<T, Entry<T>> entriesByElement = new IdentityHashMap<>();
+	private long nextSequence;
+
+	/**
+	 * Tworzy widok zawierający podane obiekty.
+	 *
+	 * @param order    Kryterium sortowania.
+	 * @param elements Obiekty widoku.
+	 */
+	public SortedView(Comparator<? super T> order, Collection<? extends T> elements)
+	{
+		this.entries = new TreeSet<>((a, b) ->
+		{
+			int result = order.compare(a.element, b.element);
+			return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+		});
+
+		addAll(elements);
+	}
+
+	/**
+	 * Dodaje obiekt do widoku, jeśli jeszcze się w nim nie znajduje.
+	 *
+	 * @param  element Obiekt.
+	 * @return         True jeśli obiekt został dodany.
+	 */
+	@Override
+	public boolean add(T element)
+	{
+		if (entriesByElement.containsKey(element))
+			return false;
+
+		Entry<T> entry = new Entry<>(element, nextSequence++);
+		entries.add(entry);
+		entriesByElement.put(element, entry);
+		return true;
+	}
+
+	/**
+	 * Usuwa obiekt z widoku. Pola, według których widok jest sortowany, muszą
+	 * mieć te same wartości co przy dodaniu obiektu.
+	 *
+	 * @param  element Obiekt.
+	 * @return         True jeśli obiekt był w widoku.
+	 */
+	@Override
+	public boolean remove(Object element)
+	{
+		Entry<T> entry = entriesByElement.remove(element);
+
+		if (entry == null)
+			return false;
+
+		entries.remove(entry);
+		return true;
+	}
+
+	/**
+	 * Usuwa podane obiekty z widoku, każdy w czasie O(log n).
+	 *
+	 * @param  elements Obiekty.
+	 * @return          True jeśli widok się zmienił.
+	 */
+	@Override
+	public boolean removeAll(Collection<?> elements)
+	{
+		boolean modified = false;
+
+		for (Object element : elements)
+		{
+			modified |= remove(element);
+		}
+
+		return modified;
+	}
+
+	@Override
+	public boolean contains(Object element)
+	{
+		return entriesByElement.containsKey(element);
+	}
+
+	@Override
+	public int size()
+	{
+		return entries.size();
+	}
+
+	@Override
+	public void clear()
+	{
+		entries.clear();
+		entriesByElement.clear();
+	}
+
+	/**
+	 * @return Iterator obiektów w kolejności sortowania. Usuwanie obiektów
+	 *         przez iterator nie jest obsługiwane.
+	 */
+	@Override
+	public Iterator<T> iterator()
+	{
+		Iterator<Entry<T>> iterator = entries.iterator();
+
+		return new Iterator<T>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return iterator.hasNext();
+			}
+
+			@Override
+			public T next()
+			{
+				return iterator.next().element;
+			}
+		};
+	}
+}
@@ -0,0 +1,95 @@
+package application;
+
+/**
+ * Niemodyfikowalna migawka statystyk kolejki zapisów {@link WriteBehindQueue}.
+ * Pozwala monitorować, ile zmian czeka na zapis do bazy danych, jak długo
+ * czeka najstarsza z nich oraz ile zapisów zakończyło się powodzeniem lub
+ * błędem.
+ */
+public class WriteBehindMetrics
+{
+	private final int queueDepth;
+	private final long lagMillis;
+	private final long flushedWrites;
+	private final long coalescedWrites;
+	private final long retriedWrites;
+	private final long failedWrites;
+
+	/**
+	 * Tworzy migawkę statystyk kolejki zapisów.
+	 *
+	 * @param queueDepth      Liczba zmian oczekujących na zapis.
+	 * @param lagMillis       Czas oczekiwania najstarszej zmiany w milisekundach.
+	 * @param flushedWrites   Liczba zapisów wykonanych w bazie danych.
+	 * @param coalescedWrites Liczba zmian połączonych z wcześniejszymi zmianami
+	 *                        tego samego obiektu.
+	 * @param retriedWrites   Liczba ponowionych prób zapisu.
+	 * @param failedWrites    Liczba zapisów porzuconych po błędzie.
+	 */
+	WriteBehindMetrics(int queueDepth, long lagMillis, long flushedWrites, long coalescedWrites, long retriedWrites, long failedWrites)
+	{
+		this.queueDepth = queueDepth;
+		this.lagMillis = lagMillis;
+		this.flushedWrites = flushedWrites;
+		this.coalescedWrites = coalescedWrites;
+		this.retriedWrites = retriedWrites;
+		this.failedWrites = failedWrites;
+	}
+
+	/**
+	 * @return Liczba zmian oczekujących na zapis, łącznie z zapisywanymi.
+	 */
+	public int getQueueDepth()
+	{
+		return queueDepth;
+	}
+
+	/**
+	 * @return Czas oczekiwania najstarszej niezapisanej zmiany w milisekundach lub
+	 *         0, jeśli kolejka jest pusta.
+	 */
+	public long getLagMillis()
+	{
+		return lagMillis;
+	}
+
+	/**
+	 * @return Liczba zapisów wykonanych w bazie danych.
+	 */
+	public long getFlushedWrites()
+	{
+		return flushedWrites;
+	}
+
+	/**
+	 * @return Liczba zmian połączonych z wcześniejszymi zmianami tego samego
+	 *         obiektu, które nie wymagały osobnego zapisu.
+	 */
+	public long getCoalescedWrites()
+	{
+		return coalescedWrites;
+	}
+
+	/**
+	 * @return Liczba ponowionych prób zapisu.
+	 */
+	public long getRetriedWrites()
+	{
+		return retriedWrites;
+	}
+
+	/**
+	 * @return Liczba zapisów porzuconych po błędzie.
+	 */
+	public long getFailedWrites()
+	{
+		return failedWrites;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("queueDepth=%d, lag=%dms, flushed=%d, coalesced=%d, retried=%d, failed=%d", queueDepth, lagMillis, flushedWrites,
+				coalescedWrites, retriedWrites, failedWrites);
+	}
+}
@@ -0,0 +1,1011 @@
+package application;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import model.Category;
+import model.Contact;
+import model.Event;
+import postgresql.Database;
+import postgresql.OptimisticLockException;
+
+/**
+ * Kolejka zapisów do bazy danych wykonywanych w tle (write-behind). Kontroler
+ * zmienia dane w pamięci natychmiast i jedynie dodaje zmianę do kolejki, a
+ * wątek roboczy zapisuje je w bazie danych, dzięki czemu wątek interfejsu
+ * użytkownika nie czeka na zapytania JDBC.
+ * <p>
+ * Kolejne zmiany tego samego obiektu są łączone: dodanie i aktualizacja dają
+ * jedno dodanie, kilka aktualizacji jedną aktualizację, a dodanie i usunięcie
+ * obiektu, który nie trafił jeszcze do bazy danych, nie wymaga żadnego zapisu.
+ * Operacje zbiorcze, takie jak usunięcie starych wydarzeń, są wykonywane
+ * dopiero po zapisaniu wszystkich wcześniejszych zmian. Zapisy są wykonywane
+ * porcjami na kopiach obiektów wykonanych pod blokadą modelu, więc wątek
+ * roboczy nie odczytuje list zmienianych równocześnie przez interfejs.
+ * Blokada modelu jest zawsze brana przed wewnętrzną blokadą kolejki, nigdy
+ * odwrotnie, tak jak robi to kontroler, dodając zmiany do kolejki.
+ * Nadane identyfikatory i wersje są przepisywane do oryginalnych obiektów po
+ * zapisie.
+ * <p>
+ * Nieudane zapisy są ponawiane z wykładniczo rosnącym odstępem. Zapis porzucony
+ * po wyczerpaniu prób lub przy zamykaniu kolejki oznacza obiekt jako zmieniony
+ * ({@code setModified(true)}), aby został przesłany przy następnej
+ * synchronizacji. Konflikty wersji nie są ponawiane, ponieważ wygrywa wersja z
+ * bazy danych.
+ */
+public class WriteBehindQueue implements AutoCloseable
+{
+	private static final long DEFAULT_FLUSH_DELAY_MILLIS = 200;
+	private static final int DEFAULT_MAX_ATTEMPTS = 5;
+	private static final long INITIAL_RETRY_DELAY_MILLIS = 500;
+	private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+	private final Database database;
+	private final Object modelLock;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+	private Consumer<Exception> errorHandler = ex -> System.err.println(ex.getMessage());
+	private Consumer<Object> modelChangedHandler = entity -> {};
+	private long flushDelayMillis = DEFAULT_FLUSH_DELAY_MILLIS;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+	private Thread worker;
+	private Segment flushing;
+	private boolean closed;
+
+	private long flushedWrites;
+	private long coalescedWrites;
+	private long retriedWrites;
+	private long failedWrites;
+
+	/**
+	 * Rodzaj zapisu obiektu.
+	 */
+	private enum Operation
+	{
+		INSERT, UPDATE, DELETE
+	}
+
+	/**
+	 * Operacja zbiorcza na bazie danych, niezwiązana z pojedynczym obiektem.
+	 */
+	@FunctionalInterface
+	private interface DatabaseTask
+	{
+		void execute(Database database) throws SQLException;
+	}
+
+	/**
+	 * Oczekujący zapis pojedynczego obiektu.
+	 */
+	private static class PendingWrite
+	{
+		private final Object entity;
+		private Operation operation;
+		private Object copy;
+
+		private PendingWrite(Object entity, Operation operation)
+		{
+			this.entity = entity;
+			this.operation = operation;
+		}
+	}
+
+	/**
+	 * Porcja zapisów łączonych ze sobą, zakończona opcjonalną operacją
+	 * zbiorczą. Model nie nadpisuje equals ani hashCode, więc mapa rozróżnia
+	 * obiekty po tożsamości i zachowuje kolejność pierwszej zmiany.
+	 */
+	private static class Segment
+	{
+		private final Map<Object, PendingWrite> writes = new LinkedHashMap<>();
+		private final Map<Object, Object> copies = new IdentityHashMap<>();
+		private final Set<Object> deleted = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final long createdAt = System.currentTimeMillis();
+		private DatabaseTask task;
+		private int attempts;
+
+		private int size()
+		{
+			return writes.size() + (task != null ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Tworzy kolejkę zapisów do podanej bazy danych.
+	 *
+	 * @param database  Baza danych, do której zapisywane są zmiany.
+	 * @param modelLock Obiekt, na którym kontroler synchronizuje zmiany modelu w
+	 *                  pamięci.
+	 */
+	public WriteBehindQueue(Database database, Object modelLock)
+	{
+		this.database = database;
+		this.modelLock = modelLock;
+	}
+
+	/**
+	 * Ustawia obiekt powiadamiany o zapisach, które nie powiodły się w tle.
+	 * Jest wywoływany w wątku roboczym kolejki.
+	 *
+	 * @param errorHandler Obiekt powiadamiany o błędach zapisu.
+	 */
+	public void setErrorHandler(Consumer<Exception> errorHandler)
+	{
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * Ustawia obiekt powiadamiany o zmianie obiektów modelu przez kolejkę, czyli
+	 * o przepisaniu nadanych identyfikatorów i wersji lub oznaczeniu obiektów
+	 * jako zmienionych po porzuceniu zapisu. Jest wywoływany pod blokadą modelu
+	 * osobno dla każdego zmienionego obiektu; nie jest wywoływany dla obiektów,
+	 * których usunięcie zostało dodane do kolejki, również w późniejszej porcji.
+	 *
+	 * @param modelChangedHandler Obiekt powiadamiany o zmienionych obiektach.
+	 */
+	public void setModelChangedHandler(Consumer<Object> modelChangedHandler)
+	{
+		this.modelChangedHandler = modelChangedHandler;
+	}
+
+	/**
+	 * Ustawia czas, przez jaki wątek roboczy zbiera kolejne zmiany przed zapisem,
+	 * aby móc je połączyć.
+	 *
+	 * @param flushDelayMillis Czas zbierania zmian w milisekundach.
+	 */
+	public void setFlushDelayMillis(long flushDelayMillis)
+	{
+		this.flushDelayMillis = flushDelayMillis;
+	}
+
+	/**
+	 * Ustawia maksymalną liczbę prób zapisu porcji zmian.
+	 *
+	 * @param maxAttempts Maksymalna liczba prób (co najmniej 1).
+	 */
+	public void setMaxAttempts(int maxAttempts)
+	{
+		this.maxAttempts = Math.max(1, maxAttempts);
+	}
+
+	/**
+	 * Dodaje do kolejki zapis nowego obiektu.
+	 *
+	 * @param entity Kategoria, wydarzenie lub kontakt do dodania.
+	 */
+	public void insert(Object entity)
+	{
+		enqueue(entity, Operation.INSERT);
+	}
+
+	/**
+	 * Dodaje do kolejki aktualizację obiektu.
+	 *
+	 * @param entity Kategoria, wydarzenie lub kontakt do zaktualizowania.
+	 */
+	public void update(Object entity)
+	{
+		enqueue(entity, Operation.UPDATE);
+	}
+
+	/**
+	 * Dodaje do kolejki usunięcie obiektu.
+	 *
+	 * @param  entity Kategoria, wydarzenie lub kontakt do usunięcia.
+	 * @return        False jeśli usunięcie połączono z niezapisanym jeszcze
+	 *                dodaniem obiektu i obiekt nie trafi do bazy danych, true w
+	 *                przeciwnym razie.
+	 */
+	public boolean delete(Object entity)
+	{
+		return enqueue(entity, Operation.DELETE);
+	}
+
+	/**
+	 * Sprawdza, czy kolejka zapisuje lub ma zapisać obiekt, czyli czy
+	 * powiadomi jeszcze o nadanym mu identyfikatorze lub porzuceniu zapisu.
+	 *
+	 * @param  entity Kategoria, wydarzenie lub kontakt.
+	 * @return        True jeśli zapis obiektu czeka w kolejce lub jest właśnie
+	 *                wykonywany.
+	 */
+	public boolean isPending(Object entity)
+	{
+		lock.lock();
+
+		try
+		{
+			if (flushing != null && flushing.copies.containsKey(entity))
+				return true;
+
+			for (Segment segment : segments)
+			{
+				if (segment.writes.containsKey(entity))
+					return true;
+			}
+
+			return false;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Dodaje do kolejki usunięcie z bazy danych wydarzeń starszych niż podana
+	 * data. Zostanie wykonane po zapisaniu wszystkich wcześniejszych zmian.
+	 *
+	 * @param targetDate Data, przed którą należy usunąć wydarzenia.
+	 */
+	public void deleteOldEvents(LocalDateTime targetDate)
+	{
+		lock.lock();
+
+		try
+		{
+			ensureOpen();
+
+			Segment segment = openSegment();
+			segment.task = database -> database.deleteOldEvents(targetDate);
+			changed.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return Migawka statystyk kolejki.
+	 */
+	public WriteBehindMetrics getMetrics()
+	{
+		lock.lock();
+
+		try
+		{
+			int depth = flushing != null ? flushing.size() : 0;
+			long oldest = flushing != null ? flushing.createdAt : 0;
+
+			for (Segment segment : segments)
+			{
+				depth += segment.size();
+
+				if (oldest == 0)
+					oldest = segment.createdAt;
+			}
+
+			long lag = oldest != 0 ? System.currentTimeMillis() - oldest : 0;
+
+			return new WriteBehindMetrics(depth, lag, flushedWrites, coalescedWrites, retriedWrites, failedWrites);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Czeka, aż wszystkie zmiany dodane do kolejki zostaną zapisane lub
+	 * porzucone.
+	 *
+	 * @param  timeout Maksymalny czas oczekiwania.
+	 * @param  unit    Jednostka czasu oczekiwania.
+	 * @return         True jeśli kolejka została opróżniona, false jeśli minął
+	 *                 czas oczekiwania.
+	 */
+	public boolean awaitEmpty(long timeout, TimeUnit unit)
+	{
+		long remainingNanos = unit.toNanos(timeout);
+
+		lock.lock();
+
+		try
+		{
+			while (!segments.isEmpty() || flushing != null)
+			{
+				if (remainingNanos <= 0)
+					return false;
+
+				remainingNanos = changed.awaitNanos(remainingNanos);
+			}
+
+			return true;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Zamyka kolejkę. Czeka do 10 sekund na zapisanie oczekujących zmian, a
+	 * zmiany, których nie udało się zapisać w tym czasie, oznacza jako zmienione,
+	 * aby zostały przesłane przy następnej synchronizacji.
+	 */
+	@Override
+	public void close()
+	{
+		awaitEmpty(10, TimeUnit.SECONDS);
+
+		Thread workerThread;
+
+		lock.lock();
+
+		try
+		{
+			closed = true;
+			workerThread = worker;
+			changed.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		if (workerThread != null)
+		{
+			workerThread.interrupt();
+
+			try
+			{
+				workerThread.join(TimeUnit.SECONDS.toMillis(5));
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		List<Segment> abandoned;
+
+		lock.lock();
+
+		try
+		{
+			abandoned = new ArrayList<>(segments);
+			segments.clear();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		abandon(abandoned);
+	}
+
+	/**
+	 * Dodaje zmianę obiektu do otwartej porcji, łącząc ją z wcześniejszą zmianą
+	 * tego samego obiektu.
+	 *
+	 * @param  entity    Zmieniany obiekt.
+	 * @param  operation Rodzaj zmiany.
+	 * @return           False jeśli zmiana usunęła z porcji niezapisane dodanie
+	 *                   obiektu, true w przeciwnym razie.
+	 */
+	private boolean enqueue(Object entity, Operation operation)
+	{
+		lock.lock();
+
+		try
+		{
+			ensureOpen();
+
+			Segment segment = openSegment();
+			PendingWrite pending = segment.writes.get(entity);
+
+			if (pending == null)
+			{
+				segment.writes.put(entity, new PendingWrite(entity, operation));
+			}
+			else
+			{
+				coalescedWrites++;
+
+				if (pending.operation == Operation.INSERT && operation == Operation.DELETE && idOf(entity) == 0)
+				{
+					segment.writes.remove(entity);
+					return false;
+				}
+
+				if (operation == Operation.DELETE)
+					pending.operation = Operation.DELETE;
+			}
+
+			changed.signalAll();
+			return true;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Zwraca ostatnią porcję, jeśli nie zakończono jej operacją zbiorczą, albo
+	 * tworzy nową. Przy pierwszym użyciu uruchamia wątek roboczy. Wywoływana pod
+	 * blokadą kolejki.
+	 *
+	 * @return Porcja przyjmująca nowe zmiany.
+	 */
+	private Segment openSegment()
+	{
+		Segment segment = segments.peekLast();
+
+		if (segment == null || segment.task != null)
+		{
+			segment = new Segment();
+			segments.addLast(segment);
+		}
+
+		if (worker == null)
+		{
+			worker = new Thread(this::run, "write-behind-worker");
+			worker.setDaemon(true);
+			worker.start();
+		}
+
+		return segment;
+	}
+
+	/**
+	 * @throws IllegalStateException Jeśli kolejka została zamknięta.
+	 */
+	private void ensureOpen()
+	{
+		if (closed)
+		{
+			throw new IllegalStateException("Write-behind queue is closed");
+		}
+	}
+
+	/**
+	 * Pętla wątku roboczego: czeka na zmiany, odczekuje czas zbierania zmian i
+	 * zapisuje kolejne porcje.
+	 */
+	private void run()
+	{
+		while (true)
+		{
+			Segment segment;
+
+			lock.lock();
+
+			try
+			{
+				while (segments.isEmpty() && !closed)
+				{
+					changed.await();
+				}
+
+				if (closed)
+					return;
+
+				long waitMillis = segments.peekFirst().createdAt + flushDelayMillis - System.currentTimeMillis();
+
+				if (waitMillis > 0 && segments.peekFirst().task == null)
+				{
+					changed.await(waitMillis, TimeUnit.MILLISECONDS);
+					continue;
+				}
+
+				segment = segments.pollFirst();
+				flushing = segment;
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			boolean done = flush(segment);
+
+			if (!done)
+				abandon(List.of(segment));
+
+			lock.lock();
+
+			try
+			{
+				flushing = null;
+				changed.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			if (!done && closed)
+				return;
+		}
+	}
+
+	/**
+	 * Zapisuje porcję zmian, ponawiając zapis niezapisanych zmian po błędzie.
+	 *
+	 * @param  segment Porcja do zapisania.
+	 * @return         True jeśli porcja została zapisana lub odrzucona przez bazę
+	 *                 danych, false jeśli zapis przerwano przy zamykaniu kolejki.
+	 */
+	private boolean flush(Segment segment)
+	{
+		List<PendingWrite> writes = snapshot(segment);
+		long retryDelay = INITIAL_RETRY_DELAY_MILLIS;
+
+		while (true)
+		{
+			try
+			{
+				while (!writes.isEmpty())
+				{
+					PendingWrite pending = writes.get(0);
+
+					try
+					{
+						execute(pending);
+						complete(segment, pending, true);
+					}
+					catch (OptimisticLockException | RuntimeException ex)
+					{
+						// konflikt wersji lub błąd danych nie ustąpi po ponowieniu
+						errorHandler.accept(ex);
+						complete(segment, pending, false);
+					}
+
+					writes.remove(0);
+				}
+
+				if (segment.task != null)
+				{
+					segment.task.execute(database);
+					complete(segment, null, true);
+				}
+
+				copyBack(segment);
+				return true;
+			}
+			catch (SQLException ex)
+			{
+				copyBack(segment);
+
+				if (++segment.attempts >= maxAttempts)
+				{
+					errorHandler.accept(ex);
+					return false;
+				}
+
+				lock.lock();
+
+				try
+				{
+					retriedWrites++;
+				}
+				finally
+				{
+					lock.unlock();
+				}
+
+				try
+				{
+					Thread.sleep(retryDelay);
+				}
+				catch (InterruptedException e)
+				{
+					return false;
+				}
+
+				retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+			}
+		}
+	}
+
+	/**
+	 * Tworzy pod blokadą modelu kopie zmienianych obiektów (wraz z listami
+	 * powiązanych obiektów) i porządkuje zapisy:
+	 * najpierw kategorie, potem wydarzenia i kontakty, tak aby obiekty, do
+	 * których odwołują się kolejne zapisy, miały już identyfikatory.
+	 *
+	 * @param  segment Porcja do zapisania.
+	 * @return         Uporządkowana lista zapisów.
+	 */
+	private List<PendingWrite> snapshot(Segment segment)
+	{
+		List<PendingWrite> categoryWrites = new ArrayList<>();
+		List<PendingWrite> eventWrites = new ArrayList<>();
+		List<PendingWrite> contactWrites = new ArrayList<>();
+		Map<Object, Object> copies = segment.copies;
+
+		synchronized (modelLock)
+		{
+			for (PendingWrite pending : segment.writes.values())
+			{
+				pending.copy = copyOf(pending.entity, copies);
+
+				if (pending.operation == Operation.DELETE)
+					segment.deleted.add(pending.entity);
+
+				if (pending.entity instanceof Category)
+					categoryWrites.add(pending);
+				else if (pending.entity instanceof Event)
+					eventWrites.add(pending);
+				else
+					contactWrites.add(pending);
+			}
+
+			for (PendingWrite pending : eventWrites)
+			{
+				for (Contact contact : ((Event) pending.entity).getContacts())
+				{
+					((Event) pending.copy).getContacts().add((Contact) copyOf(contact, copies));
+				}
+			}
+
+			for (PendingWrite pending : contactWrites)
+			{
+				for (Event event : ((Contact) pending.entity).getEvents())
+				{
+					((Contact) pending.copy).getEvents().add((Event) copyOf(event, copies));
+				}
+			}
+		}
+
+		List<PendingWrite> writes = new ArrayList<>(categoryWrites);
+		writes.addAll(eventWrites);
+		writes.addAll(contactWrites);
+
+		return writes;
+	}
+
+	/**
+	 * Wykonuje zapis kopii obiektu w bazie danych. Dodanie obiektu, który
+	 * otrzymał już identyfikator (np. jako powiązany obiekt innego zapisu), jest
+	 * wykonywane jako aktualizacja, a aktualizacja obiektu bez identyfikatora jako
+	 * dodanie.
+	 *
+	 * @param  pending      Zapis do wykonania.
+	 * @throws SQLException Jeśli zapis w bazie danych się nie powiódł.
+	 */
+	private void execute(PendingWrite pending) throws SQLException
+	{
+		Object copy = pending.copy;
+		int id = idOf(copy);
+
+		if (pending.operation == Operation.DELETE)
+		{
+			if (id == 0)
+				return;
+
+			if (copy instanceof Category)
+				database.deleteCategory((Category) copy);
+			else if (copy instanceof Event)
+				database.deleteEvent((Event) copy);
+			else
+				database.deleteContact((Contact) copy);
+		}
+		else if (id == 0)
+		{
+			if (copy instanceof Category)
+				database.insertCategory((Category) copy);
+			else if (copy instanceof Event)
+				database.insertEvent((Event) copy);
+			else
+				database.insertContact((Contact) copy);
+		}
+		else
+		{
+			if (copy instanceof Category)
+				database.updateCategory((Category) copy);
+			else if (copy instanceof Event)
+				database.updateEvent((Event) copy);
+			else
+				database.updateContact((Contact) copy);
+		}
+	}
+
+	/**
+	 * Przepisuje pod blokadą modelu identyfikatory i wersje nadane kopiom do
+	 * oryginalnych obiektów. Identyfikator jest przepisywany także do obiektów
+	 * usuniętych w tej lub późniejszej porcji, aby ich usunięcie mogło zostać
+	 * zapisane, ale kontroler nie jest o nich powiadamiany.
+	 *
+	 * @param segment Zapisywana porcja.
+	 */
+	private void copyBack(Segment segment)
+	{
+		synchronized (modelLock)
+		{
+			segment.copies.forEach((entity, copy) ->
+			{
+				if (copyIdentity(copy, entity) && !segment.deleted.contains(entity) && !isDeletePending(entity))
+					modelChangedHandler.accept(entity);
+			});
+		}
+	}
+
+	/**
+	 * @param  entity Obiekt modelu.
+	 * @return        True jeśli usunięcie obiektu czeka w jednej z porcji
+	 *                oczekujących na zapis.
+	 */
+	private boolean isDeletePending(Object entity)
+	{
+		lock.lock();
+
+		try
+		{
+			for (Segment segment : segments)
+			{
+				PendingWrite pending = segment.writes.get(entity);
+
+				if (pending != null && pending.operation == Operation.DELETE)
+					return true;
+			}
+
+			return false;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Porzuca niezapisane zmiany porcji, oznaczając zmienione obiekty do
+	 * przesłania przy następnej synchronizacji. Zapisy są zbierane pod blokadą
+	 * kolejki, a obiekty oznaczane dopiero po jej zwolnieniu, pod blokadą
+	 * modelu: kontroler dodaje zmiany do kolejki, trzymając blokadę modelu, więc
+	 * blokady modelu nie wolno brać, trzymając blokadę kolejki. Wywoływana bez
+	 * blokady kolejki.
+	 *
+	 * @param abandoned Porzucane porcje.
+	 */
+	private void abandon(List<Segment> abandoned)
+	{
+		List<Object> entities = new ArrayList<>();
+		Set<Object> deleted = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		lock.lock();
+
+		try
+		{
+			for (Segment segment : abandoned)
+			{
+				for (PendingWrite pending : segment.writes.values())
+				{
+					if (pending.operation == Operation.DELETE)
+					{
+						deleted.add(pending.entity);
+					}
+					else
+					{
+						entities.add(pending.entity);
+						failedWrites++;
+					}
+				}
+
+				segment.writes.clear();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		synchronized (modelLock)
+		{
+			for (Object entity : entities)
+			{
+				setModified(entity);
+
+				if (!deleted.contains(entity) && !isDeletePending(entity))
+					modelChangedHandler.accept(entity);
+			}
+		}
+	}
+
+	/**
+	 * Usuwa zakończony zapis z porcji i zwiększa licznik wykonanych lub
+	 * porzuconych zapisów.
+	 *
+	 * @param segment Zapisywana porcja.
+	 * @param pending Zakończony zapis lub null dla operacji zbiorczej.
+	 * @param flushed True jeśli zapis został wykonany, false jeśli porzucony.
+	 */
+	private void complete(Segment segment, PendingWrite pending, boolean flushed)
+	{
+		lock.lock();
+
+		try
+		{
+			if (pending != null)
+				segment.writes.remove(pending.entity);
+			else
+				segment.task = null;
+
+			if (flushed)
+				flushedWrites++;
+			else
+				failedWrites++;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Zwraca kopię obiektu z mapy kopii, tworząc ją przy pierwszym użyciu. Kopia
+	 * zawiera pola obiektu bez list powiązanych obiektów.
+	 *
+	 * @param  entity Kategoria, wydarzenie lub kontakt.
+	 * @param  copies Mapa kopii według oryginalnych obiektów.
+	 * @return        Kopia obiektu.
+	 */
+	private static Object copyOf(Object entity, Map<Object, Object> copies)
+	{
+		Object copy = copies.get(entity);
+
+		if (copy != null)
+			return copy;
+
+		if (entity instanceof Category)
+		{
+			Category category = (Category) entity;
+			Category categoryCopy = new Category();
+			categoryCopy.setId(category.getId());
+			categoryCopy.setVersion(category.getVersion());
+			categoryCopy.setName(category.getName());
+			categoryCopy.setColorHex(category.getColorHex());
+			copy = categoryCopy;
+		}
+		else if (entity instanceof Event)
+		{
+			Event event = (Event) entity;
+			Event eventCopy = new Event();
+			eventCopy.setId(event.getId());
+			eventCopy.setVersion(event.getVersion());
+			eventCopy.setName(event.getName());
+			eventCopy.setDate(event.getDate());
+			eventCopy.setNotifyOffset(event.getNotifyOffset());
+			eventCopy.setDuration(event.getDuration());
+			eventCopy.setLocation(event.getLocation());
+			eventCopy.setDescription(event.getDescription());
+			copy = eventCopy;
+			copies.put(entity, copy);
+
+			if (event.getCategory() != null)
+				eventCopy.setCategory((Category) copyOf(event.getCategory(), copies));
+		}
+		else
+		{
+			Contact contact = (Contact) entity;
+			Contact contactCopy = new Contact();
+			contactCopy.setId(contact.getId());
+			contactCopy.setVersion(contact.getVersion());
+			contactCopy.setFirstName(contact.getFirstName());
+			contactCopy.setLastName(contact.getLastName());
+			contactCopy.setPhoneNumber(contact.getPhoneNumber());
+			copy = contactCopy;
+		}
+
+		copies.put(entity, copy);
+		return copy;
+	}
+
+	/**
+	 * Przepisuje identyfikator (jeśli oryginał go nie ma) i wersję z kopii do
+	 * oryginalnego obiektu.
+	 *
+	 * @param  copy   Kopia zapisana w bazie danych.
+	 * @param  entity Oryginalny obiekt.
+	 * @return        True jeśli identyfikator lub wersja oryginału się zmieniły.
+	 */
+	private static boolean copyIdentity(Object copy, Object entity)
+	{
+		if (idOf(copy) == 0)
+			return false;
+
+		int id = idOf(entity);
+		int version = versionOf(entity);
+
+		if (entity instanceof Category)
+		{
+			Category category = (Category) entity;
+
+			if (category.getId() == 0)
+				category.setId(((Category) copy).getId());
+
+			category.setVersion(((Category) copy).getVersion());
+		}
+		else if (entity instanceof Event)
+		{
+			Event event = (Event) entity;
+
+			if (event.getId() == 0)
+				event.setId(((Event) copy).getId());
+
+			event.setVersion(((Event) copy).getVersion());
+		}
+		else
+		{
+			Contact contact = (Contact) entity;
+
+			if (contact.getId() == 0)
+				contact.setId(((Contact) copy).getId());
+
+			contact.setVersion(((Contact) copy).getVersion());
+		}
+
+		return idOf(entity) != id || versionOf(entity) != version;
+	}
+
+	/**
+	 * @param  entity Kategoria, wydarzenie lub kontakt.
+	 * @return        Identyfikator obiektu.
+	 */
+	private static int idOf(Object entity)
+	{
+		if (entity instanceof Category)
+			return ((Category) entity).getId();
+
+		if (entity instanceof Event)
+			return ((Event) entity).getId();
+
+		return ((Contact) entity).getId();
+	}
+
+	/**
+	 * @param  entity Kategoria, wydarzenie lub kontakt.
+	 * @return        Wersja obiektu.
+	 */
+	private static int versionOf(Object entity)
+	{
+		if (entity instanceof Category)
+			return ((Category) entity).getVersion();
+
+		if (entity instanceof Event)
+			return ((Event) entity).getVersion();
+
+		return ((Contact) entity).getVersion();
+	}
+
+	/**
+	 * Oznacza obiekt jako zmieniony bez zapisu w bazie danych.
+	 *
+	 * @param entity Kategoria, wydarzenie lub kontakt.
+	 */
+	private static void setModified(Object entity)
+	{
+		if (entity instanceof Category)
+			((Category) entity).setModified(true);
+		else if (entity instanceof Event)
+			((Event) entity).setModified(true);
+		else
+			((Contact) entity).setModified(true);
+	}
+}
@@ -8,6 +8,9 @@ package model;
 public class Category implements Comparable<Category>
 {
 	private int id;
+	private int version;
+	private boolean modified;
+	private long localKey;
 	private String name;
 	private String colorHex;
 
@@ -50,6 +53,63 @@ public class Category implements Comparable<Category>
 		this.id = id;
 	}
 
+	/**
+	 * @return Wersja rekordu kategorii w bazie danych, używana do wykrywania
+	 *         równoczesnych modyfikacji.
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Ustawia wersję rekordu kategorii w bazie danych.
+	 *
+	 * @param version Nowa wersja rekordu kategorii.
+	 */
+	public void setVersion(int version)
+	{
+		this.version = version;
+	}
+
+	/**
+	 * @return True jeśli dane kategorii zmieniono bez połączenia z bazą danych i
+	 *         nie zostały jeszcze do niej przesłane, w przeciwnym razie false.
+	 */
+	public boolean isModified()
+	{
+		return modified;
+	}
+
+	/**
+	 * Oznacza, czy dane kategorii wymagają przesłania do bazy danych.
+	 *
+	 * @param modified True jeśli dane zmieniono bez połączenia z bazą danych.
+	 */
+	public void setModified(boolean modified)
+	{
+		this.modified = modified;
+	}
+
+	/**
+	 * @return Lokalny klucz kategorii nadany przez dziennik operacji, gdy nie ma
+	 *         jeszcze identyfikatora z bazy danych, lub 0.
+	 */
+	public long getLocalKey()
+	{
+		return localKey;
+	}
+
+	/**
+	 * Ustawia lokalny klucz kategorii używany przez dziennik operacji.
+	 *
+	 * @param localKey Nowy lokalny klucz.
+	 */
+	public void setLocalKey(long localKey)
+	{
+		this.localKey = localKey;
+	}
+
 	/**
 	 * @return Nazwa kategorii.
 	 */
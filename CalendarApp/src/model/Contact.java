@@ -3,6 +3,8 @@ package model;
 import java.util.ArrayList;
 import java.util.List;
 
+import util.PhoneNumbers;
+
 /**
  * Reprezentuje kontakt w kalendarzu. Posiada identyfikator, imię, nazwisko,
  * numer telefonu oraz listę wydarzeń powiązanych z kontaktem. Implementuje
@@ -11,9 +13,13 @@ import java.util.List;
 public class Contact implements Comparable<Contact>
 {
 	private int id;
+	private int version;
+	private boolean modified;
+	private long localKey;
 	private String firstName;
 	private String lastName;
 	private String phoneNumber;
+	private String normalizedPhoneNumber;
 	private List<Event> events = new ArrayList<Event>();
 
 	/**
@@ -55,6 +61,63 @@ public class Contact implements Comparable<Contact>
 		this.id = id;
 	}
 
+	/**
+	 * @return Wersja rekordu kontaktu w bazie danych, używana do wykrywania
+	 *         równoczesnych modyfikacji.
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Ustawia wersję rekordu kontaktu w bazie danych.
+	 *
+	 * @param version Nowa wersja rekordu kontaktu.
+	 */
+	public void setVersion(int version)
+	{
+		this.version = version;
+	}
+
+	/**
+	 * @return True jeśli dane kontaktu zmieniono bez połączenia z bazą danych i
+	 *         nie zostały jeszcze do niej przesłane, w przeciwnym razie false.
+	 */
+	public boolean isModified()
+	{
+		return modified;
+	}
+
+	/**
+	 * Oznacza, czy dane kontaktu wymagają przesłania do bazy danych.
+	 *
+	 * @param modified True jeśli dane zmieniono bez połączenia z bazą danych.
+	 */
+	public void setModified(boolean modified)
+	{
+		this.modified = modified;
+	}
+
+	/**
+	 * @return Lokalny klucz kontaktu nadany przez dziennik operacji, gdy nie ma
+	 *         jeszcze identyfikatora z bazy danych, lub 0.
+	 */
+	public long getLocalKey()
+	{
+		return localKey;
+	}
+
+	/**
+	 * Ustawia lokalny klucz kontaktu używany przez dziennik operacji.
+	 *
+	 * @param localKey Nowy lokalny klucz.
+	 */
+	public void setLocalKey(long localKey)
+	{
+		this.localKey = localKey;
+	}
+
 	/**
 	 * @return Imię kontaktu.
 	 */
@@ -100,13 +163,24 @@ public class Contact implements Comparable<Contact>
 	}
 
 	/**
-	 * Ustawia numer telefonu kontaktu.
+	 * @return Numer telefonu kontaktu bez białych znaków, używany do porównywania
+	 *         numerów.
+	 */
+	public String getNormalizedPhoneNumber()
+	{
+		return normalizedPhoneNumber;
+	}
+
+	/**
+	 * Ustawia numer telefonu kontaktu oraz jego postać znormalizowaną
+	 * ({@link util.PhoneNumbers#normalize(String)}).
 	 *
 	 * @param phoneNumber Nowy numer telefonu kontaktu.
 	 */
 	public void setPhoneNumber(String phoneNumber)
 	{
 		this.phoneNumber = phoneNumber;
+		this.normalizedPhoneNumber = PhoneNumbers.normalize(phoneNumber);
 	}
 
 	/**
@@ -1,5 +1,6 @@
 package model;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
@@ -8,16 +9,20 @@ import java.util.List;
 
 /**
  * Reprezentuje wydarzenie w kalendarzu. Posiada identyfikator, nazwę, datę,
- * czas powiadomienia, lokalizację, opis, kategorię oraz listę kontaktów
+ * czas powiadomienia, czas trwania, lokalizację, opis, kategorię oraz listę kontaktów
  * powiązanych z wydarzeniem. Implementuje interfejs Comparable, umożliwiając
  * sortowanie wydarzeń po dacie.
  */
 public class Event implements Comparable<Event>
 {
 	private int id;
+	private int version;
+	private boolean modified;
+	private long localKey;
 	private String name;
 	private LocalDateTime date;
 	private LocalTime notifyOffset;
+	private Duration duration;
 	private String location;
 	private String description;
 	private Category category;
@@ -33,7 +38,9 @@ public class Event implements Comparable<Event>
 
 	/**
 	 * Zwraca tekstową reprezentację obiektu {@link model.Event}, włączając nazwę,
-	 * sformatowaną datę, lokalizację, opis i nazwę kategorii.
+	 * sformatowaną datę (z godziną zakończenia, jeśli wydarzenie ma czas
+	 * trwania, poprzedzoną datą, jeśli kończy się innego dnia), lokalizację,
+	 * opis i nazwę kategorii.
 	 *
 	 * @return Tekstowa reprezentacja obiektu wydarzenia.
 	 */
@@ -44,7 +51,16 @@ public class Event implements Comparable<Event>
 		String descriptionStr = description.isEmpty() ? "No description" : description;
 		String categoryName = category != null ? category.getName() : "No category";
 
-		return String.format("%s | %s | %s%n%s%n%s", name, getFormattedDate(), locationStr, descriptionStr, categoryName);
+		String dateStr = getFormattedDate();
+
+		if (duration != null && !duration.isZero())
+		{
+			LocalDateTime endDate = getEndDate();
+			String endPattern = endDate.toLocalDate().equals(date.toLocalDate()) ? "HH:mm" : "dd.MM.yyyy HH:mm";
+			dateStr += " - " + endDate.format(DateTimeFormatter.ofPattern(endPattern));
+		}
+
+		return String.format("%s | %s | %s%n%s%n%s", name, dateStr, locationStr, descriptionStr, categoryName);
 	}
 
 	@Override
@@ -71,6 +87,63 @@ public class Event implements Comparable<Event>
 		this.id = id;
 	}
 
+	/**
+	 * @return Wersja rekordu wydarzenia w bazie danych, używana do wykrywania
+	 *         równoczesnych modyfikacji.
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Ustawia wersję rekordu wydarzenia w bazie danych.
+	 *
+	 * @param version Nowa wersja rekordu wydarzenia.
+	 */
+	public void setVersion(int version)
+	{
+		this.version = version;
+	}
+
+	/**
+	 * @return True jeśli dane wydarzenia zmieniono bez połączenia z bazą danych i
+	 *         nie zostały jeszcze do niej przesłane, w przeciwnym razie false.
+	 */
+	public boolean isModified()
+	{
+		return modified;
+	}
+
+	/**
+	 * Oznacza, czy dane wydarzenia wymagają przesłania do bazy danych.
+	 *
+	 * @param modified True jeśli dane zmieniono bez połączenia z bazą danych.
+	 */
+	public void setModified(boolean modified)
+	{
+		this.modified = modified;
+	}
+
+	/**
+	 * @return Lokalny klucz wydarzenia nadany przez dziennik operacji, gdy nie ma
+	 *         jeszcze identyfikatora z bazy danych, lub 0.
+	 */
+	public long getLocalKey()
+	{
+		return localKey;
+	}
+
+	/**
+	 * Ustawia lokalny klucz wydarzenia używany przez dziennik operacji.
+	 *
+	 * @param localKey Nowy lokalny klucz.
+	 */
+	public void setLocalKey(long localKey)
+	{
+		this.localKey = localKey;
+	}
+
 	/**
 	 * @return Nazwa wydarzenia.
 	 */
@@ -125,6 +198,36 @@ public class Event implements Comparable<Event>
 		this.notifyOffset = notifyOffset;
 	}
 
+	/**
+	 * @return Czas trwania wydarzenia (null lub zerowy dla wydarzenia bez czasu
+	 *         trwania). Czas trwania może przekraczać dobę.
+	 */
+	public Duration getDuration()
+	{
+		return duration;
+	}
+
+	/**
+	 * Ustawia czas trwania wydarzenia.
+	 *
+	 * @param duration Nowy czas trwania wydarzenia.
+	 */
+	public void setDuration(Duration duration)
+	{
+		this.duration = duration;
+	}
+
+	/**
+	 * Zwraca datę zakończenia wydarzenia, czyli datę wydarzenia przesuniętą o
+	 * czas trwania.
+	 *
+	 * @return Data zakończenia wydarzenia.
+	 */
+	public LocalDateTime getEndDate()
+	{
+		return duration != null ? this.date.plus(duration) : this.date;
+	}
+
 	/**
 	 * @return Lokalizacja wydarzenia.
 	 */
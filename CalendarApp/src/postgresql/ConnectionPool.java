@@ -0,0 +1,642 @@
+package postgresql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pula wielokrotnie używanych połączeń JDBC. Zamiast otwierać nowe połączenie
+ * przez {@link DriverManager} dla każdego zapytania, klasa przechowuje
+ * fizyczne połączenia i wypożycza je w postaci obiektów pośredniczących, których
+ * metoda {@link Connection#close()} zwraca połączenie do puli. Pula utrzymuje
+ * minimalną liczbę połączeń, nie przekracza maksymalnej, zamyka połączenia zbyt
+ * długo pozostające bezczynne, sprawdza poprawność połączenia przy
+ * wypożyczeniu, a także wykrywa połączenia, które nie zostały zwrócone w
+ * określonym czasie. Statystyki puli są dostępne poprzez {@link #getMetrics()}.
+ * Pula działa z dowolnym sterownikiem JDBC, dzięki czemu może zostać
+ * uruchomiona również z wbudowaną bazą danych.
+ */
+public class ConnectionPool implements AutoCloseable
+{
+	private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int minSize;
+	private final int maxSize;
+
+	private long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(5);
+	private long borrowTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+	private long leakDetectionThresholdMillis = TimeUnit.MINUTES.toMillis(1);
+	private int validationTimeoutSeconds = 2;
+
+	private final Deque<PooledConnection> idleConnections = new ArrayDeque<>();
+	private final Set<PooledConnection> activeConnections = new HashSet<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition connectionAvailable = lock.newCondition();
+
+	private ScheduledExecutorService housekeeper;
+	private int totalConnections;
+	private int pendingBorrowers;
+	private boolean closed;
+
+	private long borrowCount;
+	private long totalBorrowWaitNanos;
+	private long maxBorrowWaitNanos;
+	private long createdConnections;
+	private long evictedConnections;
+	private long detectedLeaks;
+
+	/**
+	 * Tworzy pulę połączeń dla podanej bazy danych. Fizyczne połączenia nie są
+	 * otwierane w konstruktorze, lecz dopiero przy pierwszym wypożyczeniu, dzięki
+	 * czemu utworzenie puli nie wymaga dostępności bazy danych.
+	 *
+	 * @param  url                      Adres JDBC bazy danych.
+	 * @param  user                     Nazwa użytkownika bazy danych.
+	 * @param  password                 Hasło użytkownika bazy danych.
+	 * @param  minSize                  Minimalna liczba utrzymywanych połączeń.
+	 * @param  maxSize                  Maksymalna liczba połączeń.
+	 * @throws IllegalArgumentException Jeśli rozmiary puli są niepoprawne.
+	 */
+	public ConnectionPool(String url, String user, String password, int minSize, int maxSize)
+	{
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+		{
+			throw new IllegalArgumentException("Invalid pool size: min = " + minSize + ", max = " + maxSize);
+		}
+
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Ustawia czas, po którym bezczynne połączenie ponad minimalny rozmiar puli
+	 * zostanie zamknięte.
+	 *
+	 * @param idleTimeoutMillis Czas bezczynności w milisekundach.
+	 */
+	public void setIdleTimeoutMillis(long idleTimeoutMillis)
+	{
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	/**
+	 * Ustawia maksymalny czas oczekiwania na wolne połączenie.
+	 *
+	 * @param borrowTimeoutMillis Czas oczekiwania w milisekundach.
+	 */
+	public void setBorrowTimeoutMillis(long borrowTimeoutMillis)
+	{
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+	}
+
+	/**
+	 * Ustawia czas, po którym niezwrócone połączenie zostanie zgłoszone jako
+	 * wyciek. Wartość 0 wyłącza wykrywanie wycieków.
+	 *
+	 * @param leakDetectionThresholdMillis Czas w milisekundach.
+	 */
+	public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis)
+	{
+		this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+	}
+
+	/**
+	 * Ustawia maksymalny czas sprawdzania poprawności połączenia przy
+	 * wypożyczeniu.
+	 *
+	 * @param validationTimeoutSeconds Czas w sekundach.
+	 */
+	public void setValidationTimeoutSeconds(int validationTimeoutSeconds)
+	{
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+	}
+
+	/**
+	 * Wypożycza połączenie z puli. Jeżeli w puli znajduje się bezczynne
+	 * połączenie, sprawdza jego poprawność i je zwraca. W przeciwnym razie tworzy
+	 * nowe połączenie, o ile nie został osiągnięty maksymalny rozmiar puli, lub
+	 * czeka na zwrócenie połączenia przez inny wątek. Zwrócony obiekt należy
+	 * zamknąć metodą {@link Connection#close()}, co odda połączenie do puli.
+	 *
+	 * @return              Wypożyczone połączenie.
+	 * @throws SQLException Jeśli pula jest zamknięta, upłynął czas oczekiwania
+	 *                      lub nie udało się utworzyć połączenia.
+	 */
+	public Connection getConnection() throws SQLException
+	{
+		long startNanos = System.nanoTime();
+		long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+
+		while (true)
+		{
+			PooledConnection pooledConnection = null;
+			boolean createNew = false;
+
+			lock.lock();
+			try
+			{
+				ensureOpen();
+				startHousekeeper();
+
+				while (idleConnections.isEmpty() && totalConnections >= maxSize)
+				{
+					long remainingNanos = deadlineNanos - System.nanoTime();
+
+					if (remainingNanos <= 0)
+					{
+						throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a database connection");
+					}
+
+					pendingBorrowers++;
+					try
+					{
+						connectionAvailable.awaitNanos(remainingNanos);
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a database connection", e);
+					}
+					finally
+					{
+						pendingBorrowers--;
+					}
+
+					ensureOpen();
+				}
+
+				pooledConnection = idleConnections.pollFirst();
+
+				if (pooledConnection == null)
+				{
+					totalConnections++;
+					createNew = true;
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			if (createNew)
+			{
+				pooledConnection = createConnection();
+			}
+			else if (!isValid(pooledConnection))
+			{
+				discard(pooledConnection);
+				continue;
+			}
+
+			return borrow(pooledConnection, startNanos);
+		}
+	}
+
+	/**
+	 * @return Migawka aktualnych statystyk puli połączeń.
+	 */
+	public PoolMetrics getMetrics()
+	{
+		lock.lock();
+		try
+		{
+			return new PoolMetrics(activeConnections.size(), idleConnections.size(), pendingBorrowers, borrowCount, totalBorrowWaitNanos,
+					maxBorrowWaitNanos, createdConnections, evictedConnections, detectedLeaks);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Zamyka pulę połączeń. Zamyka wszystkie bezczynne połączenia, a połączenia
+	 * aktualnie wypożyczone zostaną zamknięte przy ich zwróceniu.
+	 */
+	@Override
+	public void close()
+	{
+		List<PooledConnection> toClose;
+
+		lock.lock();
+		try
+		{
+			if (closed)
+				return;
+
+			closed = true;
+			toClose = new ArrayList<>(idleConnections);
+			totalConnections -= idleConnections.size();
+			idleConnections.clear();
+			connectionAvailable.signalAll();
+
+			if (housekeeper != null)
+			{
+				housekeeper.shutdownNow();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		for (PooledConnection pooledConnection : toClose)
+		{
+			closeQuietly(pooledConnection.physical);
+		}
+	}
+
+	/**
+	 * Rejestruje połączenie jako wypożyczone i aktualizuje statystyki czasu
+	 * oczekiwania.
+	 *
+	 * @param  pooledConnection Połączenie do wypożyczenia.
+	 * @param  startNanos       Moment rozpoczęcia wypożyczenia.
+	 * @return                  Obiekt pośredniczący połączenia.
+	 */
+	private Connection borrow(PooledConnection pooledConnection, long startNanos)
+	{
+		long waitNanos = System.nanoTime() - startNanos;
+
+		pooledConnection.borrowedAt = System.currentTimeMillis();
+		pooledConnection.leakReported = false;
+		pooledConnection.borrowTrace = leakDetectionThresholdMillis > 0 ? new Exception("Connection borrowed here") : null;
+
+		lock.lock();
+		try
+		{
+			activeConnections.add(pooledConnection);
+			borrowCount++;
+			totalBorrowWaitNanos += waitNanos;
+			maxBorrowWaitNanos = Math.max(maxBorrowWaitNanos, waitNanos);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		return pooledConnection.newProxy();
+	}
+
+	/**
+	 * Zwraca połączenie do puli. Przywraca domyślny stan połączenia (tryb
+	 * autocommit, brak ostrzeżeń), a jeśli jest to niemożliwe lub pula została
+	 * zamknięta, zamyka fizyczne połączenie.
+	 *
+	 * @param pooledConnection Połączenie do zwrócenia.
+	 */
+	private void release(PooledConnection pooledConnection)
+	{
+		boolean reusable;
+
+		try
+		{
+			if (!pooledConnection.physical.getAutoCommit())
+			{
+				pooledConnection.physical.rollback();
+				pooledConnection.physical.setAutoCommit(true);
+			}
+
+			pooledConnection.physical.clearWarnings();
+			reusable = !pooledConnection.physical.isClosed();
+		}
+		catch (SQLException e)
+		{
+			reusable = false;
+		}
+
+		lock.lock();
+		try
+		{
+			activeConnections.remove(pooledConnection);
+
+			if (reusable && !closed)
+			{
+				pooledConnection.lastUsedAt = System.currentTimeMillis();
+				idleConnections.addFirst(pooledConnection);
+				connectionAvailable.signal();
+				return;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		discard(pooledConnection);
+	}
+
+	/**
+	 * Tworzy nowe fizyczne połączenie. Miejsce w puli musi zostać wcześniej
+	 * zarezerwowane poprzez zwiększenie licznika połączeń.
+	 *
+	 * @return              Nowe połączenie puli.
+	 * @throws SQLException Jeśli nie udało się nawiązać połączenia.
+	 */
+	private PooledConnection createConnection() throws SQLException
+	{
+		try
+		{
+			Connection physical = DriverManager.getConnection(url, user, password);
+
+			lock.lock();
+			try
+			{
+				createdConnections++;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			return new PooledConnection(physical);
+		}
+		catch (SQLException e)
+		{
+			lock.lock();
+			try
+			{
+				totalConnections--;
+				connectionAvailable.signal();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Sprawdza poprawność połączenia. Połączenia używane w ciągu ostatnich
+	 * {@value #VALIDATION_BYPASS_MILLIS} ms są uznawane za poprawne bez
+	 * dodatkowego zapytania do bazy danych.
+	 *
+	 * @param  pooledConnection Połączenie do sprawdzenia.
+	 * @return                  True jeśli połączenie jest poprawne, w przeciwnym
+	 *                          razie false.
+	 */
+	private boolean isValid(PooledConnection pooledConnection)
+	{
+		if (System.currentTimeMillis() - pooledConnection.lastUsedAt < VALIDATION_BYPASS_MILLIS)
+			return true;
+
+		try
+		{
+			return pooledConnection.physical.isValid(validationTimeoutSeconds);
+		}
+		catch (SQLException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Zamyka fizyczne połączenie i zwalnia jego miejsce w puli.
+	 *
+	 * @param pooledConnection Połączenie do zamknięcia.
+	 */
+	private void discard(PooledConnection pooledConnection)
+	{
+		closeQuietly(pooledConnection.physical);
+
+		lock.lock();
+		try
+		{
+			totalConnections--;
+			evictedConnections++;
+			connectionAvailable.signal();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Uruchamia wątek porządkujący pulę, jeśli nie został jeszcze uruchomiony.
+	 * Metoda musi być wywoływana z założoną blokadą.
+	 */
+	private void startHousekeeper()
+	{
+		if (housekeeper != null)
+			return;
+
+		housekeeper = Executors.newSingleThreadScheduledExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		housekeeper.scheduleWithFixedDelay(this::housekeep, 0, 30, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Zamyka połączenia bezczynne dłużej niż ustawiony limit (zachowując
+	 * minimalny rozmiar puli), uzupełnia pulę do minimalnego rozmiaru oraz
+	 * zgłasza połączenia wypożyczone dłużej niż próg wykrywania wycieków.
+	 */
+	private void housekeep()
+	{
+		List<PooledConnection> toEvict = new ArrayList<>();
+		int toCreate;
+		long now = System.currentTimeMillis();
+
+		lock.lock();
+		try
+		{
+			if (closed)
+				return;
+
+			Iterator<PooledConnection> iterator = idleConnections.descendingIterator();
+
+			while (iterator.hasNext() && totalConnections - toEvict.size() > minSize)
+			{
+				PooledConnection pooledConnection = iterator.next();
+
+				if (now - pooledConnection.lastUsedAt > idleTimeoutMillis)
+				{
+					iterator.remove();
+					toEvict.add(pooledConnection);
+				}
+			}
+
+			if (leakDetectionThresholdMillis > 0)
+			{
+				for (PooledConnection pooledConnection : activeConnections)
+				{
+					if (!pooledConnection.leakReported && now - pooledConnection.borrowedAt > leakDetectionThresholdMillis)
+					{
+						pooledConnection.leakReported = true;
+						detectedLeaks++;
+						System.err.println("Possible connection leak: connection borrowed " + (now - pooledConnection.borrowedAt)
+								+ " ms ago was not returned to the pool.");
+
+						if (pooledConnection.borrowTrace != null)
+						{
+							pooledConnection.borrowTrace.printStackTrace();
+						}
+					}
+				}
+			}
+
+			toCreate = Math.max(0, minSize - (totalConnections - toEvict.size()));
+			totalConnections += toCreate;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+
+		for (PooledConnection pooledConnection : toEvict)
+		{
+			discard(pooledConnection);
+		}
+
+		for (int i = 0; i < toCreate; i++)
+		{
+			try
+			{
+				PooledConnection pooledConnection = createConnection();
+				pooledConnection.lastUsedAt = System.currentTimeMillis();
+				release(pooledConnection);
+			}
+			catch (SQLException e)
+			{
+				// baza danych niedostępna - kolejna próba przy następnym przebiegu
+			}
+		}
+	}
+
+	/**
+	 * Sprawdza, czy pula nie została zamknięta. Metoda musi być wywoływana z
+	 * założoną blokadą.
+	 *
+	 * @throws SQLException Jeśli pula jest zamknięta.
+	 */
+	private void ensureOpen() throws SQLException
+	{
+		if (closed)
+		{
+			throw new SQLException("Connection pool is closed");
+		}
+	}
+
+	/**
+	 * Zamyka połączenie, ignorując ewentualne błędy.
+	 *
+	 * @param connection Połączenie do zamknięcia.
+	 */
+	private static void closeQuietly(Connection connection)
+	{
+		try
+		{
+			connection.close();
+		}
+		catch (SQLException e)
+		{
+			// połączenie i tak jest porzucane
+		}
+	}
+
+	/**
+	 * Fizyczne połączenie przechowywane w puli wraz z informacjami o jego
+	 * użyciu.
+	 */
+	private class PooledConnection
+	{
+		private final Connection physical;
+		private long lastUsedAt;
+		private long borrowedAt;
+		private boolean leakReported;
+		private Exception borrowTrace;
+
+		private PooledConnection(Connection physical)
+		{
+			this.physical = physical;
+		}
+
+		/**
+		 * Tworzy obiekt pośredniczący, który przekazuje wywołania do fizycznego
+		 * połączenia, a przy zamknięciu zwraca je do puli. Każde wypożyczenie
+		 * otrzymuje własny obiekt, dzięki czemu ponowne zamknięcie nie wpływa na
+		 * kolejne wypożyczenia.
+		 *
+		 * @return Obiekt pośredniczący połączenia.
+		 */
+		private Connection newProxy()
+		{
+			InvocationHandler handler = new InvocationHandler()
+			{
+				private boolean returned;
+
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+				{
+					switch (method.getName())
+					{
+						case "close":
+						{
+							if (!returned)
+							{
+								returned = true;
+								release(PooledConnection.this);
+							}
+							return null;
+						}
+						case "isClosed":
+							return returned || physical.isClosed();
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "toString":
+							return "PooledConnection[" + physical + "]";
+						default:
+							break;
+					}
+
+					if (returned)
+					{
+						throw new SQLException("Connection has already been returned to the pool");
+					}
+
+					try
+					{
+						return method.invoke(physical, args);
+					}
+					catch (InvocationTargetException e)
+					{
+						throw e.getCause();
+					}
+				}
+			};
+
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler);
+		}
+	}
+}
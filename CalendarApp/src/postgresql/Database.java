@@ -1,21 +1,33 @@
 package postgresql;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
 
 import model.Category;
 import model.Contact;
 import model.Event;
+import util.IntHashMap;
+import util.LongHashSet;
+import util.StringPool;
 
 /**
  * Klasa reprezentująca bazę danych postgresql do zarządzania kategoriami,
@@ -27,199 +39,149 @@ public class Database
 	private final String user = "postgres";
 	private final String password = "root";
 
-	/**
-	 * Pobiera kategorię z bazy danych na podstawie jej identyfikatora.
-	 *
-	 * @param  categoryId   Identyfikator kategorii.
-	 * @param  connection   Połączenie z bazą danych.
-	 * @return              Zwraca kategorię z konkretnym wyszukiwanym
-	 *                      indentyfikatorem.
-	 * @throws SQLException Jeśli wystąpi błąd w wykonywanym zapytaniu SQL.
-	 */
-	private Category getCategoryById(int categoryId, Connection connection) throws SQLException
-	{
-		String selectCategoryQuery = "SELECT * FROM categories WHERE id = ?";
-		Category category = null;
-
-		try (PreparedStatement pstmt = connection.prepareStatement(selectCategoryQuery))
-		{
-			pstmt.setInt(1, categoryId);
-			ResultSet resultSet = pstmt.executeQuery();
+	private static final String INSERT_EVENT_CONTACTS_QUERY = "INSERT INTO events_contacts (event_id, contact_id) VALUES (?, ?)";
+	private static final String INSERT_CONTACT_EVENTS_QUERY = "INSERT INTO events_contacts (contact_id, event_id) VALUES (?, ?)";
+	private static final String DELETE_EVENT_CONTACTS_QUERY = "DELETE FROM events_contacts WHERE event_id = ? AND contact_id = ?";
+	private static final String DELETE_CONTACT_EVENTS_QUERY = "DELETE FROM events_contacts WHERE contact_id = ? AND event_id = ?";
+	private static final String SELECT_EVENT_CONTACT_IDS_QUERY = "SELECT ec.contact_id FROM events_contacts ec JOIN contacts c ON c.id = ec.contact_id "
+			+ "WHERE ec.event_id = ? AND c.is_active = true";
+	private static final String SELECT_CONTACT_EVENT_IDS_QUERY = "SELECT ec.event_id FROM events_contacts ec JOIN events e ON e.id = ec.event_id "
+			+ "WHERE ec.contact_id = ? AND e.is_active = true";
 
-			if (resultSet.next())
-			{
-				category = new Category();
-				category.setId(resultSet.getInt("id"));
-				category.setName(resultSet.getString("category_name"));
-			}
+	private static final int BATCH_SIZE = 1000;
+	private static final int DEFAULT_FETCH_SIZE = 1000;
 
-			resultSet.close();
-		}
+	private final ConnectionPool connectionPool;
+	private ProgressListener progressListener = (stage, processed, total) -> {};
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	private StringPool stringPool = new StringPool();
 
-		return category;
+	/**
+	 * Tworzy obiekt bazy danych korzystający z puli połączeń
+	 * {@link ConnectionPool} dla domyślnej bazy postgresql. Połączenia są
+	 * nawiązywane dopiero przy pierwszym zapytaniu i wykorzystywane ponownie przez
+	 * kolejne operacje.
+	 */
+	public Database()
+	{
+		this.connectionPool = new ConnectionPool(url, user, password, 1, 10);
 	}
 
 	/**
-	 * Pobiera kontakty powiązane z określonym wydarzeniem z bazy danych.
+	 * Tworzy obiekt bazy danych korzystający z przekazanej puli połączeń, np.
+	 * skonfigurowanej dla innej (również wbudowanej) bazy danych.
 	 *
-	 * @param  eventId      Identyfikator wydarzenia.
-	 * @param  connection   Połączenie z bazą danych.
-	 * @return              Lista kontaktów powiązanych z wydarzeniem.
-	 * @throws SQLException Jeśli wystąpi błąd w wykonywanym zapytaniu SQL.
+	 * @param connectionPool Pula połączeń, z której będą pobierane połączenia.
 	 */
-	private List<Contact> getEventContacts(int eventId, Connection connection) throws SQLException
+	public Database(ConnectionPool connectionPool)
 	{
-		List<Contact> contacts = new ArrayList<>();
-
-		String selectContactsQuery = "SELECT c.* FROM contacts c JOIN events_contacts ec ON c.id = ec.contact_id WHERE ec.event_id = ? AND is_active = true";
-
-		try (PreparedStatement pstmt = connection.prepareStatement(selectContactsQuery))
-		{
-			pstmt.setInt(1, eventId);
-			ResultSet resultSet = pstmt.executeQuery();
-
-			while (resultSet.next())
-			{
-				Contact contact = new Contact();
-				contact.setId(resultSet.getInt("id"));
-				contact.setFirstName(resultSet.getString("first_name"));
-				contact.setLastName(resultSet.getString("last_name"));
-				contact.setPhoneNumber(resultSet.getString("phone_number"));
-
-				contacts.add(contact);
-			}
-
-			resultSet.close();
-		}
+		this.connectionPool = connectionPool;
+	}
 
-		return contacts;
+	/**
+	 * @return Migawka statystyk puli połączeń bazy danych.
+	 */
+	public PoolMetrics getPoolMetrics()
+	{
+		return this.connectionPool.getMetrics();
 	}
 
 	/**
-	 * Pobiera wydarzenia powiązane z określonym kontaktem z bazy danych.
+	 * Ustawia obiekt powiadamiany o postępie uzgadniania lokalnych danych z bazą
+	 * danych podczas synchronizacji.
 	 *
-	 * @param  contactId    Identyfikator kontaktu.
-	 * @param  connection   Połączenie z bazą danych.
-	 * @return              Lista wydarzeń powiązanych z kontaktem.
-	 * @throws SQLException Jeśli wystąpi błąd w wykonywanym zapytaniu SQL.
+	 * @param progressListener Obiekt powiadamiany o postępie.
 	 */
-	private List<Event> getContactEvents(int contactId, Connection connection) throws SQLException
+	public void setProgressListener(ProgressListener progressListener)
 	{
-		List<Event> events = new ArrayList<>();
+		this.progressListener = progressListener;
+	}
 
-		String selectEventsQuery = "SELECT e.* FROM events e JOIN events_contacts ec ON e.id = ec.event_id WHERE ec.contact_id = ? AND is_active = true";
+	/**
+	 * Ustawia pulę tekstów, przez którą przechodzą teksty odczytane z tabel bazy
+	 * danych, np. pulę wspólną dla wszystkich źródeł danych aplikacji.
+	 *
+	 * @param stringPool Pula tekstów.
+	 */
+	public void setStringPool(StringPool stringPool)
+	{
+		this.stringPool = stringPool;
+	}
 
-		try (PreparedStatement pstmt = connection.prepareStatement(selectEventsQuery))
+	/**
+	 * Ustawia liczbę wierszy pobieranych z serwera w jednej porcji przy
+	 * strumieniowym odczycie tabel. Wiersze są odczytywane przez kursor po
+	 * stronie serwera, więc w pamięci znajduje się co najwyżej jedna porcja
+	 * wyniku zapytania.
+	 *
+	 * @param  fetchSize                Liczba wierszy w porcji.
+	 * @throws IllegalArgumentException Jeśli liczba wierszy nie jest dodatnia.
+	 */
+	public void setFetchSize(int fetchSize)
+	{
+		if (fetchSize <= 0)
 		{
-			pstmt.setInt(1, contactId);
-			ResultSet resultSet = pstmt.executeQuery();
-
-			while (resultSet.next())
-			{
-				Event event = new Event();
-				event.setId(resultSet.getInt("id"));
-				event.setName(resultSet.getString("event_name"));
-				event.setDate(resultSet.getTimestamp("event_date").toLocalDateTime());
-				event.setLocation(resultSet.getString("event_location"));
-				event.setDescription(resultSet.getString("event_description"));
-
-				int categoryId = resultSet.getInt("category_id");
-				Category category = getCategoryById(categoryId, connection);
-				event.setCategory(category);
-
-				events.add(event);
-			}
-
-			resultSet.close();
+			throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
 		}
 
-		return events;
+		this.fetchSize = fetchSize;
 	}
 
 	/**
-	 * Sprawdza, czy dane kategorii zostały zmienione w stosunku do aktualnej w
-	 * bazie danych.
-	 *
-	 * @param  updatedCategory Zaktualizowana kategoria.
-	 * @param  name            Aktualna nazwa kategorii w bazie danych.
-	 * @param  colorHex        Aktualny kolor kategorii w formie szesnastkowej w
-	 *                         bazie danych.
-	 * @return                 True jeśli, któraś z danych kategorii została
-	 *                         zmieniona, w przeciwnym razie false.
+	 * Zamyka pulę połączeń bazy danych wraz ze wszystkimi bezczynnymi
+	 * połączeniami.
 	 */
-	private boolean isCategoryDataChanged(Category updatedCategory, String name, String colorHex)
+	public void close()
 	{
-		if (!name.equals(updatedCategory.getName()))
-			return true;
-
-		if (!colorHex.equals(updatedCategory.getColorHex()))
-			return true;
-
-		return false;
+		this.connectionPool.close();
 	}
 
 	/**
-	 * Sprawdza, czy dane wydarzenia zostały zmienione w stosunku do aktualnego w
-	 * bazie danych.
-	 * 
-	 * @param  updatedEvent Zaktualizowane wydarzenie.
-	 * @param  name         Aktualna nazwa wydarzenia w bazie danych.
-	 * @param  date         Aktualna data wydarzenia w bazie danych.
-	 * @param  notifyOffset Aktualny czas powiadomienia w bazie danych.
-	 * @param  location     Aktualna lokalizacja wydarzenia w bazie danych.
-	 * @param  description  Aktualny opis wydarzenia w bazie danych.
-	 * @param  categoryId   Aktualny identyfikator kategorii wydarzenia w bazie
-	 *                      danych.
-	 * @return              True jeśli, któraś z danych wydarzenia została
-	 *                      zmieniona, w przeciwnym razie false.
+	 * Sprawdza, czy można uzyskać połączenie z bazą danych. Pozwala przygotować
+	 * dane do synchronizacji dopiero wtedy, gdy baza danych jest dostępna.
+	 *
+	 * @throws SQLException Jeśli nie udało się połączyć z bazą danych.
 	 */
-	private boolean isEventDataChanged(Event updatedEvent, String name, LocalDateTime date, LocalTime notifyOffset, String location,
-			String description, int categoryId)
+	public void checkConnection() throws SQLException
 	{
-		if (!name.equals(updatedEvent.getName()))
-			return true;
-
-		if (!date.equals(updatedEvent.getDate()))
-			return true;
-
-		if (!notifyOffset.equals(updatedEvent.getNotifyOffset()))
-			return true;
-
-		if (!location.equals(updatedEvent.getLocation()))
-			return true;
-
-		if (!description.equals(updatedEvent.getDescription()))
-			return true;
-
-		if (categoryId != (updatedEvent.getCategory() != null ? updatedEvent.getCategory().getId() : 0))
-			return true;
-
-		return false;
+		// pula sprawdza poprawność połączenia przy jego wypożyczeniu
+		connectionPool.getConnection().close();
 	}
 
 	/**
-	 * Sprawdza, czy dane kontaktu zostały zmienione w stosunku do aktualnego w
-	 * bazie danych.
+	 * Pobiera identyfikatory aktywnych obiektów powiązanych z danym wydarzeniem
+	 * lub kontaktem w tabeli łączącej events_contacts. Zapytanie złącza tabelę
+	 * łączącą z tabelą powiązanych obiektów i odrzuca obiekty dezaktywowane
+	 * (is_active = false), tak jak wcześniejsze pobieranie pełnych wierszy
+	 * powiązanych obiektów, ale zwraca tylko identyfikatory, które wystarczają
+	 * do wyznaczenia różnicy zbiorów powiązań. Relacje z dezaktywowanymi
+	 * obiektami nie należą więc do różnicy i nie są usuwane przy aktualizacji.
 	 *
-	 * @param  updatedContact Zaktualizowany kontakt.
-	 * @param  firstName      Aktualne imię kontaktu w bazie danych.
-	 * @param  lastName       Aktualne nazwisko kontaktu w bazie danych.
-	 * @param  phoneNumber    Aktualny numer telefonu kontaktu w bazie danych.
-	 * @return                True jeśli, któraś z danych kontaktu została
-	 *                        zmieniona, w przeciwnym razie false.
+	 * @param  selectQuery  Zapytanie zwracające w pierwszej kolumnie identyfikatory
+	 *                      powiązanych obiektów, z jednym parametrem.
+	 * @param  ownerId      Identyfikator wydarzenia lub kontaktu.
+	 * @param  connection   Połączenie z bazą danych.
+	 * @return              Zbiór identyfikatorów powiązanych obiektów.
+	 * @throws SQLException Jeśli wystąpi błąd w wykonywanym zapytaniu SQL.
 	 */
-	private boolean isContactDataChanged(Contact updatedContact, String firstName, String lastName, String phoneNumber)
+	private Set<Integer> getRelatedIds(String selectQuery, int ownerId, Connection connection) throws SQLException
 	{
-		if (!firstName.equals(updatedContact.getFirstName()))
-			return true;
+		Set<Integer> relatedIds = new HashSet<>();
 
-		if (!lastName.equals(updatedContact.getLastName()))
-			return true;
+		try (PreparedStatement pstmt = connection.prepareStatement(selectQuery))
+		{
+			pstmt.setInt(1, ownerId);
+			ResultSet resultSet = pstmt.executeQuery();
+
+			while (resultSet.next())
+			{
+				relatedIds.add(resultSet.getInt(1));
+			}
 
-		if (!phoneNumber.equals(updatedContact.getPhoneNumber()))
-			return true;
+			resultSet.close();
+		}
 
-		return false;
+		return relatedIds;
 	}
 
 	/**
@@ -240,7 +202,7 @@ public class Database
 			throw new IllegalArgumentException("Category: [" + category + "] already exist in database!");
 		}
 
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
 			String insertCategoryQuery = "INSERT INTO categories (category_name, color_hex) VALUES (?, ?)";
 
@@ -268,10 +230,11 @@ public class Database
 	 * Dodaje nowe wydarzenie do bazy danych, nadając przekazanemu wydarzeniu
 	 * identyfikator, który jest generowany przez bazę danych podczas dodawania
 	 * nowego rekordu. Jeżeli wydarzenie zawiera listę kontaktów, sprawdza czy każdy
-	 * kontakt istnieje w bazie. Jeżeli kontakt nie istnieje, dodaje go poprzez
-	 * {@link #insertRelatedContacts(List, Connection)}. Następnie tworzy relacje
-	 * między wydarzeniem a kontaktem w tabeli łączącej events_contacts za pomocą
-	 * {@link #insertRelationships(int, int, Connection)}.
+	 * kontakt istnieje w bazie. Kontakty, które nie istnieją, dodaje jednym
+	 * wsadem poprzez {@link #insertRelatedContacts(List, Connection)}. Następnie
+	 * tworzy relacje między wydarzeniem a kontaktami w tabeli łączącej
+	 * events_contacts za pomocą
+	 * {@link #executeRelationshipBatch(String, int, Collection, Connection)}.
 	 * 
 	 * @param  event                    Wydarzenie do dodania.
 	 * @throws SQLException             Jeśli wystąpi błąd dostępu do bazy danych
@@ -286,18 +249,13 @@ public class Database
 			throw new IllegalArgumentException("Event: [" + event + "] already exists in the database!");
 		}
 
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
-			String insertEventQuery = "INSERT INTO events (event_name, event_date, notification_offset, event_location, event_description, category_id) VALUES (?, ?, ?, ?, ?, ?)";
+			String insertEventQuery = "INSERT INTO events (event_name, event_date, notification_offset, event_duration, event_location, event_description, category_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
 
 			try (PreparedStatement pstmt = connection.prepareStatement(insertEventQuery, Statement.RETURN_GENERATED_KEYS))
 			{
-				pstmt.setString(1, event.getName());
-				pstmt.setTimestamp(2, Timestamp.valueOf(event.getDate()));
-				pstmt.setObject(3, event.getNotifyOffset() != null ? event.getNotifyOffset() : LocalTime.of(0, 0));
-				pstmt.setString(4, event.getLocation());
-				pstmt.setString(5, event.getDescription());
-				pstmt.setObject(6, event.getCategory() != null ? event.getCategory().getId() : null);
+				bindEventData(pstmt, event, 1);
 
 				pstmt.executeUpdate();
 
@@ -307,17 +265,26 @@ public class Database
 					{
 						event.setId(generatedKeys.getInt(1));
 
-						if (!event.getContacts().isEmpty() || event.getContacts() != null)
+						if (event.getContacts() != null && !event.getContacts().isEmpty())
 						{
+							List<Contact> newContacts = new ArrayList<>();
+							Set<Integer> contactIds = new HashSet<>();
+
 							for (Contact contact : event.getContacts())
 							{
 								if (contact.getId() == 0)
-								{
-									insertRelatedContacts(event.getContacts(), connection);
-								}
+									newContacts.add(contact);
+							}
 
-								insertRelationships(event.getId(), contact.getId(), connection);
+							if (!newContacts.isEmpty())
+								insertRelatedContacts(newContacts, connection);
+
+							for (Contact contact : event.getContacts())
+							{
+								contactIds.add(contact.getId());
 							}
+
+							executeRelationshipBatch(INSERT_EVENT_CONTACTS_QUERY, event.getId(), contactIds, connection);
 						}
 					}
 				}
@@ -333,10 +300,11 @@ public class Database
 	 * Dodaje nowy kontakt do bazy danych, nadając przekazanemu kontaktowi
 	 * identyfikator, który jest generowany przez bazę danych podczas dodawania
 	 * nowego rekordu. Jeżeli kontakt zawiera listę wydarzeń, sprawdza czy każde
-	 * wydarzenie istnieje w bazie. Jeżeli wydarzenie nie istnieje, dodaje je
-	 * poprzez {@link #insertRelatedEvents(List, Connection)}. Następnie tworzy
-	 * relacje między wydarzeniem a kontaktem w tabeli łączącej events_contacts za
-	 * pomocą {@link #insertRelationships(int, int, Connection)}.
+	 * wydarzenie istnieje w bazie. Wydarzenia, które nie istnieją, dodaje jednym
+	 * wsadem poprzez {@link #insertRelatedEvents(List, Connection)}. Następnie
+	 * tworzy relacje między kontaktem a wydarzeniami w tabeli łączącej
+	 * events_contacts za pomocą
+	 * {@link #executeRelationshipBatch(String, int, Collection, Connection)}.
 	 * 
 	 * @param  contact                  Kontakt do dodania.
 	 * @throws SQLException             Jeśli wystąpi błąd dostępu do bazy danych
@@ -351,7 +319,7 @@ public class Database
 			throw new IllegalArgumentException("Contact: [" + contact + "] already exist in database!");
 		}
 
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
 			String insertContactQuery = "INSERT INTO contacts (first_name, last_name, phone_number) VALUES (?, ?, ?)";
 
@@ -369,15 +337,27 @@ public class Database
 					{
 						contact.setId(generatedKeys.getInt(1));
 
-						if (!contact.getEvents().isEmpty() || contact.getEvents() != null)
+						if (contact.getEvents() != null && !contact.getEvents().isEmpty())
 						{
+							List<Event> newEvents = new ArrayList<>();
+							Set<Integer> eventIds = new HashSet<>();
+
 							for (Event event : contact.getEvents())
 							{
 								if (event.getId() == 0)
-									insertRelatedEvents(contact.getEvents(), connection);
+									newEvents.add(event);
+							}
 
-								insertRelationships(event.getId(), contact.getId(), connection);
+							if (!newEvents.isEmpty())
+								insertRelatedEvents(newEvents, connection);
+
+							for (Event event : contact.getEvents())
+							{
+								eventIds.add(event.getId());
 							}
+
+							executeRelationshipBatch(INSERT_CONTACT_EVENTS_QUERY, contact.getId(), eventIds, connection);
+							touchEvents(eventIds, connection);
 						}
 					}
 				}
@@ -401,18 +381,13 @@ public class Database
 	 */
 	private void insertRelatedEvents(List<Event> events, Connection connection) throws SQLException
 	{
-		String query = "INSERT INTO events (event_name, event_date, notification_offset, event_location, event_description, category_id) VALUES (?, ?, ?, ?, ?, ?)";
+		String query = "INSERT INTO events (event_name, event_date, notification_offset, event_duration, event_location, event_description, category_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
 
 		try (PreparedStatement pstmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS))
 		{
 			for (Event event : events)
 			{
-				pstmt.setString(1, event.getName());
-				pstmt.setTimestamp(2, Timestamp.valueOf(event.getDate()));
-				pstmt.setObject(3, event.getNotifyOffset() != null ? event.getNotifyOffset() : LocalTime.of(0, 0));
-				pstmt.setString(4, event.getLocation());
-				pstmt.setString(5, event.getDescription());
-				pstmt.setObject(6, event.getCategory() != null ? event.getCategory().getId() : null);
+				bindEventData(pstmt, event, 1);
 				pstmt.addBatch();
 			}
 
@@ -468,35 +443,105 @@ public class Database
 	}
 
 	/**
-	 * Dodaje relację między wydarzeniem a kontaktem do bazy danych. Metoda
-	 * przyjmuje identyfikatory wydarzenia i kontaktu oraz wykonuje dodanie
-	 * odpowiedniego wpisu do tabeli łączącej events_contacts, tworząc powiązanie
-	 * między danym wydarzeniem, a kontaktem.
+	 * Wykonuje wsadowo zapytanie dodające lub usuwające relacje w tabeli łączącej
+	 * events_contacts. Zapytanie przyjmuje dwa parametry: identyfikator obiektu
+	 * właściciela (wydarzenia lub kontaktu) oraz identyfikator powiązanego
+	 * obiektu, dzięki czemu ta sama metoda obsługuje relacje z obu stron.
+	 *
+	 * @param  query        Zapytanie z parametrami (właściciel, powiązany obiekt).
+	 * @param  ownerId      Identyfikator wydarzenia lub kontaktu.
+	 * @param  relatedIds   Identyfikatory powiązanych obiektów.
+	 * @param  connection   Połączenie do bazy danych.
+	 * @throws SQLException Jeśli wystąpi błąd podczas wykonywania zapytania SQL.
+	 */
+	private void executeRelationshipBatch(String query, int ownerId, Collection<Integer> relatedIds, Connection connection) throws SQLException
+	{
+		if (relatedIds.isEmpty())
+			return;
+
+		try (PreparedStatement pstmt = connection.prepareStatement(query))
+		{
+			for (int relatedId : relatedIds)
+			{
+				pstmt.setInt(1, ownerId);
+				pstmt.setInt(2, relatedId);
+				pstmt.addBatch();
+			}
+
+			pstmt.executeBatch();
+		}
+	}
+
+	/**
+	 * Synchronizuje relacje obiektu w tabeli łączącej events_contacts z
+	 * zaktualizowanym zbiorem powiązań. Wyznacza różnicę zbiorów między aktualnymi
+	 * a zaktualizowanymi identyfikatorami i wykonuje jedno wsadowe usunięcie
+	 * relacji, których już nie ma, oraz jedno wsadowe dodanie nowych relacji.
+	 * Relacje niezmienione nie są modyfikowane.
+	 *
+	 * @param  ownerId      Identyfikator wydarzenia lub kontaktu.
+	 * @param  currentIds   Identyfikatory aktualnie powiązanych obiektów w bazie.
+	 * @param  updatedIds   Identyfikatory obiektów, które mają być powiązane.
+	 * @param  insertQuery  Zapytanie dodające relację.
+	 * @param  deleteQuery  Zapytanie usuwające relację.
+	 * @param  connection   Połączenie do bazy danych.
+	 * @return              Identyfikatory obiektów, których relacja została
+	 *                      usunięta lub dodana.
+	 * @throws SQLException Jeśli wystąpi błąd podczas wykonywania zapytania SQL.
+	 */
+	private Set<Integer> synchronizeRelationships(int ownerId, Set<Integer> currentIds, Set<Integer> updatedIds, String insertQuery, String deleteQuery,
+			Connection connection) throws SQLException
+	{
+		Set<Integer> removedIds = new HashSet<>(currentIds);
+		removedIds.removeAll(updatedIds);
+
+		Set<Integer> addedIds = new HashSet<>(updatedIds);
+		addedIds.removeAll(currentIds);
+
+		executeRelationshipBatch(deleteQuery, ownerId, removedIds, connection);
+		executeRelationshipBatch(insertQuery, ownerId, addedIds, connection);
+
+		removedIds.addAll(addedIds);
+		return removedIds;
+	}
+
+	/**
+	 * Oznacza wydarzenia jako zmienione w bieżącej transakcji (kolumna
+	 * change_xid) bez zmiany ich wersji. Wywoływana po zmianie relacji w tabeli
+	 * events_contacts, która sama nie przechowuje znaczników zmian, dzięki czemu
+	 * przyrostowa synchronizacja ponownie wczyta relacje tych wydarzeń.
 	 *
-	 * @param  eventId      Identyfikator wydarzenia.
-	 * @param  contactId    Identyfikator kontaktu.
+	 * @param  eventIds     Identyfikatory wydarzeń, których relacje się zmieniły.
 	 * @param  connection   Połączenie do bazy danych.
 	 * @throws SQLException Jeśli wystąpi błąd podczas wykonywania zapytania SQL.
 	 */
-	private void insertRelationships(int eventId, int contactId, Connection connection) throws SQLException
+	private void touchEvents(Collection<Integer> eventIds, Connection connection) throws SQLException
 	{
-		try (Statement stmt = connection.createStatement())
+		if (eventIds.isEmpty())
+			return;
+
+		try (PreparedStatement pstmt = connection.prepareStatement("UPDATE events SET change_xid = pg_current_xact_id() WHERE id = ANY(?)"))
 		{
-			stmt.executeUpdate(String.format("INSERT INTO events_contacts (event_id, contact_id) VALUES (%d, %d)", eventId, contactId));
+			pstmt.setArray(1, connection.createArrayOf("integer", eventIds.toArray()));
+			pstmt.executeUpdate();
 		}
 	}
 
 	/**
 	 * Aktualizuje istniejącą kategorię w bazie danych na podstawie przekazanej
-	 * zaktualizowanej kategorii. Metoda sprawdza istnienie kategorii o
-	 * identyfikatorze zaktualizowanej kategorii w bazie danych. Jeśli kategoria
-	 * istnieje, porównuje jej dane z danymi zaktualizowanej kategorii za pomocą
-	 * {@link #isCategoryDataChanged(Category, String, String)}. Jeżeli dane są
-	 * różne, dokonuje aktualizacji nazwy kategorii i koloru w bazie danych.
+	 * zaktualizowanej kategorii. Aktualizacja jest wykonywana jednym zapytaniem,
+	 * które zmienia rekord tylko wtedy, gdy jego wersja jest równa wersji
+	 * kategorii oraz gdy nazwa lub kolor faktycznie się różnią. Po aktualizacji
+	 * wersja kategorii jest zwiększana. Jeżeli żaden rekord nie został zmieniony,
+	 * przyczynę sprawdza
+	 * {@link #checkVersion(String, int, int, Object, Connection)}.
 	 *
-	 * @param  updatedCategory Zaktualizowana kategoria do zapisania w bazie danych.
-	 * @throws SQLException    Jeśli wystąpi błąd dostępu do bazy danych lub podczas
-	 *                         wykonywania zapytania SQL.
+	 * @param  updatedCategory          Zaktualizowana kategoria do zapisania w bazie
+	 *                                  danych.
+	 * @throws OptimisticLockException  Jeśli kategoria została w międzyczasie
+	 *                                  zmieniona w bazie danych.
+	 * @throws SQLException             Jeśli wystąpi błąd dostępu do bazy danych
+	 *                                  lub podczas wykonywania zapytania SQL.
 	 */
 	public void updateCategory(Category updatedCategory) throws SQLException
 	{
@@ -505,35 +550,27 @@ public class Database
 			throw new SQLException("Category: [" + updatedCategory + "] is not exist in database!");
 		}
 
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
-			String selectCategoryQuery = "SELECT * FROM categories WHERE id = ?";
-			String updateCategoryQuery = "UPDATE categories SET category_name = ?, color_hex = ? WHERE id = ?";
+			String updateCategoryQuery = "UPDATE categories SET category_name = ?, color_hex = ?, version = version + 1, change_xid = pg_current_xact_id() WHERE id = ? AND version = ? "
+					+ "AND (category_name IS DISTINCT FROM ? OR color_hex IS DISTINCT FROM ?) RETURNING version";
 
-			try (PreparedStatement selectStmt = connection.prepareStatement(selectCategoryQuery))
+			try (PreparedStatement updateStmt = connection.prepareStatement(updateCategoryQuery))
 			{
-				selectStmt.setInt(1, updatedCategory.getId());
-				ResultSet resultSet = selectStmt.executeQuery();
-
-				if (resultSet.next())
+				updateStmt.setString(1, updatedCategory.getName());
+				updateStmt.setString(2, updatedCategory.getColorHex());
+				updateStmt.setInt(3, updatedCategory.getId());
+				updateStmt.setInt(4, updatedCategory.getVersion());
+				updateStmt.setString(5, updatedCategory.getName());
+				updateStmt.setString(6, updatedCategory.getColorHex());
+
+				try (ResultSet resultSet = updateStmt.executeQuery())
 				{
-					String categoryName = resultSet.getString("category_name");
-					String colorHex = resultSet.getString("color_hex");
-
-					if (isCategoryDataChanged(updatedCategory, categoryName, colorHex))
-					{
-						try (PreparedStatement updateStmt = connection.prepareStatement(updateCategoryQuery))
-						{
-							updateStmt.setString(1, updatedCategory.getName());
-							updateStmt.setString(2, updatedCategory.getColorHex());
-							updateStmt.setInt(3, updatedCategory.getId());
-
-							updateStmt.executeUpdate();
-						}
-					}
+					if (resultSet.next())
+						updatedCategory.setVersion(resultSet.getInt("version"));
+					else
+						checkVersion("categories", updatedCategory.getId(), updatedCategory.getVersion(), updatedCategory, connection);
 				}
-
-				resultSet.close();
 			}
 		}
 		catch (SQLException e)
@@ -544,18 +581,21 @@ public class Database
 
 	/**
 	 * Aktualizuje istniejące wydarzenie w bazie danych na podstawie przekazanego
-	 * zaktualizowanego wydarzenia. Metoda sprawdza istnienie wydarzenia o
-	 * identyfikatorze zaktualizowanego wydarzenia w bazie danych. Jeśli wydarzenie
-	 * istnieje, porównuje jego dane z danymi zaktualizowanego wydarzenia za pomocą
-	 * {@link #isEventDataChanged(Event, String, LocalDateTime, LocalTime, String, String, int)}.
-	 * Jeżeli dane są różne, dokonuje aktualizacji nazwy, daty, przesunięcia
-	 * powiadomienia, lokalizacji, opisu oraz kategorii w bazie danych. Dodatkowo,
-	 * aktualizuje powiązane kontakty, usuwając stare relacje i dodając nowe, jeśli
-	 * lista kontaktów została zaktualizowana.
+	 * zaktualizowanego wydarzenia. Dane wydarzenia są aktualizowane jednym
+	 * zapytaniem, które zmienia rekord tylko wtedy, gdy jego wersja jest równa
+	 * wersji wydarzenia oraz gdy którakolwiek z kolumn faktycznie się różni. Po
+	 * aktualizacji wersja wydarzenia jest zwiększana. Dodatkowo, aktualizuje
+	 * powiązane kontakty za pomocą
+	 * {@link #synchronizeRelationships(int, Set, Set, String, String, Connection)},
+	 * usuwając i dodając wyłącznie zmienione relacje. Wszystkie zmiany są
+	 * wykonywane w jednej transakcji.
 	 *
-	 * @param  updatedEvent Zaktualizowane wydarzenie do zapisania w bazie danych.
-	 * @throws SQLException Jeśli wystąpi błąd dostępu do bazy danych lub podczas
-	 *                      wykonywania zapytania SQL.
+	 * @param  updatedEvent             Zaktualizowane wydarzenie do zapisania w
+	 *                                  bazie danych.
+	 * @throws OptimisticLockException  Jeśli wydarzenie zostało w międzyczasie
+	 *                                  zmienione w bazie danych.
+	 * @throws SQLException             Jeśli wystąpi błąd dostępu do bazy danych
+	 *                                  lub podczas wykonywania zapytania SQL.
 	 */
 	public void updateEvent(Event updatedEvent) throws SQLException
 	{
@@ -564,60 +604,58 @@ public class Database
 			throw new SQLException("Event: [" + updatedEvent + "] is not exist in the database!");
 		}
 
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
-			String selectEventQuery = "SELECT * FROM events WHERE id = ?";
-			String updateEventQuery = "UPDATE events SET event_name = ?, event_date = ?, notification_offset = ?, event_location = ?, event_description = ?, category_id = ? WHERE id = ?";
+			String updateEventQuery = "UPDATE events SET event_name = ?, event_date = ?, notification_offset = ?, event_duration = ?, event_location = ?, event_description = ?, "
+					+ "category_id = ?, version = version + 1, change_xid = pg_current_xact_id() WHERE id = ? AND version = ? AND (event_name IS DISTINCT FROM ? OR event_date IS DISTINCT FROM ? "
+					+ "OR notification_offset IS DISTINCT FROM ? OR event_duration IS DISTINCT FROM ? OR event_location IS DISTINCT FROM ? OR event_description IS DISTINCT FROM ? "
+					+ "OR category_id IS DISTINCT FROM ?) RETURNING version";
 
-			try (PreparedStatement selectStmt = connection.prepareStatement(selectEventQuery))
+			connection.setAutoCommit(false);
+
+			try (PreparedStatement updateStmt = connection.prepareStatement(updateEventQuery))
 			{
-				selectStmt.setInt(1, updatedEvent.getId());
-				ResultSet resultSet = selectStmt.executeQuery();
+				bindEventData(updateStmt, updatedEvent, 1);
+				updateStmt.setInt(8, updatedEvent.getId());
+				updateStmt.setInt(9, updatedEvent.getVersion());
+				bindEventData(updateStmt, updatedEvent, 10);
 
-				if (resultSet.next())
-				{
-					String eventName = resultSet.getString("event_name");
-					LocalDateTime eventDate = resultSet.getTimestamp("event_date").toLocalDateTime();
-					LocalTime notifyOffset = resultSet.getTime("notification_offset").toLocalTime();
-					String eventLocation = resultSet.getString("event_location");
-					String eventDescription = resultSet.getString("event_description");
-					int categoryId = resultSet.getInt("category_id");
-					List<Contact> currentContacts = getEventContacts(updatedEvent.getId(), connection);
-
-					if (isEventDataChanged(updatedEvent, eventName, eventDate, notifyOffset, eventLocation, eventDescription, categoryId))
-					{
-						try (PreparedStatement updateStmt = connection.prepareStatement(updateEventQuery))
-						{
-							updateStmt.setString(1, updatedEvent.getName());
-							updateStmt.setTimestamp(2, Timestamp.valueOf(updatedEvent.getDate()));
-							updateStmt.setObject(3, updatedEvent.getNotifyOffset() != null ? updatedEvent.getNotifyOffset() : LocalTime.of(0, 0));
-							updateStmt.setString(4, updatedEvent.getLocation());
-							updateStmt.setString(5, updatedEvent.getDescription());
-							updateStmt.setObject(6, updatedEvent.getCategory() != null ? updatedEvent.getCategory().getId() : null);
-							updateStmt.setInt(7, updatedEvent.getId());
-
-							updateStmt.executeUpdate();
-						}
-					}
+				int newVersion = updatedEvent.getVersion();
 
-					if (!currentContacts.equals(updatedEvent.getContacts()))
-					{
-						String deleteContactsQuery = "DELETE FROM events_contacts WHERE event_id = ?";
+				try (ResultSet resultSet = updateStmt.executeQuery())
+				{
+					if (resultSet.next())
+						newVersion = resultSet.getInt("version");
+					else
+						checkVersion("events", updatedEvent.getId(), updatedEvent.getVersion(), updatedEvent, connection);
+				}
 
-						try (PreparedStatement pstmt = connection.prepareStatement(deleteContactsQuery))
-						{
-							pstmt.setInt(1, updatedEvent.getId());
-							pstmt.executeUpdate();
-						}
+				Set<Integer> currentContactIds = getRelatedIds(SELECT_EVENT_CONTACT_IDS_QUERY, updatedEvent.getId(), connection);
+				Set<Integer> updatedContactIds = new HashSet<>();
 
-						for (Contact contact : updatedEvent.getContacts())
-						{
-							insertRelationships(updatedEvent.getId(), contact.getId(), connection);
-						}
-					}
+				for (Contact contact : updatedEvent.getContacts())
+				{
+					if (contact.getId() != 0)
+						updatedContactIds.add(contact.getId());
 				}
 
-				resultSet.close();
+				Set<Integer> changedContactIds = synchronizeRelationships(updatedEvent.getId(), currentContactIds, updatedContactIds,
+						INSERT_EVENT_CONTACTS_QUERY, DELETE_EVENT_CONTACTS_QUERY, connection);
+
+				if (!changedContactIds.isEmpty() && newVersion == updatedEvent.getVersion())
+					touchEvents(Set.of(updatedEvent.getId()), connection);
+
+				connection.commit();
+				updatedEvent.setVersion(newVersion);
+			}
+			catch (SQLException ex)
+			{
+				connection.rollback();
+				throw ex;
+			}
+			finally
+			{
+				connection.setAutoCommit(true);
 			}
 		}
 		catch (SQLException e)
@@ -628,17 +666,21 @@ public class Database
 
 	/**
 	 * Aktualizuje istniejący kontakt w bazie danych na podstawie przekazanego
-	 * zaktualizowanego kontaktu. Metoda sprawdza istnienie kontaktu o
-	 * identyfikatorze zaktualizowanego kontaktu w bazie danych. Jeśli kontakt
-	 * istnieje, porównuje jego dane z danymi zaktualizowanego kontaktu za pomocą
-	 * {@link #isContactDataChanged(Contact, String, String, String)}. Jeżeli dane
-	 * są różne, dokonuje aktualizacji imienia, nazwiska oraz numeru telefonu w
-	 * bazie danych. Dodatkowo, aktualizuje powiązane wydarzenia, usuwając stare
-	 * relacje i dodając nowe, jeśli lista wydarzeń została zaktualizowana.
+	 * zaktualizowanego kontaktu. Dane kontaktu są aktualizowane jednym
+	 * zapytaniem, które zmienia rekord tylko wtedy, gdy jego wersja jest równa
+	 * wersji kontaktu oraz gdy imię, nazwisko lub numer telefonu faktycznie się
+	 * różnią. Po aktualizacji wersja kontaktu jest zwiększana. Dodatkowo,
+	 * aktualizuje powiązane wydarzenia za pomocą
+	 * {@link #synchronizeRelationships(int, Set, Set, String, String, Connection)},
+	 * usuwając i dodając wyłącznie zmienione relacje. Wszystkie zmiany są
+	 * wykonywane w jednej transakcji.
 	 *
-	 * @param  updatedContact Zaktualizowany kontakt do zapisania w bazie danych.
-	 * @throws SQLException   Jeśli wystąpi błąd dostępu do bazy danych lub podczas
-	 *                        wykonywania zapytania SQL.
+	 * @param  updatedContact           Zaktualizowany kontakt do zapisania w bazie
+	 *                                  danych.
+	 * @throws OptimisticLockException  Jeśli kontakt został w międzyczasie
+	 *                                  zmieniony w bazie danych.
+	 * @throws SQLException             Jeśli wystąpi błąd dostępu do bazy danych
+	 *                                  lub podczas wykonywania zapytania SQL.
 	 */
 	public void updateContact(Contact updatedContact) throws SQLException
 	{
@@ -647,54 +689,57 @@ public class Database
 			throw new SQLException("Contact: [" + updatedContact + "] is not exist in database!");
 		}
 
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
-			String selectContactQuery = "SELECT * FROM contacts WHERE id = ?";
-			String updateContactQuery = "UPDATE contacts SET first_name = ?, last_name = ?, phone_number = ? WHERE id = ?";
+			String updateContactQuery = "UPDATE contacts SET first_name = ?, last_name = ?, phone_number = ?, version = version + 1, change_xid = pg_current_xact_id() WHERE id = ? AND version = ? "
+					+ "AND (first_name IS DISTINCT FROM ? OR last_name IS DISTINCT FROM ? OR phone_number IS DISTINCT FROM ?) RETURNING version";
 
-			try (PreparedStatement selectStmt = connection.prepareStatement(selectContactQuery))
-			{
-				selectStmt.setInt(1, updatedContact.getId());
-				ResultSet resultSet = selectStmt.executeQuery();
+			connection.setAutoCommit(false);
 
-				if (resultSet.next())
+			try (PreparedStatement updateStmt = connection.prepareStatement(updateContactQuery))
+			{
+				updateStmt.setString(1, updatedContact.getFirstName());
+				updateStmt.setString(2, updatedContact.getLastName());
+				updateStmt.setString(3, updatedContact.getPhoneNumber());
+				updateStmt.setInt(4, updatedContact.getId());
+				updateStmt.setInt(5, updatedContact.getVersion());
+				updateStmt.setString(6, updatedContact.getFirstName());
+				updateStmt.setString(7, updatedContact.getLastName());
+				updateStmt.setString(8, updatedContact.getPhoneNumber());
+
+				int newVersion = updatedContact.getVersion();
+
+				try (ResultSet resultSet = updateStmt.executeQuery())
 				{
-					String firstName = resultSet.getString("first_name");
-					String lastName = resultSet.getString("last_name");
-					String phoneNumber = resultSet.getString("phone_number");
-					List<Event> currentEvents = getContactEvents(updatedContact.getId(), connection);
-
-					if (isContactDataChanged(updatedContact, firstName, lastName, phoneNumber))
-					{
-						try (PreparedStatement updateStmt = connection.prepareStatement(updateContactQuery))
-						{
-							updateStmt.setString(1, updatedContact.getFirstName());
-							updateStmt.setString(2, updatedContact.getLastName());
-							updateStmt.setString(3, updatedContact.getPhoneNumber());
-							updateStmt.setInt(4, updatedContact.getId());
-
-							updateStmt.executeUpdate();
-						}
-					}
-
-					if (!currentEvents.equals(updatedContact.getEvents()))
-					{
-						String deleteEventsQuery = "DELETE FROM events_contacts WHERE contact_id = ?";
+					if (resultSet.next())
+						newVersion = resultSet.getInt("version");
+					else
+						checkVersion("contacts", updatedContact.getId(), updatedContact.getVersion(), updatedContact, connection);
+				}
 
-						try (PreparedStatement pstmt = connection.prepareStatement(deleteEventsQuery))
-						{
-							pstmt.setInt(1, updatedContact.getId());
-							pstmt.executeUpdate();
-						}
+				Set<Integer> currentEventIds = getRelatedIds(SELECT_CONTACT_EVENT_IDS_QUERY, updatedContact.getId(), connection);
+				Set<Integer> updatedEventIds = new HashSet<>();
 
-						for (Event event : updatedContact.getEvents())
-						{
-							insertRelationships(event.getId(), updatedContact.getId(), connection);
-						}
-					}
+				for (Event event : updatedContact.getEvents())
+				{
+					if (event.getId() != 0)
+						updatedEventIds.add(event.getId());
 				}
 
-				resultSet.close();
+				touchEvents(synchronizeRelationships(updatedContact.getId(), currentEventIds, updatedEventIds, INSERT_CONTACT_EVENTS_QUERY,
+						DELETE_CONTACT_EVENTS_QUERY, connection), connection);
+
+				connection.commit();
+				updatedContact.setVersion(newVersion);
+			}
+			catch (SQLException ex)
+			{
+				connection.rollback();
+				throw ex;
+			}
+			finally
+			{
+				connection.setAutoCommit(true);
 			}
 		}
 		catch (SQLException e)
@@ -703,6 +748,73 @@ public class Database
 		}
 	}
 
+	/**
+	 * Ustawia w zapytaniu dane wydarzenia (nazwę, datę, przesunięcie
+	 * powiadomienia, czas trwania, lokalizację, opis i identyfikator kategorii)
+	 * na siedmiu kolejnych parametrach, zaczynając od podanego indeksu.
+	 *
+	 * @param  pstmt        Zapytanie, w którym ustawiane są parametry.
+	 * @param  event        Wydarzenie, którego dane są ustawiane.
+	 * @param  startIndex   Indeks pierwszego parametru.
+	 * @throws SQLException Jeśli nie udało się ustawić parametrów.
+	 */
+	private void bindEventData(PreparedStatement pstmt, Event event, int startIndex) throws SQLException
+	{
+		pstmt.setString(startIndex, event.getName());
+		pstmt.setTimestamp(startIndex + 1, Timestamp.valueOf(event.getDate()));
+		pstmt.setObject(startIndex + 2, event.getNotifyOffset() != null ? event.getNotifyOffset() : LocalTime.of(0, 0));
+		pstmt.setInt(startIndex + 3, event.getDuration() != null ? Math.toIntExact(event.getDuration().toMinutes()) : 0);
+		pstmt.setString(startIndex + 4, event.getLocation());
+		pstmt.setString(startIndex + 5, event.getDescription());
+
+		if (event.getCategory() != null)
+			pstmt.setInt(startIndex + 6, event.getCategory().getId());
+		else
+			pstmt.setNull(startIndex + 6, Types.INTEGER);
+	}
+
+	/**
+	 * Sprawdza przyczynę braku zmian po warunkowej aktualizacji rekordu. Jeżeli
+	 * wersja rekordu w bazie danych jest równa oczekiwanej, dane były identyczne i
+	 * aktualizacja nie była potrzebna. W przeciwnym razie rekord został zmieniony
+	 * przez inną instancję aplikacji i zgłaszany jest konflikt. To dodatkowe
+	 * zapytanie jest wykonywane wyłącznie, gdy warunkowa aktualizacja nie
+	 * zmieniła żadnego rekordu.
+	 *
+	 * @param  tableName               Nazwa tabeli rekordu.
+	 * @param  id                      Identyfikator rekordu.
+	 * @param  expectedVersion         Oczekiwana wersja rekordu.
+	 * @param  entity                  Aktualizowany obiekt, używany w komunikacie.
+	 * @param  connection              Połączenie z bazą danych.
+	 * @throws OptimisticLockException Jeśli wersja rekordu jest różna od
+	 *                                 oczekiwanej.
+	 * @throws SQLException            Jeśli rekord nie istnieje lub wystąpi błąd
+	 *                                 podczas wykonywania zapytania SQL.
+	 */
+	private void checkVersion(String tableName, int id, int expectedVersion, Object entity, Connection connection) throws SQLException
+	{
+		try (PreparedStatement pstmt = connection.prepareStatement("SELECT version FROM " + tableName + " WHERE id = ?"))
+		{
+			pstmt.setInt(1, id);
+
+			try (ResultSet resultSet = pstmt.executeQuery())
+			{
+				if (!resultSet.next())
+				{
+					throw new SQLException("Record: [" + entity + "] is not exist in database!");
+				}
+
+				int actualVersion = resultSet.getInt("version");
+
+				if (actualVersion != expectedVersion)
+				{
+					throw new OptimisticLockException("Record: [" + entity + "] was modified by another user. Reload the data and try again.",
+							expectedVersion, actualVersion);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Dezaktywuje kategorię w bazie danych, ustawiając atrybut is_active na false
 	 * dla kategorii o podanym identyfikatorze. Metoda nie usuwa fizycznie rekordu,
@@ -715,9 +827,9 @@ public class Database
 	 */
 	public void deleteCategory(Category category) throws SQLException
 	{
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
-			String updateCategoryQuery = "UPDATE categories SET is_active = false WHERE id = ?";
+			String updateCategoryQuery = "UPDATE categories SET is_active = false, version = version + 1, change_xid = pg_current_xact_id() WHERE id = ?";
 
 			try (PreparedStatement pstmt = connection.prepareStatement(updateCategoryQuery))
 			{
@@ -743,9 +855,9 @@ public class Database
 	 */
 	public void deleteEvent(Event event) throws SQLException
 	{
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
-			String updateEventQuery = "UPDATE events SET is_active = false WHERE id = ?";
+			String updateEventQuery = "UPDATE events SET is_active = false, version = version + 1, change_xid = pg_current_xact_id() WHERE id = ?";
 
 			try (PreparedStatement pstmt = connection.prepareStatement(updateEventQuery))
 			{
@@ -771,9 +883,9 @@ public class Database
 	 */
 	public void deleteContact(Contact contact) throws SQLException
 	{
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
-			String updateContactQuery = "UPDATE contacts SET is_active = false WHERE id = ?";
+			String updateContactQuery = "UPDATE contacts SET is_active = false, version = version + 1, change_xid = pg_current_xact_id() WHERE id = ?";
 
 			try (PreparedStatement pstmt = connection.prepareStatement(updateContactQuery))
 			{
@@ -787,10 +899,78 @@ public class Database
 		}
 	}
 
+	/**
+	 * Dezaktywuje w bazie danych kategorie, wydarzenia i kontakty o podanych
+	 * identyfikatorach, np. usunięte bez połączenia z bazą danych. Dla każdej
+	 * tabeli wykonywane jest jedno zapytanie z tablicą identyfikatorów, a
+	 * wszystkie zmiany są wykonywane w jednej transakcji.
+	 *
+	 * @param  categoryIds  Identyfikatory kategorii do dezaktywacji.
+	 * @param  eventIds     Identyfikatory wydarzeń do dezaktywacji.
+	 * @param  contactIds   Identyfikatory kontaktów do dezaktywacji.
+	 * @throws SQLException Jeśli wystąpi błąd dostępu do bazy danych lub podczas
+	 *                      wykonywania zapytania SQL.
+	 */
+	public void deleteAll(Collection<Integer> categoryIds, Collection<Integer> eventIds, Collection<Integer> contactIds) throws SQLException
+	{
+		try (Connection connection = connectionPool.getConnection())
+		{
+			connection.setAutoCommit(false);
+
+			try
+			{
+				deactivate("categories", categoryIds, connection);
+				deactivate("events", eventIds, connection);
+				deactivate("contacts", contactIds, connection);
+
+				connection.commit();
+			}
+			catch (SQLException ex)
+			{
+				connection.rollback();
+				throw ex;
+			}
+			finally
+			{
+				connection.setAutoCommit(true);
+			}
+		}
+		catch (SQLException e)
+		{
+			throw e;
+		}
+	}
+
+	/**
+	 * Dezaktywuje aktywne rekordy tabeli o podanych identyfikatorach jednym
+	 * zapytaniem.
+	 *
+	 * @param  tableName    Nazwa tabeli.
+	 * @param  ids          Identyfikatory rekordów.
+	 * @param  connection   Połączenie z bazą danych.
+	 * @throws SQLException Jeśli wystąpi błąd podczas wykonywania zapytania SQL.
+	 */
+	private void deactivate(String tableName, Collection<Integer> ids, Connection connection) throws SQLException
+	{
+		if (ids.isEmpty())
+			return;
+
+		String query = "UPDATE " + tableName + " SET is_active = false, version = version + 1, change_xid = pg_current_xact_id() "
+				+ "WHERE id = ANY(?) AND is_active = true";
+
+		try (PreparedStatement pstmt = connection.prepareStatement(query))
+		{
+			pstmt.setArray(1, connection.createArrayOf("integer", ids.toArray()));
+			pstmt.executeUpdate();
+		}
+	}
+
 	/**
 	 * Usuwa z bazy danych wszystkie wydarzenia, których data jest starsza niż
 	 * podana docelowa data. Dodatkowo, usuwa powiązania z tabeli łączącej
-	 * events_contacts dla usuniętych wydarzeń. Metoda wykonuje te operacje w jednej
+	 * events_contacts dla usuniętych wydarzeń, a ich identyfikatory zapisuje w
+	 * tabeli event_tombstones, aby przyrostowa synchronizacja usunęła je również z
+	 * lokalnych danych innych instancji. Metoda wykonuje te operacje w jednej
 	 * transakcji, co zapewnia spójność danych.
 	 *
 	 * @param  targetDate   Docelowa data, wydarzenia wcześniejsze niż ta zostaną
@@ -800,18 +980,23 @@ public class Database
 	 */
 	public void deleteOldEvents(LocalDateTime targetDate) throws SQLException
 	{
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
 			String deleteEventsQuery = "DELETE FROM events WHERE event_date < ?";
 			String deleteEventsContactsQuery = "DELETE FROM events_contacts WHERE event_id IN (SELECT id FROM events WHERE event_date < ?)";
+			String insertTombstonesQuery = "INSERT INTO event_tombstones (id) SELECT id FROM events WHERE event_date < ?";
 
 			try (PreparedStatement deleteEventsStmt = connection.prepareStatement(deleteEventsQuery);
-					PreparedStatement deleteEventsContactsStmt = connection.prepareStatement(deleteEventsContactsQuery))
+					PreparedStatement deleteEventsContactsStmt = connection.prepareStatement(deleteEventsContactsQuery);
+					PreparedStatement insertTombstonesStmt = connection.prepareStatement(insertTombstonesQuery))
 			{
 				connection.setAutoCommit(false);
 
 				try
 				{
+					insertTombstonesStmt.setTimestamp(1, Timestamp.valueOf(targetDate));
+					insertTombstonesStmt.executeUpdate();
+
 					deleteEventsContactsStmt.setTimestamp(1, Timestamp.valueOf(targetDate));
 					deleteEventsContactsStmt.executeUpdate();
 
@@ -839,32 +1024,56 @@ public class Database
 
 	/**
 	 * Wybiera i wyświetla aktywne rekordy z podanej tabeli w bazie danych.
+	 * Rekordy są odczytywane strumieniowo przez kursor po stronie serwera i
+	 * wypisywane bezpośrednio na standardowe wyjście w miarę ich pobierania.
 	 *
 	 * @param tableName Nazwa tabeli, z której mają być pobrane rekordy.
 	 */
 	public void select(String tableName)
 	{
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
 			String selectQuery = "SELECT * FROM " + tableName + " WHERE is_active = true";
-			try (PreparedStatement pstmt = connection.prepareStatement(selectQuery))
-			{
-				ResultSet resultSet = pstmt.executeQuery();
 
+			connection.setAutoCommit(false);
+
+			try (PreparedStatement pstmt = prepareStreamingStatement(selectQuery, connection); ResultSet resultSet = pstmt.executeQuery())
+			{
 				ResultSetMetaData metaData = resultSet.getMetaData();
 				int columnCount = metaData.getColumnCount();
+				String[] columnNames = new String[columnCount];
+
+				for (int i = 0; i < columnCount; i++)
+				{
+					columnNames[i] = metaData.getColumnName(i + 1);
+				}
+
+				PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
 
 				while (resultSet.next())
 				{
-					StringBuilder row = new StringBuilder();
-					for (int i = 1; i <= columnCount; i++)
+					for (int i = 0; i < columnCount; i++)
 					{
-						row.append(metaData.getColumnName(i)).append(": ").append(resultSet.getString(i)).append("\t");
+						out.print(columnNames[i]);
+						out.print(": ");
+						out.print(resultSet.getString(i + 1));
+						out.print('\t');
 					}
-					System.out.println(row.toString());
+
+					out.println();
 				}
 
-				resultSet.close();
+				out.flush();
+				connection.commit();
+			}
+			catch (SQLException ex)
+			{
+				connection.rollback();
+				throw ex;
+			}
+			finally
+			{
+				connection.setAutoCommit(true);
 			}
 		}
 		catch (SQLException e)
@@ -874,222 +1083,1010 @@ public class Database
 	}
 
 	/**
-	 * Synchronizuje lokalne dane z bazą danych, uzupełniając listy kategorii,
-	 * wydarzeń i kontaktów. Przed główną synchronizacją sprawdza czy przekazane
-	 * listy zawierają dane, jeżeli tak to sprawdza je w funkcji
-	 * {@link #checkXMLData(List, List, List)} i następnie analizuje czy te dane
-	 * należy wstawić lub zaktualizować, na koniec czyści te listy i wykonuje
-	 * synchronizację między lokalnymi danymi, a bazą danych.
+	 * Dodaje do bazy danych wiele nowych kategorii, wydarzeń i kontaktów (np.
+	 * zaimportowanych z pliku) w jednej transakcji, wsadowo, za pomocą
+	 * {@link #reconcileLocalData(List, List, List, boolean, Connection)}.
+	 * Obiekty otrzymują identyfikatory wygenerowane przez bazę danych, a
+	 * relacje wydarzeń z kontaktami są dodawane jednym wsadem. Istniejące
+	 * kontakty powiązane z nowymi wydarzeniami należy przekazać razem z nowymi
+	 * kontaktami; nie są one aktualizowane, o ile nie są oznaczone jako
+	 * zmienione, a oznaczony kontakt, którego pola się nie zmieniły, nie jest
+	 * traktowany jako konflikt wersji, więc jego relacje z nowymi wydarzeniami
+	 * są zapisywane. Jeśli transakcja się nie powiedzie, identyfikatory nowych
+	 * obiektów pozostają równe 0.
 	 *
-	 * @param  categories   Lista kategorii, która zostanie zaktualizowana danymi z
-	 *                      bazy.
-	 * @param  events       Lista wydarzeń, która zostanie zaktualizowana danymi z
+	 * @param  categories   Nowe kategorie.
+	 * @param  events       Nowe wydarzenia.
+	 * @param  contacts     Nowe kontakty i istniejące kontakty powiązane z nowymi
+	 *                      wydarzeniami.
+	 * @throws SQLException Jeśli wystąpi błąd dostępu do bazy danych lub podczas
+	 *                      wykonywania zapytania SQL.
+	 */
+	public void insertAll(List<Category> categories, List<Event> events, List<Contact> contacts) throws SQLException
+	{
+		try (Connection connection = connectionPool.getConnection())
+		{
+			reconcileLocalData(categories, events, contacts, true, connection);
+		}
+		catch (SQLException e)
+		{
+			throw e;
+		}
+	}
+
+	/**
+	 * Synchronizuje lokalne dane z bazą danych, uzupełniając listy kategorii,
+	 * wydarzeń i kontaktów. Przed główną synchronizacją uzgadnia dane z
+	 * przekazanych list z bazą danych w jednej transakcji za pomocą
+	 * {@link #reconcileLocalData(List, List, List, boolean, Connection)}. Jeżeli
+	 * podano znacznik poprzedniej synchronizacji (watermark większy od 0),
+	 * pobiera wyłącznie rekordy zmienione od niej, razem z rekordami usuniętymi, i
+	 * nakłada je na przekazane listy w
+	 * {@link #loadChanges(List, List, List, long, Connection)}. W przeciwnym
+	 * razie czyści listy i wczytuje wszystkie aktywne rekordy w
+	 * {@link #loadAll(List, List, List, Connection)}. Rekordy są odczytywane
+	 * strumieniowo w porcjach o rozmiarze ustawionym przez
+	 * {@link #setFetchSize(int)} i przetwarzane w miarę ich pobierania.
+	 *
+	 * @param  categories   Lista kategorii, która zostanie zaktualizowana danymi z
+	 *                      bazy.
+	 * @param  events       Lista wydarzeń, która zostanie zaktualizowana danymi z
 	 *                      bazy.
 	 * @param  contacts     Lista kontaktów, która zostanie zaktualizowana danymi z
 	 *                      bazy.
+	 * @param  watermark    Znacznik synchronizacji, po której powstały przekazane
+	 *                      listy, lub 0, jeśli listy trzeba wczytać w całości.
+	 * @return              Znacznik tej synchronizacji, który należy przekazać
+	 *                      przy następnej synchronizacji.
 	 * @throws SQLException Jeśli wystąpi błąd dostępu do bazy danych lub podczas
 	 *                      wykonywania zapytania SQL.
 	 */
-	public void synchronize(List<Category> categories, List<Event> events, List<Contact> contacts) throws SQLException
+	public long synchronize(List<Category> categories, List<Event> events, List<Contact> contacts, long watermark) throws SQLException
 	{
-		try (Connection connection = DriverManager.getConnection(url, user, password))
+		try (Connection connection = connectionPool.getConnection())
 		{
-			checkXMLData(categories, events, contacts);
+			reconcileLocalData(categories, events, contacts, watermark > 0, connection);
 
-			categories.clear();
-			events.clear();
-			contacts.clear();
+			// kursory po stronie serwera (fetch size) działają tylko w transakcji
+			connection.setAutoCommit(false);
 
-			String selectCategoriesQuery = "SELECT * FROM categories WHERE is_active = true";
-			String selectEventsQuery = "SELECT * FROM events WHERE is_active = true";
-			String selectContactsQuery = "SELECT * FROM contacts WHERE is_active = true";
-			String selectEventsContactsQuery = "SELECT * FROM events_contacts";
-
-			try (PreparedStatement pstmtCategories = connection.prepareStatement(selectCategoriesQuery))
+			try
 			{
-				ResultSet rsCategories = pstmtCategories.executeQuery();
+				long newWatermark;
 
-				while (rsCategories.next())
+				if (watermark > 0)
 				{
-					Category category = new Category();
-					category.setId(rsCategories.getInt("id"));
-					category.setName(rsCategories.getString("category_name"));
-					category.setColorHex(rsCategories.getString("color_hex"));
-					categories.add(category);
+					newWatermark = loadChanges(categories, events, contacts, watermark, connection);
 				}
+				else
+				{
+					categories.clear();
+					events.clear();
+					contacts.clear();
 
-				rsCategories.close();
+					newWatermark = loadAll(categories, events, contacts, connection);
+				}
+
+				connection.commit();
+				return newWatermark;
+			}
+			catch (SQLException ex)
+			{
+				connection.rollback();
+				throw ex;
+			}
+			finally
+			{
+				connection.setAutoCommit(true);
 			}
+		}
+		catch (SQLException e)
+		{
+			throw e;
+		}
+	}
 
-			try (PreparedStatement pstmtEvents = connection.prepareStatement(selectEventsQuery))
+	/**
+	 * Wczytuje wszystkie aktywne kategorie, wydarzenia i kontakty oraz relacje
+	 * między nimi do pustych list. Wczytane obiekty są indeksowane po
+	 * identyfikatorach w {@link IntHashMap}, dzięki czemu przypisanie kategorii
+	 * oraz relacji z tabeli events_contacts odbywa się w czasie liniowym względem
+	 * liczby rekordów.
+	 *
+	 * @param  categories   Pusta lista, do której zostaną dodane kategorie.
+	 * @param  events       Pusta lista, do której zostaną dodane wydarzenia.
+	 * @param  contacts     Pusta lista, do której zostaną dodane kontakty.
+	 * @param  connection   Połączenie z bazą danych.
+	 * @return              Znacznik synchronizacji odczytany przed wczytaniem
+	 *                      rekordów ({@link #readTransactionWatermark(Connection)}).
+	 * @throws SQLException Jeśli wystąpi błąd podczas wykonywania zapytania SQL.
+	 */
+	private long loadAll(List<Category> categories, List<Event> events, List<Contact> contacts, Connection connection) throws SQLException
+	{
+		String selectCategoriesQuery = "SELECT * FROM categories WHERE is_active = true";
+		String selectEventsQuery = "SELECT * FROM events WHERE is_active = true";
+		String selectContactsQuery = "SELECT * FROM contacts WHERE is_active = true";
+		String selectEventsContactsQuery = "SELECT * FROM events_contacts";
+
+		long watermark = readTransactionWatermark(connection);
+
+		IntHashMap<Category> categoriesById = new IntHashMap<>();
+		IntHashMap<Event> eventsById = new IntHashMap<>();
+		IntHashMap<Contact> contactsById = new IntHashMap<>();
+		LongHashSet links = new LongHashSet();
+
+		try (PreparedStatement pstmtCategories = prepareStreamingStatement(selectCategoriesQuery, connection))
+		{
+			ResultSet rsCategories = pstmtCategories.executeQuery();
+
+			while (rsCategories.next())
 			{
-				ResultSet rsEvents = pstmtEvents.executeQuery();
+				Category category = new Category();
+				readCategory(rsCategories, category);
+				categories.add(category);
+				categoriesById.put(category.getId(), category);
+			}
 
-				while (rsEvents.next())
-				{
-					Event event = new Event();
-					event.setId(rsEvents.getInt("id"));
-					event.setName(rsEvents.getString("event_name"));
-					event.setDate(rsEvents.getTimestamp("event_date").toLocalDateTime());
-					event.setNotifyOffset(rsEvents.getTime("notification_offset").toLocalTime());
-					event.setLocation(rsEvents.getString("event_location"));
-					event.setDescription(rsEvents.getString("event_description"));
-
-					int categoryId = rsEvents.getInt("category_id");
-					Category category = categories.stream().filter(c -> c.getId() == categoryId).findFirst().orElse(null);
-					event.setCategory(category);
-
-					events.add(event);
-				}
+			rsCategories.close();
+		}
+
+		try (PreparedStatement pstmtEvents = prepareStreamingStatement(selectEventsQuery, connection))
+		{
+			ResultSet rsEvents = pstmtEvents.executeQuery();
 
-				rsEvents.close();
+			while (rsEvents.next())
+			{
+				Event event = new Event();
+				readEvent(rsEvents, event, categoriesById);
+				events.add(event);
+				eventsById.put(event.getId(), event);
 			}
 
-			try (PreparedStatement pstmtContacts = connection.prepareStatement(selectContactsQuery))
+			rsEvents.close();
+		}
+
+		try (PreparedStatement pstmtContacts = prepareStreamingStatement(selectContactsQuery, connection))
+		{
+			ResultSet rsContacts = pstmtContacts.executeQuery();
+
+			while (rsContacts.next())
 			{
-				ResultSet rsContacts = pstmtContacts.executeQuery();
+				Contact contact = new Contact();
+				readContact(rsContacts, contact);
+				contacts.add(contact);
+				contactsById.put(contact.getId(), contact);
+			}
+
+			rsContacts.close();
+		}
+
+		try (PreparedStatement pstmtEventsContacts = prepareStreamingStatement(selectEventsContactsQuery, connection))
+		{
+			ResultSet rsEventsContacts = pstmtEventsContacts.executeQuery();
+
+			while (rsEventsContacts.next())
+			{
+				linkLoaded(rsEventsContacts, eventsById, contactsById, links);
+			}
+
+			rsEventsContacts.close();
+		}
+
+		return watermark;
+	}
+
+	/**
+	 * Odczytuje znacznik synchronizacji: identyfikator najstarszej transakcji,
+	 * która w chwili odczytu mogła jeszcze nie być zatwierdzona
+	 * ({@code pg_snapshot_xmin(pg_current_snapshot())}). Zmiany wszystkich
+	 * wcześniejszych transakcji są już widoczne dla kolejnych zapytań, więc
+	 * następna synchronizacja musi wczytać tylko rekordy zapisane przez
+	 * transakcje o identyfikatorze nie mniejszym niż znacznik. W przeciwieństwie
+	 * do numeru z sekwencji, nadawanego przy zapisie, a nie przy zatwierdzeniu,
+	 * znacznik nie pomija zmian transakcji zatwierdzonych w innej kolejności,
+	 * niż się rozpoczęły. Musi być odczytany przed zapytaniami o rekordy.
+	 *
+	 * @param  connection   Połączenie z bazą danych.
+	 * @return              Znacznik synchronizacji.
+	 * @throws SQLException Jeśli wystąpi błąd podczas wykonywania zapytania SQL.
+	 */
+	private long readTransactionWatermark(Connection connection) throws SQLException
+	{
+		try (PreparedStatement pstmt = connection.prepareStatement("SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint");
+				ResultSet resultSet = pstmt.executeQuery())
+		{
+			resultSet.next();
+			return resultSet.getLong(1);
+		}
+	}
+
+	/**
+	 * Nakłada na lokalne listy zmiany zapisane w bazie danych przez transakcje,
+	 * które mogły nie być jeszcze zatwierdzone przy poprzedniej synchronizacji
+	 * (change_xid nie mniejszy niż podany znacznik). Część rekordów może zostać
+	 * wczytana ponownie, co nie zmienia wyniku. Zmienione aktywne rekordy aktualizują istniejące obiekty o tym
+	 * samym identyfikatorze lub są dodawane jako nowe, a rekordy dezaktywowane
+	 * (is_active = false) oraz wydarzenia z tabeli event_tombstones są usuwane z
+	 * list razem z ich relacjami. Relacje events_contacts są wczytywane ponownie
+	 * tylko dla zmienionych wydarzeń. Koszt synchronizacji zależy od liczby
+	 * zmian, a nie od liczby rekordów w tabelach.
+	 *
+	 * @param  categories   Lista kategorii do zaktualizowania.
+	 * @param  events       Lista wydarzeń do zaktualizowania.
+	 * @param  contacts     Lista kontaktów do zaktualizowania.
+	 * @param  watermark    Znacznik synchronizacji, po której powstały listy.
+	 * @param  connection   Połączenie z bazą danych.
+	 * @return              Znacznik synchronizacji odczytany przed wczytaniem
+	 *                      zmian ({@link #readTransactionWatermark(Connection)}).
+	 * @throws SQLException Jeśli wystąpi błąd podczas wykonywania zapytania SQL.
+	 */
+	private long loadChanges(List<Category> categories, List<Event> events, List<Contact> contacts, long watermark, Connection connection)
+			throws SQLException
+	{
+		long newWatermark = Math.max(watermark, readTransactionWatermark(connection));
+
+		IntHashMap<Category> categoriesById = new IntHashMap<>(categories.size());
+		IntHashMap<Event> eventsById = new IntHashMap<>(events.size());
+		IntHashMap<Contact> contactsById = new IntHashMap<>(contacts.size());
+
+		categories.forEach(category -> categoriesById.put(category.getId(), category));
+		events.forEach(event -> eventsById.put(event.getId(), event));
+		contacts.forEach(contact -> contactsById.put(contact.getId(), contact));
+
+		Set<Category> removedCategories = new HashSet<>();
+		Set<Event> removedEvents = new HashSet<>();
+		Set<Contact> removedContacts = new HashSet<>();
+		List<Event> changedEvents = new ArrayList<>();
+
+		try (PreparedStatement pstmt = prepareStreamingStatement("SELECT * FROM categories WHERE change_xid >= ?::text::xid8", connection))
+		{
+			pstmt.setLong(1, watermark);
 
-				while (rsContacts.next())
+			try (ResultSet resultSet = pstmt.executeQuery())
+			{
+				while (resultSet.next())
 				{
-					Contact contact = new Contact();
-					contact.setId(rsContacts.getInt("id"));
-					contact.setFirstName(rsContacts.getString("first_name"));
-					contact.setLastName(rsContacts.getString("last_name"));
-					contact.setPhoneNumber(rsContacts.getString("phone_number"));
-					contacts.add(contact);
+					int id = resultSet.getInt("id");
+					Category category = categoriesById.get(id);
+
+					if (!resultSet.getBoolean("is_active"))
+					{
+						if (category != null)
+							removedCategories.add(categoriesById.remove(id));
+
+						continue;
+					}
+
+					if (category == null)
+					{
+						category = new Category();
+						categories.add(category);
+						categoriesById.put(id, category);
+					}
+
+					readCategory(resultSet, category);
 				}
+			}
+		}
+
+		try (PreparedStatement pstmt = prepareStreamingStatement("SELECT * FROM events WHERE change_xid >= ?::text::xid8", connection))
+		{
+			pstmt.setLong(1, watermark);
+
+			try (ResultSet resultSet = pstmt.executeQuery())
+			{
+				while (resultSet.next())
+				{
+					int id = resultSet.getInt("id");
+					Event event = eventsById.get(id);
+
+					if (!resultSet.getBoolean("is_active"))
+					{
+						if (event != null)
+							removedEvents.add(eventsById.remove(id));
+
+						continue;
+					}
 
-				rsContacts.close();
+					if (event == null)
+					{
+						event = new Event();
+						events.add(event);
+						eventsById.put(id, event);
+					}
+
+					readEvent(resultSet, event, categoriesById);
+					changedEvents.add(event);
+				}
 			}
+		}
+
+		try (PreparedStatement pstmt = prepareStreamingStatement("SELECT id FROM event_tombstones WHERE change_xid >= ?::text::xid8", connection))
+		{
+			pstmt.setLong(1, watermark);
 
-			try (PreparedStatement pstmtEventsContacts = connection.prepareStatement(selectEventsContactsQuery))
+			try (ResultSet resultSet = pstmt.executeQuery())
 			{
-				ResultSet rsEventsContacts = pstmtEventsContacts.executeQuery();
+				while (resultSet.next())
+				{
+					Event event = eventsById.remove(resultSet.getInt("id"));
 
-				while (rsEventsContacts.next())
+					if (event != null)
+						removedEvents.add(event);
+				}
+			}
+		}
+
+		try (PreparedStatement pstmt = prepareStreamingStatement("SELECT * FROM contacts WHERE change_xid >= ?::text::xid8", connection))
+		{
+			pstmt.setLong(1, watermark);
+
+			try (ResultSet resultSet = pstmt.executeQuery())
+			{
+				while (resultSet.next())
 				{
-					int eventId = rsEventsContacts.getInt("event_id");
-					int contactId = rsEventsContacts.getInt("contact_id");
+					int id = resultSet.getInt("id");
+					Contact contact = contactsById.get(id);
 
-					Event event = events.stream().filter(e -> e.getId() == eventId).findFirst().orElse(null);
-					Contact contact = contacts.stream().filter(c -> c.getId() == contactId).findFirst().orElse(null);
+					if (!resultSet.getBoolean("is_active"))
+					{
+						if (contact != null)
+							removedContacts.add(contactsById.remove(id));
 
-					if (event != null && contact != null)
+						continue;
+					}
+
+					if (contact == null)
 					{
-						event.addContact(contact);
-						contact.addEvent(event);
+						contact = new Contact();
+						contacts.add(contact);
+						contactsById.put(id, contact);
 					}
+
+					readContact(resultSet, contact);
 				}
+			}
+		}
 
-				rsEventsContacts.close();
+		if (!removedCategories.isEmpty())
+		{
+			for (Event event : events)
+			{
+				if (removedCategories.contains(event.getCategory()))
+					event.setCategory(null);
 			}
+
+			categories.removeAll(removedCategories);
 		}
-		catch (SQLException e)
+
+		for (Event event : removedEvents)
 		{
-			throw e;
+			for (Contact contact : event.getContacts())
+			{
+				contact.getEvents().remove(event);
+			}
 		}
+
+		for (Contact contact : removedContacts)
+		{
+			for (Event event : contact.getEvents())
+			{
+				event.getContacts().remove(contact);
+			}
+		}
+
+		events.removeAll(removedEvents);
+		contacts.removeAll(removedContacts);
+		changedEvents.removeAll(removedEvents);
+
+		if (!changedEvents.isEmpty())
+		{
+			Set<Integer> changedEventIds = new HashSet<>();
+
+			for (Event event : changedEvents)
+			{
+				for (Contact contact : event.getContacts())
+				{
+					contact.getEvents().remove(event);
+				}
+
+				event.getContacts().clear();
+				changedEventIds.add(event.getId());
+			}
+
+			LongHashSet links = new LongHashSet();
+
+			try (PreparedStatement pstmt = prepareStreamingStatement("SELECT event_id, contact_id FROM events_contacts WHERE event_id = ANY(?)", connection))
+			{
+				pstmt.setArray(1, connection.createArrayOf("integer", changedEventIds.toArray()));
+
+				try (ResultSet resultSet = pstmt.executeQuery())
+				{
+					while (resultSet.next())
+					{
+						linkLoaded(resultSet, eventsById, contactsById, links);
+					}
+				}
+			}
+		}
+
+		return newWatermark;
 	}
 
 	/**
-	 * Wywołuje następujące funkcje: {@link #checkXMLCategories(List)}
-	 * {@link #checkXMLEvent(List)} {@link #checkXMLContact(List)}
+	 * Przepisuje dane kategorii z bieżącego wiersza wyniku zapytania do obiektu.
 	 *
-	 * @param  categories   Lista kategorii do sprawdzenia i aktualizacji.
-	 * @param  events       Lista wydarzeń do sprawdzenia i aktualizacji.
-	 * @param  contacts     Lista kontaktów do sprawdzenia i aktualizacji.
-	 * @throws SQLException Jeśli wystąpi błąd dostępu do bazy danych lub podczas
-	 *                      wykonywania zapytania SQL.
+	 * @param  resultSet    Wynik zapytania ustawiony na wierszu tabeli categories.
+	 * @param  category     Kategoria, której dane są ustawiane.
+	 * @throws SQLException Jeśli nie udało się odczytać wiersza.
 	 */
-	private void checkXMLData(List<Category> categories, List<Event> events, List<Contact> contacts) throws SQLException
+	private void readCategory(ResultSet resultSet, Category category) throws SQLException
 	{
-		checkXMLCategories(categories);
-		checkXMLEvent(events);
-		checkXMLContact(contacts);
+		category.setId(resultSet.getInt("id"));
+		category.setName(this.stringPool.intern(resultSet.getString("category_name")));
+		category.setColorHex(this.stringPool.intern(resultSet.getString("color_hex")));
+		category.setVersion(resultSet.getInt("version"));
 	}
 
 	/**
-	 * Sprawdza i aktualizuje dane z listy {@code List<Category>} dla kategorii.
-	 * Jeśli przekazana lista zawiera dane, sprawdza je pod kątem konieczności
-	 * wstawienia lub zaktualizowania w bazie danych.
+	 * Przepisuje dane wydarzenia z bieżącego wiersza wyniku zapytania do obiektu.
+	 * Kategoria wydarzenia jest wyszukiwana po identyfikatorze w podanej mapie.
 	 *
-	 * @param  categories   Lista kategorii do sprawdzenia i aktualizacji.
-	 * @throws SQLException Jeśli wystąpi błąd dostępu do bazy danych lub podczas
-	 *                      wykonywania zapytania SQL w
-	 *                      {@link #insertCategory(Category)} i
-	 *                      {@link #updateCategory(Category)}
+	 * @param  resultSet      Wynik zapytania ustawiony na wierszu tabeli events.
+	 * @param  event          Wydarzenie, którego dane są ustawiane.
+	 * @param  categoriesById Aktywne kategorie według identyfikatorów.
+	 * @throws SQLException   Jeśli nie udało się odczytać wiersza.
 	 */
-	private void checkXMLCategories(List<Category> categories) throws SQLException
+	private void readEvent(ResultSet resultSet, Event event, IntHashMap<Category> categoriesById) throws SQLException
 	{
-		if (categories == null)
-			return;
+		event.setId(resultSet.getInt("id"));
+		event.setVersion(resultSet.getInt("version"));
+		event.setName(this.stringPool.intern(resultSet.getString("event_name")));
+		event.setDate(resultSet.getTimestamp("event_date").toLocalDateTime());
+		event.setNotifyOffset(resultSet.getTime("notification_offset").toLocalTime());
+		event.setDuration(Duration.ofMinutes(resultSet.getInt("event_duration")));
+		event.setLocation(this.stringPool.intern(resultSet.getString("event_location")));
+		event.setDescription(this.stringPool.intern(resultSet.getString("event_description")));
+		event.setCategory(categoriesById.get(resultSet.getInt("category_id")));
+	}
+
+	/**
+	 * Przepisuje dane kontaktu z bieżącego wiersza wyniku zapytania do obiektu.
+	 *
+	 * @param  resultSet    Wynik zapytania ustawiony na wierszu tabeli contacts.
+	 * @param  contact      Kontakt, którego dane są ustawiane.
+	 * @throws SQLException Jeśli nie udało się odczytać wiersza.
+	 */
+	private void readContact(ResultSet resultSet, Contact contact) throws SQLException
+	{
+		contact.setId(resultSet.getInt("id"));
+		contact.setVersion(resultSet.getInt("version"));
+		contact.setFirstName(this.stringPool.intern(resultSet.getString("first_name")));
+		contact.setLastName(this.stringPool.intern(resultSet.getString("last_name")));
+		contact.setPhoneNumber(this.stringPool.intern(resultSet.getString("phone_number")));
+	}
+
+	/**
+	 * Łączy wydarzenie i kontakt z bieżącego wiersza tabeli events_contacts, jeśli
+	 * oba są wczytane lokalnie.
+	 *
+	 * @param  resultSet    Wynik zapytania ustawiony na wierszu tabeli
+	 *                      events_contacts.
+	 * @param  eventsById   Wydarzenia według identyfikatorów.
+	 * @param  contactsById Kontakty według identyfikatorów.
+	 * @param  links        Klucze już połączonych par, odrzucające duplikaty.
+	 * @throws SQLException Jeśli nie udało się odczytać wiersza.
+	 */
+	private void linkLoaded(ResultSet resultSet, IntHashMap<Event> eventsById, IntHashMap<Contact> contactsById, LongHashSet links) throws SQLException
+	{
+		int eventId = resultSet.getInt("event_id");
+		int contactId = resultSet.getInt("contact_id");
+
+		Event event = eventsById.get(eventId);
+		Contact contact = contactsById.get(contactId);
+
+		// relacje dodawane bezpośrednio do list, z pominięciem addContact/addEvent,
+		// które sprawdzają duplikaty liniowo; duplikaty odrzuca zbiór par
+		if (event != null && contact != null && links.add(linkKey(eventId, contactId)))
+		{
+			event.getContacts().add(contact);
+			contact.getEvents().add(event);
+		}
+	}
+
+	/**
+	 * Uzgadnia lokalne dane (np. wczytane z pliku XML po pracy bez połączenia) z
+	 * bazą danych. Wszystkie zmiany są wykonywane na jednym połączeniu w jednej
+	 * transakcji: nowe kategorie, wydarzenia i kontakty są dodawane wsadowo, a
+	 * istniejące aktualizowane wsadowymi zapytaniami warunkowymi względem kolumny
+	 * version. Rekordy zmienione w międzyczasie w bazie danych są pomijane (wygrywa
+	 * wersja z bazy danych, która zostanie wczytana podczas synchronizacji), przy
+	 * czym rekordy, których pola się nie zmieniły, nie są traktowane jako konflikt
+	 * ({@link #findVersionConflicts(String, List, ToIntFunction, ToIntFunction, Connection)}). Na
+	 * koniec wyznaczana jest różnica między lokalnymi a zapisanymi relacjami
+	 * events_contacts i stosowana dwoma wsadowymi zapytaniami. W razie błędu
+	 * transakcja jest wycofywana w całości, a nadane nowym obiektom
+	 * identyfikatory są zerowane. Postęp jest zgłaszany do
+	 * {@link ProgressListener}. Przy przyrostowej synchronizacji przesyłane są
+	 * tylko nowe obiekty oraz obiekty oznaczone jako zmienione bez połączenia z
+	 * bazą danych ({@code isModified()}), a po zatwierdzeniu transakcji
+	 * oznaczenie jest usuwane, a zaktualizowane obiekty otrzymują nową wersję
+	 * rekordu, tak aby ich kolejna zmiana nie była konfliktem wersji również bez
+	 * ponownego wczytania (np. po {@link #insertAll(List, List, List)}).
+	 *
+	 * @param  categories   Lista kategorii do uzgodnienia.
+	 * @param  events       Lista wydarzeń do uzgodnienia.
+	 * @param  contacts     Lista kontaktów do uzgodnienia.
+	 * @param  onlyModified True jeśli przesyłane mają być tylko nowe i zmienione
+	 *                      obiekty, false jeśli wszystkie.
+	 * @param  connection   Połączenie z bazą danych.
+	 * @throws SQLException Jeśli wystąpi błąd podczas wykonywania zapytania SQL.
+	 */
+	private void reconcileLocalData(List<Category> categories, List<Event> events, List<Contact> contacts, boolean onlyModified,
+			Connection connection) throws SQLException
+	{
+		categories = categories != null ? categories : new ArrayList<>();
+		events = events != null ? events : new ArrayList<>();
+		contacts = contacts != null ? contacts : new ArrayList<>();
+
+		List<Category> newCategories = new ArrayList<>();
+		List<Category> existingCategories = new ArrayList<>();
+		List<Event> newEvents = new ArrayList<>();
+		List<Event> existingEvents = new ArrayList<>();
+		List<Contact> newContacts = new ArrayList<>();
+		List<Contact> existingContacts = new ArrayList<>();
 
 		for (Category category : categories)
 		{
 			if (category.getId() == 0)
+				newCategories.add(category);
+			else if (!onlyModified || category.isModified())
+				existingCategories.add(category);
+		}
+
+		for (Event event : events)
+		{
+			if (event.getId() == 0)
+				newEvents.add(event);
+			else if (!onlyModified || event.isModified())
+				existingEvents.add(event);
+		}
+
+		for (Contact contact : contacts)
+		{
+			if (contact.getId() == 0)
+				newContacts.add(contact);
+			else if (!onlyModified || contact.isModified())
+				existingContacts.add(contact);
+		}
+
+		if (newCategories.isEmpty() && existingCategories.isEmpty() && newEvents.isEmpty() && existingEvents.isEmpty() && newContacts.isEmpty()
+				&& existingContacts.isEmpty())
+			return;
+
+		String insertCategoryQuery = "INSERT INTO categories (category_name, color_hex) VALUES (?, ?)";
+		String updateCategoryQuery = "UPDATE categories SET category_name = ?, color_hex = ?, version = version + 1, change_xid = pg_current_xact_id() WHERE id = ? AND version = ? "
+				+ "AND (category_name IS DISTINCT FROM ? OR color_hex IS DISTINCT FROM ?)";
+		String insertEventQuery = "INSERT INTO events (event_name, event_date, notification_offset, event_duration, event_location, event_description, category_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+		String updateEventQuery = "UPDATE events SET event_name = ?, event_date = ?, notification_offset = ?, event_duration = ?, event_location = ?, event_description = ?, "
+				+ "category_id = ?, version = version + 1, change_xid = pg_current_xact_id() WHERE id = ? AND version = ? AND (event_name IS DISTINCT FROM ? OR event_date IS DISTINCT FROM ? "
+				+ "OR notification_offset IS DISTINCT FROM ? OR event_duration IS DISTINCT FROM ? OR event_location IS DISTINCT FROM ? OR event_description IS DISTINCT FROM ? "
+				+ "OR category_id IS DISTINCT FROM ?)";
+		String insertContactQuery = "INSERT INTO contacts (first_name, last_name, phone_number) VALUES (?, ?, ?)";
+		String updateContactQuery = "UPDATE contacts SET first_name = ?, last_name = ?, phone_number = ?, version = version + 1, change_xid = pg_current_xact_id() WHERE id = ? AND version = ? "
+				+ "AND (first_name IS DISTINCT FROM ? OR last_name IS DISTINCT FROM ? OR phone_number IS DISTINCT FROM ?)";
+
+		int[] progress = { 0, newCategories.size() + existingCategories.size() + newEvents.size() + existingEvents.size() + newContacts.size()
+				+ existingContacts.size() };
+
+		connection.setAutoCommit(false);
+
+		try
+		{
+			executeInBatches(insertCategoryQuery, newCategories, (pstmt, category) ->
+			{
+				pstmt.setString(1, category.getName());
+				pstmt.setString(2, category.getColorHex());
+			}, Category::setId, "categories", progress, connection);
+
+			List<Category> unchangedCategories = executeInBatches(updateCategoryQuery, existingCategories, (pstmt, category) ->
 			{
-				insertCategory(category);
+				pstmt.setString(1, category.getName());
+				pstmt.setString(2, category.getColorHex());
+				pstmt.setInt(3, category.getId());
+				pstmt.setInt(4, category.getVersion());
+				pstmt.setString(5, category.getName());
+				pstmt.setString(6, category.getColorHex());
+			}, null, "categories", progress, connection);
+			Set<Category> conflictedCategories = findVersionConflicts("categories", unchangedCategories, Category::getId, Category::getVersion,
+					connection);
+
+			executeInBatches(insertEventQuery, newEvents, (pstmt, event) -> bindEventData(pstmt, event, 1), Event::setId, "events", progress,
+					connection);
+
+			List<Event> unchangedEvents = executeInBatches(updateEventQuery, existingEvents, (pstmt, event) ->
+			{
+				bindEventData(pstmt, event, 1);
+				pstmt.setInt(8, event.getId());
+				pstmt.setInt(9, event.getVersion());
+				bindEventData(pstmt, event, 10);
+			}, null, "events", progress, connection);
+			Set<Event> conflictedEvents = findVersionConflicts("events", unchangedEvents, Event::getId, Event::getVersion, connection);
+
+			executeInBatches(insertContactQuery, newContacts, (pstmt, contact) ->
+			{
+				pstmt.setString(1, contact.getFirstName());
+				pstmt.setString(2, contact.getLastName());
+				pstmt.setString(3, contact.getPhoneNumber());
+			}, Contact::setId, "contacts", progress, connection);
+
+			List<Contact> unchangedContacts = executeInBatches(updateContactQuery, existingContacts, (pstmt, contact) ->
+			{
+				pstmt.setString(1, contact.getFirstName());
+				pstmt.setString(2, contact.getLastName());
+				pstmt.setString(3, contact.getPhoneNumber());
+				pstmt.setInt(4, contact.getId());
+				pstmt.setInt(5, contact.getVersion());
+				pstmt.setString(6, contact.getFirstName());
+				pstmt.setString(7, contact.getLastName());
+				pstmt.setString(8, contact.getPhoneNumber());
+			}, null, "contacts", progress, connection);
+			Set<Contact> conflictedContacts = findVersionConflicts("contacts", unchangedContacts, Contact::getId, Contact::getVersion, connection);
+
+			int conflicts = conflictedCategories.size() + conflictedEvents.size() + conflictedContacts.size();
+
+			if (conflicts > 0)
+			{
+				System.err.println(conflicts + " local change(s) conflict with newer changes in the database and were skipped.");
 			}
-			else
+
+			List<Event> pendingEvents = new ArrayList<>(newEvents);
+			List<Contact> pendingContacts = new ArrayList<>(newContacts);
+			pendingEvents.addAll(existingEvents);
+			pendingContacts.addAll(existingContacts);
+
+			reconcileRelationships(events, contacts, pendingEvents, pendingContacts, conflictedEvents, conflictedContacts, connection);
+
+			connection.commit();
+
+			// zaktualizowany rekord ma w bazie danych wersję o jeden większą od
+			// oczekiwanej, bez tego kolejna zmiana obiektu byłaby konfliktem wersji
+			Set<Category> untouchedCategories = new HashSet<>(unchangedCategories);
+			Set<Event> untouchedEvents = new HashSet<>(unchangedEvents);
+			Set<Contact> untouchedContacts = new HashSet<>(unchangedContacts);
+
+			for (Category category : existingCategories)
+			{
+				if (!untouchedCategories.contains(category))
+					category.setVersion(category.getVersion() + 1);
+
+				category.setModified(false);
+			}
+
+			for (Event event : existingEvents)
 			{
-				updateCategory(category);
+				if (!untouchedEvents.contains(event))
+					event.setVersion(event.getVersion() + 1);
+
+				event.setModified(false);
+			}
+
+			for (Contact contact : existingContacts)
+			{
+				if (!untouchedContacts.contains(contact))
+					contact.setVersion(contact.getVersion() + 1);
+
+				contact.setModified(false);
 			}
 		}
+		catch (SQLException ex)
+		{
+			connection.rollback();
+
+			newCategories.forEach(category -> category.setId(0));
+			newEvents.forEach(event -> event.setId(0));
+			newContacts.forEach(contact -> contact.setId(0));
+
+			throw ex;
+		}
+		finally
+		{
+			connection.setAutoCommit(true);
+		}
 	}
 
 	/**
-	 * Sprawdza i aktualizuje dane z listy {@code List<Event>} dla wydarzeń. Jeśli
-	 * przekazana lista zawiera dane, sprawdza je pod kątem konieczności wstawienia
-	 * lub zaktualizowania w bazie danych.
+	 * Uzgadnia relacje events_contacts przesyłanych wydarzeń i kontaktów z bazą
+	 * danych. Pobiera jednym zapytaniem zapisane relacje przesyłanych obiektów,
+	 * porównuje je z relacjami wynikającymi z lokalnych obiektów i stosuje różnicę
+	 * jednym wsadowym usunięciem i jednym wsadowym dodaniem. Relacje, których
+	 * druga strona nie jest znana lokalnie lub która jest w konflikcie wersji, nie
+	 * są zmieniane. Wydarzenia ze zmienionymi relacjami otrzymują nowy numer
+	 * zmiany.
 	 *
-	 * @param  events       Lista wydarzeń do sprawdzenia i aktualizacji.
-	 * @throws SQLException Jeśli wystąpi błąd dostępu do bazy danych lub podczas
-	 *                      wykonywania zapytania SQL w {@link #insertEvent(Event)}
-	 *                      i {@link #updateEvent(Event)}
+	 * @param  events             Wszystkie lokalne wydarzenia.
+	 * @param  contacts           Wszystkie lokalne kontakty.
+	 * @param  pendingEvents      Wydarzenia przesyłane do bazy danych.
+	 * @param  pendingContacts    Kontakty przesyłane do bazy danych.
+	 * @param  conflictedEvents   Wydarzenia pominięte z powodu konfliktu wersji.
+	 * @param  conflictedContacts Kontakty pominięte z powodu konfliktu wersji.
+	 * @param  connection         Połączenie z bazą danych.
+	 * @throws SQLException       Jeśli wystąpi błąd podczas wykonywania zapytania
+	 *                            SQL.
 	 */
-	private void checkXMLEvent(List<Event> events) throws SQLException
+	private void reconcileRelationships(List<Event> events, List<Contact> contacts, List<Event> pendingEvents, List<Contact> pendingContacts,
+			Set<Event> conflictedEvents, Set<Contact> conflictedContacts, Connection connection) throws SQLException
 	{
-		if (events == null)
-			return;
+		Set<Integer> eventIds = new HashSet<>();
+		Set<Integer> contactIds = new HashSet<>();
+		Set<Integer> pendingEventIds = new HashSet<>();
+		Set<Integer> pendingContactIds = new HashSet<>();
+		LongHashSet localLinks = new LongHashSet();
 
 		for (Event event : events)
 		{
-			if (event.getId() == 0)
+			if (event.getId() != 0 && !conflictedEvents.contains(event))
+				eventIds.add(event.getId());
+		}
+
+		for (Contact contact : contacts)
+		{
+			if (contact.getId() != 0 && !conflictedContacts.contains(contact))
+				contactIds.add(contact.getId());
+		}
+
+		for (Event event : pendingEvents)
+		{
+			if (!eventIds.contains(event.getId()))
+				continue;
+
+			pendingEventIds.add(event.getId());
+
+			for (Contact contact : event.getContacts())
+			{
+				if (contactIds.contains(contact.getId()))
+					localLinks.add(linkKey(event.getId(), contact.getId()));
+			}
+		}
+
+		for (Contact contact : pendingContacts)
+		{
+			if (!contactIds.contains(contact.getId()))
+				continue;
+
+			pendingContactIds.add(contact.getId());
+
+			for (Event event : contact.getEvents())
 			{
-				insertEvent(event);
+				if (eventIds.contains(event.getId()))
+					localLinks.add(linkKey(event.getId(), contact.getId()));
 			}
-			else
+		}
+
+		if (pendingEventIds.isEmpty() && pendingContactIds.isEmpty())
+			return;
+
+		LongHashSet storedLinks = new LongHashSet();
+
+		try (PreparedStatement pstmt = connection
+				.prepareStatement("SELECT event_id, contact_id FROM events_contacts WHERE event_id = ANY(?) OR contact_id = ANY(?)"))
+		{
+			pstmt.setArray(1, connection.createArrayOf("integer", pendingEventIds.toArray()));
+			pstmt.setArray(2, connection.createArrayOf("integer", pendingContactIds.toArray()));
+
+			try (ResultSet resultSet = pstmt.executeQuery())
 			{
-				updateEvent(event);
+				while (resultSet.next())
+				{
+					int eventId = resultSet.getInt("event_id");
+					int contactId = resultSet.getInt("contact_id");
+
+					if (eventIds.contains(eventId) && contactIds.contains(contactId))
+						storedLinks.add(linkKey(eventId, contactId));
+				}
 			}
 		}
+
+		List<Long> removedLinks = new ArrayList<>();
+		List<Long> addedLinks = new ArrayList<>();
+
+		storedLinks.forEach(link ->
+		{
+			if (!localLinks.contains(link))
+				removedLinks.add(link);
+		});
+
+		localLinks.forEach(link ->
+		{
+			if (!storedLinks.contains(link))
+				addedLinks.add(link);
+		});
+
+		int[] progress = { 0, removedLinks.size() + addedLinks.size() };
+		BatchBinder<Long> linkBinder = (pstmt, link) ->
+		{
+			pstmt.setInt(1, (int) (link >>> 32));
+			pstmt.setInt(2, (int) (long) link);
+		};
+
+		executeInBatches(DELETE_EVENT_CONTACTS_QUERY, removedLinks, linkBinder, null, "relationships", progress, connection);
+		executeInBatches(INSERT_EVENT_CONTACTS_QUERY, addedLinks, linkBinder, null, "relationships", progress, connection);
+
+		Set<Integer> touchedEventIds = new HashSet<>();
+		removedLinks.forEach(link -> touchedEventIds.add((int) (link >>> 32)));
+		addedLinks.forEach(link -> touchedEventIds.add((int) (link >>> 32)));
+
+		touchEvents(touchedEventIds, connection);
 	}
 
 	/**
-	 * Sprawdza i aktualizuje dane z listy {@code List<Contact>} dla kontaktów.
-	 * Jeśli przekazana lista zawiera dane, sprawdza je pod kątem konieczności
-	 * wstawienia lub zaktualizowania w bazie danych.
+	 * Wykonuje zapytanie wsadowo dla każdego elementu listy, w porcjach po
+	 * {@value #BATCH_SIZE} elementów, zgłaszając postęp po każdej porcji. Jeżeli
+	 * przekazano funkcję ustawiającą identyfikator, po każdej porcji odczytuje
+	 * wygenerowane klucze i przypisuje je kolejnym elementom.
 	 *
-	 * @param  contacts     Lista kontaktów do sprawdzenia i aktualizacji.
-	 * @throws SQLException Jeśli wystąpi błąd dostępu do bazy danych lub podczas
-	 *                      wykonywania zapytania SQL w
-	 *                      {@link #insertContact(Contact)} i
-	 *                      {@link #updateContact(Contact)}
+	 * @param  <T>          Typ elementów.
+	 * @param  query        Zapytanie do wykonania.
+	 * @param  items        Elementy, dla których wykonywane jest zapytanie.
+	 * @param  binder       Funkcja ustawiająca parametry zapytania dla elementu.
+	 * @param  idSetter     Funkcja przypisująca wygenerowany identyfikator lub
+	 *                      null, jeśli klucze nie są potrzebne.
+	 * @param  stage        Nazwa etapu zgłaszana w postępie.
+	 * @param  progress     Dwuelementowa tablica: liczba przetworzonych i łączna
+	 *                      liczba elementów operacji.
+	 * @param  connection   Połączenie z bazą danych.
+	 * @return              Elementy, dla których zapytanie nie zmieniło żadnego
+	 *                      rekordu.
+	 * @throws SQLException Jeśli wystąpi błąd podczas wykonywania zapytania SQL.
 	 */
-	private void checkXMLContact(List<Contact> contacts) throws SQLException
+	private <T> List<T> executeInBatches(String query, List<T> items, BatchBinder<T> binder, BiConsumer<T, Integer> idSetter, String stage,
+			int[] progress, Connection connection) throws SQLException
 	{
-		if (contacts == null)
-			return;
+		List<T> unchanged = new ArrayList<>();
 
-		for (Contact contact : contacts)
+		if (items.isEmpty())
+			return unchanged;
+
+		int keys = idSetter != null ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS;
+
+		try (PreparedStatement pstmt = connection.prepareStatement(query, keys))
 		{
-			if (contact.getId() == 0)
+			for (int from = 0; from < items.size(); from += BATCH_SIZE)
 			{
-				insertContact(contact);
+				List<T> chunk = items.subList(from, Math.min(from + BATCH_SIZE, items.size()));
+
+				for (T item : chunk)
+				{
+					binder.bind(pstmt, item);
+					pstmt.addBatch();
+				}
+
+				int[] updateCounts = pstmt.executeBatch();
+
+				for (int i = 0; i < updateCounts.length; i++)
+				{
+					if (updateCounts[i] == 0)
+						unchanged.add(chunk.get(i));
+				}
+
+				if (idSetter != null)
+				{
+					try (ResultSet generatedKeys = pstmt.getGeneratedKeys())
+					{
+						for (T item : chunk)
+						{
+							if (generatedKeys.next())
+								idSetter.accept(item, generatedKeys.getInt(1));
+						}
+					}
+				}
+
+				progress[0] += chunk.size();
+				this.progressListener.onProgress(stage, progress[0], progress[1]);
 			}
-			else
+		}
+
+		return unchanged;
+	}
+
+	/**
+	 * Wyznacza, które z rekordów niezmienionych przez warunkową aktualizację
+	 * wsadową są w konflikcie wersji. Warunkowa aktualizacja nie zmienia rekordu
+	 * zarówno wtedy, gdy wersja w bazie danych jest inna niż oczekiwana, jak i
+	 * wtedy, gdy pola rekordu się nie zmieniły (np. zmieniły się tylko relacje
+	 * wydarzenia), dlatego wersje tych rekordów są odczytywane jednym zapytaniem,
+	 * tak jak robi to dla pojedynczego rekordu
+	 * {@link #checkVersion(String, int, int, Object, Connection)}. Rekordy, których
+	 * nie ma w bazie danych, również są traktowane jako konflikt.
+	 *
+	 * @param  <T>          Typ rekordów.
+	 * @param  tableName    Nazwa tabeli.
+	 * @param  unchanged    Rekordy niezmienione przez aktualizację.
+	 * @param  id           Funkcja zwracająca identyfikator rekordu.
+	 * @param  version      Funkcja zwracająca oczekiwaną wersję rekordu.
+	 * @param  connection   Połączenie z bazą danych.
+	 * @return              Rekordy, których wersja w bazie danych jest inna niż
+	 *                      oczekiwana.
+	 * @throws SQLException Jeśli wystąpi błąd podczas wykonywania zapytania SQL.
+	 */
+	private <T> Set<T> findVersionConflicts(String tableName, List<T> unchanged, ToIntFunction<T> id, ToIntFunction<T> version,
+			Connection connection) throws SQLException
+	{
+		Set<T> conflicts = new HashSet<>();
+
+		if (unchanged.isEmpty())
+			return conflicts;
+
+		IntHashMap<Integer> versionsById = new IntHashMap<>(unchanged.size());
+		Integer[] ids = new Integer[unchanged.size()];
+
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = id.applyAsInt(unchanged.get(i));
+		}
+
+		try (PreparedStatement pstmt = connection.prepareStatement("SELECT id, version FROM " + tableName + " WHERE id = ANY(?)"))
+		{
+			pstmt.setArray(1, connection.createArrayOf("integer", ids));
+
+			try (ResultSet resultSet = pstmt.executeQuery())
 			{
-				updateContact(contact);
+				while (resultSet.next())
+				{
+					versionsById.put(resultSet.getInt("id"), resultSet.getInt("version"));
+				}
 			}
 		}
+
+		for (T item : unchanged)
+		{
+			Integer actualVersion = versionsById.get(id.applyAsInt(item));
+
+			if (actualVersion == null || actualVersion != version.applyAsInt(item))
+				conflicts.add(item);
+		}
+
+		return conflicts;
+	}
+
+	/**
+	 * Przygotowuje zapytanie, którego wynik jest odczytywany strumieniowo przez
+	 * kursor po stronie serwera, w porcjach po {@code fetchSize} wierszy.
+	 * Sterownik postgresql używa kursora tylko wtedy, gdy połączenie nie działa w
+	 * trybie autocommit.
+	 *
+	 * @param  query        Zapytanie do przygotowania.
+	 * @param  connection   Połączenie z bazą danych z wyłączonym autocommit.
+	 * @return              Przygotowane zapytanie.
+	 * @throws SQLException Jeśli nie udało się przygotować zapytania.
+	 */
+	private PreparedStatement prepareStreamingStatement(String query, Connection connection) throws SQLException
+	{
+		PreparedStatement pstmt = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		pstmt.setFetchSize(fetchSize);
+		return pstmt;
+	}
+
+	/**
+	 * Łączy identyfikatory wydarzenia i kontaktu w jeden klucz relacji.
+	 *
+	 * @param  eventId   Identyfikator wydarzenia.
+	 * @param  contactId Identyfikator kontaktu.
+	 * @return           Klucz relacji.
+	 */
+	private static long linkKey(int eventId, int contactId)
+	{
+		return ((long) eventId << 32) | (contactId & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Ustawia parametry zapytania wsadowego dla pojedynczego elementu.
+	 *
+	 * @param <T> Typ elementu.
+	 */
+	@FunctionalInterface
+	private interface BatchBinder<T>
+	{
+		void bind(PreparedStatement pstmt, T item) throws SQLException;
 	}
 }
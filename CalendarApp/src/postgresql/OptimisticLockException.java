@@ -0,0 +1,48 @@
+package postgresql;
+
+import java.sql.SQLException;
+
+/**
+ * Wyjątek zgłaszany, gdy aktualizowany rekord został w międzyczasie zmieniony w
+ * bazie danych przez inną instancję aplikacji. Wersja rekordu w bazie danych
+ * (kolumna version) jest wtedy różna od wersji zapisanej w aktualizowanym
+ * obiekcie, więc aktualizacja nie zostaje wykonana, aby nie nadpisać cudzych
+ * zmian.
+ */
+public class OptimisticLockException extends SQLException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final int expectedVersion;
+	private final int actualVersion;
+
+	/**
+	 * Tworzy wyjątek konfliktu wersji rekordu.
+	 *
+	 * @param message         Opis konfliktu.
+	 * @param expectedVersion Wersja rekordu zapisana w aktualizowanym obiekcie.
+	 * @param actualVersion   Aktualna wersja rekordu w bazie danych.
+	 */
+	public OptimisticLockException(String message, int expectedVersion, int actualVersion)
+	{
+		super(message);
+		this.expectedVersion = expectedVersion;
+		this.actualVersion = actualVersion;
+	}
+
+	/**
+	 * @return Wersja rekordu zapisana w aktualizowanym obiekcie.
+	 */
+	public int getExpectedVersion()
+	{
+		return expectedVersion;
+	}
+
+	/**
+	 * @return Aktualna wersja rekordu w bazie danych.
+	 */
+	public int getActualVersion()
+	{
+		return actualVersion;
+	}
+}
@@ -0,0 +1,136 @@
+package postgresql;
+
+/**
+ * Niemodyfikowalna migawka statystyk puli połączeń {@link ConnectionPool}.
+ * Zawiera liczbę aktywnych i bezczynnych połączeń, czas oczekiwania na
+ * wypożyczenie połączenia oraz liczniki utworzonych, usuniętych i wykrytych jako
+ * wyciekające połączeń.
+ */
+public class PoolMetrics
+{
+	private final int activeConnections;
+	private final int idleConnections;
+	private final int pendingBorrowers;
+	private final long borrowCount;
+	private final long totalBorrowWaitNanos;
+	private final long maxBorrowWaitNanos;
+	private final long createdConnections;
+	private final long evictedConnections;
+	private final long detectedLeaks;
+
+	/**
+	 * Tworzy migawkę statystyk puli połączeń.
+	 *
+	 * @param activeConnections    Liczba aktualnie wypożyczonych połączeń.
+	 * @param idleConnections      Liczba bezczynnych połączeń w puli.
+	 * @param pendingBorrowers     Liczba wątków oczekujących na połączenie.
+	 * @param borrowCount          Łączna liczba wypożyczeń połączeń.
+	 * @param totalBorrowWaitNanos Łączny czas oczekiwania na wypożyczenie w
+	 *                             nanosekundach.
+	 * @param maxBorrowWaitNanos   Najdłuższy czas oczekiwania na wypożyczenie w
+	 *                             nanosekundach.
+	 * @param createdConnections   Łączna liczba utworzonych fizycznych połączeń.
+	 * @param evictedConnections   Łączna liczba zamkniętych połączeń (bezczynnych
+	 *                             lub niepoprawnych).
+	 * @param detectedLeaks        Liczba wykrytych wycieków połączeń.
+	 */
+	PoolMetrics(int activeConnections, int idleConnections, int pendingBorrowers, long borrowCount, long totalBorrowWaitNanos,
+			long maxBorrowWaitNanos, long createdConnections, long evictedConnections, long detectedLeaks)
+	{
+		this.activeConnections = activeConnections;
+		this.idleConnections = idleConnections;
+		this.pendingBorrowers = pendingBorrowers;
+		this.borrowCount = borrowCount;
+		this.totalBorrowWaitNanos = totalBorrowWaitNanos;
+		this.maxBorrowWaitNanos = maxBorrowWaitNanos;
+		this.createdConnections = createdConnections;
+		this.evictedConnections = evictedConnections;
+		this.detectedLeaks = detectedLeaks;
+	}
+
+	/**
+	 * @return Liczba aktualnie wypożyczonych połączeń.
+	 */
+	public int getActiveConnections()
+	{
+		return activeConnections;
+	}
+
+	/**
+	 * @return Liczba bezczynnych połączeń w puli.
+	 */
+	public int getIdleConnections()
+	{
+		return idleConnections;
+	}
+
+	/**
+	 * @return Liczba wątków oczekujących na wolne połączenie.
+	 */
+	public int getPendingBorrowers()
+	{
+		return pendingBorrowers;
+	}
+
+	/**
+	 * @return Łączna liczba wypożyczeń połączeń.
+	 */
+	public long getBorrowCount()
+	{
+		return borrowCount;
+	}
+
+	/**
+	 * @return Średni czas oczekiwania na wypożyczenie połączenia w milisekundach.
+	 */
+	public double getAverageBorrowWaitMillis()
+	{
+		return borrowCount == 0 ? 0 : totalBorrowWaitNanos / (double) borrowCount / 1_000_000;
+	}
+
+	/**
+	 * @return Najdłuższy czas oczekiwania na wypożyczenie połączenia w
+	 *         milisekundach.
+	 */
+	public double getMaxBorrowWaitMillis()
+	{
+		return maxBorrowWaitNanos / 1_000_000.0;
+	}
+
+	/**
+	 * @return Łączna liczba utworzonych fizycznych połączeń.
+	 */
+	public long getCreatedConnections()
+	{
+		return createdConnections;
+	}
+
+	/**
+	 * @return Łączna liczba zamkniętych połączeń (bezczynnych lub niepoprawnych).
+	 */
+	public long getEvictedConnections()
+	{
+		return evictedConnections;
+	}
+
+	/**
+	 * @return Liczba wykrytych wycieków połączeń.
+	 */
+	public long getDetectedLeaks()
+	{
+		return detectedLeaks;
+	}
+
+	/**
+	 * Zwraca tekstową reprezentację statystyk puli połączeń.
+	 *
+	 * @return Tekstowa reprezentacja statystyk.
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("active: %d | idle: %d | pending: %d | borrows: %d | avg wait: %.3f ms | max wait: %.3f ms | created: %d | evicted: %d | leaks: %d",
+				activeConnections, idleConnections, pendingBorrowers, borrowCount, getAverageBorrowWaitMillis(), getMaxBorrowWaitMillis(),
+				createdConnections, evictedConnections, detectedLeaks);
+	}
+}
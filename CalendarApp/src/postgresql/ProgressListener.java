@@ -0,0 +1,19 @@
+package postgresql;
+
+/**
+ * Interfejs funkcyjny powiadamiany o postępie długotrwałych operacji na bazie
+ * danych, takich jak uzgadnianie lokalnych danych z bazą danych podczas
+ * synchronizacji.
+ */
+@FunctionalInterface
+public interface ProgressListener
+{
+	/**
+	 * Wywoływana po przetworzeniu kolejnej porcji rekordów.
+	 *
+	 * @param stage     Nazwa aktualnego etapu operacji.
+	 * @param processed Liczba przetworzonych rekordów w całej operacji.
+	 * @param total     Łączna liczba rekordów do przetworzenia.
+	 */
+	void onProgress(String stage, int processed, int total);
+}
@@ -4,6 +4,38 @@
  * {@link postgresql.Database} umożliwia komunikację z bazą danych oraz
  * wykonywanie operacji dodawania, aktualizacji, usuwania i pobierania danych
  * związanych z wydarzeniami, kategoriami i kontaktami.
+ * <p>
+ * Tabele categories, events i contacts zawierają kolumnę
+ * {@code version integer NOT NULL DEFAULT 0}, zwiększaną przy każdej
+ * aktualizacji i dezaktywacji rekordu. Aktualizacje są warunkowe względem tej
+ * kolumny, a konflikt zgłaszany jest wyjątkiem
+ * {@link postgresql.OptimisticLockException}.
+ * <p>
+ * Przyrostowa synchronizacja (PostgreSQL 13 lub nowszy) wymaga kolumny
+ * {@code change_xid xid8 NOT NULL DEFAULT pg_current_xact_id()} (z indeksem)
+ * w tabelach categories, events i contacts. Każda zmiana rekordu, w tym
+ * dezaktywacja i zmiana relacji wydarzenia w tabeli events_contacts, zapisuje w
+ * niej identyfikator zmieniającej go transakcji. Wydarzenia trwale usuwane
+ * przez {@link postgresql.Database#deleteOldEvents(java.time.LocalDateTime)}
+ * są zapisywane w tabeli
+ * {@code event_tombstones (id integer PRIMARY KEY, change_xid xid8 NOT NULL DEFAULT pg_current_xact_id())}.
+ * <p>
+ * Znacznikiem synchronizacji nie jest największy wczytany numer zmiany, lecz
+ * identyfikator najstarszej niezatwierdzonej transakcji w chwili odczytu
+ * ({@code pg_snapshot_xmin(pg_current_snapshot())}). Numer z sekwencji jest
+ * nadawany przy zapisie, a nie przy zatwierdzeniu, więc transakcja, która
+ * pobrała mniejszy numer, ale została zatwierdzona później, zostałaby
+ * pominięta na zawsze. Kolejna synchronizacja wczytuje rekordy z
+ * {@code change_xid} nie mniejszym niż znacznik, czyli ponownie także część
+ * rekordów już wczytanych.
+ * <p>
+ * Czas trwania wydarzenia jest przechowywany jako liczba minut w kolumnie
+ * {@code event_duration integer NOT NULL DEFAULT 0} tabeli events, dzięki
+ * czemu wydarzenie może trwać dłużej niż dobę. Kolumnę typu {@code time} z
+ * wcześniejszych wersji należy przekształcić poleceniem
+ * {@code ALTER TABLE events ALTER COLUMN event_duration DROP DEFAULT,
+ * ALTER COLUMN event_duration TYPE integer USING (EXTRACT(EPOCH FROM event_duration) / 60)::integer,
+ * ALTER COLUMN event_duration SET DEFAULT 0}.
  * 
  * @author Mateusz Kopaczewski
  */
@@ -0,0 +1,669 @@
+package serializer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import model.Category;
+import model.Contact;
+import model.Event;
+import util.StringPool;
+
+/**
+ * Binarna migawka danych aplikacji. Jest wczytywana przy starcie zamiast
+ * pliku XML i służy jako plik bazowy lokalnego magazynu danych
+ * {@link serializer.LocalStore}, do którego kompaktowany jest dziennik zmian.
+ * Migawka zawiera te same listy kategorii, wydarzeń i kontaktów oraz ich
+ * powiązania co plik XML, ale w zwartym formacie, który można odczytać bez
+ * parsowania tekstu:
+ *
+ * <pre>
+ * nagłówek:  magic, wersja formatu, długość i czas modyfikacji pliku źródłowego
+ * teksty:    liczba, a dla każdego długość w bajtach i dane UTF-8
+ * kategorie: liczba, a dla każdej id, wersja, lokalny klucz, flagi, nazwa, kolor
+ * wydarzenia: liczba, a dla każdego id, wersja, lokalny klucz, flagi, nazwa,
+ *            data (minuty od epoki), powiadomienie (minuty), czas trwania
+ *            (minuty), lokalizacja, opis, numer kategorii
+ * kontakty:  liczba, a dla każdego id, wersja, lokalny klucz, flagi, imię,
+ *            nazwisko, numer telefonu
+ * powiązania: dla każdego wydarzenia liczba i numery jego kontaktów
+ * znacznik końca
+ * </pre>
+ *
+ * Każdy tekst jest zapisywany w tabeli tekstów tylko raz, a obiekty odwołują
+ * się do niego numerem, więc powtarzające się lokalizacje czy nazwy kategorii
+ * zajmują miejsce raz w pliku i raz w pamięci. Kategorie i kontakty są
+ * wskazywane numerem na liście. Daty są zapisywane z dokładnością do minuty,
+ * z jaką wprowadza je aplikacja.
+ * <p>
+ * Plik jest odczytywany przez {@link FileChannel#map} bez kopiowania do
+ * bufora pośredniego, a duże pliki są dekodowane równolegle fragmentami
+ * (zob. {@link #read(MappedByteBuffer)}). Jeśli migawkę utworzono z plikiem
+ * źródłowym (np. plikiem XML, z którego powstała), jest używana tylko wtedy,
+ * gdy plik źródłowy nie zmienił się od jej zapisania (zgadzają się jego
+ * długość i czas modyfikacji).
+ * W przeciwnym razie, a także przy nieznanej wersji lub uszkodzonym pliku,
+ * {@link #decode()} zwraca null i dane należy wczytać z innego źródła.
+ *
+ * @see serializer.XMLSerializer
+ * @see serializer.XMLDeserializer
+ */
+public class BinarySnapshot
+{
+	private static final int MAGIC = 0x43414C42;
+	private static final int END_MAGIC = 0x454E4421;
+	private static final int FORMAT_VERSION = 3;
+
+	private static final int NONE = -1;
+	private static final int NO_DATE = Integer.MIN_VALUE;
+	private static final byte MODIFIED = 1;
+
+	private static final int CATEGORY_SIZE = 25;
+	private static final int EVENT_SIZE = 43;
+	private static final int CONTACT_SIZE = 29;
+	private static final int CHUNK_SIZE = 4096;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Dekodowanie fragmentu sekcji rekordów o stałej długości.
+	 */
+	@FunctionalInterface
+	private interface ChunkReader
+	{
+		/**
+		 * @param in   Bufor ustawiony na początku fragmentu.
+		 * @param from Numer pierwszego rekordu fragmentu.
+		 * @param to   Numer rekordu za fragmentem.
+		 */
+		void read(ByteBuffer in, int from, int to);
+	}
+
+	private final Path path;
+	private final Path sourcePath;
+	private StringPool stringPool = new StringPool();
+
+	/**
+	 * Tworzy migawkę zapisywaną w podanym pliku, niezależną od innych plików.
+	 *
+	 * @param filePath Ścieżka do pliku migawki.
+	 */
+	public BinarySnapshot(String filePath)
+	{
+		this(filePath, null);
+	}
+
+	/**
+	 * Tworzy migawkę zapisywaną w podanym pliku.
+	 *
+	 * @param filePath       Ścieżka do pliku migawki.
+	 * @param sourceFilePath Ścieżka do pliku, którego zawartość odzwierciedla
+	 *                       migawka, lub null.
+	 */
+	public BinarySnapshot(String filePath, String sourceFilePath)
+	{
+		this.path = Path.of(filePath);
+		this.sourcePath = sourceFilePath != null ? Path.of(sourceFilePath) : null;
+	}
+
+	/**
+	 * Ustawia pulę tekstów, przez którą przechodzą teksty odczytane z migawki, np.
+	 * pulę wspólną dla wszystkich źródeł danych aplikacji.
+	 *
+	 * @param stringPool Pula tekstów.
+	 */
+	public void setStringPool(StringPool stringPool)
+	{
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * Zapisuje migawkę list kategorii, wydarzeń i kontaktów. Jeśli migawka ma
+	 * plik źródłowy, powinna być wywoływana po jego zapisaniu, ponieważ
+	 * zapamiętuje jego długość i czas modyfikacji. Plik jest zapisywany do pliku
+	 * tymczasowego, synchronizowany z dyskiem i atomowo zastępuje poprzednią
+	 * migawkę.
+	 *
+	 * @param  categories  Lista kategorii do zapisania.
+	 * @param  events      Lista wydarzeń do zapisania.
+	 * @param  contacts    Lista kontaktów do zapisania.
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli zapis pliku się nie powiódł.
+	 */
+	public long encode(List<Category> categories, List<Event> events, List<Contact> contacts) throws IOException
+	{
+		File parent = path.toAbsolutePath().getParent().toFile();
+
+		if (!parent.exists())
+			parent.mkdirs();
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (FileOutputStream fileOutputStream = new FileOutputStream(temp.toFile()))
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream, BUFFER_SIZE));
+			write(out, categories, events, contacts);
+			out.flush();
+			fileOutputStream.getFD().sync();
+		}
+
+		long bytesWritten = Files.size(temp);
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		return bytesWritten;
+	}
+
+	/**
+	 * Wczytuje migawkę, jeśli istnieje i odpowiada aktualnemu plikowi
+	 * źródłowemu.
+	 *
+	 * @return Obiekt {@link serializer.XMLDataWrapper} zawierający listy
+	 *         kategorii, wydarzeń i kontaktów lub null, jeśli dane należy
+	 *         wczytać z innego źródła.
+	 */
+	public XMLDataWrapper decode()
+	{
+		if (!Files.exists(path))
+			return null;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+
+			if (size > Integer.MAX_VALUE)
+				return null;
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+				return null;
+
+			if (buffer.getLong() != sourceLength() || buffer.getLong() != sourceModified())
+				return null;
+
+			return read(buffer);
+		}
+		catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | IllegalStateException e)
+		{
+			System.err.println("Binary snapshot: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Zapisuje migawkę do strumienia. Strumień nie jest zamykany.
+	 *
+	 * @param  out         Strumień wyjściowy.
+	 * @param  categories  Lista kategorii do zapisania.
+	 * @param  events      Lista wydarzeń do zapisania.
+	 * @param  contacts    Lista kontaktów do zapisania.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	void write(DataOutputStream out, List<Category> categories, List<Event> events, List<Contact> contacts) throws IOException
+	{
+		Map<String, Integer> strings = new HashMap<>();
+		List<String> table = new ArrayList<>();
+
+		for (Category category : categories)
+		{
+			intern(strings, table, category.getName());
+			intern(strings, table, category.getColorHex());
+		}
+
+		for (Event event : events)
+		{
+			intern(strings, table, event.getName());
+			intern(strings, table, event.getLocation());
+			intern(strings, table, event.getDescription());
+		}
+
+		for (Contact contact : contacts)
+		{
+			intern(strings, table, contact.getFirstName());
+			intern(strings, table, contact.getLastName());
+			intern(strings, table, contact.getPhoneNumber());
+		}
+
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeLong(sourceLength());
+		out.writeLong(sourceModified());
+
+		out.writeInt(table.size());
+
+		for (String value : table)
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		Map<Category, Integer> categoryRefs = new IdentityHashMap<>(categories.size());
+		Map<Contact, Integer> contactRefs = new IdentityHashMap<>(contacts.size());
+
+		out.writeInt(categories.size());
+
+		for (int i = 0; i < categories.size(); i++)
+		{
+			Category category = categories.get(i);
+			categoryRefs.put(category, i);
+
+			writeHeader(out, category.getId(), category.getVersion(), category.getLocalKey(), category.isModified());
+			out.writeInt(indexOf(strings, category.getName()));
+			out.writeInt(indexOf(strings, category.getColorHex()));
+		}
+
+		out.writeInt(events.size());
+
+		for (Event event : events)
+		{
+			writeHeader(out, event.getId(), event.getVersion(), event.getLocalKey(), event.isModified());
+			out.writeInt(indexOf(strings, event.getName()));
+			out.writeInt(event.getDate() != null ? (int) (event.getDate().toEpochSecond(ZoneOffset.UTC) / 60) : NO_DATE);
+			out.writeShort(event.getNotifyOffset() != null ? event.getNotifyOffset().getHour() * 60 + event.getNotifyOffset().getMinute() : NONE);
+			out.writeInt(event.getDuration() != null ? Math.toIntExact(event.getDuration().toMinutes()) : NONE);
+			out.writeInt(indexOf(strings, event.getLocation()));
+			out.writeInt(indexOf(strings, event.getDescription()));
+
+			Integer categoryRef = event.getCategory() != null ? categoryRefs.get(event.getCategory()) : null;
+			out.writeInt(categoryRef != null ? categoryRef : NONE);
+		}
+
+		out.writeInt(contacts.size());
+
+		for (int i = 0; i < contacts.size(); i++)
+		{
+			Contact contact = contacts.get(i);
+			contactRefs.put(contact, i);
+
+			writeHeader(out, contact.getId(), contact.getVersion(), contact.getLocalKey(), contact.isModified());
+			out.writeInt(indexOf(strings, contact.getFirstName()));
+			out.writeInt(indexOf(strings, contact.getLastName()));
+			out.writeInt(indexOf(strings, contact.getPhoneNumber()));
+		}
+
+		int[] refs = new int[16];
+
+		for (Event event : events)
+		{
+			int count = 0;
+
+			for (Contact contact : event.getContacts())
+			{
+				Integer contactRef = contactRefs.get(contact);
+
+				if (contactRef == null)
+					continue;
+
+				if (count == refs.length)
+					refs = Arrays.copyOf(refs, count * 2);
+
+				refs[count++] = contactRef;
+			}
+
+			out.writeInt(count);
+
+			for (int i = 0; i < count; i++)
+			{
+				out.writeInt(refs[i]);
+			}
+		}
+
+		out.writeInt(END_MAGIC);
+	}
+
+	/**
+	 * Odczytuje listy kategorii, wydarzeń i kontaktów z bufora ustawionego za
+	 * nagłówkiem migawki. Odczyt przebiega w trzech etapach:
+	 * <ol>
+	 * <li>tabela tekstów jest dzielona na fragmenty po {@code CHUNK_SIZE}
+	 * tekstów, dekodowane równolegle,</li>
+	 * <li>rekordy kategorii, wydarzeń i kontaktów mają stałą długość, więc
+	 * położenie każdej sekcji i każdego jej fragmentu wynika z liczby rekordów;
+	 * fragmenty wszystkich trzech sekcji są dekodowane równolegle, a wydarzenia
+	 * zapamiętują na razie tylko numery kategorii,</li>
+	 * <li>jeden wątek wiąże wydarzenia z kategoriami i kontaktami, ponieważ
+	 * listy wydarzeń kontaktów nie mogą być zmieniane równolegle.</li>
+	 * </ol>
+	 * Fragmenty są wykonywane w puli {@link ForkJoinPool#commonPool()}. Małe
+	 * pliki, np. partycje pojedynczych miesięcy, mieszczą się w jednym
+	 * fragmencie na sekcję i nie tworzą zadań dla pojedynczego fragmentu.
+	 *
+	 * @param  buffer Bufor z zawartością pliku.
+	 * @return        Obiekt {@link serializer.XMLDataWrapper} lub null, jeśli
+	 *                plik nie kończy się znacznikiem końca.
+	 */
+	XMLDataWrapper read(MappedByteBuffer buffer)
+	{
+		int stringCount = buffer.getInt();
+
+		if (stringCount < 0 || stringCount > buffer.remaining() / Integer.BYTES)
+			throw new BufferUnderflowException();
+
+		String[] table = new String[stringCount];
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+		for (int from = 0; from < table.length; from += CHUNK_SIZE)
+		{
+			ByteBuffer in = buffer.duplicate();
+			int start = from;
+			int end = Math.min(table.length, from + CHUNK_SIZE);
+
+			tasks.add(ForkJoinTask.adapt(() -> readStrings(in, table, start, end, stringPool)));
+
+			for (int i = start; i < end; i++)
+			{
+				int length = buffer.getInt();
+
+				if (length < 0 || length > buffer.remaining())
+					throw new BufferUnderflowException();
+
+				buffer.position(buffer.position() + length);
+			}
+		}
+
+		invokeAll(tasks);
+
+		int categoryCount = buffer.getInt();
+		int categoriesAt = skip(buffer, categoryCount, CATEGORY_SIZE);
+		int eventCount = buffer.getInt();
+		int eventsAt = skip(buffer, eventCount, EVENT_SIZE);
+		int contactCount = buffer.getInt();
+		int contactsAt = skip(buffer, contactCount, CONTACT_SIZE);
+
+		Category[] categories = new Category[categoryCount];
+		Event[] events = new Event[eventCount];
+		int[] categoryRefs = new int[eventCount];
+		Contact[] contacts = new Contact[contactCount];
+
+		tasks.clear();
+		addChunks(tasks, buffer, categoriesAt, categoryCount, CATEGORY_SIZE, (in, from, to) -> readCategories(in, table, categories, from, to));
+		addChunks(tasks, buffer, eventsAt, eventCount, EVENT_SIZE, (in, from, to) -> readEvents(in, table, events, categoryRefs, from, to));
+		addChunks(tasks, buffer, contactsAt, contactCount, CONTACT_SIZE, (in, from, to) -> readContacts(in, table, contacts, from, to));
+		invokeAll(tasks);
+
+		for (int i = 0; i < eventCount; i++)
+		{
+			Event event = events[i];
+			event.setCategory(categoryRefs[i] != NONE ? categories[categoryRefs[i]] : null);
+
+			int count = buffer.getInt();
+
+			for (int j = 0; j < count; j++)
+			{
+				Contact contact = contacts[buffer.getInt()];
+				event.getContacts().add(contact);
+				contact.getEvents().add(event);
+			}
+		}
+
+		if (buffer.getInt() != END_MAGIC)
+			return null;
+
+		return new XMLDataWrapper(new ArrayList<>(Arrays.asList(categories)), new ArrayList<>(Arrays.asList(events)),
+				new ArrayList<>(Arrays.asList(contacts)));
+	}
+
+	/**
+	 * Dekoduje fragment tabeli tekstów. Teksty są zastępowane tekstami z puli,
+	 * więc te same teksty z różnych plików (np. partycji miesięcy) są w pamięci
+	 * tylko raz.
+	 *
+	 * @param in         Bufor ustawiony na początku fragmentu.
+	 * @param table      Tabela tekstów.
+	 * @param from       Numer pierwszego tekstu fragmentu.
+	 * @param to         Numer tekstu za fragmentem.
+	 * @param stringPool Pula tekstów.
+	 */
+	private static void readStrings(ByteBuffer in, String[] table, int from, int to, StringPool stringPool)
+	{
+		byte[] scratch = new byte[256];
+
+		for (int i = from; i < to; i++)
+		{
+			int length = in.getInt();
+
+			if (length > scratch.length)
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+
+			in.get(scratch, 0, length);
+			table[i] = stringPool.intern(new String(scratch, 0, length, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Dekoduje fragment sekcji kategorii.
+	 *
+	 * @param in         Bufor ustawiony na początku fragmentu.
+	 * @param table      Tabela tekstów.
+	 * @param categories Tablica odczytanych kategorii.
+	 * @param from       Numer pierwszej kategorii fragmentu.
+	 * @param to         Numer kategorii za fragmentem.
+	 */
+	private static void readCategories(ByteBuffer in, String[] table, Category[] categories, int from, int to)
+	{
+		for (int i = from; i < to; i++)
+		{
+			Category category = new Category();
+			category.setId(in.getInt());
+			category.setVersion(in.getInt());
+			category.setLocalKey(in.getLong());
+			category.setModified(in.get() == MODIFIED);
+			category.setName(string(table, in.getInt()));
+			category.setColorHex(string(table, in.getInt()));
+			categories[i] = category;
+		}
+	}
+
+	/**
+	 * Dekoduje fragment sekcji wydarzeń. Kategorie są przypisywane dopiero przy
+	 * wiązaniu, dlatego ich numery są zapamiętywane w {@code categoryRefs}.
+	 *
+	 * @param in           Bufor ustawiony na początku fragmentu.
+	 * @param table        Tabela tekstów.
+	 * @param events       Tablica odczytanych wydarzeń.
+	 * @param categoryRefs Numery kategorii wydarzeń.
+	 * @param from         Numer pierwszego wydarzenia fragmentu.
+	 * @param to           Numer wydarzenia za fragmentem.
+	 */
+	private static void readEvents(ByteBuffer in, String[] table, Event[] events, int[] categoryRefs, int from, int to)
+	{
+		for (int i = from; i < to; i++)
+		{
+			Event event = new Event();
+			event.setId(in.getInt());
+			event.setVersion(in.getInt());
+			event.setLocalKey(in.getLong());
+			event.setModified(in.get() == MODIFIED);
+			event.setName(string(table, in.getInt()));
+
+			int date = in.getInt();
+			event.setDate(date != NO_DATE ? LocalDateTime.ofEpochSecond(date * 60L, 0, ZoneOffset.UTC) : null);
+
+			int notifyOffset = in.getShort();
+			event.setNotifyOffset(notifyOffset != NONE ? LocalTime.of(notifyOffset / 60, notifyOffset % 60) : null);
+
+			int duration = in.getInt();
+			event.setDuration(duration != NONE ? Duration.ofMinutes(duration) : null);
+
+			event.setLocation(string(table, in.getInt()));
+			event.setDescription(string(table, in.getInt()));
+
+			categoryRefs[i] = in.getInt();
+			events[i] = event;
+		}
+	}
+
+	/**
+	 * Dekoduje fragment sekcji kontaktów.
+	 *
+	 * @param in       Bufor ustawiony na początku fragmentu.
+	 * @param table    Tabela tekstów.
+	 * @param contacts Tablica odczytanych kontaktów.
+	 * @param from     Numer pierwszego kontaktu fragmentu.
+	 * @param to       Numer kontaktu za fragmentem.
+	 */
+	private static void readContacts(ByteBuffer in, String[] table, Contact[] contacts, int from, int to)
+	{
+		for (int i = from; i < to; i++)
+		{
+			Contact contact = new Contact();
+			contact.setId(in.getInt());
+			contact.setVersion(in.getInt());
+			contact.setLocalKey(in.getLong());
+			contact.setModified(in.get() == MODIFIED);
+			contact.setFirstName(string(table, in.getInt()));
+			contact.setLastName(string(table, in.getInt()));
+			contact.setPhoneNumber(string(table, in.getInt()));
+			contacts[i] = contact;
+		}
+	}
+
+	/**
+	 * Pomija sekcję rekordów o stałej długości.
+	 *
+	 * @param  buffer     Bufor ustawiony na początku rekordów sekcji.
+	 * @param  count      Liczba rekordów.
+	 * @param  recordSize Długość rekordu w bajtach.
+	 * @return            Położenie pierwszego rekordu sekcji.
+	 */
+	private static int skip(MappedByteBuffer buffer, int count, int recordSize)
+	{
+		int position = buffer.position();
+
+		if (count < 0 || count > buffer.remaining() / recordSize)
+			throw new BufferUnderflowException();
+
+		buffer.position(position + count * recordSize);
+		return position;
+	}
+
+	/**
+	 * Dzieli sekcję rekordów o stałej długości na fragmenty po
+	 * {@code CHUNK_SIZE} rekordów i dodaje zadanie dekodowania każdego z nich.
+	 *
+	 * @param tasks      Lista zadań.
+	 * @param buffer     Bufor z zawartością pliku.
+	 * @param position   Położenie pierwszego rekordu sekcji.
+	 * @param count      Liczba rekordów.
+	 * @param recordSize Długość rekordu w bajtach.
+	 * @param reader     Dekodowanie fragmentu.
+	 */
+	private static void addChunks(List<ForkJoinTask<?>> tasks, MappedByteBuffer buffer, int position, int count, int recordSize, ChunkReader reader)
+	{
+		for (int from = 0; from < count; from += CHUNK_SIZE)
+		{
+			ByteBuffer in = buffer.duplicate().position(position + from * recordSize);
+			int start = from;
+			int end = Math.min(count, from + CHUNK_SIZE);
+
+			tasks.add(ForkJoinTask.adapt(() -> reader.read(in, start, end)));
+		}
+	}
+
+	/**
+	 * Wykonuje zadania i czeka na ich zakończenie. Pojedyncze zadanie jest
+	 * wykonywane w bieżącym wątku.
+	 *
+	 * @param tasks Lista zadań.
+	 */
+	private static void invokeAll(List<ForkJoinTask<?>> tasks)
+	{
+		if (tasks.size() == 1)
+			tasks.get(0).invoke();
+		else
+			ForkJoinTask.invokeAll(tasks);
+	}
+
+	/**
+	 * Zapisuje pola wspólne dla kategorii, wydarzeń i kontaktów.
+	 *
+	 * @param  out         Strumień wyjściowy.
+	 * @param  id          Identyfikator z bazy danych.
+	 * @param  version     Wersja rekordu.
+	 * @param  localKey    Lokalny klucz obiektu.
+	 * @param  modified    Czy obiekt ma niezsynchronizowane zmiany.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	private static void writeHeader(DataOutputStream out, int id, int version, long localKey, boolean modified) throws IOException
+	{
+		out.writeInt(id);
+		out.writeInt(version);
+		out.writeLong(localKey);
+		out.writeByte(modified ? MODIFIED : 0);
+	}
+
+	/**
+	 * Dodaje tekst do tabeli tekstów, jeśli jeszcze go w niej nie ma.
+	 *
+	 * @param strings Mapa numerów tekstów w tabeli.
+	 * @param table   Tabela tekstów w kolejności zapisu.
+	 * @param value   Tekst lub null.
+	 */
+	private static void intern(Map<String, Integer> strings, List<String> table, String value)
+	{
+		if (value != null && strings.putIfAbsent(value, table.size()) == null)
+			table.add(value);
+	}
+
+	/**
+	 * @param  strings Mapa numerów tekstów w tabeli.
+	 * @param  value   Tekst lub null.
+	 * @return         Numer tekstu w tabeli lub {@code NONE} dla null.
+	 */
+	private static int indexOf(Map<String, Integer> strings, String value)
+	{
+		return value != null ? strings.get(value) : NONE;
+	}
+
+	/**
+	 * @param  table Tabela tekstów.
+	 * @param  index Numer tekstu lub {@code NONE}.
+	 * @return       Tekst lub null.
+	 */
+	private static String string(String[] table, int index)
+	{
+		return index != NONE ? table[index] : null;
+	}
+
+	/**
+	 * @return Długość pliku źródłowego lub 0, jeśli nie istnieje lub migawka nie
+	 *         ma pliku źródłowego.
+	 */
+	private long sourceLength()
+	{
+		return sourcePath != null ? sourcePath.toFile().length() : 0;
+	}
+
+	/**
+	 * @return Czas modyfikacji pliku źródłowego lub 0, jeśli nie istnieje lub
+	 *         migawka nie ma pliku źródłowego.
+	 */
+	private long sourceModified()
+	{
+		return sourcePath != null ? sourcePath.toFile().lastModified() : 0;
+	}
+}
@@ -0,0 +1,579 @@
+package serializer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+
+import model.Category;
+import model.Contact;
+import model.Event;
+import util.Durations;
+import util.PhoneNumbers;
+import util.StringPool;
+
+/**
+ * Klasa odpowiedzialna za import kontaktów lub wydarzeń z pliku CSV. Rodzaj
+ * danych jest rozpoznawany po nagłówku pliku, który zawiera nazwy kolumn w
+ * dowolnej kolejności:
+ *
+ * <pre>
+ * first_name,last_name,phone_number
+ * name,date,time[,notify_offset][,location][,description][,category][,category_color][,duration]
+ * </pre>
+ *
+ * Separatorem kolumn jest przecinek lub, jeśli nagłówek zawiera tylko
+ * średniki, średnik. Wartości mogą być ujęte w cudzysłowy (RFC 4180), także
+ * gdy zawierają separator lub znak nowego wiersza. Data ma format
+ * {@code RRRR-MM-DD}, godzina i czas powiadomienia format {@code GG:mm}, a
+ * czas trwania format {@code G:mm} bez ograniczenia liczby godzin
+ * ({@link util.Durations}), więc wydarzenie może trwać dłużej niż dobę.
+ * <p>
+ * Import przebiega potokowo: wątek czytający dzieli plik na fragmenty po
+ * {@code CHUNK_SIZE} rekordów, które są analizowane i sprawdzane równolegle
+ * w puli {@link ForkJoinPool#commonPool()} (z ograniczoną liczbą fragmentów w
+ * pamięci, tak jak w {@link serializer.ICalendarDeserializer}), a następnie w
+ * kolejności z pliku sprawdza duplikaty w zbiorach haszujących i tworzy
+ * kategorie wydarzeń. Reguły sprawdzania odpowiadają formularzom aplikacji:
+ * wymagane pola nie mogą być puste, numer telefonu musi składać się z 9 cyfr
+ * i nie może się powtarzać, a termin wydarzenia nie może być zajęty. Wiersze,
+ * które nie spełniają reguł, są odrzucane ({@link #getRejectedRows()}) i mogą
+ * zostać zapisane do raportu przez {@link #writeRejectedRows(String)}.
+ */
+public class CSVDeserializer
+{
+	private static final int CHUNK_SIZE = 4096;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String DEFAULT_COLOR = "#808080";
+
+	private static final String[] CONTACT_COLUMNS = { "first_name", "last_name", "phone_number" };
+	private static final String[] EVENT_COLUMNS = { "name", "date", "time", "notify_offset", "location", "description", "category", "category_color", "duration" };
+	private static final int REQUIRED_EVENT_COLUMNS = 3;
+
+	private static final Pattern TIME = Pattern.compile("([01]?[0-9]|2[0-3]):[0-5][0-9]");
+	private static final Pattern COLOR_HEX = Pattern.compile("#[0-9A-Fa-f]{6}");
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("H:mm");
+
+	private StringPool stringPool = new StringPool();
+	private List<CSVRejectedRow> rejectedRows = new ArrayList<>();
+
+	/**
+	 * Rekord pliku CSV (jeden lub więcej wierszy, jeśli wartość w cudzysłowie
+	 * zawiera znak nowego wiersza).
+	 */
+	private static class Record
+	{
+		private final int lineNumber;
+		private final String line;
+
+		private Record(int lineNumber, String line)
+		{
+			this.lineNumber = lineNumber;
+			this.line = line;
+		}
+	}
+
+	/**
+	 * Wynik analizy rekordu: kontakt lub wydarzenie albo powód odrzucenia.
+	 */
+	private static class ParsedRecord
+	{
+		private final Record record;
+		private Contact contact;
+		private String phoneNumber;
+		private Event event;
+		private String categoryName;
+		private String categoryColor;
+		private String error;
+
+		private ParsedRecord(Record record)
+		{
+			this.record = record;
+		}
+	}
+
+	/**
+	 * Ustawia pulę tekstów, przez którą przechodzą teksty odczytane z pliku, np.
+	 * pulę wspólną dla wszystkich źródeł danych aplikacji.
+	 *
+	 * @param stringPool Pula tekstów.
+	 */
+	public void setStringPool(StringPool stringPool)
+	{
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * Importuje kontakty lub wydarzenia z pliku CSV. Zwrócone obiekty nie są
+	 * powiązane z danymi aplikacji; kategorie są rozpoznawane tylko w obrębie
+	 * pliku.
+	 *
+	 * @param  filePath      Ścieżka do pliku .csv.
+	 * @param  phoneNumbers  Numery telefonów istniejących kontaktów (bez spacji).
+	 *                       Zbiór jest uzupełniany o numery zaimportowanych
+	 *                       kontaktów.
+	 * @param  occupiedDates Terminy istniejących wydarzeń. Zbiór jest
+	 *                       uzupełniany o terminy zaimportowanych wydarzeń.
+	 * @return               Obiekt {@link serializer.XMLDataWrapper} zawierający
+	 *                       listy odczytanych kategorii, wydarzeń i kontaktów.
+	 * @throws IOException   Jeśli nie udało się odczytać pliku lub jego nagłówek
+	 *                       nie zawiera wymaganych kolumn.
+	 */
+	public XMLDataWrapper decode(String filePath, Set<String> phoneNumbers, Set<LocalDateTime> occupiedDates) throws IOException
+	{
+		rejectedRows = new ArrayList<>();
+
+		Map<String, Category> categoriesByName = new HashMap<>();
+		XMLDataWrapper data = new XMLDataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+
+		ArrayDeque<ForkJoinTask<List<ParsedRecord>>> pending = new ArrayDeque<>();
+		int maxPending = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(Path.of(filePath)), StandardCharsets.UTF_8),
+				BUFFER_SIZE))
+		{
+			String header = reader.readLine();
+
+			if (header == null)
+				throw new IOException("CSV file is empty: " + filePath);
+
+			if (header.startsWith("\uFEFF"))
+				header = header.substring(1);
+
+			char delimiter = header.indexOf(';') >= 0 && header.indexOf(',') < 0 ? ';' : ',';
+			List<String> names = split(header, delimiter);
+
+			if (names == null)
+				throw new IOException("Invalid CSV header: " + header);
+
+			names.replaceAll(name -> name.toLowerCase(Locale.ROOT));
+
+			boolean events = names.contains("date");
+			String[] schema = events ? EVENT_COLUMNS : CONTACT_COLUMNS;
+			int required = events ? REQUIRED_EVENT_COLUMNS : CONTACT_COLUMNS.length;
+			int[] columns = new int[schema.length];
+
+			for (int i = 0; i < schema.length; i++)
+			{
+				columns[i] = names.indexOf(schema[i]);
+
+				if (columns[i] < 0 && i < required)
+					throw new IOException("CSV header is missing column \"" + schema[i] + "\": " + header);
+			}
+
+			List<Record> chunk = new ArrayList<>(CHUNK_SIZE);
+			int lineNumber = 1;
+			String line;
+
+			while ((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+
+				if (line.isBlank())
+					continue;
+
+				int firstLine = lineNumber;
+
+				// wartość w cudzysłowie może zawierać znak nowego wiersza
+				if (isUnterminated(line))
+				{
+					StringBuilder record = new StringBuilder(line);
+					String next;
+
+					while (isUnterminated(record) && (next = reader.readLine()) != null)
+					{
+						lineNumber++;
+						record.append('\n').append(next);
+					}
+
+					line = record.toString();
+				}
+
+				chunk.add(new Record(firstLine, line));
+
+				if (chunk.size() == CHUNK_SIZE)
+				{
+					pending.add(fork(chunk, delimiter, names.size(), columns, events));
+					chunk = new ArrayList<>(CHUNK_SIZE);
+
+					if (pending.size() >= maxPending)
+						link(pending.poll().join(), data, categoriesByName, phoneNumbers, occupiedDates);
+				}
+			}
+
+			if (!chunk.isEmpty())
+				pending.add(fork(chunk, delimiter, names.size(), columns, events));
+		}
+		catch (IOException e)
+		{
+			pending.forEach(task -> task.cancel(false));
+			throw e;
+		}
+
+		while (!pending.isEmpty())
+		{
+			link(pending.poll().join(), data, categoriesByName, phoneNumbers, occupiedDates);
+		}
+
+		return data;
+	}
+
+	/**
+	 * @return Wiersze odrzucone przy ostatnim imporcie, w kolejności z pliku.
+	 */
+	public List<CSVRejectedRow> getRejectedRows()
+	{
+		return Collections.unmodifiableList(rejectedRows);
+	}
+
+	/**
+	 * Zapisuje raport wierszy odrzuconych przy ostatnim imporcie jako plik CSV z
+	 * kolumnami {@code line,reason,row}.
+	 *
+	 * @param  filePath    Ścieżka do pliku raportu.
+	 * @throws IOException Jeśli zapis pliku się nie powiódł.
+	 */
+	public void writeRejectedRows(String filePath) throws IOException
+	{
+		try (BufferedWriter writer = Files.newBufferedWriter(Path.of(filePath), StandardCharsets.UTF_8))
+		{
+			writer.write("line,reason,row");
+			writer.newLine();
+
+			for (CSVRejectedRow rejectedRow : rejectedRows)
+			{
+				writer.write(Integer.toString(rejectedRow.getLineNumber()));
+				writer.write(',');
+				writer.write(quote(rejectedRow.getReason()));
+				writer.write(',');
+				writer.write(quote(rejectedRow.getLine()));
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Uruchamia analizę fragmentu w puli wątków.
+	 *
+	 * @param  chunk       Rekordy do analizy.
+	 * @param  delimiter   Separator kolumn.
+	 * @param  columnCount Liczba kolumn w nagłówku.
+	 * @param  columns     Położenie kolumn schematu w rekordzie (-1 jeśli brak).
+	 * @param  events      True jeśli plik zawiera wydarzenia, false jeśli
+	 *                     kontakty.
+	 * @return             Zadanie zwracające wyniki analizy rekordów.
+	 */
+	private ForkJoinTask<List<ParsedRecord>> fork(List<Record> chunk, char delimiter, int columnCount, int[] columns, boolean events)
+	{
+		return ForkJoinTask.adapt(() ->
+		{
+			List<ParsedRecord> parsed = new ArrayList<>(chunk.size());
+
+			for (Record record : chunk)
+			{
+				parsed.add(parse(record, delimiter, columnCount, columns, events));
+			}
+
+			return parsed;
+		}).fork();
+	}
+
+	/**
+	 * Analizuje i sprawdza rekord. Wywoływana równolegle dla różnych rekordów,
+	 * więc nie sprawdza duplikatów.
+	 *
+	 * @param  record      Rekord.
+	 * @param  delimiter   Separator kolumn.
+	 * @param  columnCount Liczba kolumn w nagłówku.
+	 * @param  columns     Położenie kolumn schematu w rekordzie (-1 jeśli brak).
+	 * @param  events      True jeśli plik zawiera wydarzenia, false jeśli
+	 *                     kontakty.
+	 * @return             Wynik analizy.
+	 */
+	private ParsedRecord parse(Record record, char delimiter, int columnCount, int[] columns, boolean events)
+	{
+		ParsedRecord parsed = new ParsedRecord(record);
+		List<String> fields = split(record.line, delimiter);
+
+		if (fields == null)
+		{
+			parsed.error = "Unterminated quoted value";
+			return parsed;
+		}
+
+		if (fields.size() != columnCount)
+		{
+			parsed.error = "Expected " + columnCount + " columns but found " + fields.size();
+			return parsed;
+		}
+
+		String[] values = new String[columns.length];
+
+		for (int i = 0; i < columns.length; i++)
+		{
+			values[i] = columns[i] >= 0 ? fields.get(columns[i]) : "";
+		}
+
+		if (events)
+			parseEvent(parsed, values);
+		else
+			parseContact(parsed, values);
+
+		return parsed;
+	}
+
+	/**
+	 * @param parsed Wynik analizy rekordu.
+	 * @param values Wartości kolumn {@code CONTACT_COLUMNS}.
+	 */
+	private void parseContact(ParsedRecord parsed, String[] values)
+	{
+		if (values[0].isEmpty() || values[1].isEmpty() || values[2].isEmpty())
+		{
+			parsed.error = "Fields cannot be empty";
+			return;
+		}
+
+		String phoneNumber = PhoneNumbers.normalize(values[2]);
+
+		if (!PhoneNumbers.isValid(phoneNumber))
+		{
+			parsed.error = "Phone number must be in 9-digit sequence";
+			return;
+		}
+
+		Contact contact = new Contact();
+		contact.setFirstName(stringPool.intern(values[0]));
+		contact.setLastName(stringPool.intern(values[1]));
+		contact.setPhoneNumber(PhoneNumbers.format(phoneNumber));
+
+		parsed.contact = contact;
+		parsed.phoneNumber = phoneNumber;
+	}
+
+	/**
+	 * @param parsed Wynik analizy rekordu.
+	 * @param values Wartości kolumn {@code EVENT_COLUMNS}.
+	 */
+	private void parseEvent(ParsedRecord parsed, String[] values)
+	{
+		if (values[0].isEmpty() || values[1].isEmpty() || values[2].isEmpty())
+		{
+			parsed.error = "Name, Date and Time cannot be empty";
+			return;
+		}
+
+		if (!TIME.matcher(values[2]).matches() || (!values[3].isEmpty() && !TIME.matcher(values[3]).matches())
+				|| (!values[8].isEmpty() && !Durations.isValid(values[8])))
+		{
+			parsed.error = "Time must be in [HH:mm] format";
+			return;
+		}
+
+		if (!values[7].isEmpty() && !COLOR_HEX.matcher(values[7]).matches())
+		{
+			parsed.error = "Category color must be in [#RRGGBB] format";
+			return;
+		}
+
+		LocalDate date;
+
+		try
+		{
+			date = LocalDate.parse(values[1]);
+		}
+		catch (DateTimeParseException e)
+		{
+			parsed.error = "Date must be in [YYYY-MM-DD] format";
+			return;
+		}
+
+		Event event = new Event();
+		event.setName(stringPool.intern(values[0]));
+		event.setDate(LocalDateTime.of(date, LocalTime.parse(values[2], TIME_FORMAT)));
+		event.setNotifyOffset(values[3].isEmpty() ? LocalTime.MIDNIGHT : LocalTime.parse(values[3], TIME_FORMAT));
+		event.setDuration(values[8].isEmpty() ? Duration.ZERO : Durations.parse(values[8]));
+		event.setLocation(stringPool.intern(values[4]));
+		event.setDescription(values[5].isEmpty() ? null : stringPool.intern(values[5]));
+
+		parsed.event = event;
+		parsed.categoryName = values[6].isEmpty() ? null : stringPool.intern(values[6]);
+		parsed.categoryColor = values[7].isEmpty() ? null : values[7].toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Sprawdza duplikaty przeanalizowanych rekordów, przypisuje wydarzeniom
+	 * kategorie, tworząc je przy pierwszym wystąpieniu, i dodaje obiekty do
+	 * wyniku albo rekordy do odrzuconych.
+	 *
+	 * @param parsed           Wyniki analizy rekordów.
+	 * @param data             Wynik importu.
+	 * @param categoriesByName Kategorie według nazwy.
+	 * @param phoneNumbers     Zajęte numery telefonów.
+	 * @param occupiedDates    Zajęte terminy wydarzeń.
+	 */
+	private void link(List<ParsedRecord> parsed, XMLDataWrapper data, Map<String, Category> categoriesByName, Set<String> phoneNumbers,
+			Set<LocalDateTime> occupiedDates)
+	{
+		for (ParsedRecord parsedRecord : parsed)
+		{
+			if (parsedRecord.error != null)
+			{
+				reject(parsedRecord, parsedRecord.error);
+			}
+			else if (parsedRecord.contact != null)
+			{
+				if (!phoneNumbers.add(parsedRecord.phoneNumber))
+				{
+					reject(parsedRecord, "A contact with the same phone number [" + parsedRecord.contact.getPhoneNumber() + "] already exists");
+					continue;
+				}
+
+				data.getContacts().add(parsedRecord.contact);
+			}
+			else
+			{
+				Event event = parsedRecord.event;
+
+				if (!occupiedDates.add(event.getDate()))
+				{
+					reject(parsedRecord, "An event with the same date and time [" + event.getDate() + "] already exists");
+					continue;
+				}
+
+				if (parsedRecord.categoryName != null)
+				{
+					Category category = categoriesByName.get(parsedRecord.categoryName);
+
+					if (category == null)
+					{
+						category = new Category();
+						category.setName(parsedRecord.categoryName);
+						category.setColorHex(parsedRecord.categoryColor != null ? parsedRecord.categoryColor : DEFAULT_COLOR);
+						categoriesByName.put(category.getName(), category);
+						data.getCategories().add(category);
+					}
+
+					event.setCategory(category);
+				}
+
+				data.getEvents().add(event);
+			}
+		}
+	}
+
+	private void reject(ParsedRecord parsedRecord, String reason)
+	{
+		rejectedRows.add(new CSVRejectedRow(parsedRecord.record.lineNumber, parsedRecord.record.line, reason));
+	}
+
+	/**
+	 * Dzieli rekord na wartości. Wartości bez cudzysłowów są przycinane, a w
+	 * wartościach w cudzysłowie podwójny cudzysłów oznacza cudzysłów.
+	 *
+	 * @param  line      Rekord.
+	 * @param  delimiter Separator kolumn.
+	 * @return           Wartości lub null, jeśli cudzysłów nie został zamknięty.
+	 */
+	private static List<String> split(String line, char delimiter)
+	{
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		int i = 0;
+
+		while (true)
+		{
+			while (i < line.length() && line.charAt(i) == ' ')
+			{
+				i++;
+			}
+
+			if (i < line.length() && line.charAt(i) == '"')
+			{
+				field.setLength(0);
+				i++;
+
+				while (true)
+				{
+					if (i >= line.length())
+						return null;
+
+					char c = line.charAt(i++);
+
+					if (c != '"')
+						field.append(c);
+					else if (i < line.length() && line.charAt(i) == '"')
+						field.append(line.charAt(i++));
+					else
+						break;
+				}
+
+				fields.add(field.toString());
+
+				while (i < line.length() && line.charAt(i) != delimiter)
+				{
+					i++;
+				}
+			}
+			else
+			{
+				int end = line.indexOf(delimiter, i);
+				end = end < 0 ? line.length() : end;
+				fields.add(line.substring(i, end).trim());
+				i = end;
+			}
+
+			if (i >= line.length())
+				return fields;
+
+			i++;
+		}
+	}
+
+	/**
+	 * @param  line Rekord lub jego początek.
+	 * @return      True jeśli rekord zawiera nieparzystą liczbę cudzysłowów, czyli
+	 *              wartość w cudzysłowie jest kontynuowana w kolejnym wierszu.
+	 */
+	private static boolean isUnterminated(CharSequence line)
+	{
+		boolean quoted = false;
+
+		for (int i = 0; i < line.length(); i++)
+		{
+			if (line.charAt(i) == '"')
+				quoted = !quoted;
+		}
+
+		return quoted;
+	}
+
+	/**
+	 * @param  value Wartość.
+	 * @return       Wartość ujęta w cudzysłów, z podwojonymi cudzysłowami.
+	 */
+	private static String quote(String value)
+	{
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -0,0 +1,55 @@
+package serializer;
+
+/**
+ * Wiersz pliku CSV odrzucony podczas importu przez
+ * {@link serializer.CSVDeserializer}, razem z numerem wiersza w pliku i
+ * powodem odrzucenia.
+ */
+public class CSVRejectedRow
+{
+	private final int lineNumber;
+	private final String line;
+	private final String reason;
+
+	/**
+	 * @param lineNumber Numer pierwszego wiersza rekordu w pliku (od 1).
+	 * @param line       Treść rekordu.
+	 * @param reason     Powód odrzucenia.
+	 */
+	public CSVRejectedRow(int lineNumber, String line, String reason)
+	{
+		this.lineNumber = lineNumber;
+		this.line = line;
+		this.reason = reason;
+	}
+
+	/**
+	 * @return Numer pierwszego wiersza rekordu w pliku (od 1).
+	 */
+	public int getLineNumber()
+	{
+		return lineNumber;
+	}
+
+	/**
+	 * @return Treść rekordu.
+	 */
+	public String getLine()
+	{
+		return line;
+	}
+
+	/**
+	 * @return Powód odrzucenia.
+	 */
+	public String getReason()
+	{
+		return reason;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Line " + lineNumber + ": " + reason;
+	}
+}
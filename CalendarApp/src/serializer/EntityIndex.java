@@ -0,0 +1,74 @@
+package serializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import util.IntHashMap;
+
+/**
+ * Indeks obiektów według identyfikatora z bazy danych lub, gdy go nie ma,
+ * według lokalnego klucza.
+ *
+ * @param <T> Typ obiektów.
+ */
+class EntityIndex<T>
+{
+	private final IntHashMap<T> byId = new IntHashMap<>();
+	private final Map<Long, T> byLocalKey = new HashMap<>();
+
+	/**
+	 * Dodaje obiekt do indeksu.
+	 *
+	 * @param id       Identyfikator obiektu lub 0.
+	 * @param localKey Lokalny klucz obiektu lub 0.
+	 * @param entity   Obiekt.
+	 */
+	void put(int id, long localKey, T entity)
+	{
+		if (id != 0)
+			byId.put(id, entity);
+
+		if (localKey != 0)
+			byLocalKey.put(localKey, entity);
+	}
+
+	/**
+	 * @param  id       Identyfikator obiektu lub 0.
+	 * @param  localKey Lokalny klucz obiektu lub 0.
+	 * @return          Obiekt o podanym identyfikatorze lub, jeśli go nie ma,
+	 *                  kluczu albo null.
+	 */
+	T get(int id, long localKey)
+	{
+		T entity = id != 0 ? byId.get(id) : null;
+
+		if (entity == null && localKey != 0)
+			entity = byLocalKey.get(localKey);
+
+		return entity;
+	}
+
+	/**
+	 * Usuwa obiekt z indeksu.
+	 *
+	 * @param id       Identyfikator obiektu lub 0.
+	 * @param localKey Lokalny klucz obiektu lub 0.
+	 */
+	void remove(int id, long localKey)
+	{
+		if (id != 0)
+			byId.remove(id);
+
+		if (localKey != 0)
+			byLocalKey.remove(localKey);
+	}
+
+	/**
+	 * Usuwa wszystkie obiekty z indeksu.
+	 */
+	void clear()
+	{
+		byId.clear();
+		byLocalKey.clear();
+	}
+}
@@ -0,0 +1,709 @@
+package serializer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+
+import model.Category;
+import model.Contact;
+import model.Event;
+import util.PhoneNumbers;
+import util.StringPool;
+
+/**
+ * Klasa odpowiedzialna za import wydarzeń z plików iCalendar (RFC 5545), np.
+ * eksportowanych przez inne aplikacje kalendarza lub przez
+ * {@link serializer.ICalendarSerializer}. Komponenty {@code VEVENT} są
+ * zamieniane na wydarzenia, ich własność {@code CATEGORIES} (pierwsza
+ * kategoria) na kategorię, a uczestnicy ({@code ATTENDEE}) z adresem
+ * {@code tel:} na kontakty. Pozostałe komponenty i własności są pomijane.
+ * <p>
+ * Plik jest czytany strumieniowo wiersz po wierszu (z rozwijaniem wierszy
+ * zawiniętych), a wiersze kolejnych wydarzeń są grupowane we fragmenty po
+ * {@code CHUNK_SIZE} wydarzeń, analizowane równolegle w puli
+ * {@link ForkJoinPool#commonPool()}. W pamięci znajduje się tylko kilka
+ * fragmentów tekstu naraz: gdy oczekujących fragmentów jest więcej niż
+ * dwukrotność równoległości puli, odczyt czeka na najstarszy z nich.
+ * Przeanalizowane fragmenty są wiązane z kategoriami i kontaktami w wątku
+ * czytającym, w kolejności z pliku, dzięki czemu kategorie o tej samej nazwie
+ * i kontakty o tym samym numerze telefonu są tworzone tylko raz.
+ * <p>
+ * Daty w czasie UTC lub ze strefą czasową {@code TZID} są przeliczane na
+ * czas lokalny, a daty bez strefy traktowane jako czas lokalny. Pierwszy
+ * alarm przed rozpoczęciem wydarzenia wyznacza czas powiadomienia, a data
+ * zakończenia ({@code DTEND}) lub {@code DURATION} czas trwania wydarzenia
+ * (z dokładnością do minuty, także dłuższy niż doba). Reguły
+ * powtarzania nie są rozwijane; importowane jest pierwsze wystąpienie.
+ * Wydarzenia bez daty rozpoczęcia lub z niepoprawną datą oraz uczestnicy bez
+ * poprawnego numeru telefonu są pomijani i liczeni
+ * ({@link #getSkippedEvents()}, {@link #getSkippedAttendees()}).
+ *
+ * @see serializer.ICalendarSerializer
+ */
+public class ICalendarDeserializer
+{
+	private static final int CHUNK_SIZE = 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int PHONE_NUMBER_DIGITS = 9;
+	private static final String DEFAULT_COLOR = "#808080";
+
+	private static final Pattern NON_DIGITS = Pattern.compile("\\D");
+	private static final Pattern COLOR_HEX = Pattern.compile("#[0-9A-Fa-f]{6}");
+
+	private final Map<String, Optional<ZoneId>> zones = new ConcurrentHashMap<>();
+	private StringPool stringPool = new StringPool();
+
+	private int skippedEvents;
+	private int skippedAttendees;
+
+	/**
+	 * Wydarzenie odczytane z pliku przed powiązaniem z kategorią i kontaktami.
+	 */
+	private static class ParsedEvent
+	{
+		private final Event event = new Event();
+		private final List<String[]> attendees = new ArrayList<>();
+		private String categoryName;
+		private String categoryColor;
+		private int skippedAttendees;
+	}
+
+	/**
+	 * Czytnik wierszy pliku iCalendar, który łączy wiersze zawinięte (zaczynające
+	 * się spacją lub tabulatorem) z poprzednim wierszem.
+	 */
+	private static class UnfoldingReader
+	{
+		private final BufferedReader reader;
+		private String next;
+
+		private UnfoldingReader(BufferedReader reader) throws IOException
+		{
+			this.reader = reader;
+			this.next = reader.readLine();
+
+			if (next != null && next.startsWith("\uFEFF"))
+				next = next.substring(1);
+		}
+
+		/**
+		 * @return             Kolejny rozwinięty wiersz lub null na końcu pliku.
+		 * @throws IOException Jeśli odczyt się nie powiódł.
+		 */
+		private String readLine() throws IOException
+		{
+			if (next == null)
+				return null;
+
+			String line = next;
+			next = reader.readLine();
+
+			if (!isContinuation(next))
+				return line;
+
+			StringBuilder unfolded = new StringBuilder(line);
+
+			while (isContinuation(next))
+			{
+				unfolded.append(next, 1, next.length());
+				next = reader.readLine();
+			}
+
+			return unfolded.toString();
+		}
+
+		private static boolean isContinuation(String line)
+		{
+			return line != null && !line.isEmpty() && (line.charAt(0) == ' ' || line.charAt(0) == '\t');
+		}
+	}
+
+	/**
+	 * Ustawia pulę tekstów, przez którą przechodzą teksty odczytane z pliku, np.
+	 * pulę wspólną dla wszystkich źródeł danych aplikacji.
+	 *
+	 * @param stringPool Pula tekstów.
+	 */
+	public void setStringPool(StringPool stringPool)
+	{
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * Importuje wydarzenia z pliku iCalendar. Zwrócone obiekty nie są powiązane
+	 * z danymi aplikacji; kategorie i kontakty są rozpoznawane tylko w obrębie
+	 * pliku.
+	 *
+	 * @param  filePath    Ścieżka do pliku .ics.
+	 * @return             Obiekt {@link serializer.XMLDataWrapper} zawierający
+	 *                     listy odczytanych kategorii, wydarzeń i kontaktów.
+	 * @throws IOException Jeśli nie udało się odczytać pliku.
+	 */
+	public XMLDataWrapper decode(String filePath) throws IOException
+	{
+		skippedEvents = 0;
+		skippedAttendees = 0;
+
+		Map<String, Category> categoriesByName = new HashMap<>();
+		Map<String, Contact> contactsByPhone = new HashMap<>();
+		XMLDataWrapper data = new XMLDataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+
+		ArrayDeque<ForkJoinTask<List<ParsedEvent>>> pending = new ArrayDeque<>();
+		int maxPending = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+
+		try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(Files.newInputStream(Path.of(filePath)), StandardCharsets.UTF_8),
+				BUFFER_SIZE))
+		{
+			UnfoldingReader reader = new UnfoldingReader(bufferedReader);
+			List<List<String>> chunk = new ArrayList<>(CHUNK_SIZE);
+			List<String> component = null;
+			String line;
+
+			while ((line = reader.readLine()) != null)
+			{
+				if (component == null)
+				{
+					if (line.equalsIgnoreCase("BEGIN:VEVENT"))
+						component = new ArrayList<>();
+
+					continue;
+				}
+
+				if (!line.equalsIgnoreCase("END:VEVENT"))
+				{
+					component.add(line);
+					continue;
+				}
+
+				chunk.add(component);
+				component = null;
+
+				if (chunk.size() == CHUNK_SIZE)
+				{
+					pending.add(fork(chunk));
+					chunk = new ArrayList<>(CHUNK_SIZE);
+
+					if (pending.size() >= maxPending)
+						link(pending.poll().join(), data, categoriesByName, contactsByPhone);
+				}
+			}
+
+			if (!chunk.isEmpty())
+				pending.add(fork(chunk));
+		}
+		catch (IOException e)
+		{
+			pending.forEach(task -> task.cancel(false));
+			throw e;
+		}
+
+		while (!pending.isEmpty())
+		{
+			link(pending.poll().join(), data, categoriesByName, contactsByPhone);
+		}
+
+		return data;
+	}
+
+	/**
+	 * @return Liczba wydarzeń pominiętych przy ostatnim imporcie, ponieważ nie
+	 *         miały poprawnej daty rozpoczęcia.
+	 */
+	public int getSkippedEvents()
+	{
+		return skippedEvents;
+	}
+
+	/**
+	 * @return Liczba uczestników pominiętych przy ostatnim imporcie, ponieważ nie
+	 *         mieli poprawnego numeru telefonu.
+	 */
+	public int getSkippedAttendees()
+	{
+		return skippedAttendees;
+	}
+
+	/**
+	 * Uruchamia analizę fragmentu w puli wątków.
+	 *
+	 * @param  chunk Wiersze kolejnych wydarzeń.
+	 * @return       Zadanie zwracające odczytane wydarzenia (null dla wydarzeń
+	 *               pominiętych).
+	 */
+	private ForkJoinTask<List<ParsedEvent>> fork(List<List<String>> chunk)
+	{
+		return ForkJoinTask.adapt(() ->
+		{
+			List<ParsedEvent> parsed = new ArrayList<>(chunk.size());
+
+			for (List<String> component : chunk)
+			{
+				parsed.add(parseEvent(component));
+			}
+
+			return parsed;
+		}).fork();
+	}
+
+	/**
+	 * Wiąże odczytane wydarzenia z kategoriami i kontaktami, tworząc je przy
+	 * pierwszym wystąpieniu, i dodaje wszystkie obiekty do wyniku.
+	 *
+	 * @param parsed           Odczytane wydarzenia (null dla pominiętych).
+	 * @param data             Wynik importu.
+	 * @param categoriesByName Kategorie według nazwy.
+	 * @param contactsByPhone  Kontakty według cyfr numeru telefonu.
+	 */
+	private void link(List<ParsedEvent> parsed, XMLDataWrapper data, Map<String, Category> categoriesByName, Map<String, Contact> contactsByPhone)
+	{
+		for (ParsedEvent parsedEvent : parsed)
+		{
+			if (parsedEvent == null)
+			{
+				skippedEvents++;
+				continue;
+			}
+
+			Event event = parsedEvent.event;
+
+			if (parsedEvent.categoryName != null)
+			{
+				Category category = categoriesByName.get(parsedEvent.categoryName);
+
+				if (category == null)
+				{
+					category = new Category();
+					category.setName(parsedEvent.categoryName);
+					category.setColorHex(parsedEvent.categoryColor != null ? parsedEvent.categoryColor : DEFAULT_COLOR);
+					categoriesByName.put(category.getName(), category);
+					data.getCategories().add(category);
+				}
+
+				event.setCategory(category);
+			}
+
+			for (String[] attendee : parsedEvent.attendees)
+			{
+				Contact contact = contactsByPhone.get(attendee[2]);
+
+				if (contact == null)
+				{
+					String digits = attendee[2];
+
+					contact = new Contact();
+					contact.setFirstName(attendee[0]);
+					contact.setLastName(attendee[1]);
+					contact.setPhoneNumber(PhoneNumbers.format(digits));
+					contactsByPhone.put(digits, contact);
+					data.getContacts().add(contact);
+				}
+
+				// lista wydarzeń kontaktu bywa długa, więc sprawdzana jest tylko
+				// krótka lista kontaktów wydarzenia
+				if (!event.getContacts().contains(contact))
+				{
+					event.getContacts().add(contact);
+					contact.getEvents().add(event);
+				}
+			}
+
+			skippedAttendees += parsedEvent.skippedAttendees;
+			data.getEvents().add(event);
+		}
+	}
+
+	/**
+	 * Odczytuje wydarzenie z wierszy komponentu {@code VEVENT}. Wywoływana
+	 * równolegle dla różnych wydarzeń.
+	 *
+	 * @param  lines Rozwinięte wiersze komponentu (bez BEGIN i END).
+	 * @return       Odczytane wydarzenie lub null, jeśli nie ma poprawnej daty
+	 *               rozpoczęcia.
+	 */
+	private ParsedEvent parseEvent(List<String> lines)
+	{
+		ParsedEvent parsed = new ParsedEvent();
+		Event event = parsed.event;
+		event.setName("");
+		event.setLocation("");
+		event.setNotifyOffset(LocalTime.MIDNIGHT);
+
+		String nested = null;
+		LocalTime notifyOffset = null;
+		LocalDateTime endDate = null;
+		Duration duration = null;
+
+		try
+		{
+			for (String line : lines)
+			{
+				int colon = valueStart(line);
+
+				if (colon < 0)
+					continue;
+
+				int semicolon = line.indexOf(';');
+				boolean hasParameters = semicolon >= 0 && semicolon < colon;
+				String name = line.substring(0, hasParameters ? semicolon : colon).toUpperCase(Locale.ROOT);
+				String parameters = hasParameters ? line.substring(semicolon + 1, colon) : "";
+				String value = line.substring(colon + 1);
+
+				if (name.equals("BEGIN"))
+				{
+					nested = value.toUpperCase(Locale.ROOT);
+					continue;
+				}
+
+				if (name.equals("END"))
+				{
+					nested = null;
+					continue;
+				}
+
+				if (nested != null)
+				{
+					if (nested.equals("VALARM") && name.equals("TRIGGER") && notifyOffset == null)
+						notifyOffset = parseTrigger(value, parameters);
+
+					continue;
+				}
+
+				switch (name)
+				{
+					case "SUMMARY":
+						event.setName(stringPool.intern(unescape(value, false)));
+						break;
+					case "DTSTART":
+						event.setDate(parseDate(value, parameter(parameters, "TZID")));
+						break;
+					case "DTEND":
+						endDate = parseDate(value, parameter(parameters, "TZID"));
+						break;
+					case "DURATION":
+						duration = parseDuration(value);
+						break;
+					case "LOCATION":
+						event.setLocation(stringPool.intern(unescape(value, false)));
+						break;
+					case "DESCRIPTION":
+						String description = unescape(value, false);
+						event.setDescription(description.isEmpty() ? null : stringPool.intern(description));
+						break;
+					case "CATEGORIES":
+						String categoryName = unescape(value, true).trim();
+
+						if (parsed.categoryName == null && !categoryName.isEmpty())
+							parsed.categoryName = stringPool.intern(categoryName);
+
+						break;
+					case ICalendarSerializer.COLOR_PROPERTY:
+						if (COLOR_HEX.matcher(value.trim()).matches())
+							parsed.categoryColor = stringPool.intern(value.trim().toUpperCase(Locale.ROOT));
+
+						break;
+					case "ATTENDEE":
+						parseAttendee(parsed, value, parameters);
+						break;
+					default:
+						break;
+				}
+			}
+		}
+		catch (RuntimeException e)
+		{
+			return null;
+		}
+
+		if (event.getDate() == null)
+			return null;
+
+		if (notifyOffset != null)
+			event.setNotifyOffset(notifyOffset);
+
+		if (duration == null && endDate != null)
+			duration = Duration.between(event.getDate(), endDate);
+
+		if (duration != null && !duration.isNegative() && !duration.isZero())
+			event.setDuration(Duration.ofMinutes(duration.toMinutes()));
+
+		return parsed;
+	}
+
+	/**
+	 * Odczytuje uczestnika wydarzenia. Uczestnik bez adresu {@code tel:} z co
+	 * najmniej 9 cyframi jest pomijany; z dłuższego numeru (np. z numerem
+	 * kierunkowym kraju) brane jest 9 ostatnich cyfr.
+	 *
+	 * @param parsed     Odczytywane wydarzenie.
+	 * @param value      Adres uczestnika.
+	 * @param parameters Parametry własności.
+	 */
+	private void parseAttendee(ParsedEvent parsed, String value, String parameters)
+	{
+		String address = value.trim();
+
+		if (!address.regionMatches(true, 0, "tel:", 0, 4))
+		{
+			parsed.skippedAttendees++;
+			return;
+		}
+
+		String digits = NON_DIGITS.matcher(address.substring(4)).replaceAll("");
+
+		if (digits.length() < PHONE_NUMBER_DIGITS)
+		{
+			parsed.skippedAttendees++;
+			return;
+		}
+
+		String name = parameter(parameters, "CN");
+		name = name != null ? name.trim() : "";
+
+		int space = name.indexOf(' ');
+		String firstName = space >= 0 ? name.substring(0, space) : name;
+		String lastName = space >= 0 ? name.substring(space + 1).trim() : "";
+
+		parsed.attendees.add(new String[] { stringPool.intern(firstName), stringPool.intern(lastName),
+				digits.substring(digits.length() - PHONE_NUMBER_DIGITS) });
+	}
+
+	/**
+	 * Odczytuje datę rozpoczęcia lub zakończenia w postaci {@code RRRRMMDD},
+	 * {@code RRRRMMDDTGGMMSS} lub {@code RRRRMMDDTGGMMSSZ} i przelicza ją na
+	 * czas lokalny. Sekundy są pomijane, ponieważ aplikacja przechowuje daty z
+	 * dokładnością do minuty.
+	 *
+	 * @param  value Wartość własności.
+	 * @param  tzid  Identyfikator strefy czasowej lub null.
+	 * @return       Data w czasie lokalnym.
+	 */
+	private LocalDateTime parseDate(String value, String tzid)
+	{
+		String date = value.trim();
+
+		int year = Integer.parseInt(date, 0, 4, 10);
+		int month = Integer.parseInt(date, 4, 6, 10);
+		int day = Integer.parseInt(date, 6, 8, 10);
+
+		if (date.length() == 8)
+			return LocalDate.of(year, month, day).atStartOfDay();
+
+		if (date.length() < 15 || date.charAt(8) != 'T')
+			throw new DateTimeException("Invalid date: " + value);
+
+		LocalDateTime dateTime = LocalDateTime.of(year, month, day, Integer.parseInt(date, 9, 11, 10), Integer.parseInt(date, 11, 13, 10));
+
+		if (date.endsWith("Z"))
+			return dateTime.atOffset(ZoneOffset.UTC).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+
+		Optional<ZoneId> zone = tzid != null ? zoneOf(tzid) : Optional.empty();
+
+		if (zone.isPresent())
+			return dateTime.atZone(zone.get()).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+
+		return dateTime;
+	}
+
+	/**
+	 * Odczytuje czas alarmu względem rozpoczęcia wydarzenia, np. {@code -PT15M}
+	 * lub {@code -P1D}. Czas powiadomienia jest przechowywany jako godzina, więc
+	 * dłuższe wyprzedzenie jest ograniczane do 23:59 ({@link #toTime(Duration)}).
+	 *
+	 * @param  value      Wartość własności TRIGGER.
+	 * @param  parameters Parametry własności.
+	 * @return            Czas powiadomienia lub null, jeśli alarm nie poprzedza
+	 *                    rozpoczęcia wydarzenia albo nie udało się go odczytać.
+	 */
+	private static LocalTime parseTrigger(String value, String parameters)
+	{
+		String valueType = parameter(parameters, "VALUE");
+		String related = parameter(parameters, "RELATED");
+
+		if ((valueType != null && !valueType.equalsIgnoreCase("DURATION")) || (related != null && !related.equalsIgnoreCase("START")))
+			return null;
+
+		String trigger = value.trim().toUpperCase(Locale.ROOT);
+		boolean before = trigger.startsWith("-");
+
+		if (trigger.startsWith("-") || trigger.startsWith("+"))
+			trigger = trigger.substring(1);
+
+		Duration duration = parseDuration(trigger);
+
+		if (duration == null || (!before && !duration.isZero()))
+			return null;
+
+		return toTime(duration);
+	}
+
+	/**
+	 * Odczytuje czas trwania w postaci {@code PT1H30M}, {@code P1D} lub
+	 * {@code P2W}.
+	 *
+	 * @param  value Wartość bez znaku.
+	 * @return       Czas trwania lub null, jeśli nie udało się go odczytać.
+	 */
+	private static Duration parseDuration(String value)
+	{
+		String duration = value.trim().toUpperCase(Locale.ROOT);
+
+		try
+		{
+			return duration.endsWith("W") ? Duration.ofDays(7 * Long.parseLong(duration, 1, duration.length() - 1, 10)) : Duration.parse(duration);
+		}
+		catch (RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @param  duration Nieujemny czas trwania.
+	 * @return          Czas trwania jako godzina, z dokładnością do minuty i
+	 *                  ograniczony do 23:59.
+	 */
+	private static LocalTime toTime(Duration duration)
+	{
+		long minutes = Math.min(duration.toMinutes(), 24 * 60 - 1);
+		return LocalTime.of((int) (minutes / 60), (int) (minutes % 60));
+	}
+
+	/**
+	 * @param  tzid Identyfikator strefy czasowej z parametru TZID.
+	 * @return      Strefa czasowa lub pusta wartość, jeśli identyfikator nie
+	 *              jest znany (np. nazwa strefy systemu Windows).
+	 */
+	private Optional<ZoneId> zoneOf(String tzid)
+	{
+		return zones.computeIfAbsent(tzid, id ->
+		{
+			try
+			{
+				return Optional.of(ZoneId.of(id.startsWith("/") ? id.substring(1) : id));
+			}
+			catch (DateTimeException e)
+			{
+				return Optional.empty();
+			}
+		});
+	}
+
+	/**
+	 * @param  line Wiersz własności.
+	 * @return      Położenie dwukropka oddzielającego wartość (pomijając
+	 *              dwukropki w cudzysłowach wartości parametrów) lub -1.
+	 */
+	private static int valueStart(String line)
+	{
+		boolean quoted = false;
+
+		for (int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+
+			if (c == '"')
+				quoted = !quoted;
+			else if (c == ':' && !quoted)
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param  parameters Parametry własności, np. {@code CN="Kowalski, Jan";ROLE=CHAIR}.
+	 * @param  name       Nazwa parametru.
+	 * @return            Wartość parametru bez cudzysłowów lub null.
+	 */
+	private static String parameter(String parameters, String name)
+	{
+		int start = 0;
+
+		while (start < parameters.length())
+		{
+			boolean quoted = false;
+			int end = start;
+
+			while (end < parameters.length() && (quoted || parameters.charAt(end) != ';'))
+			{
+				if (parameters.charAt(end) == '"')
+					quoted = !quoted;
+
+				end++;
+			}
+
+			int equals = parameters.indexOf('=', start);
+
+			if (equals > start && equals < end && parameters.substring(start, equals).trim().equalsIgnoreCase(name))
+			{
+				String value = parameters.substring(equals + 1, end).trim();
+
+				if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+					value = value.substring(1, value.length() - 1);
+
+				return value;
+			}
+
+			start = end + 1;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Usuwa sekwencje ucieczki RFC 5545 z wartości tekstowej.
+	 *
+	 * @param  value     Wartość.
+	 * @param  firstItem True jeśli należy zwrócić tylko pierwszy element listy
+	 *                   wartości rozdzielonych przecinkami.
+	 * @return           Tekst.
+	 */
+	private static String unescape(String value, boolean firstItem)
+	{
+		if (value.indexOf('\\') < 0 && (!firstItem || value.indexOf(',') < 0))
+			return value;
+
+		StringBuilder text = new StringBuilder(value.length());
+
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+
+			if (c == ',' && firstItem)
+				break;
+
+			if (c == '\\' && i + 1 < value.length())
+			{
+				char escaped = value.charAt(++i);
+				text.append(escaped == 'n' || escaped == 'N' ? '\n' : escaped);
+			}
+			else
+			{
+				text.append(c);
+			}
+		}
+
+		return text.toString();
+	}
+}
@@ -0,0 +1,322 @@
+package serializer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import model.Category;
+import model.Contact;
+import model.Event;
+
+/**
+ * Klasa odpowiedzialna za eksport wydarzeń do formatu iCalendar (RFC 5545),
+ * który odczytują inne aplikacje kalendarza. Każde wydarzenie jest zapisywane
+ * jako komponent {@code VEVENT}:
+ *
+ * <pre>
+ * BEGIN:VEVENT
+ * UID:event-5@calendarapp
+ * DTSTAMP:20240110T081500Z
+ * DTSTART:20240110T100000
+ * DTEND:20240110T113000
+ * SUMMARY:nazwa
+ * LOCATION:lokalizacja
+ * DESCRIPTION:opis
+ * CATEGORIES:nazwa kategorii
+ * X-CALENDARAPP-COLOR:#BAED11
+ * ATTENDEE;CN=Imię Nazwisko:tel:123456789
+ * BEGIN:VALARM
+ * ACTION:DISPLAY
+ * DESCRIPTION:nazwa
+ * TRIGGER:-PT15M
+ * END:VALARM
+ * END:VEVENT
+ * </pre>
+ *
+ * Data wydarzenia jest zapisywana jako czas lokalny bez strefy czasowej
+ * (tak jak przechowuje ją aplikacja), czas trwania jako data zakończenia
+ * (pomijana dla wydarzeń bez czasu trwania), kontakty jako uczestnicy z numerem
+ * telefonu w adresie {@code tel:}, a czas powiadomienia jako alarm przed
+ * rozpoczęciem wydarzenia. Kolor kategorii nie ma odpowiednika w RFC 5545 i
+ * jest zapisywany we własności rozszerzającej, którą inne aplikacje pomijają.
+ * Kategorie i kontakty bez wydarzeń nie są eksportowane.
+ * <p>
+ * Wydarzenia są zapisywane strumieniowo, wiersze dłuższe niż 75 bajtów są
+ * zawijane zgodnie z RFC 5545, a plik jest zapisywany do pliku tymczasowego,
+ * który następnie atomowo zastępuje plik docelowy.
+ *
+ * @see serializer.ICalendarDeserializer
+ */
+public class ICalendarSerializer
+{
+	static final String COLOR_PROPERTY = "X-CALENDARAPP-COLOR";
+
+	private static final String CRLF = "\r\n";
+	private static final int MAX_LINE_BYTES = 75;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+	/**
+	 * Eksportuje wydarzenia wraz z ich kategoriami i kontaktami do pliku
+	 * iCalendar.
+	 *
+	 * @param  filePath    Ścieżka do pliku .ics.
+	 * @param  events      Lista wydarzeń do zapisania.
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli zapis pliku się nie powiódł.
+	 */
+	public long encode(String filePath, List<Event> events) throws IOException
+	{
+		Path path = Path.of(filePath);
+		File parent = path.toAbsolutePath().getParent().toFile();
+
+		if (!parent.exists())
+			parent.mkdirs();
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (FileOutputStream fileOutputStream = new FileOutputStream(temp.toFile()))
+		{
+			Writer writer = new BufferedWriter(new OutputStreamWriter(fileOutputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+			write(writer, events);
+			writer.flush();
+			fileOutputStream.getFD().sync();
+		}
+		catch (IOException e)
+		{
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		long bytesWritten = Files.size(temp);
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		return bytesWritten;
+	}
+
+	/**
+	 * Zapisuje kalendarz z podanymi wydarzeniami do strumienia. Strumień nie
+	 * jest zamykany.
+	 *
+	 * @param  writer      Strumień wyjściowy.
+	 * @param  events      Lista wydarzeń do zapisania.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	void write(Writer writer, List<Event> events) throws IOException
+	{
+		String timestamp = LocalDateTime.now(ZoneOffset.UTC).format(DATE_TIME) + "Z";
+
+		writeLine(writer, "BEGIN:VCALENDAR");
+		writeLine(writer, "VERSION:2.0");
+		writeLine(writer, "PRODID:-//CalendarApp//CalendarApp//EN");
+		writeLine(writer, "CALSCALE:GREGORIAN");
+
+		StringBuilder line = new StringBuilder(128);
+
+		for (Event event : events)
+		{
+			if (event.getDate() == null)
+				continue;
+
+			writeLine(writer, "BEGIN:VEVENT");
+			writeLine(writer, "UID:" + uidOf(event));
+			writeLine(writer, "DTSTAMP:" + timestamp);
+			writeLine(writer, "DTSTART:" + event.getDate().format(DATE_TIME));
+
+			if (event.getDuration() != null && !event.getDuration().isZero())
+				writeLine(writer, "DTEND:" + event.getEndDate().format(DATE_TIME));
+
+			writeText(writer, line, "SUMMARY", event.getName());
+			writeText(writer, line, "LOCATION", event.getLocation());
+			writeText(writer, line, "DESCRIPTION", event.getDescription());
+
+			Category category = event.getCategory();
+
+			if (category != null)
+			{
+				writeText(writer, line, "CATEGORIES", category.getName());
+
+				if (category.getColorHex() != null)
+					writeLine(writer, COLOR_PROPERTY + ":" + category.getColorHex());
+			}
+
+			for (Contact contact : event.getContacts())
+			{
+				writeAttendee(writer, line, contact);
+			}
+
+			LocalTime notifyOffset = event.getNotifyOffset();
+
+			if (notifyOffset != null && !notifyOffset.equals(LocalTime.MIDNIGHT))
+			{
+				writeLine(writer, "BEGIN:VALARM");
+				writeLine(writer, "ACTION:DISPLAY");
+				writeText(writer, line, "DESCRIPTION", event.getName() != null ? event.getName() : "Reminder");
+				writeLine(writer, "TRIGGER:-PT" + notifyOffset.getHour() + "H" + notifyOffset.getMinute() + "M");
+				writeLine(writer, "END:VALARM");
+			}
+
+			writeLine(writer, "END:VEVENT");
+		}
+
+		writeLine(writer, "END:VCALENDAR");
+	}
+
+	/**
+	 * Zapisuje kontakt jako uczestnika wydarzenia.
+	 *
+	 * @param  writer      Strumień wyjściowy.
+	 * @param  line        Bufor wiersza.
+	 * @param  contact     Kontakt.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	private static void writeAttendee(Writer writer, StringBuilder line, Contact contact) throws IOException
+	{
+		String name = joinName(contact.getFirstName(), contact.getLastName());
+		String phoneNumber = contact.getPhoneNumber() != null ? contact.getPhoneNumber().replaceAll("\\s", "") : "";
+
+		line.setLength(0);
+		line.append("ATTENDEE");
+
+		if (!name.isEmpty())
+		{
+			line.append(";CN=");
+			appendParameter(line, name);
+		}
+
+		line.append(":tel:").append(phoneNumber);
+		writeLine(writer, line);
+	}
+
+	/**
+	 * Zapisuje własność tekstową, jeśli ma wartość.
+	 *
+	 * @param  writer      Strumień wyjściowy.
+	 * @param  line        Bufor wiersza.
+	 * @param  name        Nazwa własności.
+	 * @param  value       Wartość lub null.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	private static void writeText(Writer writer, StringBuilder line, String name, String value) throws IOException
+	{
+		if (value == null || value.isEmpty())
+			return;
+
+		line.setLength(0);
+		line.append(name).append(':');
+		appendText(line, value);
+		writeLine(writer, line);
+	}
+
+	/**
+	 * Zapisuje wiersz zakończony CRLF, zawijając go co 75 bajtów UTF-8. Wiersz
+	 * kontynuacji zaczyna się spacją, a znaki wielobajtowe nie są dzielone.
+	 *
+	 * @param  writer      Strumień wyjściowy.
+	 * @param  line        Wiersz.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	private static void writeLine(Writer writer, CharSequence line) throws IOException
+	{
+		int bytes = 0;
+		int start = 0;
+
+		for (int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+			int charBytes = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isHighSurrogate(c) ? 4 : Character.isLowSurrogate(c) ? 0 : 3;
+
+			if (bytes + charBytes > MAX_LINE_BYTES)
+			{
+				writer.append(line, start, i).append(CRLF).append(' ');
+				start = i;
+				bytes = 1;
+			}
+
+			bytes += charBytes;
+		}
+
+		writer.append(line, start, line.length()).append(CRLF);
+	}
+
+	/**
+	 * Dopisuje wartość tekstową z sekwencjami ucieczki RFC 5545.
+	 *
+	 * @param line  Bufor wiersza.
+	 * @param value Wartość.
+	 */
+	private static void appendText(StringBuilder line, String value)
+	{
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+
+			if (c == '\\' || c == ';' || c == ',')
+				line.append('\\').append(c);
+			else if (c == '\n')
+				line.append("\\n");
+			else if (c != '\r')
+				line.append(c);
+		}
+	}
+
+	/**
+	 * Dopisuje wartość parametru, ujmując ją w cudzysłów, jeśli zawiera znaki
+	 * rozdzielające. Cudzysłowy nie mogą występować w wartości parametru, więc
+	 * są zastępowane apostrofami.
+	 *
+	 * @param line  Bufor wiersza.
+	 * @param value Wartość parametru.
+	 */
+	private static void appendParameter(StringBuilder line, String value)
+	{
+		String sanitized = value.replace('"', '\'').replace('\n', ' ').replace('\r', ' ');
+
+		if (sanitized.indexOf(':') >= 0 || sanitized.indexOf(';') >= 0 || sanitized.indexOf(',') >= 0)
+			line.append('"').append(sanitized).append('"');
+		else
+			line.append(sanitized);
+	}
+
+	/**
+	 * @param  event Wydarzenie.
+	 * @return       Identyfikator wydarzenia w pliku iCalendar, oparty na
+	 *               identyfikatorze z bazy danych lub lokalnym kluczu.
+	 */
+	private static String uidOf(Event event)
+	{
+		if (event.getId() != 0)
+			return "event-" + event.getId() + "@calendarapp";
+
+		return "local-" + OperationJournal.keyOf(event) + "@calendarapp";
+	}
+
+	/**
+	 * @param  firstName Imię lub null.
+	 * @param  lastName  Nazwisko lub null.
+	 * @return           Imię i nazwisko rozdzielone spacją.
+	 */
+	private static String joinName(String firstName, String lastName)
+	{
+		String first = firstName != null ? firstName.trim() : "";
+		String last = lastName != null ? lastName.trim() : "";
+
+		if (first.isEmpty())
+			return last;
+
+		return last.isEmpty() ? first : first + " " + last;
+	}
+}
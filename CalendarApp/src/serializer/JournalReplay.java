@@ -0,0 +1,67 @@
+package serializer;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Wynik odtworzenia dziennika operacji {@link serializer.OperationJournal}.
+ * Zawiera liczbę odtworzonych wpisów oraz identyfikatory kategorii, wydarzeń i
+ * kontaktów usuniętych bez połączenia z bazą danych, które należy usunąć
+ * również w bazie danych.
+ */
+public class JournalReplay
+{
+	private final Set<Integer> deletedCategoryIds = new HashSet<>();
+	private final Set<Integer> deletedEventIds = new HashSet<>();
+	private final Set<Integer> deletedContactIds = new HashSet<>();
+	private int replayedRecords;
+
+	/**
+	 * @return Identyfikatory usuniętych kategorii.
+	 */
+	public Set<Integer> getDeletedCategoryIds()
+	{
+		return deletedCategoryIds;
+	}
+
+	/**
+	 * @return Identyfikatory usuniętych wydarzeń.
+	 */
+	public Set<Integer> getDeletedEventIds()
+	{
+		return deletedEventIds;
+	}
+
+	/**
+	 * @return Identyfikatory usuniętych kontaktów.
+	 */
+	public Set<Integer> getDeletedContactIds()
+	{
+		return deletedContactIds;
+	}
+
+	/**
+	 * @return Liczba odtworzonych wpisów dziennika.
+	 */
+	public int getReplayedRecords()
+	{
+		return replayedRecords;
+	}
+
+	/**
+	 * @return True jeśli dziennik zawierał usunięcia obiektów zapisanych w bazie
+	 *         danych, w przeciwnym razie false.
+	 */
+	public boolean hasDeletions()
+	{
+		return !deletedCategoryIds.isEmpty() || !deletedEventIds.isEmpty() || !deletedContactIds.isEmpty();
+	}
+
+	/**
+	 * Zwiększa liczbę odtworzonych wpisów.
+	 */
+	void countRecord()
+	{
+		replayedRecords++;
+	}
+}
@@ -0,0 +1,1028 @@
+package serializer;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import model.Category;
+import model.Contact;
+import model.Event;
+import util.StringPool;
+
+/**
+ * Lokalny magazyn danych aplikacji o strukturze dziennika (log-structured).
+ * Każda zmiana kategorii, wydarzenia lub kontaktu jest dopisywana jako wpis na
+ * końcu bieżącego segmentu, więc koszt zapisu zależy od rozmiaru zmiany, a nie
+ * od liczby przechowywanych danych. Segmenty są plikami w formacie
+ * {@link serializer.OperationJournal}: wpis zawiera pełny stan obiektu, ma
+ * sumę kontrolną, a niepełny wpis na końcu segmentu (przerwany zapis) jest
+ * przy odczycie obcinany.
+ * <p>
+ * Wpisy nie są synchronizowane z dyskiem pojedynczo; robi to zbiorczo
+ * {@link #flush()}. Po przekroczeniu progu rozmiaru bieżący segment jest
+ * zamykany i zaczynany jest kolejny. Kompaktowanie zapisuje stan danych jako
+ * migawkę podzieloną na partycje według miesiąca wydarzeń
+ * ({@link serializer.PartitionedSnapshot}), a następnie usuwa segmenty, których
+ * zmiany zawiera migawka. Pod blokadą modelu wykonywane jest tylko jego
+ * rozpoczęcie ({@link #beginCompaction}), które zaczyna nowy segment i kopiuje
+ * dane; migawka jest zapisywana z kopii przez {@link #compact(Compaction)} bez
+ * blokady modelu.
+ * <p>
+ * Odtworzenie danych to wczytanie migawki i odtworzenie na niej wpisów
+ * wszystkich istniejących segmentów w kolejności ich numerów. Odtwarzanie
+ * wpisów jest idempotentne, więc awaria między zapisaniem migawki a usunięciem
+ * segmentów nie zmienia wyniku. Odtworzone obiekty z identyfikatorem z bazy
+ * danych są oznaczane jako zmienione, aby przy synchronizacji zostały
+ * porównane z bazą danych. Powiązania wydarzeń z kontaktami są odtwarzane
+ * wyłącznie z wpisów wydarzeń, dlatego zmiana powiązań kontaktu musi być
+ * zapisana także jako aktualizacja zmienionych wydarzeń.
+ * <p>
+ * Jeśli magazyn nie ma segmentów, przy wczytywaniu pomijane są partycje
+ * miesięcy wcześniejszych niż podany; są one wczytywane na żądanie przez
+ * {@link #loadMonth} i zwalniane przez {@link #evictMonth} w kolejności
+ * najdawniej używanych ({@link #monthsToEvict()}). Zwolnione wydarzenia, do
+ * których wciąż prowadzą odwołania (np. z list wydarzeń kontaktów), są przy
+ * ponownym wczytaniu miesiąca używane zamiast nowych obiektów.
+ *
+ * <pre>
+ * data/local_store/snapshot/manifest.bin
+ * data/local_store/snapshot/core-12.bin
+ * data/local_store/snapshot/2024-05-7.bin
+ * data/local_store/segment-00000001.log
+ * data/local_store/segment-00000002.log
+ * </pre>
+ *
+ * @see serializer.OperationJournal
+ * @see serializer.PartitionedSnapshot
+ */
+public class LocalStore implements AutoCloseable
+{
+	private static final String DEFAULT_DIRECTORY = "data/local_store";
+	private static final String SNAPSHOT_DIRECTORY = "snapshot";
+	private static final String LEGACY_SNAPSHOT_FILE = "snapshot.bin";
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private static final long DEFAULT_SEGMENT_SIZE = 4L * 1024 * 1024;
+	private static final long DEFAULT_COMPACTION_THRESHOLD = 16L * 1024 * 1024;
+	private static final int DEFAULT_HISTORY_CAPACITY = 6;
+
+	/**
+	 * Kompaktowanie rozpoczęte pod blokadą modelu przez
+	 * {@link LocalStore#beginCompaction(List, List, List)}. Zawiera kopie danych
+	 * z chwili rozpoczęcia i segmenty, których zmiany te kopie obejmują.
+	 */
+	public static final class Compaction
+	{
+		private final XMLDataWrapper data;
+		private final TreeMap<YearMonth, List<Event>> months;
+		private final List<Event> undated;
+		private final List<YearMonth> unloadedMonths;
+		private final List<Path> segments;
+		private final long segmentsBytes;
+		private final long records;
+		private final PartitionedSnapshot.Draft draft;
+
+		private Compaction(XMLDataWrapper data, TreeMap<YearMonth, List<Event>> months, List<Event> undated, List<YearMonth> unloadedMonths,
+				List<Path> segments, long segmentsBytes, long records, PartitionedSnapshot.Draft draft)
+		{
+			this.data = data;
+			this.months = months;
+			this.undated = undated;
+			this.unloadedMonths = unloadedMonths;
+			this.segments = segments;
+			this.segmentsBytes = segmentsBytes;
+			this.records = records;
+			this.draft = draft;
+		}
+
+		/**
+		 * @return Kopie kategorii, wczytanych wydarzeń i kontaktów z chwili
+		 *         rozpoczęcia kompaktowania.
+		 */
+		public XMLDataWrapper getData()
+		{
+			return data;
+		}
+	}
+
+	private final Path directory;
+	private final PartitionedSnapshot snapshot;
+	private final Path legacySnapshotPath;
+
+	private long segmentSize = DEFAULT_SEGMENT_SIZE;
+	private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+	private int historyCapacity = DEFAULT_HISTORY_CAPACITY;
+
+	private final TreeSet<YearMonth> unloaded = new TreeSet<>();
+	private final LinkedHashMap<YearMonth, Long> history = new LinkedHashMap<>(16, 0.75f, true);
+	private final EntityIndex<WeakReference<Event>> evicted = new EntityIndex<>();
+	private long records;
+	private StringPool stringPool = new StringPool();
+
+	private OperationJournal segment;
+	private long segmentNumber;
+	private long closedSegmentsBytes;
+	private long flushedBytes;
+
+	/**
+	 * Tworzy magazyn w domyślnym katalogu.
+	 */
+	public LocalStore()
+	{
+		this(DEFAULT_DIRECTORY);
+	}
+
+	/**
+	 * Tworzy magazyn w podanym katalogu.
+	 *
+	 * @param directoryPath Ścieżka do katalogu magazynu.
+	 */
+	public LocalStore(String directoryPath)
+	{
+		this.directory = Path.of(directoryPath);
+		this.snapshot = new PartitionedSnapshot(directory.resolve(SNAPSHOT_DIRECTORY));
+		this.legacySnapshotPath = directory.resolve(LEGACY_SNAPSHOT_FILE);
+	}
+
+	/**
+	 * Ustawia pulę tekstów, przez którą przechodzą teksty odczytane z migawki i
+	 * segmentów, np. pulę wspólną dla wszystkich źródeł danych aplikacji.
+	 *
+	 * @param stringPool Pula tekstów.
+	 */
+	public synchronized void setStringPool(StringPool stringPool)
+	{
+		this.stringPool = stringPool;
+		snapshot.setStringPool(stringPool);
+	}
+
+	/**
+	 * Ustawia rozmiar segmentu, po przekroczeniu którego zaczynany jest nowy
+	 * segment.
+	 *
+	 * @param segmentSize Rozmiar segmentu w bajtach.
+	 */
+	public void setSegmentSize(long segmentSize)
+	{
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Ustawia łączny rozmiar segmentów, po przekroczeniu którego
+	 * {@link #shouldCompact()} zwraca true.
+	 *
+	 * @param compactionThreshold Rozmiar w bajtach.
+	 */
+	public void setCompactionThreshold(long compactionThreshold)
+	{
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * Ustawia liczbę miesięcy wczytanych na żądanie, powyżej której
+	 * {@link #monthsToEvict()} wskazuje miesiące do zwolnienia.
+	 *
+	 * @param historyCapacity Liczba miesięcy.
+	 */
+	public synchronized void setHistoryCapacity(int historyCapacity)
+	{
+		this.historyCapacity = historyCapacity;
+	}
+
+	/**
+	 * Wczytuje dane magazynu: migawkę i wpisy wszystkich segmentów. Jeśli
+	 * migawki nie ma lub nie udało się jej odczytać, a istnieją segmenty, wpisy
+	 * są odtwarzane na danych z podanego źródła zapasowego (np. pliku XML
+	 * zapisanego przy ostatnim kompaktowaniu). Jeśli nie ma segmentów, partycje
+	 * miesięcy wcześniejszych niż {@code residentFrom} nie są wczytywane.
+	 *
+	 * @param  fallback     Źródło danych używane, gdy nie ma poprawnej migawki.
+	 * @param  residentFrom Pierwszy miesiąc wczytywany od razu lub null, aby
+	 *                      wczytać wszystkie miesiące.
+	 * @return              Obiekt {@link serializer.XMLDataWrapper} lub null,
+	 *                      jeśli magazyn nie zawiera migawki ani segmentów.
+	 * @throws IOException  Jeśli nie udało się odczytać partycji lub segmentów.
+	 */
+	public synchronized XMLDataWrapper load(Supplier<XMLDataWrapper> fallback, YearMonth residentFrom) throws IOException
+	{
+		List<Path> segments = listSegments();
+		XMLDataWrapper data = null;
+
+		unloaded.clear();
+		history.clear();
+		evicted.clear();
+		records = 0;
+
+		if (snapshot.readManifest())
+		{
+			data = snapshot.readCore();
+
+			// wpisy segmentów mogą dotyczyć wydarzeń z dowolnego miesiąca
+			boolean loadAll = residentFrom == null || !segments.isEmpty();
+
+			List<YearMonth> resident = new ArrayList<>();
+
+			for (YearMonth month : snapshot.months())
+			{
+				if (loadAll || !month.isBefore(residentFrom))
+					resident.add(month);
+				else
+					unloaded.add(month);
+			}
+
+			data.getEvents().addAll(readMonths(resident, indexOf(data.getCategories()), indexOf(data.getContacts()), true));
+		}
+		else if (Files.exists(legacySnapshotPath))
+		{
+			BinarySnapshot legacySnapshot = new BinarySnapshot(legacySnapshotPath.toString());
+			legacySnapshot.setStringPool(stringPool);
+			data = legacySnapshot.decode();
+		}
+
+		if (data == null)
+		{
+			if (segments.isEmpty())
+				return null;
+
+			data = fallback.get();
+
+			if (data == null)
+				data = new XMLDataWrapper(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+		}
+
+		closedSegmentsBytes = 0;
+
+		for (Path path : segments)
+		{
+			OperationJournal journal = new OperationJournal(path.toString());
+			journal.setReplayContactLinks(false);
+			journal.setStringPool(stringPool);
+
+			try
+			{
+				journal.replay(data.getCategories(), data.getEvents(), data.getContacts());
+				closedSegmentsBytes += journal.size();
+			}
+			finally
+			{
+				journal.close();
+			}
+
+			segmentNumber = Math.max(segmentNumber, numberOf(path));
+		}
+
+		flushedBytes = closedSegmentsBytes;
+		return data;
+	}
+
+	/**
+	 * Dopisuje do bieżącego segmentu dodanie obiektu.
+	 *
+	 * @param  entity      Dodana kategoria, wydarzenie lub kontakt.
+	 * @throws IOException Jeśli nie udało się zapisać wpisu.
+	 */
+	public synchronized void recordInsert(Object entity) throws IOException
+	{
+		currentSegment().recordInsert(entity);
+		records++;
+		rollIfFull();
+	}
+
+	/**
+	 * Dopisuje do bieżącego segmentu aktualizację obiektu.
+	 *
+	 * @param  entity      Zaktualizowana kategoria, wydarzenie lub kontakt.
+	 * @throws IOException Jeśli nie udało się zapisać wpisu.
+	 */
+	public synchronized void recordUpdate(Object entity) throws IOException
+	{
+		currentSegment().recordUpdate(entity);
+		records++;
+		rollIfFull();
+	}
+
+	/**
+	 * Dopisuje do bieżącego segmentu usunięcie obiektu.
+	 *
+	 * @param  entity      Usunięta kategoria, wydarzenie lub kontakt.
+	 * @throws IOException Jeśli nie udało się zapisać wpisu.
+	 */
+	public synchronized void recordDelete(Object entity) throws IOException
+	{
+		currentSegment().recordDelete(entity);
+		records++;
+		rollIfFull();
+	}
+
+	/**
+	 * @param  month Miesiąc.
+	 * @return       True jeśli wydarzenia z tego miesiąca są wczytane (lub
+	 *               miesiąc nie ma wydarzeń w migawce).
+	 */
+	public synchronized boolean isLoaded(YearMonth month)
+	{
+		return !unloaded.contains(month);
+	}
+
+	/**
+	 * @return True jeśli magazyn ma miesiące, których wydarzenia nie zostały
+	 *         wczytane.
+	 */
+	public synchronized boolean hasUnloadedMonths()
+	{
+		return !unloaded.isEmpty();
+	}
+
+	/**
+	 * Wyznacza niewczytane miesiące, do których należą podane wydarzenia (np.
+	 * wydarzenia przeniesione do takiego miesiąca). Miesiące te muszą zostać
+	 * wczytane przed {@link #beginCompaction(List, List, List)}.
+	 *
+	 * @param  events Lista wczytanych wydarzeń.
+	 * @return        Niewczytane miesiące wydarzeń, bez powtórzeń.
+	 */
+	public synchronized List<YearMonth> unloadedMonthsOf(List<Event> events)
+	{
+		List<YearMonth> missing = new ArrayList<>();
+
+		for (Event event : events)
+		{
+			YearMonth month = monthOf(event);
+
+			if (month != null && unloaded.contains(month) && !missing.contains(month))
+				missing.add(month);
+		}
+
+		return missing;
+	}
+
+	/**
+	 * Wyznacza niewczytane miesiące wcześniejsze niż podany, w których zaczynają
+	 * się wydarzenia trwające jeszcze w podanej chwili lub później (wydarzenia
+	 * wielodniowe). Miesiące są wybierane według najpóźniejszej daty zakończenia
+	 * zapisanej w manifeście migawki, bez odczytywania partycji.
+	 *
+	 * @param  date   Data, po której mogą się kończyć wydarzenia.
+	 * @param  before Pierwszy miesiąc, którego nie należy zwracać.
+	 * @return        Niewczytane miesiące w kolejności chronologicznej.
+	 */
+	public synchronized List<YearMonth> unloadedMonthsEndingAfter(LocalDateTime date, YearMonth before)
+	{
+		List<YearMonth> months = new ArrayList<>();
+
+		for (YearMonth month : unloaded.headSet(before))
+		{
+			LocalDateTime latestEnd = snapshot.latestEnd(month);
+
+			if (latestEnd == null || !latestEnd.isBefore(date))
+				months.add(month);
+		}
+
+		return months;
+	}
+
+	/**
+	 * Wczytuje wydarzenia z miesiąca, który nie został jeszcze wczytany, i wiąże
+	 * je z podanymi kategoriami i kontaktami. Dla wczytanego wcześniej miesiąca
+	 * tylko oznacza go jako ostatnio używany.
+	 *
+	 * @param  month       Miesiąc.
+	 * @param  categories  Lista wczytanych kategorii.
+	 * @param  contacts    Lista wczytanych kontaktów.
+	 * @return             Wczytane wydarzenia, które należy dodać do listy
+	 *                     wydarzeń (pusta, jeśli miesiąc był już wczytany).
+	 * @throws IOException Jeśli nie udało się odczytać partycji.
+	 */
+	public synchronized List<Event> loadMonth(YearMonth month, List<Category> categories, List<Contact> contacts) throws IOException
+	{
+		if (!unloaded.contains(month))
+		{
+			history.get(month);
+			return Collections.emptyList();
+		}
+
+		List<Event> events = readMonths(List.of(month), indexOf(categories), indexOf(contacts), true);
+		unloaded.remove(month);
+		history.put(month, records);
+
+		return events;
+	}
+
+	/**
+	 * Wczytuje wydarzenia ze wszystkich niewczytanych miesięcy wcześniejszych
+	 * niż podany. Tak wczytane miesiące nie są później zwalniane.
+	 *
+	 * @param  before      Pierwszy miesiąc, którego nie trzeba wczytywać, lub
+	 *                     null, aby wczytać wszystkie miesiące.
+	 * @param  categories  Lista wczytanych kategorii.
+	 * @param  contacts    Lista wczytanych kontaktów.
+	 * @return             Wczytane wydarzenia, które należy dodać do listy
+	 *                     wydarzeń.
+	 * @throws IOException Jeśli nie udało się odczytać partycji.
+	 */
+	public synchronized List<Event> loadAllMonths(YearMonth before, List<Category> categories, List<Contact> contacts) throws IOException
+	{
+		List<YearMonth> months = new ArrayList<>(before != null ? unloaded.headSet(before) : unloaded);
+
+		if (months.isEmpty())
+			return new ArrayList<>();
+
+		List<Event> events = readMonths(months, indexOf(categories), indexOf(contacts), true);
+		unloaded.removeAll(months);
+		return events;
+	}
+
+	/**
+	 * Odczytuje wydarzenia z miesięcy, które nie zostały wczytane, bez
+	 * zmieniania stanu magazynu ani list wydarzeń kontaktów, np. do eksportu
+	 * pełnych danych.
+	 *
+	 * @param  categories  Lista wczytanych kategorii.
+	 * @param  contacts    Lista wczytanych kontaktów.
+	 * @return             Odczytane wydarzenia.
+	 * @throws IOException Jeśli nie udało się odczytać partycji.
+	 */
+	public synchronized List<Event> readUnloadedMonths(List<Category> categories, List<Contact> contacts) throws IOException
+	{
+		if (unloaded.isEmpty())
+			return new ArrayList<>();
+
+		return readMonths(new ArrayList<>(unloaded), indexOf(categories), indexOf(contacts), false);
+	}
+
+	/**
+	 * @return Miesiące wczytane na żądanie, które należy zwolnić, aby ich
+	 *         liczba nie przekraczała limitu, od najdawniej używanego.
+	 */
+	public synchronized List<YearMonth> monthsToEvict()
+	{
+		List<YearMonth> months = new ArrayList<>();
+		Iterator<YearMonth> iterator = history.keySet().iterator();
+
+		for (int excess = history.size() - historyCapacity; excess > 0; excess--)
+		{
+			months.add(iterator.next());
+		}
+
+		return months;
+	}
+
+	/**
+	 * Zwalnia miesiąc wczytany na żądanie. Jeśli od jego wczytania do magazynu
+	 * dopisano zmiany, partycja miesiąca jest najpierw zapisywana z podanych
+	 * wydarzeń. Wywołujący usuwa następnie te wydarzenia z listy wydarzeń.
+	 *
+	 * @param  month       Miesiąc.
+	 * @param  events      Wszystkie wczytane wydarzenia z tego miesiąca.
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli nie udało się zapisać partycji. Miesiąc
+	 *                     pozostaje wtedy wczytany.
+	 */
+	public synchronized long evictMonth(YearMonth month, List<Event> events) throws IOException
+	{
+		Long loadedAt = history.get(month);
+
+		if (loadedAt == null)
+			return 0;
+
+		long bytesWritten = 0;
+
+		if (loadedAt != records)
+		{
+			bytesWritten += snapshot.writeMonth(month, events);
+			bytesWritten += snapshot.writeManifest();
+		}
+
+		history.remove(month);
+
+		if (snapshot.months().contains(month))
+			unloaded.add(month);
+
+		for (Event event : events)
+		{
+			evicted.put(event.getId(), event.getLocalKey(), new WeakReference<>(event));
+		}
+
+		return bytesWritten;
+	}
+
+	/**
+	 * Synchronizuje z dyskiem wpisy dopisane od ostatniego wywołania.
+	 *
+	 * @return             Liczba bajtów dopisanych od ostatniego wywołania.
+	 * @throws IOException Jeśli synchronizacja się nie powiodła.
+	 */
+	public synchronized long flush() throws IOException
+	{
+		long tail = tailBytes();
+
+		if (segment != null)
+			segment.force();
+
+		long written = tail - flushedBytes;
+		flushedBytes = tail;
+
+		return written;
+	}
+
+	/**
+	 * @return             True jeśli segmenty zawierają wpisy, których nie ma w
+	 *                     migawce.
+	 * @throws IOException Jeśli nie udało się odczytać rozmiaru segmentu.
+	 */
+	public synchronized boolean hasTail() throws IOException
+	{
+		return tailBytes() > 0;
+	}
+
+	/**
+	 * @return             True jeśli łączny rozmiar segmentów przekroczył próg
+	 *                     kompaktowania.
+	 * @throws IOException Jeśli nie udało się odczytać rozmiaru segmentu.
+	 */
+	public synchronized boolean shouldCompact() throws IOException
+	{
+		return tailBytes() >= compactionThreshold;
+	}
+
+	/**
+	 * Rozpoczyna kompaktowanie magazynu: zaczyna nowy segment i kopiuje stan
+	 * podanych list, tak aby migawkę można było zapisać przez
+	 * {@link #compact(Compaction)} bez blokady modelu. Obiektom bez
+	 * identyfikatora nadawane są lokalne klucze, dzięki czemu późniejsze wpisy
+	 * segmentów wskazują te same obiekty co migawka. Lista wydarzeń nie może
+	 * zawierać wydarzeń z niewczytanych miesięcy ({@link #unloadedMonthsOf(List)});
+	 * wczytuje je wywołujący, tak aby trafiły również do jego indeksów. Musi być
+	 * wywoływana pod blokadą modelu, tak aby podane listy zawierały wszystkie
+	 * dopisane dotąd zmiany.
+	 *
+	 * @param  categories  Lista kategorii.
+	 * @param  events      Lista wczytanych wydarzeń.
+	 * @param  contacts    Lista kontaktów.
+	 * @return             Kompaktowanie do dokończenia przez
+	 *                     {@link #compact(Compaction)}.
+	 * @throws IOException Jeśli nie udało się zamknąć segmentu lub lista
+	 *                     wydarzeń zawiera wydarzenie z niewczytanego miesiąca.
+	 */
+	public synchronized Compaction beginCompaction(List<Category> categories, List<Event> events, List<Contact> contacts) throws IOException
+	{
+		List<YearMonth> missing = unloadedMonthsOf(events);
+
+		// zapis niepełnego miesiąca nadpisałby jego partycję
+		if (!missing.isEmpty())
+			throw new IOException("Months " + missing + " must be loaded before compaction.");
+
+		closeSegment();
+
+		categories.forEach(OperationJournal::keyOf);
+		events.forEach(OperationJournal::keyOf);
+		contacts.forEach(OperationJournal::keyOf);
+
+		XMLDataWrapper data = copyOf(categories, events, contacts);
+		TreeMap<YearMonth, List<Event>> months = new TreeMap<>();
+		List<Event> undated = new ArrayList<>();
+
+		for (YearMonth month : snapshot.months())
+		{
+			if (!unloaded.contains(month))
+				months.put(month, new ArrayList<>());
+		}
+
+		for (Event event : data.getEvents())
+		{
+			YearMonth month = monthOf(event);
+
+			if (month != null)
+				months.computeIfAbsent(month, key -> new ArrayList<>()).add(event);
+			else
+				undated.add(event);
+		}
+
+		return new Compaction(data, months, undated, new ArrayList<>(unloaded), listSegments(), closedSegmentsBytes, records,
+				snapshot.newDraft(months.keySet()));
+	}
+
+	/**
+	 * Kończy kompaktowanie rozpoczęte przez
+	 * {@link #beginCompaction(List, List, List)}: zapisuje migawkę z
+	 * kopii danych, a następnie usuwa segmenty, których zmiany zawiera.
+	 * Zapisywane są plik podstawowy i partycje wczytanych miesięcy; partycje
+	 * miesięcy, które nie zostały wczytane, nie zmieniają się. Pliki migawki
+	 * są zapisywane bez blokady magazynu, więc w tym czasie można dopisywać
+	 * zmiany do nowego segmentu oraz wczytywać i zwalniać miesiące; blokada
+	 * jest zajmowana tylko na czas zapisania manifestu.
+	 *
+	 * @param  compaction  Rozpoczęte kompaktowanie.
+	 * @return             Liczba bajtów zapisanych w migawce.
+	 * @throws IOException Jeśli nie udało się zapisać migawki. Segmenty
+	 *                     pozostają wtedy nienaruszone.
+	 */
+	public long compact(Compaction compaction) throws IOException
+	{
+		XMLDataWrapper data = compaction.data;
+		PartitionedSnapshot.Draft draft = compaction.draft;
+		long bytesWritten;
+
+		try
+		{
+			bytesWritten = snapshot.writeCore(draft, data.getCategories(), compaction.undated, data.getContacts());
+
+			for (Map.Entry<YearMonth, List<Event>> entry : compaction.months.entrySet())
+			{
+				bytesWritten += snapshot.writeMonth(draft, entry.getKey(), entry.getValue());
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			snapshot.discard(draft);
+			throw e;
+		}
+
+		synchronized (this)
+		{
+			snapshot.apply(draft);
+			bytesWritten += snapshot.writeManifest();
+
+			for (Path path : compaction.segments)
+			{
+				Files.deleteIfExists(path);
+			}
+
+			Files.deleteIfExists(legacySnapshotPath);
+
+			// wpisy dopisane po rozpoczęciu kompaktowania pozostają w nowszych
+			// segmentach
+			closedSegmentsBytes -= compaction.segmentsBytes;
+			flushedBytes = Math.max(flushedBytes - compaction.segmentsBytes, 0);
+			records -= compaction.records;
+			history.replaceAll((month, loadedAt) -> Math.max(loadedAt - compaction.records, 0L));
+		}
+
+		return bytesWritten;
+	}
+
+	/**
+	 * Odczytuje wydarzenia z miesięcy, które nie były wczytane w chwili
+	 * rozpoczęcia kompaktowania, i wiąże je z kopiami kategorii i kontaktów
+	 * kompaktowania, np. do eksportu pełnych danych. Pliki partycji są
+	 * odczytywane bez blokady magazynu.
+	 *
+	 * @param  compaction  Rozpoczęte kompaktowanie.
+	 * @return             Odczytane wydarzenia.
+	 * @throws IOException Jeśli nie udało się odczytać partycji.
+	 */
+	public List<Event> readUnloadedMonths(Compaction compaction) throws IOException
+	{
+		if (compaction.unloadedMonths.isEmpty())
+			return new ArrayList<>();
+
+		List<Path> files;
+
+		synchronized (this)
+		{
+			files = snapshot.pin(compaction.unloadedMonths);
+		}
+
+		try
+		{
+			return bind(snapshot.readFiles(files), indexOf(compaction.data.getCategories()), indexOf(compaction.data.getContacts()), false);
+		}
+		finally
+		{
+			snapshot.unpin(files);
+		}
+	}
+
+	/**
+	 * Zamyka bieżący segment.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if (segment != null)
+		{
+			segment.close();
+			segment = null;
+		}
+	}
+
+	/**
+	 * Odczytuje partycje miesięcy i wiąże ich wydarzenia z kategoriami i
+	 * kontaktami z indeksów. Partycje są dekodowane równolegle
+	 * ({@link serializer.PartitionedSnapshot#readMonths}), a wiązanie odbywa się
+	 * w bieżącym wątku. Wydarzenie zwolnione wcześniej przez
+	 * {@link #evictMonth}, do którego wciąż prowadzą odwołania, jest używane
+	 * zamiast odczytanego.
+	 *
+	 * @param  months        Miesiące.
+	 * @param  categoryIndex Indeks wczytanych kategorii.
+	 * @param  contactIndex  Indeks wczytanych kontaktów.
+	 * @param  link          True jeśli wydarzenia mają zostać dodane do list
+	 *                       wydarzeń kontaktów.
+	 * @return               Wydarzenia z miesięcy.
+	 * @throws IOException   Jeśli nie udało się odczytać partycji.
+	 */
+	private List<Event> readMonths(List<YearMonth> months, EntityIndex<Category> categoryIndex, EntityIndex<Contact> contactIndex, boolean link)
+			throws IOException
+	{
+		return bind(snapshot.readMonths(months), categoryIndex, contactIndex, link);
+	}
+
+	/**
+	 * Wiąże wydarzenia z odczytanych partycji z kategoriami i kontaktami z
+	 * indeksów.
+	 *
+	 * @param  partitions    Zawartość partycji.
+	 * @param  categoryIndex Indeks kategorii.
+	 * @param  contactIndex  Indeks kontaktów.
+	 * @param  link          True jeśli wydarzenia mają zostać dodane do list
+	 *                       wydarzeń kontaktów (wymaga blokady magazynu).
+	 * @return               Wydarzenia z partycji.
+	 */
+	private List<Event> bind(List<XMLDataWrapper> partitions, EntityIndex<Category> categoryIndex, EntityIndex<Contact> contactIndex, boolean link)
+	{
+		List<Event> decoded = new ArrayList<>();
+
+		for (XMLDataWrapper data : partitions)
+		{
+			decoded.addAll(data.getEvents());
+		}
+
+		List<Event> events = new ArrayList<>(decoded.size());
+
+		for (Event event : decoded)
+		{
+			if (link)
+			{
+				WeakReference<Event> reference = evicted.get(event.getId(), event.getLocalKey());
+				Event retained = reference != null ? reference.get() : null;
+				evicted.remove(event.getId(), event.getLocalKey());
+
+				if (retained != null)
+				{
+					events.add(retained);
+					continue;
+				}
+			}
+
+			Category category = event.getCategory();
+			event.setCategory(category != null ? categoryIndex.get(category.getId(), category.getLocalKey()) : null);
+
+			List<Contact> related = new ArrayList<>(event.getContacts());
+			event.getContacts().clear();
+
+			for (Contact contact : related)
+			{
+				Contact resolved = contactIndex.get(contact.getId(), contact.getLocalKey());
+
+				if (resolved == null)
+					continue;
+
+				if (link)
+					event.addContact(resolved);
+				else
+					event.getContacts().add(resolved);
+			}
+
+			events.add(event);
+		}
+
+		return events;
+	}
+
+	/**
+	 * Kopiuje kategorie, wydarzenia i kontakty razem z powiązaniami wydarzeń z
+	 * kategoriami i kontaktami. Listy wydarzeń kopii kontaktów pozostają puste,
+	 * ponieważ migawka zapisuje powiązania wyłącznie po stronie wydarzeń.
+	 *
+	 * @param  categories Lista kategorii.
+	 * @param  events     Lista wydarzeń.
+	 * @param  contacts   Lista kontaktów.
+	 * @return            Kopie obiektów w kolejności list.
+	 */
+	private static XMLDataWrapper copyOf(List<Category> categories, List<Event> events, List<Contact> contacts)
+	{
+		Map<Category, Category> categoryCopies = new IdentityHashMap<>();
+		Map<Contact, Contact> contactCopies = new IdentityHashMap<>();
+		List<Category> categoryList = new ArrayList<>(categories.size());
+		List<Contact> contactList = new ArrayList<>(contacts.size());
+
+		for (Category category : categories)
+		{
+			Category copy = copyOf(category);
+			categoryCopies.put(category, copy);
+			categoryList.add(copy);
+		}
+
+		for (Contact contact : contacts)
+		{
+			Contact copy = copyOf(contact);
+			contactCopies.put(contact, copy);
+			contactList.add(copy);
+		}
+
+		List<Event> eventCopies = new ArrayList<>(events.size());
+
+		for (Event event : events)
+		{
+			Event eventCopy = new Event();
+			eventCopy.setId(event.getId());
+			eventCopy.setVersion(event.getVersion());
+			eventCopy.setModified(event.isModified());
+			eventCopy.setLocalKey(event.getLocalKey());
+			eventCopy.setName(event.getName());
+			eventCopy.setDate(event.getDate());
+			eventCopy.setNotifyOffset(event.getNotifyOffset());
+			eventCopy.setDuration(event.getDuration());
+			eventCopy.setLocation(event.getLocation());
+			eventCopy.setDescription(event.getDescription());
+
+			if (event.getCategory() != null)
+				eventCopy.setCategory(categoryCopies.computeIfAbsent(event.getCategory(), LocalStore::copyOf));
+
+			for (Contact contact : event.getContacts())
+			{
+				eventCopy.getContacts().add(contactCopies.computeIfAbsent(contact, LocalStore::copyOf));
+			}
+
+			eventCopies.add(eventCopy);
+		}
+
+		return new XMLDataWrapper(categoryList, eventCopies, contactList);
+	}
+
+	/**
+	 * @param  category Kategoria.
+	 * @return          Kopia kategorii.
+	 */
+	private static Category copyOf(Category category)
+	{
+		Category copy = new Category();
+		copy.setId(category.getId());
+		copy.setVersion(category.getVersion());
+		copy.setModified(category.isModified());
+		copy.setLocalKey(category.getLocalKey());
+		copy.setName(category.getName());
+		copy.setColorHex(category.getColorHex());
+		return copy;
+	}
+
+	/**
+	 * @param  contact Kontakt.
+	 * @return         Kopia kontaktu bez listy wydarzeń.
+	 */
+	private static Contact copyOf(Contact contact)
+	{
+		Contact copy = new Contact();
+		copy.setId(contact.getId());
+		copy.setVersion(contact.getVersion());
+		copy.setModified(contact.isModified());
+		copy.setLocalKey(contact.getLocalKey());
+		copy.setFirstName(contact.getFirstName());
+		copy.setLastName(contact.getLastName());
+		copy.setPhoneNumber(contact.getPhoneNumber());
+		return copy;
+	}
+
+	/**
+	 * @param  <T>      Typ obiektów.
+	 * @param  entities Lista kategorii lub kontaktów.
+	 * @return          Indeks obiektów według identyfikatora i lokalnego klucza.
+	 */
+	private static <T> EntityIndex<T> indexOf(List<T> entities)
+	{
+		EntityIndex<T> index = new EntityIndex<>();
+
+		for (T entity : entities)
+		{
+			if (entity instanceof Category)
+				index.put(((Category) entity).getId(), ((Category) entity).getLocalKey(), entity);
+			else
+				index.put(((Contact) entity).getId(), ((Contact) entity).getLocalKey(), entity);
+		}
+
+		return index;
+	}
+
+	/**
+	 * @param  event Wydarzenie.
+	 * @return       Miesiąc wydarzenia lub null, jeśli nie ma daty.
+	 */
+	public static YearMonth monthOf(Event event)
+	{
+		return event.getDate() != null ? YearMonth.from(event.getDate()) : null;
+	}
+
+	/**
+	 * Zwraca bieżący segment, tworząc nowy, jeśli żaden nie jest otwarty.
+	 *
+	 * @return             Bieżący segment.
+	 * @throws IOException Jeśli nie udało się utworzyć katalogu magazynu.
+	 */
+	private OperationJournal currentSegment() throws IOException
+	{
+		if (segment == null)
+		{
+			Files.createDirectories(directory);
+
+			segmentNumber++;
+			segment = new OperationJournal(directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX)).toString());
+			segment.setForceOnAppend(false);
+		}
+
+		return segment;
+	}
+
+	/**
+	 * Zamyka bieżący segment, jeśli przekroczył rozmiar segmentu.
+	 *
+	 * @throws IOException Jeśli nie udało się zamknąć segmentu.
+	 */
+	private void rollIfFull() throws IOException
+	{
+		if (segment.size() >= segmentSize)
+			closeSegment();
+	}
+
+	/**
+	 * Synchronizuje z dyskiem i zamyka bieżący segment. Kolejny wpis trafi do
+	 * nowego segmentu.
+	 *
+	 * @throws IOException Jeśli synchronizacja się nie powiodła.
+	 */
+	private void closeSegment() throws IOException
+	{
+		if (segment == null)
+			return;
+
+		segment.force();
+		closedSegmentsBytes += segment.size();
+		segment.close();
+		segment = null;
+	}
+
+	/**
+	 * @return             Łączny rozmiar segmentów w bajtach.
+	 * @throws IOException Jeśli nie udało się odczytać rozmiaru segmentu.
+	 */
+	private long tailBytes() throws IOException
+	{
+		return closedSegmentsBytes + (segment != null ? segment.size() : 0);
+	}
+
+	/**
+	 * @return             Pliki segmentów w kolejności ich numerów.
+	 * @throws IOException Jeśli nie udało się odczytać katalogu magazynu.
+	 */
+	private List<Path> listSegments() throws IOException
+	{
+		List<Path> segments = new ArrayList<>();
+
+		if (!Files.isDirectory(directory))
+			return segments;
+
+		try (Stream<Path> files = Files.list(directory))
+		{
+			files.filter(path -> numberOf(path) > 0).forEach(segments::add);
+		}
+
+		segments.sort((a, b) -> Long.compare(numberOf(a), numberOf(b)));
+		return segments;
+	}
+
+	/**
+	 * @param  path Ścieżka do pliku.
+	 * @return      Numer segmentu lub 0, jeśli plik nie jest segmentem.
+	 */
+	private static long numberOf(Path path)
+	{
+		String name = path.getFileName().toString();
+
+		if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX))
+			return 0;
+
+		try
+		{
+			return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		}
+		catch (NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,853 @@
+package serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import model.Category;
+import model.Contact;
+import model.Event;
+import util.Durations;
+import util.StringPool;
+
+/**
+ * Dziennik operacji wykonanych bez połączenia z bazą danych. Każda zmiana
+ * kategorii, wydarzenia lub kontaktu jest dopisywana na końcu pliku jako wpis
+ * z pełnym stanem obiektu (dodanie i aktualizacja) lub jego identyfikatorem
+ * (usunięcie), a po zapisie plik jest domyślnie synchronizowany z dyskiem
+ * ({@link FileChannel#force(boolean)}), więc awaria aplikacji nie powoduje
+ * utraty zmian.
+ * <p>
+ * Obiekty bez identyfikatora z bazy danych otrzymują lokalny klucz
+ * ({@code setLocalKey}), zapisywany razem z nimi w pliku XML, dzięki czemu
+ * wpisy dziennika można odtworzyć na danych wczytanych z pliku XML. Odtworzenie
+ * jest idempotentne: dodanie i aktualizacja nadpisują stan obiektu o tym
+ * samym identyfikatorze lub kluczu, a usunięcie nieistniejącego obiektu nic
+ * nie zmienia.
+ * <p>
+ * Każdy wpis ma postać: długość, suma kontrolna CRC32 i dane. Niepełny lub
+ * uszkodzony wpis na końcu pliku (przerwany zapis) kończy odtwarzanie i jest
+ * obcinany.
+ * <p>
+ * Teksty są zapisywane jako długość w bajtach ({@code int}) i dane UTF-8, więc
+ * ich długość nie jest ograniczona do 65535 bajtów jak w
+ * {@link DataOutputStream#writeUTF(String)}. Wpisy w tym formacie mają w bajcie
+ * operacji ustawioną flagę {@code LONG_STRINGS}; wpisy zapisane przez starsze
+ * wersje aplikacji (bez flagi) są odczytywane przez
+ * {@link DataInputStream#readUTF()}.
+ */
+public class OperationJournal implements AutoCloseable
+{
+	private static final String DEFAULT_PATH = "data/xml_files/journal.log";
+
+	private static final byte INSERT = 1;
+	private static final byte UPDATE = 2;
+	private static final byte DELETE = 3;
+
+	private static final byte LONG_STRINGS = 0x40;
+
+	private static final byte CATEGORY = 1;
+	private static final byte EVENT = 2;
+	private static final byte CONTACT = 3;
+
+	private static final AtomicLong localKeys = new AtomicLong(System.currentTimeMillis() << 16);
+
+	private final Path path;
+	private FileChannel channel;
+	private boolean forceOnAppend = true;
+	private boolean replayContactLinks = true;
+	private StringPool stringPool = new StringPool();
+
+	/**
+	 * Tworzy dziennik zapisywany w domyślnym pliku obok pliku danych XML.
+	 */
+	public OperationJournal()
+	{
+		this(DEFAULT_PATH);
+	}
+
+	/**
+	 * Tworzy dziennik zapisywany w podanym pliku.
+	 *
+	 * @param filePath Ścieżka do pliku dziennika.
+	 */
+	public OperationJournal(String filePath)
+	{
+		this.path = Path.of(filePath);
+	}
+
+	/**
+	 * Ustawia, czy po każdym dopisanym wpisie plik ma być synchronizowany z
+	 * dyskiem. Wyłączenie przyspiesza zapis kosztem możliwej utraty ostatnich
+	 * wpisów przy awarii systemu; można wtedy wywoływać {@link #force()}.
+	 *
+	 * @param forceOnAppend True jeśli każdy wpis ma być synchronizowany z
+	 *                      dyskiem.
+	 */
+	public void setForceOnAppend(boolean forceOnAppend)
+	{
+		this.forceOnAppend = forceOnAppend;
+	}
+
+	/**
+	 * Ustawia, czy przy odtwarzaniu aktualizacji kontaktu jego lista wydarzeń ma
+	 * zastąpić powiązania kontaktu. Wyłączenie jest potrzebne, gdy kontakty są
+	 * zapisywane przy niepełnej liście wydarzeń; powiązania są wtedy
+	 * odtwarzane wyłącznie z wpisów wydarzeń, które zawierają pełne listy
+	 * kontaktów.
+	 *
+	 * @param replayContactLinks True jeśli powiązania mają być odtwarzane także z
+	 *                           wpisów kontaktów.
+	 */
+	public void setReplayContactLinks(boolean replayContactLinks)
+	{
+		this.replayContactLinks = replayContactLinks;
+	}
+
+	/**
+	 * Ustawia pulę tekstów, przez którą przechodzą teksty odczytane z odtwarzanych wpisów, np.
+	 * pulę wspólną dla wszystkich źródeł danych aplikacji.
+	 *
+	 * @param stringPool Pula tekstów.
+	 */
+	public void setStringPool(StringPool stringPool)
+	{
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * Dopisuje do dziennika dodanie obiektu.
+	 *
+	 * @param  entity      Dodana kategoria, wydarzenie lub kontakt.
+	 * @throws IOException Jeśli nie udało się zapisać wpisu.
+	 */
+	public synchronized void recordInsert(Object entity) throws IOException
+	{
+		append(INSERT, entity);
+	}
+
+	/**
+	 * Dopisuje do dziennika aktualizację obiektu.
+	 *
+	 * @param  entity      Zaktualizowana kategoria, wydarzenie lub kontakt.
+	 * @throws IOException Jeśli nie udało się zapisać wpisu.
+	 */
+	public synchronized void recordUpdate(Object entity) throws IOException
+	{
+		append(UPDATE, entity);
+	}
+
+	/**
+	 * Dopisuje do dziennika usunięcie obiektu.
+	 *
+	 * @param  entity      Usunięta kategoria, wydarzenie lub kontakt.
+	 * @throws IOException Jeśli nie udało się zapisać wpisu.
+	 */
+	public synchronized void recordDelete(Object entity) throws IOException
+	{
+		append(DELETE, entity);
+	}
+
+	/**
+	 * Synchronizuje z dyskiem wpisy dopisane od ostatniej synchronizacji.
+	 *
+	 * @throws IOException Jeśli synchronizacja się nie powiodła.
+	 */
+	public synchronized void force() throws IOException
+	{
+		if (channel != null)
+			channel.force(false);
+	}
+
+	/**
+	 * @return             Rozmiar pliku dziennika w bajtach lub 0, jeśli plik nie
+	 *                     istnieje.
+	 * @throws IOException Jeśli nie udało się odczytać rozmiaru pliku.
+	 */
+	public synchronized long size() throws IOException
+	{
+		if (channel != null)
+			return channel.size();
+
+		return Files.exists(path) ? Files.size(path) : 0;
+	}
+
+	/**
+	 * Odtwarza wpisy dziennika na listach wczytanych z pliku XML, w kolejności
+	 * ich zapisu. Odtworzone dodane i zaktualizowane obiekty są oznaczane jako
+	 * zmienione, aby zostały przesłane do bazy danych przy synchronizacji, a
+	 * identyfikatory obiektów usuniętych są zwracane w wyniku. Usunięte obiekty
+	 * są usuwane także z indeksów odtwarzania, więc późniejszy wpis o tym samym
+	 * identyfikatorze lub kluczu tworzy nowy obiekt zamiast zmieniać usunięty.
+	 *
+	 * @param  categories  Lista kategorii do uzupełnienia.
+	 * @param  events      Lista wydarzeń do uzupełnienia.
+	 * @param  contacts    Lista kontaktów do uzupełnienia.
+	 * @return             Wynik odtworzenia dziennika.
+	 * @throws IOException Jeśli nie udało się odczytać pliku dziennika.
+	 */
+	public synchronized JournalReplay replay(List<Category> categories, List<Event> events, List<Contact> contacts) throws IOException
+	{
+		JournalReplay replay = new JournalReplay();
+		List<byte[]> records = readRecords();
+
+		if (records.isEmpty())
+			return replay;
+
+		EntityIndex<Category> categoryIndex = new EntityIndex<>();
+		EntityIndex<Event> eventIndex = new EntityIndex<>();
+		EntityIndex<Contact> contactIndex = new EntityIndex<>();
+
+		categories.forEach(category -> categoryIndex.put(category.getId(), category.getLocalKey(), category));
+		events.forEach(event -> eventIndex.put(event.getId(), event.getLocalKey(), event));
+		contacts.forEach(contact -> contactIndex.put(contact.getId(), contact.getLocalKey(), contact));
+
+		for (byte[] record : records)
+		{
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+			byte flags = in.readByte();
+			byte operation = operationOf(flags);
+			boolean longStrings = (flags & LONG_STRINGS) != 0;
+			byte type = in.readByte();
+			int id = in.readInt();
+			long localKey = in.readLong();
+
+			if (type == CATEGORY)
+			{
+				Category category = categoryIndex.get(id, localKey);
+
+				if (operation == DELETE)
+				{
+					if (category != null)
+					{
+						for (Event event : events)
+						{
+							if (event.getCategory() == category)
+								event.setCategory(null);
+						}
+
+						categories.remove(category);
+						categoryIndex.remove(category.getId(), category.getLocalKey());
+					}
+
+					if (id != 0)
+						replay.getDeletedCategoryIds().add(id);
+				}
+				else
+				{
+					if (category == null)
+					{
+						category = new Category();
+						categories.add(category);
+						categoryIndex.put(id, localKey, category);
+					}
+
+					if (id != 0)
+						category.setId(id);
+
+					category.setLocalKey(localKey);
+					category.setVersion(in.readInt());
+					category.setName(readString(in, longStrings));
+					category.setColorHex(readString(in, longStrings));
+					category.setModified(category.getId() != 0);
+				}
+			}
+			else if (type == EVENT)
+			{
+				Event event = eventIndex.get(id, localKey);
+
+				if (operation == DELETE)
+				{
+					if (event != null)
+					{
+						for (Contact contact : new ArrayList<>(event.getContacts()))
+						{
+							event.removeContact(contact);
+						}
+
+						events.remove(event);
+						eventIndex.remove(event.getId(), event.getLocalKey());
+					}
+
+					if (id != 0)
+						replay.getDeletedEventIds().add(id);
+				}
+				else
+				{
+					if (event == null)
+					{
+						event = new Event();
+						events.add(event);
+						eventIndex.put(id, localKey, event);
+					}
+
+					if (id != 0)
+						event.setId(id);
+
+					event.setLocalKey(localKey);
+					event.setVersion(in.readInt());
+					event.setName(readString(in, longStrings));
+					event.setDate(LocalDateTime.parse(readString(in, longStrings)));
+					String notifyOffset = readString(in, longStrings);
+					event.setNotifyOffset(notifyOffset != null ? LocalTime.parse(notifyOffset) : null);
+					event.setLocation(readString(in, longStrings));
+					event.setDescription(readString(in, longStrings));
+					event.setCategory(categoryIndex.get(in.readInt(), in.readLong()));
+					event.setModified(event.getId() != 0);
+
+					List<Contact> related = new ArrayList<>();
+					int count = in.readInt();
+
+					for (int i = 0; i < count; i++)
+					{
+						Contact contact = contactIndex.get(in.readInt(), in.readLong());
+
+						if (contact != null)
+							related.add(contact);
+					}
+
+					for (Contact contact : new ArrayList<>(event.getContacts()))
+					{
+						if (!related.contains(contact))
+							event.removeContact(contact);
+					}
+
+					related.forEach(event::addContact);
+
+					// czas trwania jest dopisywany na końcu wpisu, wpisy sprzed jego
+					// dodania go nie zawierają
+					String duration = in.available() > 0 ? readString(in, longStrings) : null;
+					event.setDuration(duration != null ? Durations.parse(duration) : null);
+				}
+			}
+			else
+			{
+				Contact contact = contactIndex.get(id, localKey);
+
+				if (operation == DELETE)
+				{
+					if (contact != null)
+					{
+						for (Event event : new ArrayList<>(contact.getEvents()))
+						{
+							contact.removeEvent(event);
+						}
+
+						contacts.remove(contact);
+						contactIndex.remove(contact.getId(), contact.getLocalKey());
+					}
+
+					if (id != 0)
+						replay.getDeletedContactIds().add(id);
+				}
+				else
+				{
+					if (contact == null)
+					{
+						contact = new Contact();
+						contacts.add(contact);
+						contactIndex.put(id, localKey, contact);
+					}
+
+					if (id != 0)
+						contact.setId(id);
+
+					contact.setLocalKey(localKey);
+					contact.setVersion(in.readInt());
+					contact.setFirstName(readString(in, longStrings));
+					contact.setLastName(readString(in, longStrings));
+					contact.setPhoneNumber(readString(in, longStrings));
+					contact.setModified(contact.getId() != 0);
+
+					if (!replayContactLinks)
+					{
+						replay.countRecord();
+						continue;
+					}
+
+					List<Event> related = new ArrayList<>();
+					int count = in.readInt();
+
+					for (int i = 0; i < count; i++)
+					{
+						Event event = eventIndex.get(in.readInt(), in.readLong());
+
+						if (event != null)
+							related.add(event);
+					}
+
+					for (Event event : new ArrayList<>(contact.getEvents()))
+					{
+						if (!related.contains(event))
+							contact.removeEvent(event);
+					}
+
+					related.forEach(contact::addEvent);
+				}
+			}
+
+			replay.countRecord();
+		}
+
+		return replay;
+	}
+
+	/**
+	 * @return             True jeśli dziennik zawiera wyłącznie usunięcia obiektów
+	 *                     (np. po {@link #compact(long)}), których odtworzenie nie
+	 *                     wymaga obecności usuwanych obiektów.
+	 * @throws IOException Jeśli nie udało się odczytać pliku dziennika.
+	 */
+	public synchronized boolean hasOnlyDeletions() throws IOException
+	{
+		for (byte[] record : readRecords())
+		{
+			if (operationOf(record[0]) != DELETE)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Kompaktuje dziennik po zapisaniu danych do pliku XML bez połączenia z bazą
+	 * danych. Stan obiektów z wpisów zapisanych przed zapisem pliku XML jest już
+	 * w tym pliku, więc z nich zostają tylko usunięcia obiektów zapisanych w
+	 * bazie danych, które trzeba jeszcze w niej wykonać. Wpisy dopisane później
+	 * (za podaną długością dziennika) pozostają bez zmian. Nowy dziennik jest
+	 * zapisywany do pliku tymczasowego i atomowo zastępuje poprzedni.
+	 *
+	 * @param  upTo        Długość dziennika w bajtach ({@link #size()}) w
+	 *                     chwili przygotowania zapisu pliku XML.
+	 * @throws IOException Jeśli nie udało się zapisać dziennika.
+	 */
+	public synchronized void compact(long upTo) throws IOException
+	{
+		List<byte[]> kept = new ArrayList<>();
+		long position = 0;
+
+		for (byte[] record : readRecords())
+		{
+			position += 2 * Integer.BYTES + record.length;
+
+			if (position > upTo)
+			{
+				kept.add(record);
+				continue;
+			}
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+			byte operation = operationOf(in.readByte());
+			in.readByte();
+
+			if (operation == DELETE && in.readInt() != 0)
+				kept.add(record);
+		}
+
+		rewrite(kept);
+	}
+
+	/**
+	 * Usuwa wpisy dziennika zapisane przed podaną długością. Wywoływana po
+	 * potwierdzeniu przez bazę danych zapisania wszystkich odtworzonych zmian.
+	 * Wpisy dopisane później pozostają w dzienniku.
+	 *
+	 * @param  upTo        Długość dziennika w bajtach ({@link #size()}) w
+	 *                     chwili potwierdzenia.
+	 * @throws IOException Jeśli nie udało się wyczyścić pliku dziennika.
+	 */
+	public synchronized void clear(long upTo) throws IOException
+	{
+		if (size() <= upTo)
+		{
+			openChannel();
+			channel.truncate(0);
+			channel.force(true);
+			return;
+		}
+
+		List<byte[]> kept = new ArrayList<>();
+		long position = 0;
+
+		for (byte[] record : readRecords())
+		{
+			position += 2 * Integer.BYTES + record.length;
+
+			if (position > upTo)
+				kept.add(record);
+		}
+
+		rewrite(kept);
+	}
+
+	/**
+	 * Zapisuje podane wpisy do pliku tymczasowego, który atomowo zastępuje
+	 * plik dziennika.
+	 *
+	 * @param  records     Wpisy dziennika.
+	 * @throws IOException Jeśli nie udało się zapisać dziennika.
+	 */
+	private void rewrite(List<byte[]> records) throws IOException
+	{
+		closeChannel();
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			for (byte[] record : records)
+			{
+				writeFrame(out, record);
+			}
+
+			out.force(true);
+		}
+
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Zamyka plik dziennika.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		try
+		{
+			closeChannel();
+		}
+		catch (IOException e)
+		{
+			System.err.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Koduje i dopisuje wpis na końcu pliku dziennika. Obiektom bez
+	 * identyfikatora i lokalnego klucza nadaje nowy lokalny klucz.
+	 *
+	 * @param  operation   Rodzaj operacji.
+	 * @param  entity      Kategoria, wydarzenie lub kontakt.
+	 * @throws IOException Jeśli nie udało się zapisać wpisu.
+	 */
+	private void append(byte operation, Object entity) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeByte(operation | LONG_STRINGS);
+
+		if (entity instanceof Category)
+		{
+			Category category = (Category) entity;
+			out.writeByte(CATEGORY);
+			writeRef(out, category.getId(), keyOf(category));
+
+			if (operation != DELETE)
+			{
+				out.writeInt(category.getVersion());
+				writeString(out, category.getName());
+				writeString(out, category.getColorHex());
+			}
+		}
+		else if (entity instanceof Event)
+		{
+			Event event = (Event) entity;
+			out.writeByte(EVENT);
+			writeRef(out, event.getId(), keyOf(event));
+
+			if (operation != DELETE)
+			{
+				out.writeInt(event.getVersion());
+				writeString(out, event.getName());
+				writeString(out, event.getDate().toString());
+				writeString(out, event.getNotifyOffset() != null ? event.getNotifyOffset().toString() : null);
+				writeString(out, event.getLocation());
+				writeString(out, event.getDescription());
+
+				Category category = event.getCategory();
+				writeRef(out, category != null ? category.getId() : 0, category != null ? keyOf(category) : 0);
+
+				out.writeInt(event.getContacts().size());
+
+				for (Contact contact : event.getContacts())
+				{
+					writeRef(out, contact.getId(), keyOf(contact));
+				}
+
+				writeString(out, event.getDuration() != null ? Durations.format(event.getDuration()) : null);
+			}
+		}
+		else
+		{
+			Contact contact = (Contact) entity;
+			out.writeByte(CONTACT);
+			writeRef(out, contact.getId(), keyOf(contact));
+
+			if (operation != DELETE)
+			{
+				out.writeInt(contact.getVersion());
+				writeString(out, contact.getFirstName());
+				writeString(out, contact.getLastName());
+				writeString(out, contact.getPhoneNumber());
+
+				out.writeInt(contact.getEvents().size());
+
+				for (Event event : contact.getEvents())
+				{
+					writeRef(out, event.getId(), keyOf(event));
+				}
+			}
+		}
+
+		openChannel();
+		writeFrame(channel, bytes.toByteArray());
+
+		if (forceOnAppend)
+			channel.force(false);
+	}
+
+	/**
+	 * Odczytuje wszystkie poprawne wpisy dziennika. Jeżeli koniec pliku zawiera
+	 * niepełny lub uszkodzony wpis, plik jest obcinany do ostatniego poprawnego
+	 * wpisu.
+	 *
+	 * @return             Dane kolejnych wpisów.
+	 * @throws IOException Jeśli nie udało się odczytać pliku.
+	 */
+	private List<byte[]> readRecords() throws IOException
+	{
+		List<byte[]> records = new ArrayList<>();
+
+		if (!Files.exists(path))
+			return records;
+
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		CRC32 crc = new CRC32();
+
+		while (buffer.remaining() >= 2 * Integer.BYTES)
+		{
+			int start = buffer.position();
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+
+			if (length <= 0 || length > buffer.remaining())
+			{
+				buffer.position(start);
+				break;
+			}
+
+			byte[] record = new byte[length];
+			buffer.get(record);
+
+			crc.reset();
+			crc.update(record);
+
+			if ((int) crc.getValue() != checksum)
+			{
+				buffer.position(start);
+				break;
+			}
+
+			records.add(record);
+		}
+
+		if (buffer.hasRemaining())
+		{
+			System.err.println("Operation journal: discarding " + buffer.remaining() + " byte(s) of incomplete record(s)");
+			openChannel();
+			channel.truncate(buffer.position());
+			channel.force(true);
+		}
+
+		return records;
+	}
+
+	/**
+	 * Zapisuje wpis poprzedzony długością i sumą kontrolną.
+	 *
+	 * @param  out         Kanał pliku.
+	 * @param  record      Dane wpisu.
+	 * @throws IOException Jeśli nie udało się zapisać wpisu.
+	 */
+	private static void writeFrame(FileChannel out, byte[] record) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		crc.update(record);
+
+		ByteBuffer frame = ByteBuffer.allocate(2 * Integer.BYTES + record.length);
+		frame.putInt(record.length);
+		frame.putInt((int) crc.getValue());
+		frame.put(record);
+		frame.flip();
+
+		while (frame.hasRemaining())
+		{
+			out.write(frame);
+		}
+	}
+
+	/**
+	 * Otwiera plik dziennika do dopisywania, tworząc go w razie potrzeby.
+	 *
+	 * @throws IOException Jeśli nie udało się otworzyć pliku.
+	 */
+	private void openChannel() throws IOException
+	{
+		if (channel != null)
+			return;
+
+		File parent = path.toAbsolutePath().getParent().toFile();
+
+		if (!parent.exists())
+			parent.mkdirs();
+
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Zamyka plik dziennika, jeśli jest otwarty.
+	 *
+	 * @throws IOException Jeśli nie udało się zamknąć pliku.
+	 */
+	private void closeChannel() throws IOException
+	{
+		if (channel != null)
+		{
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Zwraca lokalny klucz kategorii, nadając go kategorii bez identyfikatora.
+	 *
+	 * @param  category Kategoria.
+	 * @return          Lokalny klucz lub 0.
+	 */
+	static long keyOf(Category category)
+	{
+		if (category.getId() == 0 && category.getLocalKey() == 0)
+			category.setLocalKey(localKeys.incrementAndGet());
+
+		return category.getLocalKey();
+	}
+
+	/**
+	 * Zwraca lokalny klucz wydarzenia, nadając go wydarzeniu bez identyfikatora.
+	 *
+	 * @param  event Wydarzenie.
+	 * @return       Lokalny klucz lub 0.
+	 */
+	static long keyOf(Event event)
+	{
+		if (event.getId() == 0 && event.getLocalKey() == 0)
+			event.setLocalKey(localKeys.incrementAndGet());
+
+		return event.getLocalKey();
+	}
+
+	/**
+	 * Zwraca lokalny klucz kontaktu, nadając go kontaktowi bez identyfikatora.
+	 *
+	 * @param  contact Kontakt.
+	 * @return         Lokalny klucz lub 0.
+	 */
+	static long keyOf(Contact contact)
+	{
+		if (contact.getId() == 0 && contact.getLocalKey() == 0)
+			contact.setLocalKey(localKeys.incrementAndGet());
+
+		return contact.getLocalKey();
+	}
+
+	/**
+	 * Zapisuje odwołanie do obiektu: identyfikator i lokalny klucz.
+	 *
+	 * @param  out         Strumień wpisu.
+	 * @param  id          Identyfikator obiektu lub 0.
+	 * @param  localKey    Lokalny klucz obiektu lub 0.
+	 * @throws IOException Jeśli nie udało się zapisać danych.
+	 */
+	private static void writeRef(DataOutputStream out, int id, long localKey) throws IOException
+	{
+		out.writeInt(id);
+		out.writeLong(localKey);
+	}
+
+	/**
+	 * Zwraca rodzaj operacji zapisany w pierwszym bajcie wpisu, bez flag
+	 * formatu.
+	 *
+	 * @param  flags Pierwszy bajt wpisu.
+	 * @return       Rodzaj operacji.
+	 */
+	private static byte operationOf(byte flags)
+	{
+		return (byte) (flags & ~LONG_STRINGS);
+	}
+
+	/**
+	 * Zapisuje tekst, który może być null, jako długość w bajtach i dane UTF-8.
+	 *
+	 * @param  out         Strumień wpisu.
+	 * @param  value       Tekst lub null.
+	 * @throws IOException Jeśli nie udało się zapisać danych.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		out.writeBoolean(value != null);
+
+		if (value != null)
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Odczytuje tekst zapisany przez {@link #writeString(DataOutputStream, String)}
+	 * lub, we wpisach starszego formatu, przez
+	 * {@link DataOutputStream#writeUTF(String)}.
+	 *
+	 * @param  in          Strumień wpisu.
+	 * @param  longStrings True jeśli wpis ma flagę {@code LONG_STRINGS}.
+	 * @return             Tekst lub null.
+	 * @throws IOException Jeśli nie udało się odczytać danych lub zapisana
+	 *                     długość tekstu przekracza rozmiar wpisu.
+	 */
+	private String readString(DataInputStream in, boolean longStrings) throws IOException
+	{
+		if (!in.readBoolean())
+			return null;
+
+		if (!longStrings)
+			return stringPool.intern(in.readUTF());
+
+		int length = in.readInt();
+
+		if (length < 0 || length > in.available())
+			throw new IOException("Operation journal: invalid string length " + length);
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return stringPool.intern(new String(bytes, StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,679 @@
+package serializer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import model.Category;
+import model.Contact;
+import model.Event;
+import util.StringPool;
+
+/**
+ * Migawka danych lokalnego magazynu podzielona na partycje według miesiąca
+ * wydarzeń. Każda partycja jest osobnym plikiem w formacie
+ * {@link serializer.BinarySnapshot}:
+ *
+ * <pre>
+ * manifest.bin        numer pliku podstawowego, a dla każdego miesiąca rok,
+ *                     miesiąc, numer pliku, liczba wydarzeń i najpóźniejsza
+ *                     data zakończenia wydarzenia (sekundy od epoki)
+ * core-N.bin          kategorie, kontakty i wydarzenia bez daty
+ * RRRR-MM-N.bin       wydarzenia z danego miesiąca oraz kategorie i kontakty,
+ *                     do których się odwołują
+ * </pre>
+ *
+ * Kategorie i kontakty zapisane w partycji miesiąca służą tylko do wskazania
+ * obiektów z pliku podstawowego według identyfikatora lub lokalnego klucza,
+ * dlatego każdy zapisywany obiekt bez identyfikatora otrzymuje lokalny klucz.
+ * Wydarzenie należy do miesiąca, w którym się zaczyna, ale może trwać wiele
+ * dni, więc manifest przechowuje najpóźniejszą datę zakończenia wydarzeń
+ * partycji ({@link #latestEnd(YearMonth)}), dzięki której nie trzeba wczytywać
+ * wcześniejszych miesięcy, aby sprawdzić, czy ich wydarzenia nakładają się na
+ * podany termin.
+ * <p>
+ * Każdy zapis partycji tworzy nowy plik z kolejnym numerem, a zmiany stają się
+ * widoczne dopiero po atomowym zapisaniu manifestu ({@link #writeManifest()}),
+ * który następnie usuwa pliki, do których już się nie odwołuje. Przerwany
+ * zapis pozostawia więc poprzednią, spójną wersję migawki.
+ * <p>
+ * Metody migawki wywołuje magazyn {@link serializer.LocalStore} pod swoją
+ * blokadą, z wyjątkiem zapisu wersji roboczej ({@link Draft}) przy
+ * kompaktowaniu i odczytu przypiętych plików ({@link #pin(List)}), które
+ * odbywają się bez niej. Pliki wersji roboczej i przypięte pliki nie są
+ * usuwane przez zapis manifestu, dopóki nie zostaną do niego dodane lub
+ * odpięte.
+ */
+class PartitionedSnapshot
+{
+	private static final int MAGIC = 0x43414C4D;
+	private static final int END_MAGIC = 0x454E4421;
+	private static final int FORMAT_VERSION = 3;
+
+	private static final String MANIFEST_FILE = "manifest.bin";
+	private static final String CORE_PREFIX = "core-";
+	private static final String SUFFIX = ".bin";
+
+	/**
+	 * Wpis manifestu opisujący plik partycji miesiąca.
+	 */
+	private static class Partition
+	{
+		private final long generation;
+		private final int eventCount;
+		private final long latestEnd;
+
+		private Partition(long generation, int eventCount, long latestEnd)
+		{
+			this.generation = generation;
+			this.eventCount = eventCount;
+			this.latestEnd = latestEnd;
+		}
+	}
+
+	/**
+	 * Nowa wersja migawki zapisywana przy kompaktowaniu bez blokady magazynu.
+	 * Jej pliki stają się widoczne po {@link PartitionedSnapshot#apply(Draft)}
+	 * i zapisaniu manifestu.
+	 */
+	static class Draft
+	{
+		private final Map<YearMonth, Long> baseGenerations = new HashMap<>();
+		private final Map<YearMonth, Partition> partitions = new HashMap<>();
+		private final List<Path> files = new ArrayList<>();
+		private long coreGeneration;
+
+		private Draft()
+		{
+
+		}
+	}
+
+	private final Path directory;
+	private final TreeMap<YearMonth, Partition> partitions = new TreeMap<>();
+	private final Set<Path> pinned = ConcurrentHashMap.newKeySet();
+	private final AtomicLong lastGeneration = new AtomicLong();
+
+	private long coreGeneration;
+	private StringPool stringPool = new StringPool();
+
+	/**
+	 * Tworzy migawkę w podanym katalogu.
+	 *
+	 * @param directory Katalog plików migawki.
+	 */
+	PartitionedSnapshot(Path directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * Ustawia pulę tekstów, przez którą przechodzą teksty odczytane z partycji, np.
+	 * pulę wspólną dla wszystkich źródeł danych aplikacji.
+	 *
+	 * @param stringPool Pula tekstów.
+	 */
+	void setStringPool(StringPool stringPool)
+	{
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * Wczytuje manifest migawki.
+	 *
+	 * @return True jeśli manifest istnieje i jest poprawny.
+	 */
+	boolean readManifest()
+	{
+		Path path = directory.resolve(MANIFEST_FILE);
+
+		partitions.clear();
+		coreGeneration = 0;
+		lastGeneration.set(0);
+
+		if (!Files.exists(path))
+			return false;
+
+		try (InputStream inputStream = Files.newInputStream(path))
+		{
+			DataInputStream in = new DataInputStream(inputStream);
+
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+				return false;
+
+			coreGeneration = in.readLong();
+			lastGeneration.set(coreGeneration);
+
+			int count = in.readInt();
+
+			for (int i = 0; i < count; i++)
+			{
+				YearMonth month = YearMonth.of(in.readInt(), in.readInt());
+				Partition partition = new Partition(in.readLong(), in.readInt(), in.readLong());
+				partitions.put(month, partition);
+				lastGeneration.accumulateAndGet(partition.generation, Math::max);
+			}
+
+			if (in.readInt() != END_MAGIC)
+			{
+				partitions.clear();
+				return false;
+			}
+
+			return true;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			System.err.println("Partitioned snapshot: " + e);
+			partitions.clear();
+			return false;
+		}
+	}
+
+	/**
+	 * @return Miesiące, dla których istnieją partycje, w kolejności
+	 *         chronologicznej.
+	 */
+	Set<YearMonth> months()
+	{
+		return Collections.unmodifiableSet(partitions.keySet());
+	}
+
+	/**
+	 * @param  month Miesiąc.
+	 * @return       Najpóźniejsza data zakończenia wydarzeń z partycji miesiąca
+	 *               lub null, jeśli miesiąc nie ma partycji.
+	 */
+	LocalDateTime latestEnd(YearMonth month)
+	{
+		Partition partition = partitions.get(month);
+
+		if (partition == null)
+			return null;
+
+		return LocalDateTime.ofEpochSecond(partition.latestEnd, 0, ZoneOffset.UTC);
+	}
+
+	/**
+	 * Wczytuje plik podstawowy.
+	 *
+	 * @return             Kategorie, kontakty i wydarzenia bez daty.
+	 * @throws IOException Jeśli plik nie istnieje lub jest uszkodzony.
+	 */
+	XMLDataWrapper readCore() throws IOException
+	{
+		return read(coreFile(coreGeneration));
+	}
+
+	/**
+	 * Wczytuje partycję miesiąca.
+	 *
+	 * @param  month       Miesiąc.
+	 * @return             Wydarzenia miesiąca oraz kategorie i kontakty, do
+	 *                     których się odwołują.
+	 * @throws IOException Jeśli partycji nie ma w manifeście, plik nie istnieje
+	 *                     lub jest uszkodzony.
+	 */
+	XMLDataWrapper readMonth(YearMonth month) throws IOException
+	{
+		return read(fileOf(month));
+	}
+
+	/**
+	 * Wczytuje partycje podanych miesięcy.
+	 *
+	 * @param  months      Miesiące.
+	 * @return             Zawartość partycji w kolejności miesięcy.
+	 * @throws IOException Jeśli którejś partycji nie ma w manifeście, plik nie
+	 *                     istnieje lub jest uszkodzony.
+	 * @see                #readFiles(List)
+	 */
+	List<XMLDataWrapper> readMonths(List<YearMonth> months) throws IOException
+	{
+		List<Path> files = new ArrayList<>(months.size());
+
+		for (YearMonth month : months)
+		{
+			files.add(fileOf(month));
+		}
+
+		return readFiles(files);
+	}
+
+	/**
+	 * Przypina pliki partycji tych z podanych miesięcy, które mają partycję,
+	 * tak aby można je było odczytać przez {@link #readFiles(List)} bez blokady
+	 * magazynu. Przypięte pliki nie są usuwane, nawet jeśli w międzyczasie
+	 * partycja zostanie zapisana ponownie, do czasu {@link #unpin(List)}.
+	 *
+	 * @param  months Miesiące.
+	 * @return        Przypięte pliki partycji.
+	 */
+	List<Path> pin(List<YearMonth> months)
+	{
+		List<Path> files = new ArrayList<>(months.size());
+
+		for (YearMonth month : months)
+		{
+			Partition partition = partitions.get(month);
+
+			if (partition != null)
+				files.add(monthFile(month, partition.generation));
+		}
+
+		pinned.addAll(files);
+		return files;
+	}
+
+	/**
+	 * Odpina pliki przypięte przez {@link #pin(List)}. Pliki, do których manifest
+	 * się już nie odwołuje, zostaną usunięte przy kolejnym zapisie manifestu.
+	 *
+	 * @param files Przypięte pliki partycji.
+	 */
+	void unpin(List<Path> files)
+	{
+		pinned.removeAll(files);
+	}
+
+	/**
+	 * Wczytuje pliki partycji. Pliki są niezależne, więc są odczytywane
+	 * równolegle w puli {@link ForkJoinPool#commonPool()}.
+	 *
+	 * @param  files       Pliki partycji.
+	 * @return             Zawartość plików w kolejności listy.
+	 * @throws IOException Jeśli któryś plik nie istnieje lub jest uszkodzony.
+	 */
+	List<XMLDataWrapper> readFiles(List<Path> files) throws IOException
+	{
+		if (files.size() == 1)
+			return List.of(read(files.get(0)));
+
+		List<ForkJoinTask<XMLDataWrapper>> tasks = new ArrayList<>(files.size());
+
+		for (Path file : files)
+		{
+			tasks.add(ForkJoinTask.adapt(() -> read(file)));
+		}
+
+		List<XMLDataWrapper> data = new ArrayList<>(files.size());
+
+		try
+		{
+			for (ForkJoinTask<XMLDataWrapper> task : ForkJoinTask.invokeAll(tasks))
+			{
+				data.add(task.join());
+			}
+		}
+		catch (RuntimeException e)
+		{
+			// wyjątek zadania jest opakowany, a przy przekazaniu między wątkami
+			// może zostać opakowany ponownie
+			for (Throwable cause = e; cause != null; cause = cause.getCause())
+			{
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+			}
+
+			throw e;
+		}
+
+		return data;
+	}
+
+	/**
+	 * Rozpoczyna nową wersję migawki, zapamiętując numery plików partycji
+	 * podanych miesięcy, które wersja zastąpi.
+	 *
+	 * @param  months Miesiące, których partycje zapisze wersja robocza.
+	 * @return        Pusta wersja robocza.
+	 */
+	Draft newDraft(Collection<YearMonth> months)
+	{
+		Draft draft = new Draft();
+
+		for (YearMonth month : months)
+		{
+			Partition partition = partitions.get(month);
+			draft.baseGenerations.put(month, partition != null ? partition.generation : 0);
+		}
+
+		return draft;
+	}
+
+	/**
+	 * Zapisuje nowy plik podstawowy wersji roboczej. Nie wymaga blokady
+	 * magazynu.
+	 *
+	 * @param  draft       Wersja robocza.
+	 * @param  categories  Lista kategorii.
+	 * @param  events      Wydarzenia bez daty.
+	 * @param  contacts    Lista kontaktów.
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	long writeCore(Draft draft, List<Category> categories, List<Event> events, List<Contact> contacts) throws IOException
+	{
+		long generation = lastGeneration.incrementAndGet();
+		Path file = coreFile(generation);
+
+		pinned.add(file);
+		draft.files.add(file);
+
+		long bytesWritten = write(file, categories, events, contacts);
+		draft.coreGeneration = generation;
+
+		return bytesWritten;
+	}
+
+	/**
+	 * Zapisuje nowy plik partycji miesiąca wersji roboczej. Nie wymaga blokady
+	 * magazynu.
+	 *
+	 * @param  draft       Wersja robocza.
+	 * @param  month       Miesiąc podany przy tworzeniu wersji roboczej.
+	 * @param  events      Wydarzenia z tego miesiąca.
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	long writeMonth(Draft draft, YearMonth month, List<Event> events) throws IOException
+	{
+		if (events.isEmpty())
+		{
+			draft.partitions.put(month, null);
+			return 0;
+		}
+
+		long generation = lastGeneration.incrementAndGet();
+		Path file = monthFile(month, generation);
+
+		pinned.add(file);
+		draft.files.add(file);
+
+		long bytesWritten = writePartition(file, events);
+		draft.partitions.put(month, new Partition(generation, events.size(), latestEndOf(events)));
+
+		return bytesWritten;
+	}
+
+	/**
+	 * Dodaje do manifestu pliki wersji roboczej. Partycja miesiąca, która
+	 * została w międzyczasie zapisana ponownie przez
+	 * {@link #writeMonth(YearMonth, List)} (np. przy zwolnieniu miesiąca),
+	 * zawiera nowsze dane, więc jej plik z wersji roboczej jest pomijany. Zmiana
+	 * jest widoczna po zapisaniu manifestu.
+	 *
+	 * @param draft Zapisana wersja robocza.
+	 */
+	void apply(Draft draft)
+	{
+		coreGeneration = draft.coreGeneration;
+
+		for (Map.Entry<YearMonth, Partition> entry : draft.partitions.entrySet())
+		{
+			Partition current = partitions.get(entry.getKey());
+
+			if ((current != null ? current.generation : 0) != draft.baseGenerations.get(entry.getKey()))
+				continue;
+
+			if (entry.getValue() != null)
+				partitions.put(entry.getKey(), entry.getValue());
+			else
+				partitions.remove(entry.getKey());
+		}
+
+		pinned.removeAll(draft.files);
+	}
+
+	/**
+	 * Porzuca wersję roboczą, której nie udało się zapisać, i usuwa jej pliki.
+	 *
+	 * @param draft Wersja robocza.
+	 */
+	void discard(Draft draft)
+	{
+		pinned.removeAll(draft.files);
+
+		for (Path file : draft.files)
+		{
+			try
+			{
+				Files.deleteIfExists(file);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Partitioned snapshot: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Zapisuje nowy plik partycji miesiąca lub, jeśli miesiąc nie ma już
+	 * wydarzeń, usuwa partycję z manifestu. Zmiana jest widoczna po zapisaniu
+	 * manifestu.
+	 *
+	 * @param  month       Miesiąc.
+	 * @param  events      Wydarzenia z tego miesiąca.
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	long writeMonth(YearMonth month, List<Event> events) throws IOException
+	{
+		if (events.isEmpty())
+		{
+			partitions.remove(month);
+			return 0;
+		}
+
+		long generation = lastGeneration.incrementAndGet();
+		long bytesWritten = writePartition(monthFile(month, generation), events);
+		partitions.put(month, new Partition(generation, events.size(), latestEndOf(events)));
+
+		return bytesWritten;
+	}
+
+	/**
+	 * Zapisuje plik partycji z wydarzeniami miesiąca oraz kategoriami i
+	 * kontaktami, do których się odwołują.
+	 *
+	 * @param  file        Plik partycji.
+	 * @param  events      Wydarzenia z tego miesiąca.
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	private static long writePartition(Path file, List<Event> events) throws IOException
+	{
+		Map<Category, Boolean> categories = new IdentityHashMap<>();
+		Map<Contact, Boolean> contacts = new IdentityHashMap<>();
+
+		for (Event event : events)
+		{
+			OperationJournal.keyOf(event);
+
+			if (event.getCategory() != null)
+				categories.put(event.getCategory(), Boolean.TRUE);
+
+			for (Contact contact : event.getContacts())
+			{
+				contacts.put(contact, Boolean.TRUE);
+			}
+		}
+
+		categories.keySet().forEach(OperationJournal::keyOf);
+		contacts.keySet().forEach(OperationJournal::keyOf);
+
+		return write(file, new ArrayList<>(categories.keySet()), events, new ArrayList<>(contacts.keySet()));
+	}
+
+	/**
+	 * @param  events Niepusta lista wydarzeń z datą.
+	 * @return        Najpóźniejsza data zakończenia wydarzeń w sekundach od
+	 *                epoki.
+	 */
+	private static long latestEndOf(List<Event> events)
+	{
+		long latestEnd = Long.MIN_VALUE;
+
+		for (Event event : events)
+		{
+			latestEnd = Math.max(latestEnd, event.getEndDate().toEpochSecond(ZoneOffset.UTC));
+		}
+
+		return latestEnd;
+	}
+
+	/**
+	 * Atomowo zapisuje manifest, a następnie usuwa pliki migawki, do których
+	 * manifest się nie odwołuje.
+	 *
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli nie udało się zapisać manifestu.
+	 */
+	long writeManifest() throws IOException
+	{
+		Files.createDirectories(directory);
+
+		Path path = directory.resolve(MANIFEST_FILE);
+		Path temp = directory.resolve(MANIFEST_FILE + ".tmp");
+
+		try (FileOutputStream fileOutputStream = new FileOutputStream(temp.toFile()))
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(coreGeneration);
+			out.writeInt(partitions.size());
+
+			for (Map.Entry<YearMonth, Partition> entry : partitions.entrySet())
+			{
+				out.writeInt(entry.getKey().getYear());
+				out.writeInt(entry.getKey().getMonthValue());
+				out.writeLong(entry.getValue().generation);
+				out.writeInt(entry.getValue().eventCount);
+				out.writeLong(entry.getValue().latestEnd);
+			}
+
+			out.writeInt(END_MAGIC);
+			out.flush();
+			fileOutputStream.getFD().sync();
+		}
+
+		long bytesWritten = Files.size(temp);
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		deleteUnreferenced();
+		return bytesWritten;
+	}
+
+	/**
+	 * Usuwa pliki partycji, do których manifest się nie odwołuje, np. poprzednie
+	 * wersje partycji lub pliki pozostawione przez przerwany zapis.
+	 *
+	 * @throws IOException Jeśli nie udało się odczytać katalogu migawki.
+	 */
+	private void deleteUnreferenced() throws IOException
+	{
+		List<Path> referenced = new ArrayList<>();
+		referenced.add(directory.resolve(MANIFEST_FILE));
+		referenced.add(coreFile(coreGeneration));
+		partitions.forEach((month, partition) -> referenced.add(monthFile(month, partition.generation)));
+		referenced.addAll(pinned);
+
+		try (Stream<Path> files = Files.list(directory))
+		{
+			for (Path path : (Iterable<Path>) files::iterator)
+			{
+				if (!referenced.contains(path) && path.getFileName().toString().endsWith(SUFFIX))
+					Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	/**
+	 * @param  month       Miesiąc.
+	 * @return             Plik partycji miesiąca z manifestu.
+	 * @throws IOException Jeśli partycji nie ma w manifeście.
+	 */
+	private Path fileOf(YearMonth month) throws IOException
+	{
+		Partition partition = partitions.get(month);
+
+		if (partition == null)
+			throw new IOException("Partitioned snapshot: no partition for " + month);
+
+		return monthFile(month, partition.generation);
+	}
+
+	/**
+	 * @param  path        Ścieżka do pliku partycji.
+	 * @return             Zawartość partycji.
+	 * @throws IOException Jeśli plik nie istnieje lub jest uszkodzony.
+	 */
+	private XMLDataWrapper read(Path path) throws IOException
+	{
+		BinarySnapshot binarySnapshot = new BinarySnapshot(path.toString());
+		binarySnapshot.setStringPool(stringPool);
+
+		XMLDataWrapper data = binarySnapshot.decode();
+
+		if (data == null)
+			throw new IOException("Partitioned snapshot: cannot read " + path.getFileName());
+
+		return data;
+	}
+
+	/**
+	 * @param  path        Ścieżka do pliku partycji.
+	 * @param  categories  Lista kategorii.
+	 * @param  events      Lista wydarzeń.
+	 * @param  contacts    Lista kontaktów.
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli zapis się nie powiódł.
+	 */
+	private static long write(Path path, List<Category> categories, List<Event> events, List<Contact> contacts) throws IOException
+	{
+		return new BinarySnapshot(path.toString()).encode(categories, events, contacts);
+	}
+
+	/**
+	 * @param  generation Numer pliku.
+	 * @return            Ścieżka do pliku podstawowego.
+	 */
+	private Path coreFile(long generation)
+	{
+		return directory.resolve(CORE_PREFIX + generation + SUFFIX);
+	}
+
+	/**
+	 * @param  month      Miesiąc.
+	 * @param  generation Numer pliku.
+	 * @return            Ścieżka do pliku partycji miesiąca.
+	 */
+	private Path monthFile(YearMonth month, long generation)
+	{
+		return directory.resolve(month + "-" + generation + SUFFIX);
+	}
+}
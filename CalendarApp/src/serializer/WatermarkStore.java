@@ -0,0 +1,82 @@
+package serializer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Klasa odpowiedzialna za zapis i odczyt znacznika synchronizacji z bazą
+ * danych (watermark), po której powstały lokalne dane w pliku XML. Znacznik
+ * jest identyfikatorem najstarszej transakcji, której zmiany mogły nie trafić
+ * do pliku, jest przechowywany w pliku właściwości obok pliku danych i pozwala
+ * przy kolejnym uruchomieniu pobrać z bazy danych wyłącznie zmiany od niego.
+ * Znaczniki zapisane wcześniej jako numery zmian (klucz {@code watermark}) są
+ * ignorowane, co wymusza jedną pełną synchronizację.
+ *
+ * @see postgresql.Database#synchronize(java.util.List, java.util.List,
+ *      java.util.List, long)
+ */
+public class WatermarkStore
+{
+	private final String DATA_PATH = "data/xml_files/sync.properties";
+	private final String WATERMARK_KEY = "transaction_watermark";
+
+	/**
+	 * Odczytuje zapisany znacznik synchronizacji.
+	 *
+	 * @return Znacznik synchronizacji lub 0, jeśli plik nie istnieje lub jest
+	 *         niepoprawny, co oznacza konieczność pełnej synchronizacji.
+	 */
+	public long load()
+	{
+		File file = new File(DATA_PATH);
+
+		if (!file.exists())
+			return 0;
+
+		try (InputStream inputStream = new FileInputStream(file))
+		{
+			Properties properties = new Properties();
+			properties.load(inputStream);
+
+			return Long.parseLong(properties.getProperty(WATERMARK_KEY, "0"));
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			System.err.println(e.getMessage());
+			return 0;
+		}
+	}
+
+	/**
+	 * Zapisuje znacznik synchronizacji. Powinna być wywoływana po zapisaniu
+	 * pliku danych, aby znacznik nigdy nie pomijał zmian, których plik nie
+	 * zawiera.
+	 *
+	 * @param watermark Znacznik synchronizacji, po której zapisano plik danych.
+	 */
+	public void save(long watermark)
+	{
+		File file = new File(DATA_PATH);
+
+		if (file.getParentFile() != null && !file.getParentFile().exists())
+		{
+			file.getParentFile().mkdirs();
+		}
+
+		try (OutputStream outputStream = new FileOutputStream(file))
+		{
+			Properties properties = new Properties();
+			properties.setProperty(WATERMARK_KEY, Long.toString(watermark));
+			properties.store(outputStream, null);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+}
@@ -5,28 +5,59 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.List;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import model.Category;
 import model.Contact;
 import model.Event;
+import util.Durations;
+import util.IntHashMap;
+import util.StringPool;
 
 /**
- * Klasa odpowiedzialna za deserializację danych z formatu XML. Wykorzystuje
- * obiekt {@link java.beans.XMLDecoder} do odczytu list kategorii, wydarzeń i
- * kontaktów z pliku XML.
- * 
- * @see java.beans.XMLDecoder
+ * Klasa odpowiedzialna za deserializację danych z formatu XML. Odczytuje listy
+ * kategorii, wydarzeń i kontaktów zapisane przez
+ * {@link serializer.XMLSerializer} strumieniowo, w jednym przebiegu, przy
+ * użyciu {@link javax.xml.stream.XMLStreamReader}. Pliki zapisane we
+ * wcześniejszym formacie {@link java.beans.XMLEncoder} są rozpoznawane po
+ * elemencie głównym i odczytywane przez {@link java.beans.XMLDecoder}; przy
+ * najbliższym zapisie zostaną przepisane do nowego formatu.
+ *
+ * @see serializer.XMLSerializer
  * @see serializer.XMLDataWrapper
  */
 public class XMLDeserializer
 {
+	private static final String LEGACY_ROOT = "java";
+
 	private final String DATA_PATH = "data/xml_files/data.xml";
 
+	private StringPool stringPool = new StringPool();
+
+	/**
+	 * Ustawia pulę tekstów, przez którą przechodzą teksty odczytane z pliku XML, np.
+	 * pulę wspólną dla wszystkich źródeł danych aplikacji.
+	 *
+	 * @param stringPool Pula tekstów.
+	 */
+	public void setStringPool(StringPool stringPool)
+	{
+		this.stringPool = stringPool;
+	}
+
 	/**
 	 * Metoda do deserializacji danych z pliku XML z domyślnej ścieżki, do obiektu
 	 * {@link serializer.XMLDataWrapper}.
-	 * 
+	 *
 	 * @return Obiekt {@link serializer.XMLDataWrapper} zawierający listy kategorii,
 	 *         wydarzeń i kontaktów.
 	 */
@@ -38,19 +69,250 @@ public class XMLDeserializer
 	/**
 	 * Metoda do deserializacji danych z określonego pliku XML do obiektu
 	 * {@link serializer.XMLDataWrapper}.
-	 * 
+	 *
 	 * @param  filePath Ścieżka do pliku XML.
 	 * @return          Obiekt {@link serializer.XMLDataWrapper} zawierający listy
 	 *                  kategorii, wydarzeń i kontaktów.
 	 */
-	@SuppressWarnings("unchecked")
 	public XMLDataWrapper decode(String filePath)
 	{
-		File file = new File(DATA_PATH);
+		File file = new File(filePath);
 
 		if (file.length() == 0)
 			return null;
 
+		try
+		{
+			if (LEGACY_ROOT.equals(readRootElement(filePath)))
+				return decodeLegacy(filePath);
+
+			try (InputStream inputStream = new BufferedInputStream(new FileInputStream(filePath)))
+			{
+				return read(inputStream);
+			}
+		}
+		catch (IOException | XMLStreamException | RuntimeException e)
+		{
+			System.err.println(e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Odczytuje listy kategorii, wydarzeń i kontaktów z płaskiego formatu XML w
+	 * jednym przebiegu. Odwołania do kategorii i kontaktów są rozwiązywane przez
+	 * mapy indeksowane numerem obiektu w pliku ({@code ref}), a każde powiązanie
+	 * wydarzenia z kontaktem jest dopisywane do obu list bez sprawdzania
+	 * duplikatów, ponieważ plik zawiera je dokładnie raz. Czas odczytu jest
+	 * liniowy względem rozmiaru pliku.
+	 *
+	 * @param  inputStream        Strumień wejściowy.
+	 * @return                    Obiekt {@link serializer.XMLDataWrapper}.
+	 * @throws XMLStreamException Jeśli dokument XML jest niepoprawny lub zawiera
+	 *                            odwołanie do nieistniejącego obiektu.
+	 */
+	XMLDataWrapper read(InputStream inputStream) throws XMLStreamException
+	{
+		List<Category> categories = new ArrayList<>();
+		List<Event> events = new ArrayList<>();
+		List<Contact> contacts = new ArrayList<>();
+
+		IntHashMap<Category> categoriesByRef = new IntHashMap<>();
+		IntHashMap<Event> eventsByRef = new IntHashMap<>();
+		IntHashMap<Contact> contactsByRef = new IntHashMap<>();
+
+		XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(inputStream);
+
+		try
+		{
+			while (reader.hasNext())
+			{
+				if (reader.next() != XMLStreamConstants.START_ELEMENT)
+					continue;
+
+				switch (reader.getLocalName())
+				{
+					case XMLSerializer.CATEGORIES:
+					{
+						int count = intAttribute(reader, "count");
+						categories = new ArrayList<>(count);
+						categoriesByRef = new IntHashMap<>(count);
+						break;
+					}
+					case XMLSerializer.EVENTS:
+					{
+						int count = intAttribute(reader, "count");
+						events = new ArrayList<>(count);
+						eventsByRef = new IntHashMap<>(count);
+						break;
+					}
+					case XMLSerializer.CONTACTS:
+					{
+						int count = intAttribute(reader, "count");
+						contacts = new ArrayList<>(count);
+						contactsByRef = new IntHashMap<>(count);
+						break;
+					}
+					case XMLSerializer.CATEGORY:
+					{
+						Category category = new Category();
+						category.setId(intAttribute(reader, "id"));
+						category.setVersion(intAttribute(reader, "version"));
+						category.setLocalKey(longAttribute(reader, "localKey"));
+						category.setModified(Boolean.parseBoolean(reader.getAttributeValue(null, "modified")));
+						category.setName(stringAttribute(reader, "name"));
+						category.setColorHex(stringAttribute(reader, "color"));
+						categories.add(category);
+						categoriesByRef.put(intAttribute(reader, "ref"), category);
+						break;
+					}
+					case XMLSerializer.EVENT:
+					{
+						Event event = new Event();
+						int ref = intAttribute(reader, "ref");
+						event.setId(intAttribute(reader, "id"));
+						event.setVersion(intAttribute(reader, "version"));
+						event.setLocalKey(longAttribute(reader, "localKey"));
+						event.setModified(Boolean.parseBoolean(reader.getAttributeValue(null, "modified")));
+						event.setName(stringAttribute(reader, "name"));
+
+						String date = reader.getAttributeValue(null, "date");
+						event.setDate(date != null ? LocalDateTime.parse(date) : null);
+
+						String notifyOffset = reader.getAttributeValue(null, "notifyOffset");
+						event.setNotifyOffset(notifyOffset != null ? LocalTime.parse(notifyOffset) : null);
+
+						String duration = reader.getAttributeValue(null, "duration");
+						event.setDuration(duration != null ? Durations.parse(duration) : null);
+
+						event.setLocation(stringAttribute(reader, "location"));
+
+						String category = reader.getAttributeValue(null, XMLSerializer.CATEGORY);
+						event.setCategory(category != null ? resolve(categoriesByRef, Integer.parseInt(category), reader) : null);
+
+						String description = reader.getElementText();
+						event.setDescription(description.isEmpty() ? null : stringPool.intern(description));
+						events.add(event);
+						eventsByRef.put(ref, event);
+						break;
+					}
+					case XMLSerializer.CONTACT:
+					{
+						Contact contact = new Contact();
+						contact.setId(intAttribute(reader, "id"));
+						contact.setVersion(intAttribute(reader, "version"));
+						contact.setLocalKey(longAttribute(reader, "localKey"));
+						contact.setModified(Boolean.parseBoolean(reader.getAttributeValue(null, "modified")));
+						contact.setFirstName(stringAttribute(reader, "firstName"));
+						contact.setLastName(stringAttribute(reader, "lastName"));
+						contact.setPhoneNumber(stringAttribute(reader, "phoneNumber"));
+						contacts.add(contact);
+						contactsByRef.put(intAttribute(reader, "ref"), contact);
+						break;
+					}
+					case XMLSerializer.LINK:
+					{
+						Event event = resolve(eventsByRef, intAttribute(reader, XMLSerializer.EVENT), reader);
+						String refs = reader.getAttributeValue(null, XMLSerializer.CONTACTS);
+						int position = 0;
+
+						while (position < refs.length())
+						{
+							int next = refs.indexOf(' ', position);
+
+							if (next < 0)
+								next = refs.length();
+
+							if (next > position)
+							{
+								Contact contact = resolve(contactsByRef, Integer.parseInt(refs, position, next, 10), reader);
+								event.getContacts().add(contact);
+								contact.getEvents().add(event);
+							}
+
+							position = next + 1;
+						}
+
+						break;
+					}
+					default:
+						break;
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		return new XMLDataWrapper(categories, events, contacts);
+	}
+
+	/**
+	 * Zwraca obiekt o podanym numerze w pliku.
+	 *
+	 * @param  <T>                Typ obiektu.
+	 * @param  byRef              Mapa obiektów według numeru w pliku.
+	 * @param  ref                Numer obiektu.
+	 * @param  reader             Strumień odczytu XML, używany do wskazania
+	 *                            miejsca błędu.
+	 * @return                    Obiekt o podanym numerze.
+	 * @throws XMLStreamException Jeśli obiekt o podanym numerze nie został
+	 *                            jeszcze odczytany.
+	 */
+	private static <T> T resolve(IntHashMap<T> byRef, int ref, XMLStreamReader reader) throws XMLStreamException
+	{
+		T entity = byRef.get(ref);
+
+		if (entity == null)
+			throw new XMLStreamException("Unresolved reference " + ref + " in <" + reader.getLocalName() + ">", reader.getLocation());
+
+		return entity;
+	}
+
+	/**
+	 * Odczytuje nazwę elementu głównego dokumentu XML bez wczytywania reszty
+	 * pliku.
+	 *
+	 * @param  filePath           Ścieżka do pliku XML.
+	 * @return                    Nazwa elementu głównego lub null.
+	 * @throws IOException        Jeśli nie udało się otworzyć pliku.
+	 * @throws XMLStreamException Jeśli dokument XML jest niepoprawny.
+	 */
+	private String readRootElement(String filePath) throws IOException, XMLStreamException
+	{
+		try (InputStream inputStream = new BufferedInputStream(new FileInputStream(filePath)))
+		{
+			XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(inputStream);
+
+			try
+			{
+				while (reader.hasNext())
+				{
+					if (reader.next() == XMLStreamConstants.START_ELEMENT)
+						return reader.getLocalName();
+				}
+
+				return null;
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Odczytuje plik zapisany we wcześniejszym formacie przez
+	 * {@link java.beans.XMLEncoder}.
+	 *
+	 * @param  filePath    Ścieżka do pliku XML.
+	 * @return             Obiekt {@link serializer.XMLDataWrapper}.
+	 * @throws IOException Jeśli nie udało się odczytać pliku.
+	 */
+	@SuppressWarnings("unchecked")
+	private XMLDataWrapper decodeLegacy(String filePath) throws IOException
+	{
 		try (XMLDecoder xmlDecoder = new XMLDecoder(new BufferedInputStream(new FileInputStream(filePath))))
 		{
 			List<Category> categories = (List<Category>) xmlDecoder.readObject();
@@ -59,10 +321,44 @@ public class XMLDeserializer
 
 			return new XMLDataWrapper(categories, events, contacts);
 		}
-		catch (IOException e)
-		{
-			System.err.println(e.getMessage());
-			return null;
-		}
+	}
+
+	/**
+	 * Odczytuje atrybut tekstowy bieżącego elementu i zastępuje go tekstem z
+	 * puli tekstów.
+	 *
+	 * @param  reader Strumień odczytu XML ustawiony na elemencie.
+	 * @param  name   Nazwa atrybutu.
+	 * @return        Wartość atrybutu lub null, jeśli go nie ma.
+	 */
+	private String stringAttribute(XMLStreamReader reader, String name)
+	{
+		return stringPool.intern(reader.getAttributeValue(null, name));
+	}
+
+	/**
+	 * Odczytuje atrybut liczbowy bieżącego elementu.
+	 *
+	 * @param  reader Strumień odczytu XML ustawiony na elemencie.
+	 * @param  name   Nazwa atrybutu.
+	 * @return        Wartość atrybutu lub 0, jeśli go nie ma.
+	 */
+	private static int intAttribute(XMLStreamReader reader, String name)
+	{
+		String value = reader.getAttributeValue(null, name);
+		return value != null ? Integer.parseInt(value) : 0;
+	}
+
+	/**
+	 * Odczytuje atrybut liczbowy typu long bieżącego elementu.
+	 *
+	 * @param  reader Strumień odczytu XML ustawiony na elemencie.
+	 * @param  name   Nazwa atrybutu.
+	 * @return        Wartość atrybutu lub 0, jeśli go nie ma.
+	 */
+	private static long longAttribute(XMLStreamReader reader, String name)
+	{
+		String value = reader.getAttributeValue(null, name);
+		return value != null ? Long.parseLong(value) : 0;
 	}
 }
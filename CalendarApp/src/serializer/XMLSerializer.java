@@ -1,80 +1,365 @@
 package serializer;
 
-import java.beans.XMLEncoder;
 import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import model.Category;
 import model.Contact;
 import model.Event;
+import util.Durations;
 
 /**
- * Klasa odpowiedzialna za serializację danych do formatu XML. Wykorzystuje
- * obiekt {@link java.beans.XMLEncoder} do zapisu list kategorii, wydarzeń i
- * kontaktów do pliku XML.
- * 
- * @see java.beans.XMLEncoder
- * @see serializer.LocalDateTimePersistenceDelegate
- * @see serializer.LocalTimePersistenceDelegate
+ * Klasa odpowiedzialna za serializację danych do formatu XML. Zapisuje listy
+ * kategorii, wydarzeń i kontaktów strumieniowo przy użyciu
+ * {@link javax.xml.stream.XMLStreamWriter} w płaskim formacie, w którym każda
+ * lista jest osobną sekcją, a powiązania między obiektami są zapisywane jako
+ * odwołania do ich numerów w pliku:
+ *
+ * <pre>
+ * &lt;calendar format="2"&gt;
+ *   &lt;categories count="1"&gt;
+ *     &lt;category ref="0" id="2" version="1" name="..." color="#BAED11"/&gt;
+ *   &lt;/categories&gt;
+ *   &lt;events count="1"&gt;
+ *     &lt;event ref="0" id="5" name="..." date="2024-01-10T10:00" category="0"&gt;opis&lt;/event&gt;
+ *   &lt;/events&gt;
+ *   &lt;contacts count="1"&gt;
+ *     &lt;contact ref="0" id="3" firstName="..." lastName="..." phoneNumber="..."/&gt;
+ *   &lt;/contacts&gt;
+ *   &lt;links count="1"&gt;
+ *     &lt;link event="0" contacts="0"/&gt;
+ *   &lt;/links&gt;
+ * &lt;/calendar&gt;
+ * </pre>
+ *
+ * Powiązania wydarzeń z kontaktami są zapisywane jako jeden element na
+ * wydarzenie z listą numerów kontaktów. Atrybuty o wartości domyślnej (0,
+ * false, null) są pomijane. Każdy obiekt jest zapisywany dokładnie raz, a
+ * zużycie pamięci nie zależy od rozmiaru pliku poza mapą numerów obiektów.
+ *
+ * @see serializer.XMLDeserializer
  */
 public class XMLSerializer
 {
+	static final String FORMAT_VERSION = "2";
+
+	static final String ROOT = "calendar";
+	static final String CATEGORIES = "categories";
+	static final String CATEGORY = "category";
+	static final String EVENTS = "events";
+	static final String EVENT = "event";
+	static final String CONTACTS = "contacts";
+	static final String CONTACT = "contact";
+	static final String LINKS = "links";
+	static final String LINK = "link";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
 	private final String DATA_PATH = "data/xml_files/data.xml";
 
 	/**
-	 * Serializuje listę kategorii, wydarzeń i kontaktów do pliku XML.
-	 * 
-	 * @param categories Lista kategorii do zapisania.
-	 * @param events     Lista wydarzeń do zapisania.
-	 * @param contacts   Lista kontaktów do zapisania.
+	 * Serializuje listę kategorii, wydarzeń i kontaktów do pliku XML. Dane są
+	 * zapisywane do pliku tymczasowego, synchronizowanego z dyskiem, który
+	 * następnie atomowo zastępuje plik danych, więc przerwany zapis nie
+	 * uszkadza poprzedniej wersji pliku.
+	 *
+	 * @param  categories  Lista kategorii do zapisania.
+	 * @param  events      Lista wydarzeń do zapisania.
+	 * @param  contacts    Lista kontaktów do zapisania.
+	 * @return             Liczba zapisanych bajtów.
+	 * @throws IOException Jeśli zapis pliku się nie powiódł.
 	 */
-	public void encode(List<Category> categories, List<Event> events, List<Contact> contacts)
+	public long encode(List<Category> categories, List<Event> events, List<Contact> contacts) throws IOException
 	{
-		isFileExists();
+		createParentDirectory();
 
-		try (XMLEncoder xmlEncoder = new XMLEncoder(new BufferedOutputStream(new FileOutputStream(DATA_PATH))))
-		{
-			xmlEncoder.setPersistenceDelegate(LocalDateTime.class, new LocalDateTimePersistenceDelegate());
-			xmlEncoder.setPersistenceDelegate(LocalTime.class, new LocalTimePersistenceDelegate());
+		Path path = Path.of(DATA_PATH);
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
 
-			xmlEncoder.writeObject(categories);
-			xmlEncoder.writeObject(events);
-			xmlEncoder.writeObject(contacts);
+		try (FileOutputStream fileOutputStream = new FileOutputStream(temp.toFile()))
+		{
+			OutputStream outputStream = new BufferedOutputStream(fileOutputStream, BUFFER_SIZE);
+			write(outputStream, categories, events, contacts);
+			outputStream.flush();
+			fileOutputStream.getFD().sync();
 		}
-		catch (IOException e)
+		catch (XMLStreamException e)
 		{
-			e.printStackTrace();
+			Files.deleteIfExists(temp);
+			throw new IOException(e.getMessage(), e);
 		}
+
+		long bytesWritten = Files.size(temp);
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		return bytesWritten;
 	}
 
 	/**
-	 * Sprawdza istnienie pliku danych. Jeśli plik nie istnieje, próbuje go
-	 * utworzyć.
+	 * Zapisuje listy kategorii, wydarzeń i kontaktów do strumienia w płaskim
+	 * formacie XML. Strumień nie jest zamykany.
+	 *
+	 * @param  outputStream       Strumień wyjściowy.
+	 * @param  categories         Lista kategorii do zapisania.
+	 * @param  events             Lista wydarzeń do zapisania.
+	 * @param  contacts           Lista kontaktów do zapisania.
+	 * @throws XMLStreamException Jeśli zapis dokumentu XML się nie powiódł.
 	 */
-	private void isFileExists()
+	void write(OutputStream outputStream, List<Category> categories, List<Event> events, List<Contact> contacts) throws XMLStreamException
 	{
-		File dataFile = new File(DATA_PATH);
+		XMLStreamWriter writer = XMLOutputFactory.newFactory()
+				.createXMLStreamWriter(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE));
+
+		Map<Category, Integer> categoryRefs = new IdentityHashMap<>(categories.size());
+		Map<Contact, Integer> contactRefs = new IdentityHashMap<>(contacts.size());
+
+		writer.writeStartDocument("UTF-8", "1.0");
+		writer.writeCharacters("\n");
+		writer.writeStartElement(ROOT);
+		writer.writeAttribute("format", FORMAT_VERSION);
+
+		startSection(writer, CATEGORIES, categories.size());
 
-		if (!dataFile.exists())
+		for (int i = 0; i < categories.size(); i++)
 		{
-			try
-			{
-				if (dataFile.getParentFile() != null && !dataFile.getParentFile().exists())
-				{
-					dataFile.getParentFile().mkdirs();
-				}
+			Category category = categories.get(i);
+			categoryRefs.put(category, i);
+
+			startEntry(writer, CATEGORY, i, category.getId(), category.getVersion(), category.getLocalKey(), category.isModified());
+			writeAttribute(writer, "name", category.getName());
+			writeAttribute(writer, "color", category.getColorHex());
+		}
+
+		endSection(writer);
+
+		for (int i = 0; i < contacts.size(); i++)
+		{
+			contactRefs.put(contacts.get(i), i);
+		}
+
+		startSection(writer, EVENTS, events.size());
+
+		for (int i = 0; i < events.size(); i++)
+		{
+			Event event = events.get(i);
+			String description = event.getDescription();
+
+			if (description == null || description.isEmpty())
+				startEntry(writer, EVENT, i, event.getId(), event.getVersion(), event.getLocalKey(), event.isModified());
+			else
+				startEntryWithBody(writer, EVENT, i, event.getId(), event.getVersion(), event.getLocalKey(), event.isModified());
 
-				dataFile.createNewFile();
+			writeAttribute(writer, "name", event.getName());
+			writeAttribute(writer, "date", event.getDate() != null ? event.getDate().toString() : null);
+			writeAttribute(writer, "notifyOffset", event.getNotifyOffset() != null ? event.getNotifyOffset().toString() : null);
+			writeAttribute(writer, "duration", event.getDuration() != null ? Durations.format(event.getDuration()) : null);
+			writeAttribute(writer, "location", event.getLocation());
+
+			Integer categoryRef = event.getCategory() != null ? categoryRefs.get(event.getCategory()) : null;
+
+			if (categoryRef != null)
+				writer.writeAttribute("category", Integer.toString(categoryRef));
+
+			if (description != null && !description.isEmpty())
+			{
+				writer.writeCharacters(description);
+				writer.writeEndElement();
 			}
-			catch (IOException e)
+		}
+
+		endSection(writer);
+
+		startSection(writer, CONTACTS, contacts.size());
+
+		for (int i = 0; i < contacts.size(); i++)
+		{
+			Contact contact = contacts.get(i);
+
+			startEntry(writer, CONTACT, i, contact.getId(), contact.getVersion(), contact.getLocalKey(), contact.isModified());
+			writeAttribute(writer, "firstName", contact.getFirstName());
+			writeAttribute(writer, "lastName", contact.getLastName());
+			writeAttribute(writer, "phoneNumber", contact.getPhoneNumber());
+		}
+
+		endSection(writer);
+
+		startSection(writer, LINKS, events.size());
+
+		StringBuilder refs = new StringBuilder();
+
+		for (int i = 0; i < events.size(); i++)
+		{
+			refs.setLength(0);
+
+			for (Contact contact : events.get(i).getContacts())
 			{
-				System.err.println(e.getMessage());
+				Integer contactRef = contactRefs.get(contact);
+
+				if (contactRef == null)
+					continue;
+
+				if (refs.length() > 0)
+					refs.append(' ');
+
+				refs.append(contactRef.intValue());
 			}
+
+			if (refs.length() == 0)
+				continue;
+
+			writer.writeCharacters("\n\t\t");
+			writer.writeEmptyElement(LINK);
+			writer.writeAttribute(EVENT, Integer.toString(i));
+			writer.writeAttribute(CONTACTS, refs.toString());
+		}
+
+		endSection(writer);
+
+		writer.writeCharacters("\n");
+		writer.writeEndElement();
+		writer.writeEndDocument();
+		writer.flush();
+		writer.close();
+	}
+
+	/**
+	 * Rozpoczyna sekcję listy obiektów. Atrybut {@code count} pozwala przy
+	 * odczycie utworzyć listy i mapy o właściwym rozmiarze.
+	 *
+	 * @param  writer             Strumień zapisu XML.
+	 * @param  name               Nazwa sekcji.
+	 * @param  count              Największa liczba elementów sekcji.
+	 * @throws XMLStreamException Jeśli zapis się nie powiódł.
+	 */
+	private static void startSection(XMLStreamWriter writer, String name, int count) throws XMLStreamException
+	{
+		writer.writeCharacters("\n\t");
+		writer.writeStartElement(name);
+		writer.writeAttribute("count", Integer.toString(count));
+	}
+
+	/**
+	 * Kończy sekcję listy obiektów.
+	 *
+	 * @param  writer             Strumień zapisu XML.
+	 * @throws XMLStreamException Jeśli zapis się nie powiódł.
+	 */
+	private static void endSection(XMLStreamWriter writer) throws XMLStreamException
+	{
+		writer.writeCharacters("\n\t");
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Rozpoczyna pusty element obiektu i zapisuje jego wspólne atrybuty.
+	 *
+	 * @param  writer             Strumień zapisu XML.
+	 * @param  name               Nazwa elementu.
+	 * @param  ref                Numer obiektu w pliku.
+	 * @param  id                 Identyfikator z bazy danych.
+	 * @param  version            Wersja rekordu.
+	 * @param  localKey           Lokalny klucz obiektu.
+	 * @param  modified           Czy obiekt ma niezsynchronizowane zmiany.
+	 * @throws XMLStreamException Jeśli zapis się nie powiódł.
+	 */
+	private static void startEntry(XMLStreamWriter writer, String name, int ref, int id, int version, long localKey, boolean modified)
+			throws XMLStreamException
+	{
+		writer.writeCharacters("\n\t\t");
+		writer.writeEmptyElement(name);
+		writeCommonAttributes(writer, ref, id, version, localKey, modified);
+	}
+
+	/**
+	 * Rozpoczyna element obiektu z treścią i zapisuje jego wspólne atrybuty.
+	 * Element musi zostać zamknięty przez wywołującego.
+	 *
+	 * @param  writer             Strumień zapisu XML.
+	 * @param  name               Nazwa elementu.
+	 * @param  ref                Numer obiektu w pliku.
+	 * @param  id                 Identyfikator z bazy danych.
+	 * @param  version            Wersja rekordu.
+	 * @param  localKey           Lokalny klucz obiektu.
+	 * @param  modified           Czy obiekt ma niezsynchronizowane zmiany.
+	 * @throws XMLStreamException Jeśli zapis się nie powiódł.
+	 */
+	private static void startEntryWithBody(XMLStreamWriter writer, String name, int ref, int id, int version, long localKey, boolean modified)
+			throws XMLStreamException
+	{
+		writer.writeCharacters("\n\t\t");
+		writer.writeStartElement(name);
+		writeCommonAttributes(writer, ref, id, version, localKey, modified);
+	}
+
+	/**
+	 * Zapisuje atrybuty wspólne dla kategorii, wydarzeń i kontaktów.
+	 *
+	 * @param  writer             Strumień zapisu XML.
+	 * @param  ref                Numer obiektu w pliku.
+	 * @param  id                 Identyfikator z bazy danych.
+	 * @param  version            Wersja rekordu.
+	 * @param  localKey           Lokalny klucz obiektu.
+	 * @param  modified           Czy obiekt ma niezsynchronizowane zmiany.
+	 * @throws XMLStreamException Jeśli zapis się nie powiódł.
+	 */
+	private static void writeCommonAttributes(XMLStreamWriter writer, int ref, int id, int version, long localKey, boolean modified)
+			throws XMLStreamException
+	{
+		writer.writeAttribute("ref", Integer.toString(ref));
+
+		if (id != 0)
+			writer.writeAttribute("id", Integer.toString(id));
+
+		if (version != 0)
+			writer.writeAttribute("version", Integer.toString(version));
+
+		if (localKey != 0)
+			writer.writeAttribute("localKey", Long.toString(localKey));
+
+		if (modified)
+			writer.writeAttribute("modified", "true");
+	}
+
+	/**
+	 * Zapisuje atrybut tekstowy, pomijając wartość null.
+	 *
+	 * @param  writer             Strumień zapisu XML.
+	 * @param  name               Nazwa atrybutu.
+	 * @param  value              Wartość atrybutu lub null.
+	 * @throws XMLStreamException Jeśli zapis się nie powiódł.
+	 */
+	private static void writeAttribute(XMLStreamWriter writer, String name, String value) throws XMLStreamException
+	{
+		if (value != null)
+			writer.writeAttribute(name, value);
+	}
+
+	/**
+	 * Tworzy katalog pliku danych, jeśli nie istnieje.
+	 */
+	private void createParentDirectory()
+	{
+		File dataFile = new File(DATA_PATH);
+
+		if (dataFile.getParentFile() != null && !dataFile.getParentFile().exists())
+		{
+			dataFile.getParentFile().mkdirs();
 		}
 	}
 }
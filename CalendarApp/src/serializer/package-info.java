@@ -4,7 +4,13 @@
  * serializacji klas czasu, takich jak {@link java.time.LocalDateTime} i
  * {@link java.time.LocalTime}. Pakiet umożliwia zapisywanie i wczytywanie
  * danych z plików XML, zapewniając trwałość obiektów związanych z modelami
- * kategorii, wydarzeń i kontaktów.
+ * kategorii, wydarzeń i kontaktów, lokalny magazyn danych o strukturze
+ * dziennika (binarna migawka podzielona na miesiące i dopisywane po niej
+ * zmiany) wczytywany przy starcie aplikacji, a także przechowywanie numeru
+ * ostatniej zmiany bazy danych zawartej w tych plikach oraz dziennika operacji
+ * wykonanych bez połączenia z bazą danych. Wydarzenia można również
+ * importować i eksportować w formacie iCalendar (RFC 5545), wymienianym z
+ * innymi aplikacjami kalendarza.
  * 
  * @author Mateusz Kopaczewski
  */
@@ -6,7 +6,8 @@ import model.Event;
 
 /**
  * Klasa implementująca interfejs Comparator, służąca do sortowania listy
- * wydarzeń alfabetycznie według kategorii.
+ * wydarzeń alfabetycznie według kategorii. Wydarzenia bez kategorii są
+ * umieszczane na początku listy.
  */
 public class SortEventByCategory implements Comparator<Event>
 {
@@ -14,7 +15,7 @@ public class SortEventByCategory implements Comparator<Event>
 	public int compare(Event o1, Event o2)
 	{
 		if (o1.getCategory() == null || o2.getCategory() == null)
-			return -1;
+			return Boolean.compare(o1.getCategory() != null, o2.getCategory() != null);
 		return o1.getCategory().getName().compareTo(o2.getCategory().getName());
 	}
-}
\ No newline at end of file
+}
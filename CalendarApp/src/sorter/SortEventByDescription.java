@@ -6,13 +6,16 @@ import model.Event;
 
 /**
  * Klasa implementująca interfejs Comparator, służąca do sortowania listy
- * wydarzeń alfabetycznie według opisu.
+ * wydarzeń alfabetycznie według opisu. Wydarzenia bez opisu są umieszczane na
+ * początku listy.
  */
 public class SortEventByDescription implements Comparator<Event>
 {
 	@Override
 	public int compare(Event o1, Event o2)
 	{
+		if (o1.getDescription() == null || o2.getDescription() == null)
+			return Boolean.compare(o1.getDescription() != null, o2.getDescription() != null);
 		return o1.getDescription().compareTo(o2.getDescription());
 	}
 }
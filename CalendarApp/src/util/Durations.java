@@ -0,0 +1,64 @@
+package util;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Operacje na czasie trwania wydarzeń. Czas trwania jest zapisywany w postaci
+ * tekstowej {@code G:mm} (godziny i minuty), w której liczba godzin nie jest
+ * ograniczona do doby, więc {@code 36:30} oznacza półtorej doby i pół godziny.
+ * Postać {@code HH:mm} używana przez starsze wersje aplikacji jest szczególnym
+ * przypadkiem tego formatu i jest nadal poprawnie odczytywana.
+ */
+public final class Durations
+{
+	private static final Pattern FORMAT = Pattern.compile("^(\\d{1,6}):([0-5][0-9])$");
+
+	private Durations()
+	{
+
+	}
+
+	/**
+	 * Sprawdza, czy tekst jest poprawnym czasem trwania w formacie {@code G:mm}.
+	 *
+	 * @param  text Tekst do sprawdzenia.
+	 * @return      {@code true}, jeśli tekst jest poprawnym czasem trwania.
+	 */
+	public static boolean isValid(String text)
+	{
+		return text != null && FORMAT.matcher(text).matches();
+	}
+
+	/**
+	 * Odczytuje czas trwania zapisany w formacie {@code G:mm}.
+	 *
+	 * @param  text                   Tekst do odczytania.
+	 * @return                        Odczytany czas trwania.
+	 * @throws DateTimeParseException Jeśli tekst nie jest poprawnym czasem
+	 *                                trwania.
+	 */
+	public static Duration parse(String text)
+	{
+		Matcher matcher = text == null ? null : FORMAT.matcher(text);
+
+		if (matcher == null || !matcher.matches())
+			throw new DateTimeParseException("Niepoprawny czas trwania: " + text, text == null ? "" : text, 0);
+
+		return Duration.ofHours(Long.parseLong(matcher.group(1))).plusMinutes(Integer.parseInt(matcher.group(2)));
+	}
+
+	/**
+	 * Zapisuje czas trwania w formacie {@code G:mm}, z co najmniej dwiema
+	 * cyframi godzin. Sekundy i ich części są pomijane.
+	 *
+	 * @param  duration Czas trwania.
+	 * @return          Czas trwania w postaci tekstowej.
+	 */
+	public static String format(Duration duration)
+	{
+		return String.format("%02d:%02d", duration.toHours(), duration.toMinutesPart());
+	}
+}
@@ -0,0 +1,268 @@
+package util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Mapa z kluczami typu {@code int} oparta na adresowaniu otwartym z liniowym
+ * próbkowaniem. W przeciwieństwie do {@code HashMap<Integer, V>} nie opakowuje
+ * kluczy w obiekty {@code Integer} i nie tworzy obiektów wpisów, dzięki czemu
+ * wyszukiwanie i wstawianie nie alokują pamięci (poza powiększaniem tablic).
+ * Mapa nie przechowuje wartości {@code null}, a wolne miejsca w tablicy są
+ * rozpoznawane po pustej wartości.
+ *
+ * @param <V> Typ przechowywanych wartości.
+ */
+public class IntHashMap<V>
+{
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+	private int resizeThreshold;
+
+	/**
+	 * Tworzy pustą mapę o domyślnej pojemności.
+	 */
+	public IntHashMap()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Tworzy pustą mapę, która pomieści podaną liczbę elementów bez powiększania
+	 * tablic.
+	 *
+	 * @param expectedSize Oczekiwana liczba elementów.
+	 */
+	public IntHashMap(int expectedSize)
+	{
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) << 1;
+		allocate(Math.max(capacity, DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * @return Liczba elementów w mapie.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return True jeśli mapa jest pusta, w przeciwnym razie false.
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @param  key Klucz do wyszukania.
+	 * @return     Wartość przypisana do klucza lub null, jeśli klucz nie istnieje.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key)
+	{
+		int index = mix(key) & mask;
+
+		while (values[index] != null)
+		{
+			if (keys[index] == key)
+				return (V) values[index];
+
+			index = (index + 1) & mask;
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param  key Klucz do sprawdzenia.
+	 * @return     True jeśli klucz istnieje w mapie, w przeciwnym razie false.
+	 */
+	public boolean containsKey(int key)
+	{
+		return get(key) != null;
+	}
+
+	/**
+	 * Przypisuje wartość do klucza, zastępując poprzednią wartość.
+	 *
+	 * @param  key                      Klucz.
+	 * @param  value                    Wartość (różna od null).
+	 * @return                          Poprzednia wartość lub null.
+	 * @throws IllegalArgumentException Jeśli wartość jest null.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value)
+	{
+		if (value == null)
+		{
+			throw new IllegalArgumentException("IntHashMap does not support null values");
+		}
+
+		int index = mix(key) & mask;
+
+		while (values[index] != null)
+		{
+			if (keys[index] == key)
+			{
+				V previous = (V) values[index];
+				values[index] = value;
+				return previous;
+			}
+
+			index = (index + 1) & mask;
+		}
+
+		keys[index] = key;
+		values[index] = value;
+
+		if (++size > resizeThreshold)
+		{
+			resize(keys.length << 1);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Usuwa klucz z mapy. Kolejne elementy łańcucha próbkowania są przesuwane
+	 * wstecz, więc mapa nie wymaga znaczników usuniętych miejsc.
+	 *
+	 * @param  key Klucz do usunięcia.
+	 * @return     Usunięta wartość lub null, jeśli klucz nie istniał.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key)
+	{
+		int index = mix(key) & mask;
+
+		while (values[index] != null)
+		{
+			if (keys[index] == key)
+			{
+				V previous = (V) values[index];
+				shiftBack(index);
+				size--;
+				return previous;
+			}
+
+			index = (index + 1) & mask;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Usuwa wszystkie elementy mapy, zachowując jej pojemność.
+	 */
+	public void clear()
+	{
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	/**
+	 * Wykonuje akcję dla każdej wartości w mapie, w nieokreślonej kolejności.
+	 *
+	 * @param action Akcja do wykonania.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEachValue(Consumer<? super V> action)
+	{
+		for (Object value : values)
+		{
+			if (value != null)
+				action.accept((V) value);
+		}
+	}
+
+	/**
+	 * Zamyka lukę po usuniętym elemencie, przesuwając wstecz elementy, których
+	 * pozycja docelowa nie leży między luką a ich aktualną pozycją.
+	 *
+	 * @param gap Indeks usuniętego elementu.
+	 */
+	private void shiftBack(int gap)
+	{
+		int index = gap;
+
+		while (true)
+		{
+			index = (index + 1) & mask;
+
+			if (values[index] == null)
+				break;
+
+			int home = mix(keys[index]) & mask;
+
+			if (((index - home) & mask) >= ((index - gap) & mask))
+			{
+				keys[gap] = keys[index];
+				values[gap] = values[index];
+				gap = index;
+			}
+		}
+
+		values[gap] = null;
+	}
+
+	/**
+	 * Powiększa tablice mapy i ponownie rozmieszcza elementy.
+	 *
+	 * @param capacity Nowa pojemność (potęga dwójki).
+	 */
+	private void resize(int capacity)
+	{
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+
+		allocate(capacity);
+
+		for (int i = 0; i < oldValues.length; i++)
+		{
+			if (oldValues[i] != null)
+			{
+				int index = mix(oldKeys[i]) & mask;
+
+				while (values[index] != null)
+				{
+					index = (index + 1) & mask;
+				}
+
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Tworzy tablice o podanej pojemności i wylicza próg powiększenia (75%).
+	 *
+	 * @param capacity Pojemność (potęga dwójki).
+	 */
+	private void allocate(int capacity)
+	{
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		resizeThreshold = capacity * 3 / 4;
+	}
+
+	/**
+	 * Miesza bity klucza, aby kolejne identyfikatory nie tworzyły długich
+	 * łańcuchów próbkowania.
+	 *
+	 * @param  key Klucz.
+	 * @return     Wymieszana wartość skrótu.
+	 */
+	private static int mix(int key)
+	{
+		int hash = key * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
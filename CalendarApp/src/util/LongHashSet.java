@@ -0,0 +1,190 @@
+package util;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Zbiór wartości typu {@code long} oparty na adresowaniu otwartym z liniowym
+ * próbkowaniem, tak jak {@link IntHashMap}. W przeciwieństwie do
+ * {@code HashSet<Long>} nie opakowuje wartości w obiekty {@code Long} i nie
+ * tworzy obiektów wpisów, dzięki czemu dodawanie i wyszukiwanie nie alokują
+ * pamięci (poza powiększaniem tablicy). Wolne miejsca w tablicy są oznaczone
+ * wartością 0, dlatego obecność samej wartości 0 jest zapamiętywana osobno.
+ */
+public class LongHashSet
+{
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private long[] values;
+	private boolean containsZero;
+	private int size;
+	private int mask;
+	private int resizeThreshold;
+
+	/**
+	 * Tworzy pusty zbiór o domyślnej pojemności.
+	 */
+	public LongHashSet()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Tworzy pusty zbiór, który pomieści podaną liczbę elementów bez
+	 * powiększania tablicy.
+	 *
+	 * @param expectedSize Oczekiwana liczba elementów.
+	 */
+	public LongHashSet(int expectedSize)
+	{
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) << 1;
+		allocate(Math.max(capacity, DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * @return Liczba elementów w zbiorze.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return True jeśli zbiór jest pusty, w przeciwnym razie false.
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @param  value Wartość do sprawdzenia.
+	 * @return       True jeśli wartość należy do zbioru, w przeciwnym razie
+	 *               false.
+	 */
+	public boolean contains(long value)
+	{
+		if (value == 0)
+			return containsZero;
+
+		int index = mix(value) & mask;
+
+		while (values[index] != 0)
+		{
+			if (values[index] == value)
+				return true;
+
+			index = (index + 1) & mask;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Dodaje wartość do zbioru.
+	 *
+	 * @param  value Wartość.
+	 * @return       True jeśli wartość została dodana, false jeśli już należała
+	 *               do zbioru.
+	 */
+	public boolean add(long value)
+	{
+		if (value == 0)
+		{
+			if (containsZero)
+				return false;
+
+			containsZero = true;
+			size++;
+			return true;
+		}
+
+		int index = mix(value) & mask;
+
+		while (values[index] != 0)
+		{
+			if (values[index] == value)
+				return false;
+
+			index = (index + 1) & mask;
+		}
+
+		values[index] = value;
+
+		if (++size > resizeThreshold)
+		{
+			resize(values.length << 1);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Wykonuje akcję dla każdej wartości w zbiorze, w nieokreślonej kolejności.
+	 *
+	 * @param action Akcja do wykonania.
+	 */
+	public void forEach(LongConsumer action)
+	{
+		if (containsZero)
+			action.accept(0);
+
+		for (long value : values)
+		{
+			if (value != 0)
+				action.accept(value);
+		}
+	}
+
+	/**
+	 * Powiększa tablicę zbioru i ponownie rozmieszcza elementy.
+	 *
+	 * @param capacity Nowa pojemność (potęga dwójki).
+	 */
+	private void resize(int capacity)
+	{
+		long[] oldValues = values;
+
+		allocate(capacity);
+
+		for (long value : oldValues)
+		{
+			if (value != 0)
+			{
+				int index = mix(value) & mask;
+
+				while (values[index] != 0)
+				{
+					index = (index + 1) & mask;
+				}
+
+				values[index] = value;
+			}
+		}
+	}
+
+	/**
+	 * Tworzy tablicę o podanej pojemności i wylicza próg powiększenia (75%).
+	 *
+	 * @param capacity Pojemność (potęga dwójki).
+	 */
+	private void allocate(int capacity)
+	{
+		values = new long[capacity];
+		mask = capacity - 1;
+		resizeThreshold = capacity * 3 / 4;
+	}
+
+	/**
+	 * Miesza bity wartości, aby klucze różniące się tylko starszą lub tylko
+	 * młodszą połową (np. pary identyfikatorów) nie tworzyły długich łańcuchów
+	 * próbkowania.
+	 *
+	 * @param  value Wartość.
+	 * @return       Wymieszana wartość skrótu.
+	 */
+	private static int mix(long value)
+	{
+		long hash = value * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+}
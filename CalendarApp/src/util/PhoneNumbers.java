@@ -0,0 +1,87 @@
+package util;
+
+import java.util.regex.Pattern;
+
+/**
+ * Operacje na numerach telefonów kontaktów. Numer jest przechowywany w postaci
+ * do wyświetlenia ({@code 123 456 789}) oraz w postaci znormalizowanej, bez
+ * białych znaków ({@code 123456789}), która służy do porównywania numerów i
+ * jako klucz indeksu kontaktów. Normalizacja nie używa wyrażeń regularnych i
+ * nie tworzy nowego tekstu, jeśli numer nie zawiera białych znaków, a wzorzec
+ * poprawnego numeru jest kompilowany raz.
+ */
+public final class PhoneNumbers
+{
+	/**
+	 * Liczba cyfr poprawnego numeru telefonu.
+	 */
+	public static final int DIGITS = 9;
+
+	private static final Pattern VALID = Pattern.compile("\\d{" + DIGITS + "}");
+
+	private PhoneNumbers()
+	{
+
+	}
+
+	/**
+	 * Usuwa z numeru telefonu białe znaki (te same co {@code \s} w wyrażeniach
+	 * regularnych).
+	 *
+	 * @param  phoneNumber Numer telefonu lub null.
+	 * @return             Numer bez białych znaków lub null, jeśli podano null.
+	 */
+	public static String normalize(String phoneNumber)
+	{
+		if (phoneNumber == null)
+			return null;
+
+		int i = 0;
+
+		while (i < phoneNumber.length() && !isWhitespace(phoneNumber.charAt(i)))
+		{
+			i++;
+		}
+
+		if (i == phoneNumber.length())
+			return phoneNumber;
+
+		StringBuilder normalized = new StringBuilder(phoneNumber.length());
+		normalized.append(phoneNumber, 0, i);
+
+		for (; i < phoneNumber.length(); i++)
+		{
+			char c = phoneNumber.charAt(i);
+
+			if (!isWhitespace(c))
+				normalized.append(c);
+		}
+
+		return normalized.toString();
+	}
+
+	/**
+	 * @param  phoneNumber Numer telefonu, także z białymi znakami.
+	 * @return             True jeśli numer po usunięciu białych znaków składa się
+	 *                     z dokładnie 9 cyfr.
+	 */
+	public static boolean isValid(String phoneNumber)
+	{
+		return phoneNumber != null && VALID.matcher(normalize(phoneNumber)).matches();
+	}
+
+	/**
+	 * @param  phoneNumber Poprawny numer telefonu, także z białymi znakami.
+	 * @return             Numer w postaci do wyświetlenia, np. {@code 123 456 789}.
+	 */
+	public static String format(String phoneNumber)
+	{
+		String digits = normalize(phoneNumber);
+		return digits.substring(0, 3) + " " + digits.substring(3, 6) + " " + digits.substring(6);
+	}
+
+	private static boolean isWhitespace(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+}
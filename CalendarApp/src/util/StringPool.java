@@ -0,0 +1,97 @@
+package util;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Pula tekstów usuwająca duplikaty. Dane wczytywane z plików lokalnych i bazy
+ * danych zawierają wiele powtarzających się tekstów (lokalizacje, nazwy
+ * kategorii, opisy, imiona), a każdy odczyt tworzy dla nich nowe obiekty
+ * {@code String}. {@link #intern(String)} zwraca obiekt przechowywany w puli,
+ * jeśli pula zawiera już równy tekst, dzięki czemu duplikat może zostać
+ * zwolniony przez odśmiecacz.
+ * <p>
+ * Pula przechowuje teksty przez słabe odwołania, więc tekst, do którego nie
+ * prowadzą już żadne inne odwołania (np. po usunięciu wydarzenia), jest z niej
+ * usuwany. Metody są synchronizowane, ponieważ pula może być używana przez
+ * wątki dekodujące dane równolegle. Statystyki puli, w tym szacowana liczba
+ * zaoszczędzonych bajtów, są dostępne poprzez {@link #getMetrics()}.
+ */
+public class StringPool
+{
+	// nagłówek obiektu String z polami (przy skompresowanych wskaźnikach)
+	private static final int STRING_SHALLOW_SIZE = 24;
+	// nagłówek tablicy byte[] z długością
+	private static final int ARRAY_HEADER_SIZE = 16;
+
+	private final Map<String, WeakReference<String>> strings = new WeakHashMap<>();
+
+	private long lookups;
+	private long hits;
+	private long savedBytes;
+
+	/**
+	 * Zwraca tekst przechowywany w puli równy podanemu lub, jeśli pula go nie
+	 * zawiera, dodaje do puli i zwraca podany tekst.
+	 *
+	 * @param  value Tekst lub null.
+	 * @return       Tekst z puli lub null, jeśli podano null.
+	 */
+	public synchronized String intern(String value)
+	{
+		if (value == null)
+			return null;
+
+		lookups++;
+
+		WeakReference<String> reference = strings.get(value);
+		String pooled = reference != null ? reference.get() : null;
+
+		if (pooled == null)
+		{
+			strings.put(value, new WeakReference<>(value));
+			return value;
+		}
+
+		if (pooled != value)
+		{
+			hits++;
+			savedBytes += sizeOf(value);
+		}
+
+		return pooled;
+	}
+
+	/**
+	 * @return Migawka statystyk puli.
+	 */
+	public synchronized StringPoolMetrics getMetrics()
+	{
+		return new StringPoolMetrics(strings.size(), lookups, hits, savedBytes);
+	}
+
+	/**
+	 * Szacuje rozmiar tekstu na stercie: obiektu {@code String} i jego tablicy
+	 * znaków zapisanych jednym bajtem (Latin-1) lub dwoma bajtami (UTF-16).
+	 *
+	 * @param  value Tekst.
+	 * @return       Szacowany rozmiar w bajtach.
+	 */
+	private static long sizeOf(String value)
+	{
+		int bytesPerChar = 1;
+
+		for (int i = 0; i < value.length(); i++)
+		{
+			if (value.charAt(i) > 0xFF)
+			{
+				bytesPerChar = 2;
+				break;
+			}
+		}
+
+		long arraySize = ARRAY_HEADER_SIZE + (long) value.length() * bytesPerChar;
+		return STRING_SHALLOW_SIZE + ((arraySize + 7) & ~7L);
+	}
+}
@@ -0,0 +1,80 @@
+package util;
+
+/**
+ * Niemodyfikowalna migawka statystyk puli tekstów {@link StringPool}. Pozwala
+ * ocenić, ile duplikatów tekstów zastąpiono tekstami z puli i ile pamięci
+ * sterty dzięki temu zaoszczędzono.
+ */
+public class StringPoolMetrics
+{
+	private final int pooledStrings;
+	private final long lookups;
+	private final long hits;
+	private final long savedBytes;
+
+	/**
+	 * Tworzy migawkę statystyk puli tekstów.
+	 *
+	 * @param pooledStrings Liczba tekstów w puli.
+	 * @param lookups       Liczba tekstów przekazanych do puli.
+	 * @param hits          Liczba duplikatów zastąpionych tekstem z puli.
+	 * @param savedBytes    Szacowana łączna liczba bajtów zajmowanych przez
+	 *                      zastąpione duplikaty.
+	 */
+	StringPoolMetrics(int pooledStrings, long lookups, long hits, long savedBytes)
+	{
+		this.pooledStrings = pooledStrings;
+		this.lookups = lookups;
+		this.hits = hits;
+		this.savedBytes = savedBytes;
+	}
+
+	/**
+	 * @return Liczba tekstów w puli, do których wciąż prowadzą odwołania.
+	 */
+	public int getPooledStrings()
+	{
+		return pooledStrings;
+	}
+
+	/**
+	 * @return Liczba tekstów przekazanych do puli.
+	 */
+	public long getLookups()
+	{
+		return lookups;
+	}
+
+	/**
+	 * @return Liczba duplikatów zastąpionych tekstem z puli.
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return Udział zastąpionych duplikatów wśród tekstów przekazanych do puli
+	 *         (od 0 do 1).
+	 */
+	public double getHitRatio()
+	{
+		return lookups > 0 ? (double) hits / lookups : 0;
+	}
+
+	/**
+	 * @return Szacowana liczba bajtów sterty zajmowanych przez duplikaty, które
+	 *         zastąpiono tekstami z puli.
+	 */
+	public long getSavedBytes()
+	{
+		return savedBytes;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("pooled=%d, lookups=%d, hits=%d (%.1f%%), savedBytes=%d", pooledStrings, lookups, hits, getHitRatio() * 100,
+				savedBytes);
+	}
+}
@@ -0,0 +1,9 @@
+/**
+ * Pakiet {@code util} zawiera pomocnicze struktury danych wykorzystywane przez
+ * pozostałe pakiety aplikacji, takie jak mapy indeksujące obiekty modelu po
+ * ich identyfikatorach, pula tekstów usuwająca duplikaty czy normalizacja
+ * numerów telefonów.
+ * 
+ * @author Mateusz Kopaczewski
+ */
+package util;
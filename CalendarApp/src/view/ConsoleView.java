@@ -1,5 +1,6 @@
 package view;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
@@ -126,6 +127,7 @@ public class ConsoleView
 					deleteCategory();
 					break;
 				case 12:
+					this.controller.close();
 					this.controller.saveToXML();
 					this.scanner.close();
 					System.exit(0);
@@ -187,8 +189,8 @@ public class ConsoleView
 
 			try
 			{
-				this.controller.addNewEvent(eventName, eventDateTime, eventNotifyOffset, eventLocation, category, eventDescription,
-						selectedContactsList);
+				this.controller.addNewEvent(eventName, eventDateTime, eventNotifyOffset, Duration.ZERO, eventLocation, category,
+						eventDescription, selectedContactsList);
 				System.out.println("Event added successfully!\n");
 			}
 			catch (Exception ex)
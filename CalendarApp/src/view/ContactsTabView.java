@@ -33,8 +33,6 @@ public class ContactsTabView
 	private CalendarView calendarView;
 	private Alert alert;
 
-	private List<Contact> contactList;
-	private List<Event> eventList;
 	private String[] contactSortByMethods;
 
 	@FXML
@@ -304,11 +302,7 @@ public class ContactsTabView
 	 */
 	private void refreshContactList(String sortBy)
 	{
-		listViewContact_ContactList.getItems().clear();
-
-		this.controller.sortContacts(sortBy);
-
-		listViewContact_ContactList.getItems().addAll(this.contactList);
+		this.controller.readContactsSortedBy(sortBy, listViewContact_ContactList.getItems()::setAll);
 	}
 
 	/**
@@ -329,11 +323,7 @@ public class ContactsTabView
 	 */
 	private void refreshEventList(String sortBy)
 	{
-		listViewContact_Events.getItems().clear();
-
-		this.controller.sortEvents(sortBy);
-
-		listViewContact_Events.getItems().addAll(this.eventList);
+		this.controller.readEventsSortedBy(sortBy, listViewContact_Events.getItems()::setAll);
 	}
 
 	/**
@@ -350,8 +340,6 @@ public class ContactsTabView
 		this.controller = controller;
 		this.calendarView = calendarView;
 
-		this.contactList = this.controller.getContacts();
-		this.eventList = this.controller.getEvents();
 		this.contactSortByMethods = this.controller.getContactSortBy();
 		this.alert = new Alert(AlertType.NONE);
 
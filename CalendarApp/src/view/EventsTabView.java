@@ -1,5 +1,6 @@
 package view;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -38,8 +39,6 @@ public class EventsTabView
 	private CalendarView calendarView;
 	private Alert alert;
 
-	private List<Event> eventList;
-	private List<Contact> contactList;
 	private List<Category> categoryList;
 	private String[] eventSortByMethods;
 	private String[] contactSortByMethods;
@@ -71,6 +70,9 @@ public class EventsTabView
 	@FXML
 	private TextArea textAreaEvent_Description;
 
+	@FXML
+	private TextField textFieldEvent_Duration;
+
 	@FXML
 	private TextField textFieldEvent_Location;
 
@@ -95,6 +97,7 @@ public class EventsTabView
 		LocalDate eventDate = datePickerEvent_Date.getValue();
 		String eventTime = textFieldEvent_Time.getText();
 		String eventNotifyOffset = textFieldEvent_NotifyOffset.getText();
+		String eventDuration = textFieldEvent_Duration.getText();
 		String eventLocation = textFieldEvent_Location.getText();
 		Category eventCategory = comboBoxEvent_Category.getValue();
 		String eventDescription = textAreaEvent_Description.getText();
@@ -114,7 +117,12 @@ public class EventsTabView
 			eventNotifyOffset = "00:00";
 		}
 
-		if (!this.controller.isTimeValid(eventTime) || !this.controller.isTimeValid(eventNotifyOffset))
+		if (eventDuration.isBlank())
+		{
+			eventDuration = "00:00";
+		}
+
+		if (!this.controller.isTimeValid(eventTime) || !this.controller.isTimeValid(eventNotifyOffset) )
 		{
 			alert.setAlertType(AlertType.WARNING);
 			alert.setHeaderText("Bad time format");
@@ -123,14 +131,24 @@ public class EventsTabView
 			return;
 		}
 
+		if (!this.controller.isDurationValid(eventDuration))
+		{
+			alert.setAlertType(AlertType.WARNING);
+			alert.setHeaderText("Bad duration format");
+			alert.setContentText("Duration must be in [H:mm] format, e.g. 36:30!");
+			alert.showAndWait();
+			return;
+		}
+
 		LocalTime parsedEventTime = this.controller.parseStringToLocalTime(eventTime);
 		LocalDateTime eventDateTime = this.controller.mergeDateTime(eventDate, parsedEventTime);
+		Duration duration = this.controller.parseStringToDuration(eventDuration);
 
-		if (this.controller.isDateTimeOccupied(eventDateTime))
+		if (this.controller.isDateTimeOccupied(eventDateTime, duration))
 		{
 			alert.setAlertType(AlertType.WARNING);
 			alert.setHeaderText("Event date and time is occupied");
-			alert.setContentText("An event with the same date and time [" + eventDate + " " + parsedEventTime + "] already exists!");
+			alert.setContentText("Another event already takes place at [" + eventDate + " " + parsedEventTime + "] for the given duration!");
 			alert.showAndWait();
 			return;
 		}
@@ -139,7 +157,8 @@ public class EventsTabView
 
 		try
 		{
-			this.controller.addNewEvent(eventName, eventDateTime, notifyOffset, eventLocation, eventCategory, eventDescription, eventContacts);
+			this.controller.addNewEvent(eventName, eventDateTime, notifyOffset, duration, eventLocation, eventCategory, eventDescription,
+					eventContacts);
 			clearFields();
 			refreshEventList();
 			this.calendarView.refreshCalendar();
@@ -406,6 +425,7 @@ public class EventsTabView
 		datePickerEvent_Date.setValue(null);
 		textFieldEvent_Time.clear();
 		textFieldEvent_NotifyOffset.clear();
+		textFieldEvent_Duration.clear();
 		textFieldEvent_Location.clear();
 		comboBoxEvent_Category.setValue(null);
 		textAreaEvent_Description.clear();
@@ -430,11 +450,7 @@ public class EventsTabView
 	 */
 	private void refreshEventList(String sortBy)
 	{
-		listViewEvent_EventList.getItems().clear();
-
-		this.controller.sortEvents(sortBy);
-
-		listViewEvent_EventList.getItems().addAll(this.eventList);
+		this.controller.readEventsSortedBy(sortBy, listViewEvent_EventList.getItems()::setAll);
 	}
 
 	/**
@@ -454,11 +470,7 @@ public class EventsTabView
 	 */
 	private void refreshContactList(String sortBy)
 	{
-		listViewEvent_Contacts.getItems().clear();
-
-		this.controller.sortContacts(sortBy);
-
-		listViewEvent_Contacts.getItems().addAll(this.contactList);
+		this.controller.readContactsSortedBy(sortBy, listViewEvent_Contacts.getItems()::setAll);
 	}
 
 	/**
@@ -476,8 +488,6 @@ public class EventsTabView
 		this.calendarView = calendarView;
 
 		this.categoryList = this.controller.getCategories();
-		this.eventList = this.controller.getEvents();
-		this.contactList = this.controller.getContacts();
 		this.eventSortByMethods = this.controller.getEventsSortBy();
 		this.contactSortByMethods = this.controller.getContactSortBy();
 		this.alert = new Alert(AlertType.NONE);
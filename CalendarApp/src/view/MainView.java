@@ -53,6 +53,8 @@ public class MainView implements Initializable
 		try
 		{
 			controller = new Controller();
+			controller.setPersistenceErrorHandler(ex -> Platform.runLater(() -> displayPersistenceError(ex)));
+			controller.setAutosaveErrorHandler(ex -> Platform.runLater(() -> displayAutosaveError(ex)));
 			controller.init();
 		}
 		catch (Exception e)
@@ -225,14 +227,16 @@ public class MainView implements Initializable
 
 	/**
 	 * Obsługuje zdarzenie zamknięcia głównego okna aplikacji. Wywołuje metodę
-	 * {@link Controller#saveToXML()} w celu zapisania danych aplikacji do pliku
-	 * XML. Następnie wywołuje metodę {@link Platform#exit()} w celu zamknięcia
-	 * programu.
+	 * {@link Controller#close()}, która czeka na zapisanie oczekujących zmian w
+	 * bazie danych, a następnie {@link Controller#saveToXML()} w celu zapisania
+	 * niezapisanych jeszcze zmian danych aplikacji do pliku XML. Następnie
+	 * wywołuje metodę {@link Platform#exit()} w celu zamknięcia programu.
 	 */
 	private void handleCloseRequest()
 	{
 		try
 		{
+			this.controller.close();
 			this.controller.saveToXML();
 		}
 		catch (Exception e)
@@ -258,6 +262,36 @@ public class MainView implements Initializable
 		this.alert.showAndWait();
 	}
 
+	/**
+	 * Wyświetla okno dialogowe o błędzie zapisu zmiany w bazie danych, wykonywanego
+	 * w tle przez kontroler.
+	 *
+	 * @param ex Błąd zapisu.
+	 */
+	private void displayPersistenceError(Exception ex)
+	{
+		Alert persistenceAlert = new Alert(AlertType.ERROR);
+		persistenceAlert.setHeaderText("Database write error");
+		persistenceAlert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+		persistenceAlert.setContentText(ex.getMessage());
+		persistenceAlert.show();
+	}
+
+	/**
+	 * Wyświetla okno dialogowe o błędzie automatycznego zapisu danych do plików
+	 * lokalnych, wykonywanego w tle przez kontroler.
+	 *
+	 * @param ex Błąd zapisu.
+	 */
+	private void displayAutosaveError(Exception ex)
+	{
+		Alert autosaveAlert = new Alert(AlertType.ERROR);
+		autosaveAlert.setHeaderText("Autosave error");
+		autosaveAlert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
+		autosaveAlert.setContentText(ex.getMessage());
+		autosaveAlert.show();
+	}
+
 	/**
 	 * Wyświetla okno dialogowe o błędzie synchronizacji bazy danych, oczekując na
 	 * potwierdzenie przeczytania komunikatu przez użytkownika, zanim załaduje się
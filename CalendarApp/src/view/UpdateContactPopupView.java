@@ -27,7 +27,6 @@ public class UpdateContactPopupView
 	private Alert alert;
 
 	private Contact contact;
-	private List<Event> eventList;
 
 	@FXML
 	private DatePicker datePickerContact_FilterBy;
@@ -194,11 +193,7 @@ public class UpdateContactPopupView
 	 */
 	private void refreshEventList(String sortBy)
 	{
-		listViewContact_Events.getItems().clear();
-
-		this.controller.sortEvents(sortBy);
-
-		listViewContact_Events.getItems().addAll(this.eventList);
+		this.controller.readEventsSortedBy(sortBy, listViewContact_Events.getItems()::setAll);
 	}
 
 	/**
@@ -225,7 +220,6 @@ public class UpdateContactPopupView
 	{
 		this.controller = controller;
 		this.contact = contact;
-		this.eventList = this.controller.getEvents();
 		this.alert = new Alert(AlertType.NONE);
 
 		setContactData();
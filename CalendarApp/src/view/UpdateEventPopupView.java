@@ -1,5 +1,6 @@
 package view;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -32,7 +33,6 @@ public class UpdateEventPopupView
 	private Alert alert;
 
 	private Event event;
-	private List<Contact> contactList;
 	private List<Category> categoryList;
 	private String[] contactSortByMethods;
 
@@ -54,6 +54,9 @@ public class UpdateEventPopupView
 	@FXML
 	private TextArea textAreaEvent_Description;
 
+	@FXML
+	private TextField textFieldEvent_Duration;
+
 	@FXML
 	private TextField textFieldEvent_Location;
 
@@ -124,6 +127,7 @@ public class UpdateEventPopupView
 		LocalDate eventDate = datePickerEvent_Date.getValue();
 		String eventTime = textFieldEvent_Time.getText();
 		String eventNotifyOffset = textFieldEvent_NotifyOffset.getText();
+		String eventDuration = textFieldEvent_Duration.getText();
 		String eventLocation = textFieldEvent_Location.getText();
 		Category eventCategory = comboBoxEvent_Category.getValue();
 		String eventDescription = textAreaEvent_Description.getText();
@@ -142,7 +146,12 @@ public class UpdateEventPopupView
 			eventNotifyOffset = "00:00";
 		}
 
-		if (!this.controller.isTimeValid(eventTime) || !this.controller.isTimeValid(eventNotifyOffset))
+		if (eventDuration.isBlank())
+		{
+			eventDuration = "00:00";
+		}
+
+		if (!this.controller.isTimeValid(eventTime) || !this.controller.isTimeValid(eventNotifyOffset) )
 		{
 			alert.setAlertType(AlertType.WARNING);
 			alert.setHeaderText("Bad time format");
@@ -151,15 +160,23 @@ public class UpdateEventPopupView
 			return;
 		}
 
+		if (!this.controller.isDurationValid(eventDuration))
+		{
+			alert.setAlertType(AlertType.WARNING);
+			alert.setHeaderText("Bad duration format");
+			alert.setContentText("Duration must be in [H:mm] format, e.g. 36:30!");
+			alert.showAndWait();
+			return;
+		}
+
 		LocalTime parsedEventTime = this.controller.parseStringToLocalTime(eventTime);
 		LocalDateTime eventDateTime = this.controller.mergeDateTime(eventDate, parsedEventTime);
+		Duration duration = this.controller.parseStringToDuration(eventDuration);
 
-		int eventId = this.event.getId();
-
-		if (this.controller.isDateTimeOccupied(eventId, eventDateTime))
+		if (this.controller.isDateTimeOccupied(this.event, eventDateTime, duration))
 		{
 			alert.setHeaderText("Event date and time duplicate");
-			alert.setContentText("An event with the same date and time [" + eventDate + " " + parsedEventTime + "] already exists!");
+			alert.setContentText("Another event already takes place at [" + eventDate + " " + parsedEventTime + "] for the given duration!");
 			alert.showAndWait();
 			return;
 		}
@@ -168,8 +185,8 @@ public class UpdateEventPopupView
 
 		try
 		{
-			this.controller.updateEvent(this.event, eventName, eventDateTime, notifyOffset, eventLocation, eventCategory, eventDescription,
-					eventContacts);
+			this.controller.updateEvent(this.event, eventName, eventDateTime, notifyOffset, duration, eventLocation, eventCategory,
+					eventDescription, eventContacts);
 			closeWindow(actionEvent);
 		}
 		catch (Exception ex)
@@ -212,11 +229,7 @@ public class UpdateEventPopupView
 	 */
 	private void refreshContactList(String sortBy)
 	{
-		listViewEvent_Contacts.getItems().clear();
-
-		this.controller.sortContacts(sortBy);
-
-		listViewEvent_Contacts.getItems().addAll(this.contactList);
+		this.controller.readContactsSortedBy(sortBy, listViewEvent_Contacts.getItems()::setAll);
 	}
 
 	/**
@@ -240,6 +253,7 @@ public class UpdateEventPopupView
 		datePickerEvent_Date.setValue(this.event.getDate().toLocalDate());
 		textFieldEvent_Time.setText(this.event.getDate().toLocalTime().toString());
 		textFieldEvent_NotifyOffset.setText(this.event.getNotifyOffset().toString());
+		textFieldEvent_Duration.setText(this.controller.formatDuration(this.event.getDuration()));
 		textFieldEvent_Location.setText(this.event.getLocation());
 		comboBoxEvent_Category.setValue(this.event.getCategory());
 		textAreaEvent_Description.setText(this.event.getDescription());
@@ -258,7 +272,6 @@ public class UpdateEventPopupView
 	{
 		this.controller = controller;
 		this.event = event;
-		this.contactList = this.controller.getContacts();
 		this.categoryList = this.controller.getCategories();
 		this.contactSortByMethods = this.controller.getContactSortBy();
 		this.alert = new Alert(AlertType.NONE);